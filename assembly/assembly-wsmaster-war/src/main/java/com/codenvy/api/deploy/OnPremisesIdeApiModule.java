@@ -43,7 +43,7 @@ import com.codenvy.machine.backup.DockerEnvironmentBackupManager;
 import com.codenvy.machine.backup.EnvironmentBackupManager;
 import com.codenvy.plugin.gitlab.factory.resolver.GitlabFactoryParametersResolver;
 import com.codenvy.service.bitbucket.BitbucketConfigurationService;
-import com.codenvy.service.system.DockerBasedSystemRamInfoProvider;
+import com.codenvy.service.system.CachingSystemRamInfoProvider;
 import com.codenvy.service.system.HostedSystemService;
 import com.codenvy.service.system.SystemRamInfoProvider;
 import com.codenvy.service.system.SystemRamLimitMessageSender;
@@ -278,7 +278,7 @@ public class OnPremisesIdeApiModule extends AbstractModule {
     bind(org.eclipse.che.api.system.server.SystemEventsWebsocketBroadcaster.class)
         .asEagerSingleton();
 
-    bind(SystemRamInfoProvider.class).to(DockerBasedSystemRamInfoProvider.class);
+    bind(SystemRamInfoProvider.class).to(CachingSystemRamInfoProvider.class);
 
     bind(AuditService.class);
     bind(AuditServicePermissionsFilter.class);
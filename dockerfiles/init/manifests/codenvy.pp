@@ -62,6 +62,8 @@ node default {
   $ldap_auth_user_password_attribute = getValue("CODENVY_LDAP_AUTH_USER_PASSWORD_ATTRIBUTE","NULL")
   $ldap_auth_allow_multiple_dns = getValue("CODENVY_LDAP_AUTH_ALLOW_MULTIPLE_DNS","false")
   $ldap_auth_subtree_search = getValue("CODENVY_LDAP_AUTH_SUBTREE_SEARCH","true")
+  $ldap_auth_cache_ttl_ms = getValue("CODENVY_LDAP_AUTH_CACHE_TTL_MS","0")
+  $ldap_auth_cache_max_size = getValue("CODENVY_LDAP_AUTH_CACHE_MAX_SIZE","10000")
 # LDAP connection settings
   $ldap_connection_provider= getValue("CODENVY_LDAP_CONNECTION_PROVIDER","NULL")
   $ldap_connection_bind_dn = getValue("CODENVY_LDAP_CONNECTION_BIND_DN","")
@@ -93,8 +95,13 @@ node default {
 # LDAP Synchronization settings
   $ldap_sync_initial_delay_ms = getValue("CODENVY_LDAP_SYNC_INITIAL_DELAY_MS","10000")
   $ldap_sync_period_ms = getValue("CODENVY_LDAP_SYNC_PERIOD_MS","-1")
+  $ldap_sync_delta_attr = getValue("CODENVY_LDAP_SYNC_DELTA_ATTR","NULL")
+  $ldap_sync_delta_period_ms = getValue("CODENVY_LDAP_SYNC_DELTA_PERIOD_MS","60000")
+  $ldap_sync_delta_reconcile_period_ms = getValue("CODENVY_LDAP_SYNC_DELTA_RECONCILE_PERIOD_MS","3600000")
   $ldap_sync_page_size = getValue("CODENVY_LDAP_SYNC_PAGE_SIZE","1000")
   $ldap_sync_page_read_timeout_ms = getValue("CODENVY_LDAP_SYNC_PAGE_READ_TIMEOUT_MS","30000")
+  $ldap_sync_threads = getValue("CODENVY_LDAP_SYNC_THREADS","4")
+  $ldap_sync_batch_size = getValue("CODENVY_LDAP_SYNC_BATCH_SIZE","100")
   $ldap_sync_user_additional_dn = getValue("CODENVY_LDAP_SYNC_USER_ADDITIONAL_DN","NULL")
   $ldap_sync_user_filter = getValue("CODENVY_LDAP_SYNC_USER_FILTER","")
   $ldap_sync_user_attr_email = getValue("CODENVY_LDAP_SYNC_USER_ATTR_EMAIL","cn")
@@ -187,6 +194,9 @@ node default {
 #
   $auth_sso_access_ticket_lifetime_seconds = getValue("CODENVY_AUTH_SSO_ACCESS_TICKET_LIFETIME","259200")
   $auth_sso_bearer_ticket_lifetime_seconds = getValue("CODENVY_AUTH_SSO_BEARER_TICKET_LIFETIME","3600")
+#
+# access tickets storage, set this value to "journal" to keep users logged in after restart
+  $auth_sso_ticket_manager = getValue("CODENVY_AUTH_SSO_TICKET_MANAGER","memory")
 
 ###############################
 # oAuth configurations
@@ -360,6 +370,12 @@ $machine_docker_parent_cgroup = getValue("CODENVY_DOCKER_PARENT_CGROUP","NULL")
 # Sets log level of ssh connection used by rsync for workspace syncing. Value may include dot, unit suffix, e.g. 1.5m.
 # Default value INFO. Possible values: QUIET, FATAL, ERROR, INFO, VERBOSE, DEBUG1, DEBUG2, and DEBUG3
   $rsync_ssh_log_level=getValue("RSYNC_SSH_LOG_LEVEL","INFO")
+# Time in seconds ssh connection to a workspace machine stays open after the last rsync on it.
+# The ssh calls of a single backup or restore share the connection instead of making ssh handshake
+# again. Each open connection is an ssh master process per workspace, so the value is kept below
+# machine.backup.backup_period_second, then the process ends between backups of the workspace.
+# Set 0 to open new connection for each rsync call.
+  $rsync_ssh_control_persist=getValue("RSYNC_SSH_CONTROL_PERSIST","30")
 
 ###############################
 # User mail blacklist
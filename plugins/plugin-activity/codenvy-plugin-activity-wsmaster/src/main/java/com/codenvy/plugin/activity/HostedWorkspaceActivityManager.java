@@ -10,17 +10,26 @@
  */
 package com.codenvy.plugin.activity;
 
+import com.codahale.metrics.annotation.Gauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.eclipse.che.account.api.AccountManager;
 import org.eclipse.che.account.shared.model.Account;
 import org.eclipse.che.api.core.NotFoundException;
 import org.eclipse.che.api.core.ServerException;
 import org.eclipse.che.api.core.notification.EventService;
+import org.eclipse.che.api.core.notification.EventSubscriber;
 import org.eclipse.che.api.workspace.server.WorkspaceManager;
-import org.eclipse.che.api.workspace.server.model.impl.WorkspaceImpl;
+import org.eclipse.che.multiuser.organization.api.event.BeforeOrganizationRemovedEvent;
+import org.eclipse.che.multiuser.organization.spi.impl.OrganizationImpl;
 import org.eclipse.che.multiuser.resource.api.type.TimeoutResourceType;
 import org.eclipse.che.multiuser.resource.api.usage.ResourceUsageManager;
 import org.eclipse.che.multiuser.resource.model.Resource;
@@ -35,6 +44,12 @@ import org.slf4j.LoggerFactory;
  * one minute rate. If workspace idle timeout is negative, then workspace would not be stopped
  * automatically.
  *
+ * <p>Idle timeout is evaluated on each activity of workspace, so timeouts of accounts and
+ * namespaces of workspaces are cached. Cached timeout is evaluated again after configured time, so
+ * changes of account resources are applied to running workspaces with that delay. Timeouts of
+ * organizations are invalidated when organization is removed, as its resources are returned to the
+ * parent organization.
+ *
  * @author Anton Korneta
  */
 @Singleton
@@ -42,25 +57,117 @@ public class HostedWorkspaceActivityManager extends WorkspaceActivityManager {
 
   private static final Logger LOG = LoggerFactory.getLogger(HostedWorkspaceActivityManager.class);
 
+  private static final long MAX_CACHE_SIZE = 10_000;
+
+  private final EventService eventService;
   private final ResourceUsageManager resourceUsageManager;
   private final AccountManager accountManager;
+  private final Cache<String, String> namespaces;
+  private final Cache<String, Long> timeouts;
 
   @Inject
   public HostedWorkspaceActivityManager(
       ResourceUsageManager resourceUsageManager,
       AccountManager accountManager,
       WorkspaceManager workspaceManager,
-      EventService eventService) {
+      EventService eventService,
+      @Named("workspace.activity.idle_timeout_cache_ttl_seconds") long timeoutCacheTtlSeconds) {
     super(workspaceManager, eventService, -1);
 
+    this.eventService = eventService;
     this.resourceUsageManager = resourceUsageManager;
     this.accountManager = accountManager;
+    // namespace of workspace is never changed
+    this.namespaces =
+        CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHE_SIZE)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+    this.timeouts =
+        CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHE_SIZE)
+            .expireAfterWrite(timeoutCacheTtlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+  }
+
+  @PostConstruct
+  void subscribeToOrganizationRemoval() {
+    eventService.subscribe(
+        new EventSubscriber<BeforeOrganizationRemovedEvent>() {
+          @Override
+          public void onEvent(BeforeOrganizationRemovedEvent event) {
+            invalidateTimeouts(event.getOrganization());
+          }
+        });
+  }
+
+  /** @return number of idle timeouts served from the cache */
+  @Gauge(name = "workspace.activity.idle_timeout_cache_hits")
+  public long getTimeoutCacheHits() {
+    return timeouts.stats().hitCount();
+  }
+
+  /** @return number of idle timeouts which were evaluated because they were not cached */
+  @Gauge(name = "workspace.activity.idle_timeout_cache_misses")
+  public long getTimeoutCacheMisses() {
+    return timeouts.stats().missCount();
+  }
+
+  /** @return total time spent on evaluation of idle timeouts in nanoseconds */
+  @Gauge(name = "workspace.activity.idle_timeout_evaluation_nanos")
+  public long getTimeoutEvaluationNanos() {
+    return timeouts.stats().totalLoadTime();
   }
 
   @Override
   protected long getIdleTimeout(String workspaceId) throws NotFoundException, ServerException {
-    WorkspaceImpl workspace = workspaceManager.getWorkspace(workspaceId);
-    Account account = accountManager.getByName(workspace.getNamespace());
+    String namespace = namespaces.getIfPresent(workspaceId);
+    if (namespace == null) {
+      namespace = workspaceManager.getWorkspace(workspaceId).getNamespace();
+      namespaces.put(workspaceId, namespace);
+    }
+    final String accountName = namespace;
+    try {
+      return timeouts.get(accountName, () -> evaluateIdleTimeout(accountName));
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof NotFoundException) {
+        throw (NotFoundException) cause;
+      }
+      if (cause instanceof ServerException) {
+        throw (ServerException) cause;
+      }
+      throw new ServerException(cause.getLocalizedMessage(), cause);
+    }
+  }
+
+  /**
+   * Invalidates cached idle timeout of the organization account. Resources of suborganization are
+   * returned to its parent, which is not known by name here, so all cached timeouts are invalidated
+   * in that case.
+   */
+  private void invalidateTimeouts(OrganizationImpl organization) {
+    if (organization.getParent() == null) {
+      timeouts.invalidate(organization.getQualifiedName());
+    } else {
+      timeouts.invalidateAll();
+    }
+  }
+
+  private long evaluateIdleTimeout(String accountName) throws NotFoundException, ServerException {
+    final long start = System.nanoTime();
+    final long timeout = getAccountIdleTimeout(accountName);
+    LOG.debug(
+        "Idle timeout of account {} evaluated in {} ms",
+        accountName,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return timeout;
+  }
+
+  private long getAccountIdleTimeout(String accountName)
+      throws NotFoundException, ServerException {
+    Account account = accountManager.getByName(accountName);
     List<? extends Resource> availableResources =
         resourceUsageManager.getAvailableResources(account.getId());
     Optional<? extends Resource> timeoutOpt =
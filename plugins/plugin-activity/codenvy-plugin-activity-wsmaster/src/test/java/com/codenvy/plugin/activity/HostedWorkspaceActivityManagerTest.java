@@ -13,6 +13,7 @@ package com.codenvy.plugin.activity;
 import static java.util.Collections.singletonList;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
@@ -29,6 +30,8 @@ import org.eclipse.che.api.workspace.server.WorkspaceManager;
 import org.eclipse.che.api.workspace.server.model.impl.WorkspaceImpl;
 import org.eclipse.che.api.workspace.shared.dto.event.WorkspaceStatusEvent;
 import org.eclipse.che.dto.server.DtoFactory;
+import org.eclipse.che.multiuser.organization.api.event.BeforeOrganizationRemovedEvent;
+import org.eclipse.che.multiuser.organization.spi.impl.OrganizationImpl;
 import org.eclipse.che.multiuser.resource.api.type.TimeoutResourceType;
 import org.eclipse.che.multiuser.resource.api.usage.ResourceUsageManager;
 import org.eclipse.che.multiuser.resource.spi.impl.ResourceImpl;
@@ -53,6 +56,9 @@ public class HostedWorkspaceActivityManagerTest {
 
   @Captor private ArgumentCaptor<EventSubscriber<WorkspaceStatusEvent>> captor;
 
+  @Captor
+  private ArgumentCaptor<EventSubscriber<BeforeOrganizationRemovedEvent>> organizationCaptor;
+
   @Mock private Account account;
   @Mock private WorkspaceImpl workspace;
 
@@ -64,7 +70,7 @@ public class HostedWorkspaceActivityManagerTest {
   private void setUp() throws Exception {
     activityManager =
         new HostedWorkspaceActivityManager(
-            resourceUsageManager, accountManager, workspaceManager, eventService);
+            resourceUsageManager, accountManager, workspaceManager, eventService, 0);
 
     when(account.getName()).thenReturn("accountName");
     when(account.getId()).thenReturn("account123");
@@ -150,6 +156,43 @@ public class HostedWorkspaceActivityManagerTest {
     assertTrue(activeWorkspaces.isEmpty());
   }
 
+  @Test
+  public void shouldEvaluateIdleTimeoutOfAccountOnceWhileItIsCached() throws Exception {
+    activityManager =
+        new HostedWorkspaceActivityManager(
+            resourceUsageManager, accountManager, workspaceManager, eventService, 60);
+    final Map<String, Long> activeWorkspaces = getActiveWorkspaces(activityManager);
+
+    activityManager.update("ws1", 1000L);
+    activityManager.update("ws1", 2000L);
+    activityManager.update("ws2", 3000L);
+
+    assertEquals((long) activeWorkspaces.get("ws1"), 2000L + EXPIRE_PERIOD_MS);
+    assertEquals((long) activeWorkspaces.get("ws2"), 3000L + EXPIRE_PERIOD_MS);
+    verify(workspaceManager).getWorkspace("ws1");
+    verify(workspaceManager).getWorkspace("ws2");
+    verify(resourceUsageManager, times(1)).getAvailableResources("account123");
+    assertEquals(activityManager.getTimeoutCacheMisses(), 1);
+    assertEquals(activityManager.getTimeoutCacheHits(), 2);
+  }
+
+  @Test
+  public void shouldEvaluateIdleTimeoutOfOrganizationAgainAfterItIsRemoved() throws Exception {
+    activityManager =
+        new HostedWorkspaceActivityManager(
+            resourceUsageManager, accountManager, workspaceManager, eventService, 60);
+    activityManager.subscribeToOrganizationRemoval();
+    verify(eventService).subscribe(organizationCaptor.capture());
+    final OrganizationImpl organization = new OrganizationImpl("org123", "accountName", null);
+    activityManager.update("ws1", 1000L);
+
+    organizationCaptor.getValue().onEvent(new BeforeOrganizationRemovedEvent(organization));
+    activityManager.update("ws1", 2000L);
+
+    verify(resourceUsageManager, times(2)).getAvailableResources("account123");
+    assertEquals(activityManager.getTimeoutCacheMisses(), 2);
+  }
+
   @SuppressWarnings("unchecked")
   private Map<String, Long> getActiveWorkspaces(
       HostedWorkspaceActivityManager workspaceActivityManager) throws Exception {
@@ -11,13 +11,14 @@
 package com.codenvy.plugin.webhooks.bitbucketserver;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
-import static java.util.stream.Collectors.toSet;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
-import com.codenvy.plugin.webhooks.AuthConnection;
 import com.codenvy.plugin.webhooks.BaseWebhookService;
 import com.codenvy.plugin.webhooks.CloneUrlMatcher;
+import com.codenvy.plugin.webhooks.FactoryCache;
 import com.codenvy.plugin.webhooks.FactoryConnection;
+import com.codenvy.plugin.webhooks.IntegrationTokenProvider;
+import com.codenvy.plugin.webhooks.WebhookRegistry;
 import com.codenvy.plugin.webhooks.bitbucketserver.shared.Changeset;
 import com.codenvy.plugin.webhooks.bitbucketserver.shared.Project;
 import com.codenvy.plugin.webhooks.bitbucketserver.shared.PushEvent;
@@ -25,8 +26,6 @@ import com.codenvy.plugin.webhooks.bitbucketserver.shared.RefChange;
 import com.codenvy.plugin.webhooks.bitbucketserver.shared.Repository;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import javax.inject.Inject;
@@ -39,7 +38,6 @@ import org.eclipse.che.api.core.rest.shared.dto.Link;
 import org.eclipse.che.api.factory.shared.dto.FactoryDto;
 import org.eclipse.che.api.workspace.shared.dto.SourceStorageDto;
 import org.eclipse.che.commons.env.EnvironmentContext;
-import org.eclipse.che.inject.ConfigurationProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,23 +47,18 @@ public class BitbucketServerWebhookService extends BaseWebhookService {
   private static final Logger LOG = LoggerFactory.getLogger(BitbucketServerWebhookService.class);
 
   private static final String WEBHOOK_PROPERTY_PATTERN = "env.CODENVY_BITBUCKET_SERVER_WEBHOOK_.+";
-  private static final String WEBHOOK_REPOSITORY_URL_SUFFIX = "_REPOSITORY_URL";
-  private static final String WEBHOOK_FACTORY_ID_SUFFIX_PATTERN = "_FACTORY.+_ID";
 
-  private final ConfigurationProperties configurationProperties;
   private final CloneUrlMatcher urlMatcher;
   private final String bitbucketEndpoint;
 
   @Inject
   public BitbucketServerWebhookService(
-      final AuthConnection authConnection,
       final FactoryConnection factoryConnection,
-      ConfigurationProperties configurationProperties,
-      @Named("integration.factory.owner.username") String username,
-      @Named("integration.factory.owner.password") String password,
+      IntegrationTokenProvider tokenProvider,
+      FactoryCache factoryCache,
+      WebhookRegistry webhookRegistry,
       @Named("bitbucket.endpoint") String bitbucketEndpoint) {
-    super(authConnection, factoryConnection, configurationProperties, username, password);
-    this.configurationProperties = configurationProperties;
+    super(factoryConnection, tokenProvider, factoryCache, webhookRegistry);
     this.bitbucketEndpoint = bitbucketEndpoint;
 
     urlMatcher =
@@ -185,39 +178,17 @@ public class BitbucketServerWebhookService extends BaseWebhookService {
   }
 
   private Set<String> getFactoriesIDs(final String repositoryUrl) throws ServerException {
-    Map<String, String> properties =
-        configurationProperties.getProperties(WEBHOOK_PROPERTY_PATTERN);
-
-    Set<String> webhooks =
-        properties
-            .entrySet()
-            .stream()
-            // Bitbucket Server adds user's name to repository's clone url, but there is no user in
-            // received webhook.
-            // So need to remove '<username>@' from repository's clone url in given factory source.
-            .filter(entry -> repositoryUrl.equals(entry.getValue().replaceAll("://.+@", "://")))
-            .map(
-                entry ->
-                    entry
-                        .getKey()
-                        .substring(0, entry.getKey().lastIndexOf(WEBHOOK_REPOSITORY_URL_SUFFIX)))
-            .collect(toSet());
-
-    if (webhooks.isEmpty()) {
+    // Bitbucket Server adds user's name to repository's clone url, but there is no user in
+    // received webhook.
+    // So need to remove '<username>@' from repository's clone url in given factory source.
+    final Set<String> factoriesIDs =
+        getWebhookRegistry()
+            .getFactoriesIds(
+                WEBHOOK_PROPERTY_PATTERN, repositoryUrl, url -> url.replaceAll("://.+@", "://"));
+
+    if (factoriesIDs.isEmpty()) {
       LOG.warn("No BitBucket Server webhooks were registered for repository {}", repositoryUrl);
     }
-
-    return properties
-        .entrySet()
-        .stream()
-        .filter(
-            entry ->
-                webhooks
-                    .stream()
-                    .anyMatch(
-                        webhook ->
-                            entry.getKey().matches(webhook + WEBHOOK_FACTORY_ID_SUFFIX_PATTERN)))
-        .map(Entry::getValue)
-        .collect(toSet());
+    return factoriesIDs;
   }
 }
@@ -21,8 +21,10 @@ import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 
-import com.codenvy.plugin.webhooks.AuthConnection;
+import com.codenvy.plugin.webhooks.FactoryCache;
 import com.codenvy.plugin.webhooks.FactoryConnection;
+import com.codenvy.plugin.webhooks.IntegrationTokenProvider;
+import com.codenvy.plugin.webhooks.WebhookRegistry;
 import com.codenvy.plugin.webhooks.bitbucketserver.shared.Changeset;
 import com.codenvy.plugin.webhooks.bitbucketserver.shared.Changesets;
 import com.codenvy.plugin.webhooks.bitbucketserver.shared.Commit;
@@ -83,11 +85,10 @@ public class BitbucketServerWebhookServiceTest {
     service =
         spy(
             new BitbucketServerWebhookService(
-                mock(AuthConnection.class),
                 factoryConnection,
-                configurationProperties,
-                "username",
-                "password",
+                mock(IntegrationTokenProvider.class),
+                new FactoryCache(factoryConnection, 0, 1),
+                new WebhookRegistry(configurationProperties),
                 "http://bitbucketserver.host"));
   }
 
@@ -12,12 +12,13 @@ package com.codenvy.plugin.webhooks.github;
 
 import static com.codenvy.plugin.webhooks.CloneUrlMatcher.DEFAULT_CLONE_URL_MATCHER;
 import static com.google.common.base.Strings.isNullOrEmpty;
-import static java.util.stream.Collectors.toSet;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
-import com.codenvy.plugin.webhooks.AuthConnection;
 import com.codenvy.plugin.webhooks.BaseWebhookService;
+import com.codenvy.plugin.webhooks.FactoryCache;
 import com.codenvy.plugin.webhooks.FactoryConnection;
+import com.codenvy.plugin.webhooks.IntegrationTokenProvider;
+import com.codenvy.plugin.webhooks.WebhookRegistry;
 import com.codenvy.plugin.webhooks.github.shared.PullRequestEvent;
 import com.codenvy.plugin.webhooks.github.shared.PushEvent;
 import io.swagger.annotations.Api;
@@ -27,11 +28,8 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import javax.inject.Inject;
-import javax.inject.Named;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
@@ -45,7 +43,6 @@ import org.eclipse.che.api.core.rest.shared.dto.Link;
 import org.eclipse.che.api.factory.shared.dto.FactoryDto;
 import org.eclipse.che.commons.env.EnvironmentContext;
 import org.eclipse.che.dto.server.DtoFactory;
-import org.eclipse.che.inject.ConfigurationProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,20 +54,14 @@ public class GitHubWebhookService extends BaseWebhookService {
 
   private static final String GITHUB_REQUEST_HEADER = "X-GitHub-Event";
   private static final String WEBHOOK_PROPERTY_PATTERN = "env.CODENVY_GITHUB_WEBHOOK_.+";
-  private static final String WEBHOOK_REPOSITORY_URL_SUFFIX = "_REPOSITORY_URL";
-  private static final String WEBHOOK_FACTORY_ID_SUFFIX_PATTERN = "_FACTORY.+_ID";
-
-  private final ConfigurationProperties configurationProperties;
 
   @Inject
   public GitHubWebhookService(
-      final AuthConnection authConnection,
       final FactoryConnection factoryConnection,
-      final ConfigurationProperties configurationProperties,
-      @Named("integration.factory.owner.username") String username,
-      @Named("integration.factory.owner.password") String password) {
-    super(authConnection, factoryConnection, configurationProperties, username, password);
-    this.configurationProperties = configurationProperties;
+      final IntegrationTokenProvider tokenProvider,
+      final FactoryCache factoryCache,
+      final WebhookRegistry webhookRegistry) {
+    super(factoryConnection, tokenProvider, factoryCache, webhookRegistry);
   }
 
   @ApiOperation(value = "Handle GitHub webhook events", response = Response.class)
@@ -252,36 +243,12 @@ public class GitHubWebhookService extends BaseWebhookService {
    *     repo and branch
    */
   private Set<String> getWebhookConfiguredFactoriesIDs(final String baseRepositoryHtmlUrl) {
-    Map<String, String> properties =
-        configurationProperties.getProperties(WEBHOOK_PROPERTY_PATTERN);
-
-    Set<String> webhooks =
-        properties
-            .entrySet()
-            .stream()
-            .filter(entry -> baseRepositoryHtmlUrl.equals(entry.getValue()))
-            .map(
-                entry ->
-                    entry
-                        .getKey()
-                        .substring(0, entry.getKey().lastIndexOf(WEBHOOK_REPOSITORY_URL_SUFFIX)))
-            .collect(toSet());
+    final Set<String> factoriesIDs =
+        getWebhookRegistry().getFactoriesIds(WEBHOOK_PROPERTY_PATTERN, baseRepositoryHtmlUrl);
 
-    if (webhooks.isEmpty()) {
+    if (factoriesIDs.isEmpty()) {
       LOG.warn("No GitHub webhooks were registered for repository {}", baseRepositoryHtmlUrl);
     }
-
-    return properties
-        .entrySet()
-        .stream()
-        .filter(
-            entry ->
-                webhooks
-                    .stream()
-                    .anyMatch(
-                        webhook ->
-                            entry.getKey().matches(webhook + WEBHOOK_FACTORY_ID_SUFFIX_PATTERN)))
-        .map(Entry::getValue)
-        .collect(toSet());
+    return factoriesIDs;
   }
 }
@@ -91,11 +91,10 @@ public class TestGitHubWebhookService {
     // Prepare GitHubWebhookService
     fakeGitHubWebhookService =
         new GitHubWebhookService(
-            mockAuthConnection,
             mockFactoryConnection,
-            configurationProperties,
-            "username",
-            "password");
+            new IntegrationTokenProvider(mockAuthConnection, "username", "password", 3600),
+            new FactoryCache(mockFactoryConnection, 0, 1),
+            new WebhookRegistry(configurationProperties));
   }
 
   @Test
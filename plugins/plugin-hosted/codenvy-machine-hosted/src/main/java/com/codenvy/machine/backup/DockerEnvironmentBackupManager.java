@@ -13,11 +13,14 @@ package com.codenvy.machine.backup;
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static java.lang.String.format;
 import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ObjectArrays;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -29,8 +32,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -46,6 +55,7 @@ import org.eclipse.che.api.core.util.ValueHolder;
 import org.eclipse.che.api.environment.server.exception.EnvironmentException;
 import org.eclipse.che.api.workspace.server.WorkspaceManager;
 import org.eclipse.che.api.workspace.server.model.impl.WorkspaceImpl;
+import org.eclipse.che.commons.lang.concurrent.LoggingUncaughtExceptionHandler;
 import org.eclipse.che.plugin.docker.client.DockerConnector;
 import org.eclipse.che.plugin.docker.client.Exec;
 import org.eclipse.che.plugin.docker.client.LogMessage;
@@ -74,6 +84,15 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
   // user performs some files operations like git checkout. So we treat this situation as
   // successful.
   private static final Set<Integer> BACKUP_SUCCESS_RETURN_CODES = ImmutableSet.of(0, 24);
+  // prints path of the first file with status changed within given number of minutes or 'failed'
+  // if search can't be performed
+  static final String CHANGED_FILES_COMMAND_FORMAT =
+      "find '%s' -cmin -%d -print -quit 2>/dev/null || echo failed";
+  // restore only files not bigger than given size, so workspace can be used before the rest of
+  // files is restored
+  static final String RESTORE_MODE_HOT = "hot";
+  // restore files which were not restored yet without touching existing ones
+  static final String RESTORE_MODE_REST = "rest";
 
   private final String backupScript;
   private final String restoreScript;
@@ -86,6 +105,11 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
   private final ConcurrentMap<String, Map<String, User>> workspacesMachinesUsersInfo;
   private final WorkspaceManager workspaceManager;
   private final DockerConnector dockerConnector;
+  private final boolean stagedRestore;
+  private final String hotSetMaxFileSize;
+  private final ConcurrentMap<String, Future<Boolean>> backgroundRestores;
+  private final Set<String> partiallyRestoredWorkspaces;
+  private final ExecutorService restoreExecutor;
 
   @Inject
   public DockerEnvironmentBackupManager(
@@ -93,6 +117,8 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
       @Named("machine.backup.restore_script") String restoreScript,
       @Named("machine.backup.backup_duration_second") int maxBackupDurationSec,
       @Named("machine.backup.restore_duration_second") int restoreDurationSec,
+      @Named("machine.backup.staged_restore") boolean stagedRestore,
+      @Named("machine.backup.restore_hot_set_max_file_size") String hotSetMaxFileSize,
       @Named("che.user.workspaces.storage") File backupsRootDir,
       WorkspaceIdHashLocationFinder workspaceIdHashLocationFinder,
       @Named("che.workspace.projects.storage") String projectFolderPath,
@@ -102,6 +128,8 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
     this.restoreScript = restoreScript;
     this.maxBackupDuration = maxBackupDurationSec;
     this.restoreDuration = restoreDurationSec;
+    this.stagedRestore = stagedRestore;
+    this.hotSetMaxFileSize = hotSetMaxFileSize;
     this.backupsRootDir = backupsRootDir;
     this.workspaceIdHashLocationFinder = workspaceIdHashLocationFinder;
     this.projectFolderPath = projectFolderPath;
@@ -110,10 +138,19 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
 
     workspacesBackupLocks = new ConcurrentHashMap<>();
     workspacesMachinesUsersInfo = new ConcurrentHashMap<>();
+    backgroundRestores = new ConcurrentHashMap<>();
+    partiallyRestoredWorkspaces = ConcurrentHashMap.newKeySet();
+    restoreExecutor =
+        Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder()
+                .setNameFormat("WorkspaceFsRestore-%s")
+                .setUncaughtExceptionHandler(LoggingUncaughtExceptionHandler.getInstance())
+                .setDaemon(true)
+                .build());
   }
 
   @Override
-  public void backupWorkspace(String workspaceId) throws ServerException, NotFoundException {
+  public boolean backupWorkspace(String workspaceId) throws ServerException, NotFoundException {
     try {
       WorkspaceImpl workspace = workspaceManager.getWorkspace(workspaceId);
       if (workspace.getRuntime() == null) {
@@ -122,7 +159,7 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
       Machine devMachine = workspace.getRuntime().getDevMachine();
       if (devMachine == null || devMachine.getStatus() != MachineStatus.RUNNING) {
         // may happen if WS is no longer in RUNNING state
-        return;
+        return false;
       }
       // machine that is not in running state can be just a stub and should not be casted
       DockerInstance dockerDevMachine =
@@ -133,15 +170,58 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
       String srcUserName = getUserInfo(workspaceId, dockerDevMachine.getContainer()).name;
       int syncPort = getSyncPort(dockerDevMachine);
 
-      backupInsideLock(workspaceId, projectFolderPath, nodeHost, syncPort, srcUserName, destPath);
+      return backupInsideLock(
+          workspaceId, projectFolderPath, nodeHost, syncPort, srcUserName, destPath);
     } catch (IOException e) {
       throw new ServerException(e.getLocalizedMessage(), e);
     }
   }
 
+  /**
+   * Looks for files of the dev machine projects folder whose status was changed since given time.
+   * The search is performed inside of the container and stops on the first found file, so it is
+   * much cheaper than rsync over SSH which has to compare whole tree with the backup. Status change
+   * time is used because it is updated on modification, creation, renaming and deletion of files
+   * in a directory, and can't be set back by tools that preserve modification time.
+   *
+   * <p>Search precision is one minute, and one more minute is added to tolerate differences
+   * between the clocks of the node and this server. If search can't be performed, workspace is
+   * considered changed.
+   */
+  @Override
+  public boolean isChangedSince(String workspaceId, long since)
+      throws ServerException, NotFoundException {
+    WorkspaceImpl workspace = workspaceManager.getWorkspace(workspaceId);
+    if (workspace.getRuntime() == null) {
+      throw new NotFoundException("Workspace is not running");
+    }
+    Machine devMachine = workspace.getRuntime().getDevMachine();
+    if (devMachine == null || devMachine.getStatus() != MachineStatus.RUNNING) {
+      return true;
+    }
+    DockerInstance dockerDevMachine =
+        (DockerInstance) workspaceManager.getMachineInstance(workspaceId, devMachine.getId());
+    long minutes = MILLISECONDS.toMinutes(System.currentTimeMillis() - since) + 2;
+    try {
+      List<String> output =
+          executeCommandInContainer(
+              workspaceId,
+              dockerDevMachine.getContainer(),
+              format(CHANGED_FILES_COMMAND_FORMAT, projectFolderPath, minutes));
+      return output.stream().anyMatch(line -> !line.isEmpty());
+    } catch (IOException e) {
+      LOG.debug(
+          "Can't check changes of workspace {} files. {}", workspaceId, e.getLocalizedMessage());
+      return true;
+    }
+  }
+
   /**
    * Copy files of workspace into backup storage and cleanup them in container.
    *
+   * <p>If files of the workspace were not completely restored, files which are missing in the
+   * container are kept in the backup.
+   *
    * @param workspaceId id of workspace to backup
    * @param containerId id of container that contains data
    * @param nodeHost host of a node where container is running
@@ -151,6 +231,7 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
   public void backupWorkspaceAndCleanup(String workspaceId, String containerId, String nodeHost)
       throws ServerException, EnvironmentException {
     try {
+      awaitBackgroundRestore(workspaceId);
       String destPath =
           workspaceIdHashLocationFinder.calculateDirPath(backupsRootDir, workspaceId).toString();
       // if sync agent is not in machine port parameter is not used
@@ -168,6 +249,8 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
       workspacesBackupLocks.remove(workspaceId);
       // clear user info cache
       workspacesMachinesUsersInfo.remove(workspaceId);
+      backgroundRestores.remove(workspaceId);
+      partiallyRestoredWorkspaces.remove(workspaceId);
     }
   }
 
@@ -206,7 +289,8 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
     }
   }
 
-  private void backupInsideLock(
+  /** Returns true if backup is performed, false if it is skipped. */
+  private boolean backupInsideLock(
       String workspaceId,
       String srcPath,
       String srcAddress,
@@ -214,6 +298,10 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
       String srcUserName,
       String destPath)
       throws ServerException {
+    if (backgroundRestores.containsKey(workspaceId)) {
+      LOG.debug("Workspace {} is not backed up because its restore is in progress", workspaceId);
+      return false;
+    }
     ReentrantLock lock = workspacesBackupLocks.get(workspaceId);
     // backup workspace only if no backup with cleanup before
     if (lock != null) {
@@ -226,10 +314,18 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
             // backup with cleanup method is not atomic operation.
             // In very rare case it may happens, but it is ok. Just ignore this backup
             // because it is called after cleanup
-            return;
+            return false;
           }
           executeBackupScript(
-              workspaceId, srcPath, srcAddress, srcPort, false, srcUserName, destPath);
+              workspaceId,
+              srcPath,
+              srcAddress,
+              srcPort,
+              false,
+              partiallyRestoredWorkspaces.contains(workspaceId),
+              srcUserName,
+              destPath);
+          return true;
         } finally {
           lock.unlock();
         }
@@ -237,6 +333,7 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
     } else {
       LOG.warn("Attempt to backup workspace {} after cleanup", workspaceId);
     }
+    return false;
   }
 
   private void backupAndCleanupInsideLock(
@@ -259,7 +356,15 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
               workspaceId);
           return;
         }
-        executeBackupScript(workspaceId, srcPath, srcAddress, srcPort, true, srcUserName, destPath);
+        executeBackupScript(
+            workspaceId,
+            srcPath,
+            srcAddress,
+            srcPort,
+            true,
+            partiallyRestoredWorkspaces.contains(workspaceId),
+            srcUserName,
+            destPath);
       } finally {
         workspacesBackupLocks.remove(workspaceId);
         lock.unlock();
@@ -293,27 +398,113 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
         throw new ServerException(err);
       }
 
+      partiallyRestoredWorkspaces.remove(workspaceId);
       // TODO refactor that code to eliminate creation of directories here
       Files.createDirectories(Paths.get(srcPath));
 
-      CommandLine commandLine =
-          new CommandLine(
-              restoreScript,
-              srcPath,
-              destinationPath,
-              destAddress,
-              Integer.toString(destPort),
-              destUserId,
-              destGroupId,
-              destUserName);
+      final String[] restoreCommand = {
+        restoreScript,
+        srcPath,
+        destinationPath,
+        destAddress,
+        Integer.toString(destPort),
+        destUserId,
+        destGroupId,
+        destUserName
+      };
+      if (stagedRestore) {
+        // the hot set contains small files, git repositories and project metadata of any size,
+        // access to the files which are not restored yet is not blocked
+        executeRestoreScript(
+            workspaceId, destAddress, restoreCommand, RESTORE_MODE_HOT, hotSetMaxFileSize);
+        // backups are not allowed until the rest of files is restored,
+        // otherwise files which are not restored yet would be removed from the backup
+        final FutureTask<Boolean> restore =
+            new FutureTask<>(() -> restoreInBackground(workspaceId, destAddress, restoreCommand));
+        backgroundRestores.put(workspaceId, restore);
+        restoreExecutor.execute(restore);
+      } else {
+        executeRestoreScript(workspaceId, destAddress, restoreCommand);
+      }
+      restored = true;
+    } catch (IOException e) {
+      String error =
+          "Restoring of workspace "
+              + workspaceId
+              + " filesystem terminated on "
+              + destAddress
+              + " node. "
+              + e.getLocalizedMessage();
+      LOG.error(error, e);
+      throw new ServerException(error);
+    } finally {
+      lock.unlock();
+      if (!restored) {
+        workspacesBackupLocks.remove(workspaceId, lock);
+      }
+    }
+  }
+
+  /**
+   * Restores files which were not restored with the hot set, returns true on success. If restore
+   * fails, the following backups keep files which are missing in the workspace.
+   */
+  private boolean restoreInBackground(
+      String workspaceId, String destAddress, String[] restoreCommand) {
+    try {
+      executeRestoreScript(
+          workspaceId, destAddress, restoreCommand, RESTORE_MODE_REST, hotSetMaxFileSize);
+      LOG.info("Restore of workspace {} filesystem is completed", workspaceId);
+      return true;
+    } catch (ServerException e) {
+      partiallyRestoredWorkspaces.add(workspaceId);
+      LOG.error(
+          "Restore of workspace {} filesystem failed, files which are not restored are kept in its"
+              + " backup. {}",
+          workspaceId,
+          e.getLocalizedMessage());
+      return false;
+    } finally {
+      backgroundRestores.remove(workspaceId);
+    }
+  }
 
+  /**
+   * Waits for the end of restore of the workspace files which are not in the hot set. Restore
+   * which doesn't finish in time is cancelled, and the workspace is considered partially restored.
+   */
+  private void awaitBackgroundRestore(String workspaceId) {
+    final Future<Boolean> restore = backgroundRestores.get(workspaceId);
+    if (restore == null) {
+      return;
+    }
+    boolean restored = false;
+    try {
+      restored = restore.get(restoreDuration, SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      LOG.error(
+          "Restore of workspace {} filesystem is not completed. {}",
+          workspaceId,
+          e.getLocalizedMessage());
+    }
+    if (!restored) {
+      restore.cancel(true);
+      partiallyRestoredWorkspaces.add(workspaceId);
+    }
+  }
+
+  private void executeRestoreScript(
+      String workspaceId, String destAddress, String[] restoreCommand, String... modeArgs)
+      throws ServerException {
+    try {
       executeCommand(
-          commandLine.asArray(),
+          ObjectArrays.concat(restoreCommand, modeArgs, String.class),
           restoreDuration,
           destAddress,
           workspaceId,
           RESTORE_SUCCESS_RETURN_CODES);
-      restored = true;
     } catch (TimeoutException e) {
       throw new ServerException(
           "Restoring of workspace "
@@ -339,11 +530,6 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
               + e.getLocalizedMessage();
       LOG.error(error, e);
       throw new ServerException(error);
-    } finally {
-      lock.unlock();
-      if (!restored) {
-        workspacesBackupLocks.remove(workspaceId, lock);
-      }
     }
   }
 
@@ -353,6 +539,7 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
       String srcAddress,
       int srcPort,
       boolean removeSourceOnSuccess,
+      boolean keepMissingFiles,
       String srcUserName,
       String destPath)
       throws ServerException {
@@ -364,7 +551,8 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
             Integer.toString(srcPort),
             destPath,
             Boolean.toString(removeSourceOnSuccess),
-            srcUserName);
+            srcUserName,
+            Boolean.toString(keepMissingFiles));
 
     try {
       executeCommand(
@@ -400,6 +588,11 @@ public class DockerEnvironmentBackupManager implements EnvironmentBackupManager
     }
   }
 
+  @PreDestroy
+  public void shutdown() {
+    restoreExecutor.shutdownNow();
+  }
+
   /**
    * Returns user id, group id and username in container. This method caches info about users and on
    * second and subsequent calls cached value will be returned.
@@ -23,8 +23,26 @@ public interface EnvironmentBackupManager {
    * Copy files of workspace into backup storage.
    *
    * @param workspaceId id of workspace to backup
+   * @return true if files are backed up, false if backup is skipped because it can't be performed
+   *     at the moment, e.g. while files of the workspace are being restored
    * @throws NotFoundException if workspace is not found or not running
    * @throws ServerException if any other error occurs
    */
-  void backupWorkspace(String workspaceId) throws ServerException, NotFoundException;
+  boolean backupWorkspace(String workspaceId) throws ServerException, NotFoundException;
+
+  /**
+   * Checks whether files of workspace could be changed since given time, so backup of the
+   * workspace is needed. Implementations which can't detect changes cheaply report all workspaces
+   * as changed.
+   *
+   * @param workspaceId id of workspace to check
+   * @param since time of the start of the last successful backup of the workspace
+   * @return false only if files of workspace are not changed since given time
+   * @throws NotFoundException if workspace is not found or not running
+   * @throws ServerException if any other error occurs
+   */
+  default boolean isChangedSince(String workspaceId, long since)
+      throws ServerException, NotFoundException {
+    return true;
+  }
 }
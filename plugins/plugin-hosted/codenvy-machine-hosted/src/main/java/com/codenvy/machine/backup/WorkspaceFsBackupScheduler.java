@@ -10,20 +10,28 @@
  */
 package com.codenvy.machine.backup;
 
+import com.codahale.metrics.annotation.Gauge;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import org.eclipse.che.api.core.NotFoundException;
 import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.api.core.model.machine.Machine;
 import org.eclipse.che.api.core.model.workspace.WorkspaceStatus;
 import org.eclipse.che.api.workspace.server.WorkspaceManager;
 import org.eclipse.che.api.workspace.server.WorkspaceRuntimes;
@@ -37,6 +45,17 @@ import org.slf4j.LoggerFactory;
 /**
  * Schedule backups of projects of running workspace.
  *
+ * <p>Workspaces which should be backed up are put into the queue ordered by the time when backup
+ * had to be done, so the most outdated backups go first. Number of backups running at the same time
+ * is limited in total and per node where workspace is running, so backups don't saturate backup
+ * storage and nodes. Next backup of a workspace is due in backup period after the end of the
+ * previous one, so once backups are throttled they stay spread across the backup period instead of
+ * starting all together every period.
+ *
+ * <p>Backup managers are asked whether workspace files are changed since the start of the last
+ * backup, and unchanged workspaces are not backed up until the next period. Workspaces which were
+ * unchanged last time go after the other ones in the queue, as they are likely idle.
+ *
  * @author Alexander Garagatyi
  */
 @Singleton
@@ -44,38 +63,70 @@ public class WorkspaceFsBackupScheduler {
   private static final Logger LOG = LoggerFactory.getLogger(WorkspaceFsBackupScheduler.class);
 
   private final long syncTimeoutMillisecond;
+  private final int maxBackups;
+  private final int maxBackupsPerNode;
   private final WorkspaceRuntimes workspaceRuntimes;
   private final Map<String, Long> lastWorkspaceSynchronizationTime;
+  private final Map<String, Long> lastBackupStartTime;
+  private final Set<String> unchangedWorkspaces;
+  private final AtomicLong performedBackups;
+  private final AtomicLong skippedBackups;
   private final ExecutorService executor;
-  private final ConcurrentMap<String, String> workspacesBackupsInProgress;
   private final Map<String, EnvironmentBackupManager> backupManagers;
   private final WorkspaceManager workspaceManager;
 
+  // guarded by queue
+  private final PriorityQueue<BackupTask> queue;
+  private final Map<String, BackupTask> scheduledBackups;
+  private final Map<String, Integer> runningBackupsPerNode;
+  private int runningBackups;
+
   @Inject
   public WorkspaceFsBackupScheduler(
       Map<String, EnvironmentBackupManager> backupManagers,
       WorkspaceRuntimes workspaceRuntimes,
       @Named("machine.backup.backup_period_second") long syncTimeoutSecond,
+      @Named("machine.backup.max_concurrent_backups") int maxBackups,
+      @Named("machine.backup.max_concurrent_backups_per_node") int maxBackupsPerNode,
       WorkspaceManager workspaceManager) {
     this.workspaceRuntimes = workspaceRuntimes;
     this.backupManagers = backupManagers;
     this.syncTimeoutMillisecond = TimeUnit.SECONDS.toMillis(syncTimeoutSecond);
+    this.maxBackups = maxBackups;
+    this.maxBackupsPerNode = maxBackupsPerNode;
     this.workspaceManager = workspaceManager;
 
     this.executor =
-        Executors.newCachedThreadPool(
+        Executors.newFixedThreadPool(
+            maxBackups,
             new ThreadFactoryBuilder()
                 .setNameFormat("WorkspaceFsBackupScheduler-%s")
                 .setUncaughtExceptionHandler(LoggingUncaughtExceptionHandler.getInstance())
                 .build());
     this.lastWorkspaceSynchronizationTime = new ConcurrentHashMap<>();
-    this.workspacesBackupsInProgress = new ConcurrentHashMap<>();
+    this.lastBackupStartTime = new ConcurrentHashMap<>();
+    this.unchangedWorkspaces = ConcurrentHashMap.newKeySet();
+    this.performedBackups = new AtomicLong();
+    this.skippedBackups = new AtomicLong();
+    this.queue =
+        new PriorityQueue<>(
+            Comparator.comparing((BackupTask task) -> task.probablyUnchanged)
+                .thenComparingLong(task -> task.deadline));
+    this.scheduledBackups = new HashMap<>();
+    this.runningBackupsPerNode = new HashMap<>();
   }
 
   @ScheduleRate(initialDelay = 1, period = 1, unit = TimeUnit.MINUTES)
   public void scheduleBackup() {
-    for (String workspaceId : workspaceRuntimes.getRuntimesIds()) {
-
+    final Set<String> runtimesIds = workspaceRuntimes.getRuntimesIds();
+    // forget workspaces which are stopped
+    lastBackupStartTime.keySet().retainAll(runtimesIds);
+    unchangedWorkspaces.retainAll(runtimesIds);
+    for (String workspaceId : runtimesIds) {
+      // check time first to avoid reading of workspaces which were backed up recently
+      if (!isTimeToBackup(workspaceId) || isScheduled(workspaceId)) {
+        continue;
+      }
       try {
         // re-read workspace state to ensure that it's still active after processing of all previous
         // workspaces
@@ -85,41 +136,25 @@ public class WorkspaceFsBackupScheduler {
         WorkspaceRuntimeImpl runtime = workspace.getRuntime();
         // If workspace is not in RUNNING state skip it
         if (workspace.getStatus().equals(WorkspaceStatus.RUNNING)) {
-          if (isTimeToBackup(workspaceId)) {
-            executor.execute(
-                () -> {
-                  // don't start new backup if previous one is in progress
-                  if (workspacesBackupsInProgress.putIfAbsent(workspaceId, workspaceId) == null) {
-                    try {
-                      String environmentType =
-                          workspace
-                              .getConfig()
-                              .getEnvironments()
-                              .get(runtime.getActiveEnv())
-                              .getRecipe()
-                              .getType();
-                      EnvironmentBackupManager backupManager = backupManagers.get(environmentType);
-                      if (backupManager == null) {
-                        throw new ServerException(
-                            "Backing up of environment of type "
-                                + environmentType
-                                + " is not implemented.");
-                      }
-
-                      backupManager.backupWorkspace(workspaceId);
-
-                      lastWorkspaceSynchronizationTime.put(workspaceId, System.currentTimeMillis());
-                    } catch (NotFoundException ignore) {
-                      // it is ok, machine was stopped while this backup task was in the executor
-                      // queue
-                    } catch (Exception e) {
-                      LOG.error(e.getLocalizedMessage(), e);
-                    } finally {
-                      workspacesBackupsInProgress.remove(workspaceId);
-                    }
-                  }
-                });
+          String environmentType =
+              workspace
+                  .getConfig()
+                  .getEnvironments()
+                  .get(runtime.getActiveEnv())
+                  .getRecipe()
+                  .getType();
+          EnvironmentBackupManager backupManager = backupManagers.get(environmentType);
+          if (backupManager == null) {
+            throw new ServerException(
+                "Backing up of environment of type " + environmentType + " is not implemented.");
           }
+          enqueue(
+              new BackupTask(
+                  workspaceId,
+                  getNode(workspaceId, runtime),
+                  getDeadline(workspaceId),
+                  unchangedWorkspaces.contains(workspaceId),
+                  backupManager));
         }
       } catch (NotFoundException e) {
         // it's ok, means that ws is removed already
@@ -127,6 +162,57 @@ public class WorkspaceFsBackupScheduler {
         LOG.error(e.getLocalizedMessage(), e);
       }
     }
+    final long lag = getBackupsLagMillis();
+    if (lag > syncTimeoutMillisecond) {
+      LOG.warn(
+          "Workspaces backups are late for {} seconds, {} backups are waiting in the queue",
+          TimeUnit.MILLISECONDS.toSeconds(lag),
+          getQueueSize());
+    }
+    LOG.debug(
+        "Workspaces backups performed: {}, skipped as unchanged: {}",
+        performedBackups.get(),
+        skippedBackups.get());
+  }
+
+  /** Returns number of backups waiting in the queue. */
+  @Gauge(name = "machine.backup.queue_size")
+  public int getQueueSize() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
+  /** Returns number of backups performed since start of this server. */
+  @Gauge(name = "machine.backup.performed")
+  public long getPerformedBackups() {
+    return performedBackups.get();
+  }
+
+  /** Returns number of backups skipped because workspace files were not changed. */
+  @Gauge(name = "machine.backup.skipped_unchanged")
+  public long getSkippedBackups() {
+    return skippedBackups.get();
+  }
+
+  /** Returns number of backups which are running now. */
+  @Gauge(name = "machine.backup.running")
+  public int getRunningBackups() {
+    synchronized (queue) {
+      return runningBackups;
+    }
+  }
+
+  /**
+   * Returns how long the most outdated backup waits in the queue after it had to be done or 0 if
+   * there is no such backup.
+   */
+  @Gauge(name = "machine.backup.lag_millis")
+  public long getBackupsLagMillis() {
+    synchronized (queue) {
+      final BackupTask first = queue.peek();
+      return first == null ? 0 : Math.max(0, currentTimeMillis() - first.deadline);
+    }
   }
 
   @VisibleForTesting
@@ -134,11 +220,117 @@ public class WorkspaceFsBackupScheduler {
     final Long lastWorkspaceSyncTime = lastWorkspaceSynchronizationTime.get(workspaceId);
 
     return lastWorkspaceSyncTime == null
-        || System.currentTimeMillis() - lastWorkspaceSyncTime > syncTimeoutMillisecond;
+        || currentTimeMillis() - lastWorkspaceSyncTime > syncTimeoutMillisecond;
+  }
+
+  @VisibleForTesting
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private long getDeadline(String workspaceId) {
+    final Long lastWorkspaceSyncTime = lastWorkspaceSynchronizationTime.get(workspaceId);
+    // workspace which was never backed up goes first
+    return lastWorkspaceSyncTime == null ? 0 : lastWorkspaceSyncTime + syncTimeoutMillisecond;
+  }
+
+  /** Returns host of the node where dev machine of workspace is running or null if unknown. */
+  private String getNode(String workspaceId, WorkspaceRuntimeImpl runtime) {
+    final Machine devMachine = runtime.getDevMachine();
+    if (devMachine == null) {
+      return null;
+    }
+    try {
+      return workspaceManager
+          .getMachineInstance(workspaceId, devMachine.getId())
+          .getNode()
+          .getHost();
+    } catch (Exception e) {
+      LOG.debug("Can't find node of workspace '{}'. {}", workspaceId, e.getLocalizedMessage());
+      return null;
+    }
+  }
+
+  private boolean isScheduled(String workspaceId) {
+    synchronized (queue) {
+      return scheduledBackups.containsKey(workspaceId);
+    }
+  }
+
+  private void enqueue(BackupTask task) {
+    synchronized (queue) {
+      // don't start new backup if previous one is in progress
+      if (scheduledBackups.putIfAbsent(task.workspaceId, task) == null) {
+        queue.add(task);
+        dispatch();
+      }
+    }
+  }
+
+  /** Starts the most outdated backups while limits allow that, must be called under the lock. */
+  private void dispatch() {
+    final List<BackupTask> skipped = new ArrayList<>();
+    while (runningBackups < maxBackups && !queue.isEmpty()) {
+      final BackupTask task = queue.poll();
+      if (task.node != null
+          && runningBackupsPerNode.getOrDefault(task.node, 0) >= maxBackupsPerNode) {
+        skipped.add(task);
+        continue;
+      }
+      runningBackups++;
+      if (task.node != null) {
+        runningBackupsPerNode.merge(task.node, 1, Integer::sum);
+      }
+      executor.execute(() -> backup(task));
+    }
+    queue.addAll(skipped);
+  }
+
+  private void backup(BackupTask task) {
+    try {
+      final long start = currentTimeMillis();
+      final Long lastBackupStart = lastBackupStartTime.get(task.workspaceId);
+      if (lastBackupStart != null
+          && !task.backupManager.isChangedSince(task.workspaceId, lastBackupStart)) {
+        skippedBackups.incrementAndGet();
+        unchangedWorkspaces.add(task.workspaceId);
+        lastWorkspaceSynchronizationTime.put(task.workspaceId, start);
+        return;
+      }
+
+      if (!task.backupManager.backupWorkspace(task.workspaceId)) {
+        // backup is not possible at the moment, it is retried on the next scheduling
+        return;
+      }
+
+      performedBackups.incrementAndGet();
+      unchangedWorkspaces.remove(task.workspaceId);
+      lastBackupStartTime.put(task.workspaceId, start);
+      lastWorkspaceSynchronizationTime.put(task.workspaceId, currentTimeMillis());
+    } catch (NotFoundException ignore) {
+      // it is ok, machine was stopped while this backup task was in the queue
+    } catch (Exception e) {
+      LOG.error(e.getLocalizedMessage(), e);
+    } finally {
+      synchronized (queue) {
+        scheduledBackups.remove(task.workspaceId);
+        runningBackups--;
+        if (task.node != null) {
+          runningBackupsPerNode.computeIfPresent(
+              task.node, (node, running) -> running > 1 ? running - 1 : null);
+        }
+        if (!executor.isShutdown()) {
+          dispatch();
+        }
+      }
+    }
   }
 
   @PreDestroy
   private void teardown() {
+    synchronized (queue) {
+      queue.clear();
+    }
     executor.shutdown();
     try {
       if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
@@ -151,4 +343,25 @@ public class WorkspaceFsBackupScheduler {
       executor.shutdownNow();
     }
   }
+
+  private static class BackupTask {
+    final String workspaceId;
+    final String node;
+    final long deadline;
+    final boolean probablyUnchanged;
+    final EnvironmentBackupManager backupManager;
+
+    BackupTask(
+        String workspaceId,
+        String node,
+        long deadline,
+        boolean probablyUnchanged,
+        EnvironmentBackupManager backupManager) {
+      this.workspaceId = workspaceId;
+      this.node = node;
+      this.deadline = deadline;
+      this.probablyUnchanged = probablyUnchanged;
+      this.backupManager = backupManager;
+    }
+  }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.swarm.client;
+
+import static java.util.Comparator.comparingDouble;
+import static java.util.Comparator.comparingInt;
+
+import com.codenvy.swarm.client.model.DockerNode;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Selects node with the least part of the memory reserved by containers, node with less containers
+ * is selected from nodes with the same reserved part of the memory.
+ */
+public class LeastReservedMemoryNodeSelectionStrategy implements NodeSelectionStrategy {
+
+  static final Comparator<DockerNode> BY_LOAD =
+      comparingDouble(DockerNode::getReservedMemoryRatio)
+          .thenComparing(comparingInt(DockerNode::getContainers));
+
+  @Override
+  public DockerNode select(List<DockerNode> nodes) throws IOException {
+    return nodes
+        .stream()
+        .min(BY_LOAD)
+        .orElseThrow(() -> new IOException("No docker nodes available"));
+  }
+}
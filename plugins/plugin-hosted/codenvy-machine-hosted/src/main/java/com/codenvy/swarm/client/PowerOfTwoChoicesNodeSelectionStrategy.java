@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.swarm.client;
+
+import com.codenvy.swarm.client.model.DockerNode;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Selects the least loaded of two random nodes.
+ *
+ * <p>Unlike {@link LeastReservedMemoryNodeSelectionStrategy}, concurrent selections made with the
+ * same outdated nodes info are spread between nodes instead of being sent to the same node, while
+ * the load is still much more balanced than with the {@link RandomNodeSelectionStrategy}.
+ */
+public class PowerOfTwoChoicesNodeSelectionStrategy implements NodeSelectionStrategy {
+
+  @Override
+  public DockerNode select(List<DockerNode> nodes) throws IOException {
+    if (nodes.isEmpty()) {
+      throw new IOException("No docker nodes available");
+    }
+    if (nodes.size() == 1) {
+      return nodes.get(0);
+    }
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int first = random.nextInt(nodes.size());
+    // second index is chosen from the other nodes
+    final int second = (first + 1 + random.nextInt(nodes.size() - 1)) % nodes.size();
+    final DockerNode firstNode = nodes.get(first);
+    final DockerNode secondNode = nodes.get(second);
+    return LeastReservedMemoryNodeSelectionStrategy.BY_LOAD.compare(firstNode, secondNode) <= 0
+        ? firstNode
+        : secondNode;
+  }
+}
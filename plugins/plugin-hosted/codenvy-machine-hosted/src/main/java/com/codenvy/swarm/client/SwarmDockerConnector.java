@@ -15,6 +15,7 @@ import static com.google.common.primitives.Ints.tryParse;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import com.codenvy.swarm.client.model.DockerNode;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -23,11 +24,13 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 import java.util.regex.Pattern;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import org.eclipse.che.commons.annotation.Nullable;
+import org.eclipse.che.commons.lang.Size;
 import org.eclipse.che.plugin.docker.client.DockerApiVersionPathPrefixProvider;
 import org.eclipse.che.plugin.docker.client.DockerConnector;
 import org.eclipse.che.plugin.docker.client.DockerConnectorConfiguration;
@@ -67,6 +70,12 @@ public class SwarmDockerConnector extends DockerConnector {
   public static final String DOCKER_OUT_OF_RESOURCES_ERROR_MESSAGE =
       "no resources available to schedule container";
 
+  /** Values of the swarm.client.node_selection_strategy property. */
+  static final String RANDOM_STRATEGY = "random";
+
+  static final String LEAST_RESERVED_MEMORY_STRATEGY = "least_reserved_memory";
+  static final String POWER_OF_TWO_CHOICES_STRATEGY = "power_of_two_choices";
+
   private final NodeSelectionStrategy strategy;
   // TODO should it be done in other way?
   private final String nodeDaemonScheme;
@@ -74,6 +83,9 @@ public class SwarmDockerConnector extends DockerConnector {
   // Map of exec ID to container ID (or name)
   // Temporary solution to investigate why swarm returns 404 on exec start
   private final Cache<String, String> execToContainer;
+  private final long nodesInfoTtlMs;
+
+  private volatile NodesInfo nodesInfo;
 
   @Inject
   public SwarmDockerConnector(
@@ -81,11 +93,14 @@ public class SwarmDockerConnector extends DockerConnector {
       DockerConnectionFactory connectionFactory,
       DockerRegistryAuthResolver authManager,
       @Named("swarm.client.node_description_length") int nodeDescriptionLength,
+      @Named("swarm.client.node_selection_strategy") String nodeSelectionStrategy,
+      @Named("swarm.client.nodes_info_ttl_seconds") long nodesInfoTtlSeconds,
       DockerApiVersionPathPrefixProvider dockerApiVersionPathPrefixProvider) {
     super(
         connectorConfiguration, connectionFactory, authManager, dockerApiVersionPathPrefixProvider);
     this.nodeDescriptionLength = nodeDescriptionLength;
-    this.strategy = new RandomNodeSelectionStrategy();
+    this.strategy = createStrategy(nodeSelectionStrategy);
+    this.nodesInfoTtlMs = TimeUnit.SECONDS.toMillis(nodesInfoTtlSeconds);
     this.nodeDaemonScheme = "http";
     // entry is not needed after start of exec, and expiration doesn't change anything important
     // start should go right after, so expire entry after 1 minute timeout
@@ -221,8 +236,9 @@ public class SwarmDockerConnector extends DockerConnector {
   }
 
   /**
-   * Fetches nodes from {@link SystemInfo#getDriverStatus()} which contains information about all
-   * available nodes(addresses available RAM etc).
+   * Returns nodes fetched from {@link SystemInfo#getDriverStatus()} which contains information
+   * about all available nodes(addresses available RAM etc). Fetched nodes are kept for configured
+   * time, so node selection doesn't need a request to swarm each time.
    *
    * <pre>
    * Scheme of driver status content:
@@ -250,7 +266,19 @@ public class SwarmDockerConnector extends DockerConnector {
    * </pre>
    */
   public List<DockerNode> getAvailableNodes() throws IOException {
-    SystemInfo systemInfo = getSystemInfo();
+    final NodesInfo current = nodesInfo;
+    final long now = System.currentTimeMillis();
+    if (current != null && now - current.fetched < nodesInfoTtlMs) {
+      return current.nodes;
+    }
+    final List<DockerNode> nodes = parseNodes(getSystemInfo(), nodeDescriptionLength);
+    nodesInfo = new NodesInfo(nodes, now);
+    return nodes;
+  }
+
+  @VisibleForTesting
+  static List<DockerNode> parseNodes(SystemInfo systemInfo, int nodeDescriptionLength)
+      throws DockerException {
     final String[][] systemDescription =
         systemInfo.getSystemStatus() != null
             ? systemInfo.getSystemStatus()
@@ -270,14 +298,74 @@ public class SwarmDockerConnector extends DockerConnector {
     }
     final ArrayList<DockerNode> nodes = new ArrayList<>(count);
     for (int i = 0; i < count; ++i) {
-      final String[] node = systemDescription[i * nodeDescriptionLength + startsFrom];
-      nodes.add(new DockerNode(node[0], node[1]));
+      final int nodeStartsFrom = i * nodeDescriptionLength + startsFrom;
+      final String[] node = systemDescription[nodeStartsFrom];
+      int containers = 0;
+      long[] cpus = {0, 0};
+      long[] memory = {0, 0};
+      final int nodeEndsAt =
+          Math.min(nodeStartsFrom + nodeDescriptionLength, systemDescription.length);
+      for (int j = nodeStartsFrom + 1; j < nodeEndsAt; ++j) {
+        final String[] entry = systemDescription[j];
+        if (entry.length != 2 || entry[0] == null || entry[1] == null) {
+          continue;
+        }
+        final String name = entry[0].trim();
+        if (name.endsWith("Containers")) {
+          containers = firstNonNull(tryParse(entry[1].trim()), 0);
+        } else if (name.endsWith("Reserved CPUs")) {
+          cpus = parseUsage(entry[1], value -> firstNonNull(tryParse(value), 0));
+        } else if (name.endsWith("Reserved Memory")) {
+          memory = parseUsage(entry[1], Size::parseSize);
+        }
+      }
+      nodes.add(
+          new DockerNode(
+              node[0], node[1], containers, (int) cpus[0], (int) cpus[1], memory[0], memory[1]));
     }
     return nodes;
   }
 
+  /** Parses value in format {@code <reserved> / <total>}, unknown values are 0. */
+  private static long[] parseUsage(String usage, ToLongFunction<String> parser) {
+    final long[] result = {0, 0};
+    final String[] values = usage.split("/");
+    if (values.length == 2) {
+      try {
+        result[0] = parser.applyAsLong(values[0].trim());
+        result[1] = parser.applyAsLong(values[1].trim());
+      } catch (IllegalArgumentException e) {
+        LOG.debug("Can't parse docker node resources usage '{}'", usage);
+      }
+    }
+    return result;
+  }
+
+  private static NodeSelectionStrategy createStrategy(String name) {
+    switch (name) {
+      case RANDOM_STRATEGY:
+        return new RandomNodeSelectionStrategy();
+      case LEAST_RESERVED_MEMORY_STRATEGY:
+        return new LeastReservedMemoryNodeSelectionStrategy();
+      case POWER_OF_TWO_CHOICES_STRATEGY:
+        return new PowerOfTwoChoicesNodeSelectionStrategy();
+      default:
+        throw new IllegalArgumentException("Unknown swarm node selection strategy: " + name);
+    }
+  }
+
   // TODO find better solution
   private URI addrToUri(String addr) {
     return URI.create(nodeDaemonScheme + "://" + addr);
   }
+
+  private static class NodesInfo {
+    final List<DockerNode> nodes;
+    final long fetched;
+
+    NodesInfo(List<DockerNode> nodes, long fetched) {
+      this.nodes = nodes;
+      this.fetched = fetched;
+    }
+  }
 }
@@ -16,13 +16,33 @@ package com.codenvy.swarm.client.model;
  * @author Eugene Voevodin
  */
 public class DockerNode {
-  // TODO add ram and containers ?
   private final String hostname;
   private final String addr;
+  private final int containers;
+  private final int reservedCpus;
+  private final int totalCpus;
+  private final long reservedMemory;
+  private final long totalMemory;
 
   public DockerNode(String hostname, String addr) {
+    this(hostname, addr, 0, 0, 0, 0, 0);
+  }
+
+  public DockerNode(
+      String hostname,
+      String addr,
+      int containers,
+      int reservedCpus,
+      int totalCpus,
+      long reservedMemory,
+      long totalMemory) {
     this.hostname = hostname;
     this.addr = addr;
+    this.containers = containers;
+    this.reservedCpus = reservedCpus;
+    this.totalCpus = totalCpus;
+    this.reservedMemory = reservedMemory;
+    this.totalMemory = totalMemory;
   }
 
   public String getAddr() {
@@ -32,4 +52,56 @@ public class DockerNode {
   public String getHostname() {
     return hostname;
   }
+
+  /** Number of containers on the node. */
+  public int getContainers() {
+    return containers;
+  }
+
+  /** Number of CPUs reserved by containers of the node. */
+  public int getReservedCpus() {
+    return reservedCpus;
+  }
+
+  /** Number of CPUs of the node. */
+  public int getTotalCpus() {
+    return totalCpus;
+  }
+
+  /** Memory reserved by containers of the node in bytes. */
+  public long getReservedMemory() {
+    return reservedMemory;
+  }
+
+  /** Memory of the node in bytes, 0 if unknown. */
+  public long getTotalMemory() {
+    return totalMemory;
+  }
+
+  /** Returns part of the node memory reserved by containers, 0 if memory of the node is unknown. */
+  public double getReservedMemoryRatio() {
+    return totalMemory == 0 ? 0 : (double) reservedMemory / totalMemory;
+  }
+
+  @Override
+  public String toString() {
+    return "DockerNode{"
+        + "hostname='"
+        + hostname
+        + '\''
+        + ", addr='"
+        + addr
+        + '\''
+        + ", containers="
+        + containers
+        + ", reservedCpus="
+        + reservedCpus
+        + ", totalCpus="
+        + totalCpus
+        + ", reservedMemory="
+        + reservedMemory
+        + ", totalMemory="
+        + totalMemory
+        + '}';
+  }
 }
@@ -19,22 +19,29 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anySetOf;
 import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 import static org.testng.internal.junit.ArrayAsserts.assertArrayEquals;
 
+import com.google.common.collect.ObjectArrays;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -106,7 +113,8 @@ public class DockerEnvironmentBackupManagerTest {
     PUBLISHED_SSH_PORT,
     ABSOLUTE_PATH_TO_WORKSPACE_DIR,
     "false",
-    USER_IN_CONTAINER
+    USER_IN_CONTAINER,
+    "false"
   };
   private static final String[] BACKUP_WORKSPACE_WITH_CLEANUP_COMMAND = {
     BACKUP_SCRIPT,
@@ -115,7 +123,18 @@ public class DockerEnvironmentBackupManagerTest {
     PUBLISHED_SSH_PORT,
     ABSOLUTE_PATH_TO_WORKSPACE_DIR,
     "true",
-    USER_IN_CONTAINER
+    USER_IN_CONTAINER,
+    "false"
+  };
+  private static final String[] BACKUP_WORKSPACE_WITH_CLEANUP_KEEPING_MISSING_FILES_COMMAND = {
+    BACKUP_SCRIPT,
+    PROJECTS_PATH_IN_CONTAINER,
+    NODE_HOST,
+    PUBLISHED_SSH_PORT,
+    ABSOLUTE_PATH_TO_WORKSPACE_DIR,
+    "true",
+    USER_IN_CONTAINER,
+    "true"
   };
   private static final String[] RESTORE_WORKSPACE_COMMAND = {
     RESTORE_SCRIPT,
@@ -146,18 +165,7 @@ public class DockerEnvironmentBackupManagerTest {
 
   @BeforeMethod
   private void setup() throws Exception {
-    backupManager =
-        spy(
-            new DockerEnvironmentBackupManager(
-                BACKUP_SCRIPT,
-                RESTORE_SCRIPT,
-                MAX_BACKUP_DURATION_SEC,
-                MAX_RESTORE_DURATION_SEC,
-                new File(BACKUPS_ROOT_PATH),
-                workspaceIdHashLocationFinder,
-                PROJECTS_PATH_IN_CONTAINER,
-                workspaceManager,
-                docker));
+    backupManager = createBackupManager(false);
 
     when(workspaceManager.getWorkspace(nullable(String.class))).thenReturn(workspace);
     when(workspace.getRuntime()).thenReturn(workspaceRuntime);
@@ -176,14 +184,6 @@ public class DockerEnvironmentBackupManagerTest {
                 new ServerImpl("ref", "proto", "127.0.0.1:" + PUBLISHED_SSH_PORT, null, null)));
     when(workspaceIdHashLocationFinder.calculateDirPath(any(File.class), any(String.class)))
         .thenReturn(new File(ABSOLUTE_PATH_TO_WORKSPACE_DIR));
-    doNothing()
-        .when(backupManager)
-        .executeCommand(
-            anyObject(),
-            anyInt(),
-            nullable(String.class),
-            nullable(String.class),
-            anySetOf(Integer.class));
     Exec getUserIdsExecMock = mock(Exec.class);
     when(getUserIdsExecMock.getId()).thenReturn("getUserIdsExecMockId");
     Exec getUserNameExecMock = mock(Exec.class);
@@ -260,6 +260,32 @@ public class DockerEnvironmentBackupManagerTest {
     assertArrayEquals(BACKUP_WORKSPACE_COMMAND, command);
   }
 
+  @Test
+  public void shouldReportWorkspaceAsChangedIfChangedFileIsFound() throws Exception {
+    mockChangedFilesSearch(PROJECTS_PATH_IN_CONTAINER + "/project/pom.xml");
+
+    assertTrue(
+        backupManager.isChangedSince(
+            WORKSPACE_ID, System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(6)));
+  }
+
+  @Test
+  public void shouldReportWorkspaceAsUnchangedIfNoChangedFileIsFound() throws Exception {
+    mockChangedFilesSearch();
+
+    assertFalse(
+        backupManager.isChangedSince(
+            WORKSPACE_ID, System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(6)));
+  }
+
+  @Test
+  public void shouldReportWorkspaceAsChangedIfDevMachineIsNotRunning() throws Exception {
+    when(devMachine.getStatus()).thenReturn(MachineStatus.STARTING);
+
+    assertTrue(backupManager.isChangedSince(WORKSPACE_ID, System.currentTimeMillis()));
+    verify(docker, never()).createExec(any(CreateExecParams.class));
+  }
+
   @Test
   public void shouldNotBackupWorkspaceAfterBackupWithCleanup() throws Exception {
     injectWorkspaceLock(WORKSPACE_ID);
@@ -410,6 +436,91 @@ public class DockerEnvironmentBackupManagerTest {
     assertArrayEquals(RESTORE_WORKSPACE_COMMAND, command);
   }
 
+  @Test
+  public void shouldRestoreHotSetOfFilesAndTheRestOfFilesInBackground() throws Exception {
+    backupManager = createBackupManager(true);
+
+    backupManager.restoreWorkspaceBackup(WORKSPACE_ID, CONTAINER_ID, NODE_HOST);
+
+    verify(backupManager, timeout(2000).times(2))
+        .executeCommand(
+            cmdCaptor.capture(),
+            eq(MAX_RESTORE_DURATION_SEC),
+            eq(NODE_HOST),
+            nullable(String.class),
+            anySetOf(Integer.class));
+    assertArrayEquals(
+        ObjectArrays.concat(RESTORE_WORKSPACE_COMMAND, new String[] {"hot", "100k"}, String.class),
+        cmdCaptor.getAllValues().get(0));
+    assertArrayEquals(
+        ObjectArrays.concat(RESTORE_WORKSPACE_COMMAND, new String[] {"rest", "100k"}, String.class),
+        cmdCaptor.getAllValues().get(1));
+  }
+
+  @Test
+  public void shouldNotBackupWorkspaceUntilAllFilesAreRestored() throws Exception {
+    backupManager = createBackupManager(true);
+    CountDownLatch releaseRestore = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              releaseRestore.await();
+              return null;
+            })
+        .when(backupManager)
+        .executeCommand(
+            argThat(DockerEnvironmentBackupManagerTest::isRestoreOfTheRestOfFiles),
+            anyInt(),
+            nullable(String.class),
+            nullable(String.class),
+            anySetOf(Integer.class));
+    backupManager.restoreWorkspaceBackup(WORKSPACE_ID, CONTAINER_ID, NODE_HOST);
+
+    assertFalse(backupManager.backupWorkspace(WORKSPACE_ID));
+
+    verify(backupManager, never())
+        .executeCommand(
+            eq(BACKUP_WORKSPACE_COMMAND),
+            anyInt(),
+            nullable(String.class),
+            nullable(String.class),
+            anySetOf(Integer.class));
+
+    releaseRestore.countDown();
+    backupManager.backupWorkspaceAndCleanup(WORKSPACE_ID, CONTAINER_ID, NODE_HOST);
+
+    verify(backupManager)
+        .executeCommand(
+            eq(BACKUP_WORKSPACE_WITH_CLEANUP_COMMAND),
+            anyInt(),
+            nullable(String.class),
+            nullable(String.class),
+            anySetOf(Integer.class));
+  }
+
+  @Test
+  public void shouldKeepFilesWhichAreNotRestoredInBackupIfRestoreFailed() throws Exception {
+    backupManager = createBackupManager(true);
+    doThrow(new IOException("Synchronization process failed"))
+        .when(backupManager)
+        .executeCommand(
+            argThat(DockerEnvironmentBackupManagerTest::isRestoreOfTheRestOfFiles),
+            anyInt(),
+            nullable(String.class),
+            nullable(String.class),
+            anySetOf(Integer.class));
+    backupManager.restoreWorkspaceBackup(WORKSPACE_ID, CONTAINER_ID, NODE_HOST);
+
+    backupManager.backupWorkspaceAndCleanup(WORKSPACE_ID, CONTAINER_ID, NODE_HOST);
+
+    verify(backupManager)
+        .executeCommand(
+            eq(BACKUP_WORKSPACE_WITH_CLEANUP_KEEPING_MISSING_FILES_COMMAND),
+            anyInt(),
+            nullable(String.class),
+            nullable(String.class),
+            anySetOf(Integer.class));
+  }
+
   @Test(timeOut = 2_000 * 60) // 2 minutes
   public void shouldIgnoreNewBackupRequestIfPreviousOneHasBeenJustStarted() throws Exception {
     // given
@@ -995,6 +1106,70 @@ public class DockerEnvironmentBackupManagerTest {
     }
   }
 
+  private void mockChangedFilesSearch(String... output) throws Exception {
+    Exec changedFilesExec = mock(Exec.class);
+    when(changedFilesExec.getId()).thenReturn("changedFilesExecId");
+    when(docker.createExec(
+            argThat(
+                (CreateExecParams params) ->
+                    params != null
+                        && params
+                            .getCmd()[2]
+                            .equals(
+                                String.format(
+                                    DockerEnvironmentBackupManager.CHANGED_FILES_COMMAND_FORMAT,
+                                    PROJECTS_PATH_IN_CONTAINER,
+                                    8)))))
+        .thenReturn(changedFilesExec);
+    doAnswer(
+            invocation -> {
+              @SuppressWarnings("unchecked")
+              MessageProcessor<LogMessage> messageProcessor =
+                  (MessageProcessor<LogMessage>) invocation.getArguments()[1];
+              for (String line : output) {
+                messageProcessor.process(new LogMessage(LogMessage.Type.STDOUT, line));
+              }
+              return null;
+            })
+        .when(docker)
+        .startExec(
+            argThat((StartExecParams params) -> "changedFilesExecId".equals(params.getExecId())),
+            Matchers.any());
+  }
+
+  private DockerEnvironmentBackupManager createBackupManager(boolean stagedRestore)
+      throws Exception {
+    DockerEnvironmentBackupManager backupManager =
+        spy(
+            new DockerEnvironmentBackupManager(
+                BACKUP_SCRIPT,
+                RESTORE_SCRIPT,
+                MAX_BACKUP_DURATION_SEC,
+                MAX_RESTORE_DURATION_SEC,
+                stagedRestore,
+                "100k",
+                new File(BACKUPS_ROOT_PATH),
+                workspaceIdHashLocationFinder,
+                PROJECTS_PATH_IN_CONTAINER,
+                workspaceManager,
+                docker));
+    doNothing()
+        .when(backupManager)
+        .executeCommand(
+            anyObject(),
+            anyInt(),
+            nullable(String.class),
+            nullable(String.class),
+            anySetOf(Integer.class));
+    return backupManager;
+  }
+
+  private static boolean isRestoreOfTheRestOfFiles(String[] command) {
+    return command != null
+        && command.length > 1
+        && DockerEnvironmentBackupManager.RESTORE_MODE_REST.equals(command[command.length - 2]);
+  }
+
   /**
    * Adds lock for specified workspace into concurrent hash map of {@link
    * DockerEnvironmentBackupManager} class It allows emulate restore of workspace without invoking
@@ -11,6 +11,8 @@
 package com.codenvy.machine.backup;
 
 import static java.lang.Thread.sleep;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.after;
 import static org.mockito.Mockito.doAnswer;
@@ -22,12 +24,21 @@ import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.che.api.core.ServerException;
 import org.eclipse.che.api.core.model.workspace.WorkspaceStatus;
+import org.eclipse.che.api.machine.server.model.impl.MachineImpl;
+import org.eclipse.che.api.machine.server.spi.Instance;
+import org.eclipse.che.api.machine.server.spi.InstanceNode;
 import org.eclipse.che.api.workspace.server.WorkspaceManager;
 import org.eclipse.che.api.workspace.server.WorkspaceRuntimes;
 import org.eclipse.che.api.workspace.server.model.impl.EnvironmentImpl;
@@ -50,6 +61,8 @@ public class WorkspaceFsBackupSchedulerTest {
   private static final String ACTIVE_ENV = "testActiveEnv";
   private static final String ENV_TYPE = "testEnvType";
   private static final long BACKUP_TIMEOUT = 1; // 1 second
+  private static final int MAX_BACKUPS = 20;
+  private static final int MAX_BACKUPS_PER_NODE = 2;
 
   @Mock private WorkspaceRuntimes workspaceRuntimes;
   @Mock private WorkspaceManager workspaceManager;
@@ -67,6 +80,8 @@ public class WorkspaceFsBackupSchedulerTest {
                 Collections.singletonMap(ENV_TYPE, backupManager),
                 workspaceRuntimes,
                 BACKUP_TIMEOUT,
+                MAX_BACKUPS,
+                MAX_BACKUPS_PER_NODE,
                 workspaceManager));
 
     EnvironmentImpl environment = new EnvironmentImpl();
@@ -81,6 +96,8 @@ public class WorkspaceFsBackupSchedulerTest {
     addWorkspace(WORKSPACE_ID_1);
     addWorkspace(WORKSPACE_ID_2);
     when(workspaceRuntimes.getRuntimesIds()).thenReturn(ids);
+    when(backupManager.isChangedSince(anyString(), anyLong())).thenReturn(true);
+    when(backupManager.backupWorkspace(anyString())).thenReturn(true);
   }
 
   private WorkspaceImpl addWorkspace(String wsId) throws Exception {
@@ -211,6 +228,8 @@ public class WorkspaceFsBackupSchedulerTest {
                 Collections.singletonMap(ENV_TYPE, backupManager),
                 workspaceRuntimes,
                 0,
+                MAX_BACKUPS,
+                MAX_BACKUPS_PER_NODE,
                 workspaceManager));
 
     scheduler.scheduleBackup();
@@ -239,11 +258,13 @@ public class WorkspaceFsBackupSchedulerTest {
                 Collections.singletonMap(ENV_TYPE, backupManager),
                 workspaceRuntimes,
                 0,
+                MAX_BACKUPS,
+                MAX_BACKUPS_PER_NODE,
                 workspaceManager));
     doAnswer(
             invocation -> {
               sleep(FAKE_BACKUP_TIME_MS);
-              return null;
+              return true;
             })
         .when(backupManager)
         .backupWorkspace("ws3");
@@ -258,4 +279,164 @@ public class WorkspaceFsBackupSchedulerTest {
     verify(workspaceRuntimes, times(2)).getRuntimesIds();
     verify(backupManager, timeout(2000)).backupWorkspace(eq("ws3"));
   }
+
+  @Test
+  public void shouldNotBackupWorkspaceIfItsFilesAreNotChanged() throws Exception {
+    // given
+    ids.clear();
+    addWorkspace("ws3");
+    final long firstBackupTime = System.currentTimeMillis();
+    final AtomicLong now = new AtomicLong(firstBackupTime);
+    scheduler =
+        spy(
+            new WorkspaceFsBackupScheduler(
+                Collections.singletonMap(ENV_TYPE, backupManager),
+                workspaceRuntimes,
+                BACKUP_TIMEOUT,
+                MAX_BACKUPS,
+                MAX_BACKUPS_PER_NODE,
+                workspaceManager));
+    doAnswer(invocation -> now.get()).when(scheduler).currentTimeMillis();
+    scheduler.scheduleBackup();
+    verify(backupManager, timeout(1000)).backupWorkspace(eq("ws3"));
+    awaitRunningBackupsFinish();
+    when(backupManager.isChangedSince(eq("ws3"), anyLong())).thenReturn(false);
+    now.addAndGet(TimeUnit.SECONDS.toMillis(BACKUP_TIMEOUT) + 1);
+
+    // when
+    scheduler.scheduleBackup();
+
+    // then
+    verify(backupManager, timeout(2000)).isChangedSince("ws3", firstBackupTime);
+    verify(backupManager, after(500)).backupWorkspace(eq("ws3"));
+    assertEquals(scheduler.getPerformedBackups(), 1);
+    assertEquals(scheduler.getSkippedBackups(), 1);
+  }
+
+  @Test
+  public void shouldRetryBackupWhichWasSkippedByBackupManager() throws Exception {
+    // given
+    ids.clear();
+    addWorkspace("ws3");
+    final long now = System.currentTimeMillis();
+    scheduler =
+        spy(
+            new WorkspaceFsBackupScheduler(
+                Collections.singletonMap(ENV_TYPE, backupManager),
+                workspaceRuntimes,
+                BACKUP_TIMEOUT,
+                MAX_BACKUPS,
+                MAX_BACKUPS_PER_NODE,
+                workspaceManager));
+    doAnswer(invocation -> now).when(scheduler).currentTimeMillis();
+    when(backupManager.backupWorkspace("ws3")).thenReturn(false).thenReturn(true);
+    scheduler.scheduleBackup();
+    verify(backupManager, timeout(1000)).backupWorkspace(eq("ws3"));
+    awaitRunningBackupsFinish();
+
+    // when
+    scheduler.scheduleBackup();
+
+    // then
+    verify(backupManager, timeout(2000).times(2)).backupWorkspace(eq("ws3"));
+    awaitRunningBackupsFinish();
+    assertEquals(scheduler.getPerformedBackups(), 1);
+  }
+
+  @Test
+  public void shouldNotRunMoreBackupsThanLimit() throws Exception {
+    // given
+    addWorkspace("ws3");
+    addWorkspace("ws4");
+    addWorkspace("ws5");
+    scheduler =
+        new WorkspaceFsBackupScheduler(
+            Collections.singletonMap(ENV_TYPE, backupManager),
+            workspaceRuntimes,
+            BACKUP_TIMEOUT,
+            2,
+            2,
+            workspaceManager);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger maxRunning = trackRunningBackups(release);
+
+    // when
+    scheduler.scheduleBackup();
+
+    // then
+    verify(backupManager, timeout(2000).times(2)).backupWorkspace(anyString());
+    assertEquals(scheduler.getRunningBackups(), 2);
+    assertEquals(scheduler.getQueueSize(), 3);
+    release.countDown();
+    for (String id : ids) {
+      verify(backupManager, timeout(2000)).backupWorkspace(id);
+    }
+    assertTrue(maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void shouldNotRunMoreBackupsOnNodeThanLimit() throws Exception {
+    // given
+    ids.clear();
+    addWorkspace("ws1", "node1");
+    addWorkspace("ws2", "node1");
+    addWorkspace("ws3", "node2");
+    scheduler =
+        new WorkspaceFsBackupScheduler(
+            Collections.singletonMap(ENV_TYPE, backupManager),
+            workspaceRuntimes,
+            BACKUP_TIMEOUT,
+            10,
+            1,
+            workspaceManager);
+    CountDownLatch release = new CountDownLatch(1);
+    trackRunningBackups(release);
+
+    // when
+    scheduler.scheduleBackup();
+
+    // then
+    verify(backupManager, timeout(2000)).backupWorkspace("ws3");
+    verify(backupManager, timeout(2000).times(2)).backupWorkspace(anyString());
+    assertEquals(scheduler.getRunningBackups(), 2);
+    assertEquals(scheduler.getQueueSize(), 1);
+    release.countDown();
+    verify(backupManager, timeout(2000)).backupWorkspace("ws1");
+    verify(backupManager, timeout(2000)).backupWorkspace("ws2");
+  }
+
+  private void awaitRunningBackupsFinish() throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 1000;
+    while (scheduler.getRunningBackups() != 0 && System.currentTimeMillis() < deadline) {
+      sleep(10);
+    }
+    assertEquals(scheduler.getRunningBackups(), 0);
+  }
+
+  private AtomicInteger trackRunningBackups(CountDownLatch release) throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    doAnswer(
+            invocation -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              release.await(5, TimeUnit.SECONDS);
+              running.decrementAndGet();
+              return true;
+            })
+        .when(backupManager)
+        .backupWorkspace(anyString());
+    return maxRunning;
+  }
+
+  private void addWorkspace(String wsId, String node) throws Exception {
+    WorkspaceRuntimeImpl runtime = addWorkspace(wsId).getRuntime();
+    MachineImpl devMachine = mock(MachineImpl.class);
+    Instance instance = mock(Instance.class);
+    InstanceNode instanceNode = mock(InstanceNode.class);
+    when(runtime.getDevMachine()).thenReturn(devMachine);
+    when(devMachine.getId()).thenReturn(wsId + "-machine");
+    when(workspaceManager.getMachineInstance(wsId, wsId + "-machine")).thenReturn(instance);
+    when(instance.getNode()).thenReturn(instanceNode);
+    when(instanceNode.getHost()).thenReturn(node);
+  }
 }
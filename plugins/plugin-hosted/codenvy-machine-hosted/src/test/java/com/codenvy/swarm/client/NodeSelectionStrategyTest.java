@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.swarm.client;
+
+import static java.util.Arrays.asList;
+import static org.eclipse.che.commons.lang.Size.parseSize;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.codenvy.swarm.client.model.DockerNode;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.che.plugin.docker.client.json.SystemInfo;
+import org.mockito.Mock;
+import org.mockito.testng.MockitoTestNGListener;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+/** Tests for swarm node selection strategies and nodes info parsing. */
+@Listeners(MockitoTestNGListener.class)
+public class NodeSelectionStrategyTest {
+
+  private static final long GIB = parseSize("1 GiB");
+
+  @Mock private SystemInfo systemInfo;
+
+  @Test
+  public void shouldParseResourcesOfNodes() throws Exception {
+    when(systemInfo.getDriverStatus())
+        .thenReturn(
+            new String[][] {
+              {"Role", "primary"},
+              {"Nodes", "2"},
+              {" swarm1.codenvy.com", "192.168.1.1:2375"},
+              {"  └ Containers", "14"},
+              {"  └ Reserved CPUs", "1 / 2"},
+              {"  └ Reserved Memory", "1 GiB / 4 GiB"},
+              {" swarm2.codenvy.com", "192.168.1.2:2375"},
+              {"  └ Containers", "9"},
+              {"  └ Reserved CPUs", "0 / 4"},
+              {"  └ Reserved Memory", "0 B / 8 GiB"}
+            });
+
+    List<DockerNode> nodes = SwarmDockerConnector.parseNodes(systemInfo, 4);
+
+    assertEquals(nodes.size(), 2);
+    assertNode(nodes.get(0), "192.168.1.1:2375", 14, 1, 2, GIB, 4 * GIB);
+    assertNode(nodes.get(1), "192.168.1.2:2375", 9, 0, 4, 0, 8 * GIB);
+  }
+
+  @Test
+  public void shouldSelectNodeWithLeastReservedPartOfMemory() throws Exception {
+    DockerNode loaded = node("loaded", 2, 3 * GIB, 4 * GIB);
+    DockerNode big = node("big", 5, 4 * GIB, 16 * GIB);
+    DockerNode idle = node("idle", 0, 3 * GIB, 8 * GIB);
+
+    DockerNode selected =
+        new LeastReservedMemoryNodeSelectionStrategy().select(asList(loaded, big, idle));
+
+    assertEquals(selected, big);
+  }
+
+  @Test
+  public void shouldSelectNodeWithLessContainersIfReservedPartOfMemoryIsTheSame()
+      throws Exception {
+    DockerNode first = node("first", 3, GIB, 4 * GIB);
+    DockerNode second = node("second", 1, GIB, 4 * GIB);
+
+    DockerNode selected =
+        new LeastReservedMemoryNodeSelectionStrategy().select(asList(first, second));
+
+    assertEquals(selected, second);
+  }
+
+  @Test
+  public void shouldSelectLessLoadedOfTwoNodes() throws Exception {
+    DockerNode loaded = node("loaded", 2, 3 * GIB, 4 * GIB);
+    DockerNode idle = node("idle", 0, 0, 4 * GIB);
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(
+          new PowerOfTwoChoicesNodeSelectionStrategy().select(asList(loaded, idle)), idle);
+    }
+  }
+
+  /** Replays starts of workspaces of different size and checks balance of nodes memory. */
+  @Test
+  public void shouldKeepNodesBalancedWhenStartsAreReplayed() throws Exception {
+    NodeSelectionStrategy strategy = new LeastReservedMemoryNodeSelectionStrategy();
+    List<DockerNode> nodes = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      nodes.add(node("node" + i, 0, 0, 64 * GIB));
+    }
+    long[] trace = {2 * GIB, GIB, 3 * GIB, 2 * GIB, GIB};
+
+    for (int start = 0; start < 100; start++) {
+      DockerNode selected = strategy.select(nodes);
+      nodes.set(
+          nodes.indexOf(selected),
+          node(
+              selected.getHostname(),
+              selected.getContainers() + 1,
+              selected.getReservedMemory() + trace[start % trace.length],
+              selected.getTotalMemory()));
+    }
+
+    long min = nodes.stream().mapToLong(DockerNode::getReservedMemory).min().getAsLong();
+    long max = nodes.stream().mapToLong(DockerNode::getReservedMemory).max().getAsLong();
+    assertTrue(max - min <= 3 * GIB, "Nodes are unbalanced: " + nodes);
+  }
+
+  private static DockerNode node(
+      String hostname, int containers, long reservedMemory, long totalMemory) {
+    return new DockerNode(
+        hostname, hostname + ":2375", containers, 0, 0, reservedMemory, totalMemory);
+  }
+
+  private static void assertNode(
+      DockerNode node,
+      String addr,
+      int containers,
+      int reservedCpus,
+      int totalCpus,
+      long reservedMemory,
+      long totalMemory) {
+    assertEquals(node.getAddr(), addr);
+    assertEquals(node.getContainers(), containers);
+    assertEquals(node.getReservedCpus(), reservedCpus);
+    assertEquals(node.getTotalCpus(), totalCpus);
+    assertEquals(node.getReservedMemory(), reservedMemory);
+    assertEquals(node.getTotalMemory(), totalMemory);
+  }
+}
@@ -11,30 +11,42 @@
 package com.codenvy.plugin.jenkins.webhooks;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
 import static javax.ws.rs.HttpMethod.GET;
 import static javax.ws.rs.HttpMethod.POST;
 import static javax.ws.rs.core.MediaType.APPLICATION_XML;
-import static javax.xml.transform.TransformerFactory.newInstance;
 import static org.eclipse.che.commons.lang.IoUtil.readAndCloseQuietly;
 
+import com.codenvy.plugin.jenkins.webhooks.JenkinsJobConfigCache.JobConfig;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import javax.ws.rs.core.HttpHeaders;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import org.eclipse.che.api.core.ServerException;
@@ -43,6 +55,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
@@ -64,20 +77,35 @@ public class JenkinsConnector {
   private static final String FACTORY_LINK_DISPLAYED_MESSAGE =
       "factory link %s already displayed in description of Jenkins job %s";
 
+  private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
+  private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+  private static final XMLInputFactory XML_INPUT_FACTORY;
+
+  static {
+    DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+    DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+    XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+  }
+
   @VisibleForTesting String url;
 
   private final String jobName;
   private final ConfigurationProperties configurationProperties;
+  private final JenkinsJobConfigCache configCache;
 
   @Inject
   public JenkinsConnector(
       @Assisted("url") String url,
       @Assisted("jobName") String jobName,
-      ConfigurationProperties configurationProperties)
+      ConfigurationProperties configurationProperties,
+      JenkinsJobConfigCache configCache)
       throws ServerException {
     this.url = url;
     this.jobName = jobName;
     this.configurationProperties = configurationProperties;
+    this.configCache = configCache;
   }
 
   /**
@@ -105,7 +133,11 @@ public class JenkinsConnector {
    * @throws ServerException if any other error occurs.
    */
   public void addHeadFactoryLink(String factoryUrl) throws IOException, ServerException {
-    Document configDocument = xmlToDocument(getCurrentJenkinsJobConfiguration());
+    String configXml = getCurrentJenkinsJobConfiguration();
+    if (isLinkDisplayed(configXml, factoryUrl)) {
+      return;
+    }
+    Document configDocument = xmlToDocument(configXml);
     Node descriptionNode =
         configDocument.getDocumentElement().getElementsByTagName("description").item(0);
     String content = descriptionNode.getTextContent();
@@ -127,7 +159,11 @@ public class JenkinsConnector {
    * @throws ServerException if any other error occurs.
    */
   public void addFailedBuildFactoryLink(String factoryUrl) throws IOException, ServerException {
-    Document configDocument = xmlToDocument(getCurrentJenkinsJobConfiguration());
+    String configXml = getCurrentJenkinsJobConfiguration();
+    if (isLinkDisplayed(configXml, factoryUrl)) {
+      return;
+    }
+    Document configDocument = xmlToDocument(configXml);
     Node descriptionNode =
         configDocument.getDocumentElement().getElementsByTagName("description").item(0);
     String content = descriptionNode.getTextContent();
@@ -154,10 +190,17 @@ public class JenkinsConnector {
    */
   public String getCommitId(int buildId) throws IOException, ServerException {
     String requestUrl = url + "/job/" + jobName + "/" + buildId + "/api/json";
-    String request = doRequest(GET, requestUrl, APPLICATION_XML, null);
+    String request = doRequest(GET, requestUrl, APPLICATION_XML, null).body;
     // It is not possible to use Gson parser here because the given JSON contains objects in
-    // camel-case and upper-case at he same time.
-    return request.substring(request.indexOf("SHA1") + 7).substring(0, 40);
+    // camel-case and upper-case at he same time, so the value is read from the stream of tokens.
+    try (JsonReader reader = new JsonReader(new StringReader(request))) {
+      String commitId = findStringValue(reader, "SHA1");
+      if (commitId == null) {
+        throw new ServerException(
+            String.format("No commit id found for build %s of Jenkins job %s", buildId, jobName));
+      }
+      return commitId;
+    }
   }
 
   /** Returns related factory Id, configured for current connector by connector properties. */
@@ -196,15 +239,69 @@ public class JenkinsConnector {
         .findAny();
   }
 
+  /**
+   * Returns job configuration, cached configuration is returned if Jenkins responds that it was
+   * not modified.
+   */
   private String getCurrentJenkinsJobConfiguration() throws IOException, ServerException {
     String requestUrl = url + "/job/" + jobName + "/config.xml";
-    return doRequest(GET, requestUrl, APPLICATION_XML, null);
+    JobConfig cached = configCache.get(requestUrl);
+    Map<String, String> headers = new HashMap<>();
+    if (cached != null) {
+      if (cached.etag != null) {
+        headers.put(HttpHeaders.IF_NONE_MATCH, cached.etag);
+      }
+      if (cached.lastModified != null) {
+        headers.put(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+      }
+    }
+    JenkinsResponse response = doRequest(GET, requestUrl, APPLICATION_XML, null, headers);
+    if (response.code == HTTP_NOT_MODIFIED && cached != null) {
+      return cached.xml;
+    }
+    configCache.put(
+        requestUrl,
+        new JobConfig(
+            response.body,
+            response.headers.get(HttpHeaders.ETAG),
+            response.headers.get(HttpHeaders.LAST_MODIFIED)));
+    return response.body;
+  }
+
+  /** Checks whether description of the job contains given link without parsing whole document. */
+  private boolean isLinkDisplayed(String configXml, String factoryUrl) throws ServerException {
+    String description = null;
+    try {
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(configXml));
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() == XMLStreamConstants.START_ELEMENT
+              && "description".equals(reader.getLocalName())) {
+            description = reader.getElementText();
+            break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new ServerException(e.getMessage());
+    }
+    if (description != null && description.contains(factoryUrl)) {
+      LOG.debug(String.format(FACTORY_LINK_DISPLAYED_MESSAGE, factoryUrl, jobName));
+      return true;
+    }
+    return false;
   }
 
   private void updateJenkinsJobDescription(String factoryUrl, Document configDocument)
       throws IOException, ServerException {
     String requestUrl = url + "/job/" + jobName + "/config.xml";
-    doRequest(POST, requestUrl, APPLICATION_XML, documentToXml(configDocument));
+    try {
+      doRequest(POST, requestUrl, APPLICATION_XML, documentToXml(configDocument));
+    } finally {
+      configCache.invalidate(requestUrl);
+    }
     LOG.debug(
         "factory link {} successfully added on description of Jenkins job ", factoryUrl, jobName);
   }
@@ -212,9 +309,11 @@ public class JenkinsConnector {
   private String documentToXml(Document configDocument) throws ServerException {
     try {
       StringWriter writer = new StringWriter();
-      newInstance()
-          .newTransformer()
-          .transform(new DOMSource(configDocument), new StreamResult(writer));
+      Transformer transformer;
+      synchronized (TRANSFORMER_FACTORY) {
+        transformer = TRANSFORMER_FACTORY.newTransformer();
+      }
+      transformer.transform(new DOMSource(configDocument), new StreamResult(writer));
       return writer.toString();
     } catch (TransformerException e) {
       throw new ServerException(e.getMessage());
@@ -223,18 +322,34 @@ public class JenkinsConnector {
 
   private Document xmlToDocument(String jobConfigXml) throws ServerException {
     try {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      factory.setNamespaceAware(true);
-      DocumentBuilder builder = factory.newDocumentBuilder();
-      return builder.parse(new ByteArrayInputStream(jobConfigXml.getBytes()));
+      DocumentBuilder builder;
+      synchronized (DOCUMENT_BUILDER_FACTORY) {
+        builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+      }
+      return builder.parse(new InputSource(new StringReader(jobConfigXml)));
     } catch (ParserConfigurationException | SAXException | IOException e) {
       throw new ServerException(e.getMessage());
     }
   }
 
-  private String doRequest(String requestMethod, String requestUrl, String contentType, String data)
+  private JenkinsResponse doRequest(
+      String requestMethod, String requestUrl, String contentType, String data)
+      throws IOException, ServerException {
+    return doRequest(requestMethod, requestUrl, contentType, data, emptyMap());
+  }
+
+  /**
+   * Performs request to Jenkins. Connection is not closed after successful request, so it is
+   * reused for the next requests to the same Jenkins by keep-alive connections cache.
+   */
+  private JenkinsResponse doRequest(
+      String requestMethod,
+      String requestUrl,
+      String contentType,
+      String data,
+      Map<String, String> headers)
       throws IOException, ServerException {
-    URL url = new URL(requestUrl + "/job/" + jobName + "/config.xml");
+    URL url = new URL(requestUrl);
     HttpURLConnection httpConnection = (HttpURLConnection) url.openConnection();
     try {
       String basicAuth =
@@ -242,25 +357,80 @@ public class JenkinsConnector {
       httpConnection.setRequestProperty("Authorization", basicAuth);
       httpConnection.setRequestMethod(requestMethod);
       httpConnection.addRequestProperty(HttpHeaders.CONTENT_TYPE, contentType);
-      httpConnection.setDoOutput(true);
+      headers.forEach(httpConnection::addRequestProperty);
 
       if (!isNullOrEmpty(data)) {
+        httpConnection.setDoOutput(true);
         try (OutputStream outputStream = httpConnection.getOutputStream()) {
           outputStream.write(data.getBytes());
         }
       }
       final int responseCode = httpConnection.getResponseCode();
-      InputStream inputStream = httpConnection.getInputStream();
+      if (responseCode == HTTP_NOT_MODIFIED) {
+        return new JenkinsResponse(responseCode, null, emptyMap());
+      }
       if ((responseCode / 100) != 2) {
         InputStream errorStream = httpConnection.getErrorStream();
         throw new ServerException(
-            readAndCloseQuietly(errorStream != null ? errorStream : inputStream));
+            errorStream != null
+                ? readAndCloseQuietly(errorStream)
+                : "Jenkins responded with " + responseCode);
       }
-      return readAndCloseQuietly(inputStream);
-    } finally {
-      if (httpConnection != null) {
-        httpConnection.disconnect();
+      Map<String, String> responseHeaders = new HashMap<>();
+      for (String header : asList(HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED)) {
+        String value = httpConnection.getHeaderField(header);
+        if (value != null) {
+          responseHeaders.put(header, value);
+        }
       }
+      return new JenkinsResponse(
+          responseCode, readAndCloseQuietly(httpConnection.getInputStream()), responseHeaders);
+    } catch (IOException e) {
+      // connection is in unknown state, it must not get back to the keep-alive cache
+      httpConnection.disconnect();
+      throw e;
+    }
+  }
+
+  /** Returns the value of the first string property with given name found in the JSON stream. */
+  @VisibleForTesting
+  static String findStringValue(JsonReader reader, String name) throws IOException {
+    JsonToken token;
+    while ((token = reader.peek()) != JsonToken.END_DOCUMENT) {
+      switch (token) {
+        case BEGIN_OBJECT:
+          reader.beginObject();
+          break;
+        case END_OBJECT:
+          reader.endObject();
+          break;
+        case BEGIN_ARRAY:
+          reader.beginArray();
+          break;
+        case END_ARRAY:
+          reader.endArray();
+          break;
+        case NAME:
+          if (name.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+            return reader.nextString();
+          }
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    return null;
+  }
+
+  private static class JenkinsResponse {
+    final int code;
+    final String body;
+    final Map<String, String> headers;
+
+    JenkinsResponse(int code, String body, Map<String, String> headers) {
+      this.code = code;
+      this.body = body;
+      this.headers = headers;
     }
   }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.plugin.jenkins.webhooks;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import javax.inject.Singleton;
+
+/**
+ * Cache of Jenkins jobs configurations shared by all {@link JenkinsConnector}s.
+ *
+ * <p>Configuration is stored together with its validators, {@code ETag} and {@code Last-Modified}
+ * headers, so it is downloaded again only when Jenkins reports that it was changed.
+ */
+@Singleton
+public class JenkinsJobConfigCache {
+
+  private static final long MAX_SIZE = 500;
+
+  private final Cache<String, JobConfig> cache =
+      CacheBuilder.newBuilder().maximumSize(MAX_SIZE).build();
+
+  /** Returns cached configuration of the job with given config.xml url or null. */
+  JobConfig get(String configUrl) {
+    return cache.getIfPresent(configUrl);
+  }
+
+  /** Caches configuration if it has validators, otherwise removes outdated cached one. */
+  void put(String configUrl, JobConfig config) {
+    if (config.etag == null && config.lastModified == null) {
+      cache.invalidate(configUrl);
+    } else {
+      cache.put(configUrl, config);
+    }
+  }
+
+  /** Removes cached configuration of the job with given config.xml url. */
+  void invalidate(String configUrl) {
+    cache.invalidate(configUrl);
+  }
+
+  /** Jenkins job configuration with the values of its validators. */
+  static class JobConfig {
+    final String xml;
+    final String etag;
+    final String lastModified;
+
+    JobConfig(String xml, String etag, String lastModified) {
+      this.xml = xml;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+  }
+}
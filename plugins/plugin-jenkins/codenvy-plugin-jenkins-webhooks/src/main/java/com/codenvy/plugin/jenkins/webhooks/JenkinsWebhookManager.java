@@ -10,6 +10,7 @@
  */
 package com.codenvy.plugin.jenkins.webhooks;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 
 import com.codenvy.plugin.jenkins.webhooks.shared.JenkinsEventDto;
@@ -20,6 +21,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Singleton;
 import org.eclipse.che.api.core.ConflictException;
 import org.eclipse.che.api.core.NotFoundException;
 import org.eclipse.che.api.core.ServerException;
@@ -34,8 +38,14 @@ import org.slf4j.LoggerFactory;
 /**
  * Facade for Jenkins webhooks related operations.
  *
+ * <p>Failed build factories are looked up in the index of integration user factories, which is
+ * built on the first failed build event and is kept up to date with factories created by this
+ * manager. Factories missing in the index, e.g. created by another server, are looked up by name in
+ * the database before a new one is created.
+ *
  * @author Igor Vinokur
  */
+@Singleton
 public class JenkinsWebhookManager {
 
   private static final Logger LOG = LoggerFactory.getLogger(JenkinsWebhookManager.class);
@@ -46,6 +56,12 @@ public class JenkinsWebhookManager {
   private final String baseUrl;
   private final String username;
 
+  /** Ids of integration user factories by repository url and commit id of their projects. */
+  private final ConcurrentMap<Pair<String, String>, String> factoriesIndex =
+      new ConcurrentHashMap<>();
+
+  private volatile boolean indexed;
+
   @Inject
   public JenkinsWebhookManager(
       FactoryManager factoryManager,
@@ -78,11 +94,20 @@ public class JenkinsWebhookManager {
     try {
       String commitId = jenkinsConnector.getCommitId(jenkinsEvent.getBuildId());
       String repositoryUrl = jenkinsEvent.getRepositoryUrl();
-      Optional<Factory> existingFailedFactory = findExistingFailedFactory(repositoryUrl, commitId);
-      Factory failedFactory =
-          existingFailedFactory.isPresent()
-              ? existingFailedFactory.get()
-              : createFailedFactory(jenkinsConnector.getFactoryId(), repositoryUrl, commitId);
+      Optional<Factory> existingFailedFactory = findIndexedFailedFactory(repositoryUrl, commitId);
+      Factory failedFactory;
+      if (existingFailedFactory.isPresent()) {
+        failedFactory = existingFailedFactory.get();
+      } else {
+        FactoryImpl factory = (FactoryImpl) factoryManager.getById(jenkinsConnector.getFactoryId());
+        String failedFactoryName = factory.getName() + "_" + commitId;
+        existingFailedFactory =
+            findPersistedFailedFactory(failedFactoryName, repositoryUrl, commitId);
+        failedFactory =
+            existingFailedFactory.isPresent()
+                ? existingFailedFactory.get()
+                : createFailedFactory(factory, failedFactoryName, repositoryUrl, commitId);
+      }
       jenkinsConnector.addFailedBuildFactoryLink(
           baseUrl.substring(0, baseUrl.indexOf("/api")) + "/f?id=" + failedFactory.getId());
     } catch (IOException | NotFoundException | ConflictException e) {
@@ -91,21 +116,83 @@ public class JenkinsWebhookManager {
     }
   }
 
-  private Optional<Factory> findExistingFailedFactory(String repositoryUrl, String commitId)
+  private Optional<Factory> findIndexedFailedFactory(String repositoryUrl, String commitId)
+      throws NotFoundException, ServerException {
+    if (!indexed) {
+      indexUserFactories();
+    }
+    final Pair<String, String> key = Pair.of(repositoryUrl, commitId);
+    final String factoryId = factoriesIndex.get(key);
+    if (factoryId == null) {
+      return Optional.empty();
+    }
+    // factory may be modified or removed by its owner after it was indexed
+    try {
+      final Factory factory = factoryManager.getById(factoryId);
+      if (containsCommit(factory, repositoryUrl, commitId)) {
+        return Optional.of(factory);
+      }
+    } catch (NotFoundException e) {
+      LOG.debug("Indexed factory {} was removed", factoryId);
+    }
+    factoriesIndex.remove(key, factoryId);
+    return Optional.empty();
+  }
+
+  /** Looks for failed build factory which was not indexed, e.g. created by another server. */
+  private Optional<Factory> findPersistedFailedFactory(
+      String name, String repositoryUrl, String commitId)
       throws NotFoundException, ServerException {
-    return getUserFactories()
+    String userId = userManager.getByName(username).getId();
+    List<Factory> factories =
+        factoryManager.getByAttribute(
+            1, 0, asList(Pair.of("name", name), Pair.of("creator.userId", userId)));
+    if (factories.isEmpty() || !containsCommit(factories.get(0), repositoryUrl, commitId)) {
+      return Optional.empty();
+    }
+    index(factories.get(0));
+    return Optional.of(factories.get(0));
+  }
+
+  /** Builds index of integration user factories by repository and commit of their projects. */
+  private synchronized void indexUserFactories() throws NotFoundException, ServerException {
+    if (indexed) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    List<Factory> factories = getUserFactories();
+    factories.forEach(this::index);
+    indexed = true;
+    LOG.info(
+        "Indexed {} factories of user {} in {} ms",
+        factories.size(),
+        username,
+        System.currentTimeMillis() - start);
+  }
+
+  private void index(Factory factory) {
+    factory
+        .getWorkspace()
+        .getProjects()
+        .forEach(
+            project -> {
+              final String commitId = project.getSource().getParameters().get("commitId");
+              if (commitId != null) {
+                factoriesIndex.put(
+                    Pair.of(project.getSource().getLocation(), commitId), factory.getId());
+              }
+            });
+  }
+
+  private static boolean containsCommit(Factory factory, String repositoryUrl, String commitId) {
+    return factory
+        .getWorkspace()
+        .getProjects()
         .stream()
-        .filter(
-            f ->
-                f.getWorkspace()
-                    .getProjects()
-                    .stream()
-                    .anyMatch(
-                        project ->
-                            repositoryUrl.equals(project.getSource().getLocation())
-                                && commitId.equals(
-                                    project.getSource().getParameters().get("commitId"))))
-        .findAny();
+        .anyMatch(
+            project ->
+                repositoryUrl.equals(project.getSource().getLocation())
+                    && commitId.equals(project.getSource().getParameters().get("commitId")));
   }
 
   private List<Factory> getUserFactories() throws NotFoundException, ServerException {
@@ -123,10 +210,10 @@ public class JenkinsWebhookManager {
     return factories;
   }
 
-  private Factory createFailedFactory(String factoryId, String repositoryUrl, String commitId)
-      throws ConflictException, ServerException, NotFoundException {
-    FactoryImpl factory = (FactoryImpl) factoryManager.getById(factoryId);
-    factory.setName(factory.getName() + "_" + commitId);
+  private Factory createFailedFactory(
+      FactoryImpl factory, String name, String repositoryUrl, String commitId)
+      throws ConflictException, ServerException {
+    factory.setName(name);
     factory
         .getWorkspace()
         .getProjects()
@@ -138,6 +225,8 @@ public class JenkinsWebhookManager {
               parameters.remove("branch");
               parameters.put("commitId", commitId);
             });
-    return factoryManager.saveFactory(factory);
+    Factory saved = factoryManager.saveFactory(factory);
+    index(saved);
+    return saved;
   }
 }
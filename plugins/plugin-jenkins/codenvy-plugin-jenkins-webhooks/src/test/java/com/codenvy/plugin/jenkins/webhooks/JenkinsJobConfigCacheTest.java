@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.plugin.jenkins.webhooks;
+
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import com.codenvy.plugin.jenkins.webhooks.JenkinsJobConfigCache.JobConfig;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Tests for {@link JenkinsJobConfigCache}. */
+public class JenkinsJobConfigCacheTest {
+
+  private static final String CONFIG_URL = "http://jenkins.url/job/jobName/config.xml";
+
+  private JenkinsJobConfigCache configCache;
+
+  @BeforeMethod
+  public void setup() {
+    configCache = new JenkinsJobConfigCache();
+  }
+
+  @Test
+  public void shouldCacheConfigurationWithEtag() {
+    // given
+    JobConfig config = new JobConfig("<project/>", "\"1\"", null);
+
+    // when
+    configCache.put(CONFIG_URL, config);
+
+    // then
+    assertSame(configCache.get(CONFIG_URL), config);
+  }
+
+  @Test
+  public void shouldCacheConfigurationWithLastModifiedDate() {
+    // given
+    JobConfig config = new JobConfig("<project/>", null, "Wed, 21 Oct 2015 07:28:00 GMT");
+
+    // when
+    configCache.put(CONFIG_URL, config);
+
+    // then
+    assertSame(configCache.get(CONFIG_URL), config);
+  }
+
+  @Test
+  public void shouldRemoveCachedConfigurationWhenConfigurationWithoutValidatorsIsPut() {
+    // given
+    configCache.put(CONFIG_URL, new JobConfig("<project/>", "\"1\"", null));
+
+    // when
+    configCache.put(CONFIG_URL, new JobConfig("<project><description/></project>", null, null));
+
+    // then
+    assertNull(configCache.get(CONFIG_URL));
+  }
+
+  @Test
+  public void shouldRemoveInvalidatedConfiguration() {
+    // given
+    configCache.put(CONFIG_URL, new JobConfig("<project/>", "\"1\"", null));
+
+    // when
+    configCache.invalidate(CONFIG_URL);
+
+    // then
+    assertNull(configCache.get(CONFIG_URL));
+  }
+}
@@ -10,8 +10,10 @@
  */
 package com.codenvy.plugin.jenkins.webhooks;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.eclipse.che.dto.server.DtoFactory.newDto;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
@@ -19,6 +21,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
@@ -26,6 +29,7 @@ import static org.testng.Assert.assertNull;
 
 import com.codenvy.plugin.jenkins.webhooks.shared.JenkinsEventDto;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.eclipse.che.api.core.model.user.User;
 import org.eclipse.che.api.factory.server.FactoryManager;
@@ -34,6 +38,7 @@ import org.eclipse.che.api.user.server.UserManager;
 import org.eclipse.che.api.workspace.server.model.impl.ProjectConfigImpl;
 import org.eclipse.che.api.workspace.server.model.impl.SourceStorageImpl;
 import org.eclipse.che.api.workspace.server.model.impl.WorkspaceConfigImpl;
+import org.eclipse.che.commons.lang.Pair;
 import org.eclipse.che.commons.test.mockito.answer.SelfReturningAnswer;
 import org.eclipse.che.inject.ConfigurationProperties;
 import org.mockito.Mock;
@@ -141,4 +146,76 @@ public class JenkinsWebhookManagerTest {
     // then
     verify(factoryManager, never()).saveFactory(factory);
   }
+
+  @Test
+  public void shouldReadUserFactoriesOnlyOnce() throws Exception {
+    // given
+    parameters.put("commitId", "commitId");
+
+    // when
+    manager.handleFailedJobEvent(jenkinsEvent);
+    manager.handleFailedJobEvent(jenkinsEvent);
+
+    // then
+    verify(factoryManager, times(1)).getByAttribute(anyInt(), eq(0), any());
+    verify(factoryManager, never()).saveFactory(factory);
+  }
+
+  @Test
+  public void shouldCreateNewFactoryIfIndexedFactoryWasModified() throws Exception {
+    // given
+    parameters.put("commitId", "commitId");
+    manager.handleFailedJobEvent(jenkinsEvent);
+    parameters.put("commitId", "anotherCommitId");
+
+    // when
+    manager.handleFailedJobEvent(jenkinsEvent);
+
+    // then
+    verify(factoryManager).saveFactory(factory);
+    assertEquals(parameters.get("commitId"), "commitId");
+  }
+
+  @Test
+  public void shouldFindFactoryCreatedForPreviousFailedBuild() throws Exception {
+    // given
+    manager.handleFailedJobEvent(jenkinsEvent);
+
+    // when
+    manager.handleFailedJobEvent(jenkinsEvent);
+
+    // then
+    verify(factoryManager, times(1)).saveFactory(factory);
+    verify(jenkinsConnector, times(2)).addFailedBuildFactoryLink(eq("url/f?id=factoryId"));
+  }
+
+  @Test
+  public void shouldFindFailedBuildFactoryWhichWasNotIndexed() throws Exception {
+    // given
+    when(factory.getName()).thenReturn("name");
+    FactoryImpl failedFactory = mock(FactoryImpl.class);
+    WorkspaceConfigImpl workspace = mock(WorkspaceConfigImpl.class);
+    ProjectConfigImpl project = mock(ProjectConfigImpl.class);
+    SourceStorageImpl source = mock(SourceStorageImpl.class);
+    when(failedFactory.getId()).thenReturn("failedFactoryId");
+    when(failedFactory.getWorkspace()).thenReturn(workspace);
+    when(workspace.getProjects()).thenReturn(singletonList(project));
+    when(project.getSource()).thenReturn(source);
+    when(source.getLocation()).thenReturn("http://repository.git");
+    when(source.getParameters()).thenReturn(singletonMap("commitId", "commitId"));
+    List<Pair<String, String>> attributes =
+        asList(Pair.of("name", "name_commitId"), Pair.of("creator.userId", "userId"));
+    when(factoryManager.getByAttribute(anyInt(), eq(0), eq(attributes)))
+        .thenReturn(singletonList(failedFactory));
+    when(factoryManager.getById("failedFactoryId")).thenReturn(failedFactory);
+
+    // when
+    manager.handleFailedJobEvent(jenkinsEvent);
+    manager.handleFailedJobEvent(jenkinsEvent);
+
+    // then
+    verify(factoryManager, never()).saveFactory(any());
+    verify(factoryManager, times(1)).getByAttribute(anyInt(), eq(0), eq(attributes));
+    verify(jenkinsConnector, times(2)).addFailedBuildFactoryLink(eq("url/f?id=failedFactoryId"));
+  }
 }
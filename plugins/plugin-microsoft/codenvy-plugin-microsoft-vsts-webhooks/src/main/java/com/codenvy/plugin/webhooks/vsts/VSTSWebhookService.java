@@ -18,11 +18,13 @@ import static com.codenvy.plugin.webhooks.vsts.VSTSWebhookType.WORK_ITEM_CREATED
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
-import com.codenvy.plugin.webhooks.AuthConnection;
 import com.codenvy.plugin.webhooks.BaseWebhookService;
+import com.codenvy.plugin.webhooks.FactoryCache;
 import com.codenvy.plugin.webhooks.FactoryConnection;
 import com.codenvy.plugin.webhooks.FactoryType;
+import com.codenvy.plugin.webhooks.IntegrationTokenProvider;
 import com.codenvy.plugin.webhooks.UserConnection;
+import com.codenvy.plugin.webhooks.WebhookRegistry;
 import com.codenvy.plugin.webhooks.vsts.shared.GenericEvent;
 import com.codenvy.plugin.webhooks.vsts.shared.PullRequestUpdatedEvent;
 import com.codenvy.plugin.webhooks.vsts.shared.WorkItemCreationEvent;
@@ -41,7 +43,6 @@ import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import javax.inject.Inject;
-import javax.inject.Named;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
@@ -58,7 +59,6 @@ import org.eclipse.che.commons.env.EnvironmentContext;
 import org.eclipse.che.commons.lang.IoUtil;
 import org.eclipse.che.commons.lang.Pair;
 import org.eclipse.che.dto.server.DtoFactory;
-import org.eclipse.che.inject.ConfigurationProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,14 +75,13 @@ public class VSTSWebhookService extends BaseWebhookService {
 
   @Inject
   public VSTSWebhookService(
-      final AuthConnection authConnection,
       final FactoryConnection factoryConnection,
       final UserConnection userConnection,
       final VSTSConnection vstsConnection,
-      final ConfigurationProperties configurationProperties,
-      @Named("integration.factory.owner.username") String username,
-      @Named("integration.factory.owner.password") String password) {
-    super(authConnection, factoryConnection, configurationProperties, username, password);
+      final IntegrationTokenProvider tokenProvider,
+      final FactoryCache factoryCache,
+      final WebhookRegistry webhookRegistry) {
+    super(factoryConnection, tokenProvider, factoryCache, webhookRegistry);
 
     this.factoryConnection = factoryConnection;
     this.userConnection = userConnection;
@@ -166,7 +165,7 @@ public class VSTSWebhookService extends BaseWebhookService {
     }
 
     // Get current user id
-    final String userId = userConnection.getCurrentUser().getId();
+    final String userId = withTokenRenewal(userConnection::getCurrentUser).getId();
 
     // Get work item data
     final WorkItemCreationResource resource = workItemCreationEvent.getResource();
@@ -176,7 +175,8 @@ public class VSTSWebhookService extends BaseWebhookService {
     final String workItemUrl = resource.getLinks().getSelf().getHref();
 
     // Get parent factory for the project
-    final List<FactoryDto> parentFactories = factoryConnection.findFactory(projectName, userId);
+    final List<FactoryDto> parentFactories =
+        withTokenRenewal(() -> factoryConnection.findFactory(projectName, userId));
 
     if (parentFactories.isEmpty()) {
       LOG.error("No parent factory with name {} found", projectName);
@@ -187,10 +187,12 @@ public class VSTSWebhookService extends BaseWebhookService {
 
     // Create Develop & Review factories from parent factory
     final FactoryDto developFactory = createFactoryForWorkItem(parentFactory, DEVELOP, workItemId);
-    final FactoryDto storedDevelopFactory = factoryConnection.saveFactory(developFactory);
+    final FactoryDto storedDevelopFactory =
+        withTokenRenewal(() -> factoryConnection.saveFactory(developFactory));
     LOG.debug("storedDevelopFactory: {}", storedDevelopFactory);
     final FactoryDto reviewFactory = createFactoryForWorkItem(parentFactory, REVIEW, workItemId);
-    final FactoryDto storedReviewFactory = factoryConnection.saveFactory(reviewFactory);
+    final FactoryDto storedReviewFactory =
+        withTokenRenewal(() -> factoryConnection.saveFactory(reviewFactory));
     LOG.debug("storedReviewFactory: {}", storedReviewFactory);
 
     // Get VSTS data from work item URL
@@ -468,8 +470,9 @@ public class VSTSWebhookService extends BaseWebhookService {
    * @return the list of webhooks of given type contained in VSTS_WEBHOOKS_PROPERTIES_FILENAME
    *     properties file
    */
-  private static List getVSTSWebhooks(final VSTSWebhookType webhookType) throws ServerException {
-    Properties webhooksProperties = getProperties(VSTS_WEBHOOKS_PROPERTIES_FILENAME);
+  private List getVSTSWebhooks(final VSTSWebhookType webhookType) throws ServerException {
+    Properties webhooksProperties =
+        getWebhookRegistry().getFileProperties(VSTS_WEBHOOKS_PROPERTIES_FILENAME);
     Set<String> keySet = webhooksProperties.stringPropertyNames();
 
     if (webhookType == WORK_ITEM_CREATED_WEBHOOK) {
@@ -557,5 +560,6 @@ public class VSTSWebhookService extends BaseWebhookService {
     }
 
     storeProperty(pruWebhook.getId(), propertyValue, VSTS_WEBHOOKS_PROPERTIES_FILENAME);
+    getWebhookRegistry().invalidateFile(VSTS_WEBHOOKS_PROPERTIES_FILENAME);
   }
 }
@@ -86,13 +86,12 @@ public class TestVSTSWebhookService {
     // Prepare VSTSWebhookService
     fakeVSTSWebhookService =
         new VSTSWebhookService(
-            mockAuthConnection,
             mockFactoryConnection,
             mockUserConnection,
             mockVSTSConnection,
-            mock(ConfigurationProperties.class),
-            "username",
-            "password");
+            new IntegrationTokenProvider(mockAuthConnection, "username", "password", 3600),
+            new FactoryCache(mockFactoryConnection, 0, 1),
+            new WebhookRegistry(mock(ConfigurationProperties.class)));
   }
 
   @Test
@@ -23,22 +23,20 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.stream.Collectors;
-import org.eclipse.che.api.auth.shared.dto.Token;
 import org.eclipse.che.api.core.ForbiddenException;
 import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.api.core.UnauthorizedException;
 import org.eclipse.che.api.core.rest.Service;
 import org.eclipse.che.api.factory.shared.dto.FactoryDto;
 import org.eclipse.che.api.workspace.shared.dto.ProjectConfigDto;
 import org.eclipse.che.api.workspace.shared.dto.SourceStorageDto;
+import org.eclipse.che.commons.env.EnvironmentContext;
 import org.eclipse.che.commons.subject.Subject;
-import org.eclipse.che.inject.ConfigurationProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,32 +49,32 @@ public abstract class BaseWebhookService extends Service {
 
   private static final Logger LOG = LoggerFactory.getLogger(BaseWebhookService.class);
 
-  private static final String JENKINS_CONNECTOR_PREFIX_PATTERN = "env.CODENVY_JENKINS_CONNECTOR_.+";
   private static final String JENKINS_CONNECTOR_URL_SUFFIX = "_URL";
-  private static final String JENKINS_CONNECTOR_FACTORY_ID_SUFFIX = "_FACTORY_ID";
   private static final String JENKINS_CONNECTOR_JOB_NAME_SUFFIX = "_JOB_NAME";
 
   protected static final String FACTORY_URL_REL = "accept-named";
 
-  private final AuthConnection authConnection;
   private final FactoryConnection factoryConnection;
-  private final ConfigurationProperties configurationProperties;
-  private final String username;
-  private final String password;
 
   @Inject private JenkinsConnectorFactory jenkinsConnectorFactory;
 
+  private final IntegrationTokenProvider tokenProvider;
+  private final FactoryCache factoryCache;
+  private final WebhookRegistry webhookRegistry;
+
   public BaseWebhookService(
-      final AuthConnection authConnection,
       final FactoryConnection factoryConnection,
-      ConfigurationProperties configurationProperties,
-      String username,
-      String password) {
-    this.authConnection = authConnection;
+      IntegrationTokenProvider tokenProvider,
+      FactoryCache factoryCache,
+      WebhookRegistry webhookRegistry) {
     this.factoryConnection = factoryConnection;
-    this.configurationProperties = configurationProperties;
-    this.username = username;
-    this.password = password;
+    this.tokenProvider = tokenProvider;
+    this.factoryCache = factoryCache;
+    this.webhookRegistry = webhookRegistry;
+  }
+
+  protected WebhookRegistry getWebhookRegistry() {
+    return webhookRegistry;
   }
 
   /**
@@ -93,10 +91,8 @@ public abstract class BaseWebhookService extends Service {
       final String headBranch,
       final CloneUrlMatcher matcher)
       throws ServerException {
-    List<FactoryDto> factories = new ArrayList<>();
-    for (String factoryID : factoryIDs) {
-      factories.add(factoryConnection.getFactory(factoryID));
-    }
+    final List<FactoryDto> factories =
+        withTokenRenewal(() -> factoryCache.getFactories(factoryIDs));
 
     return factories
         .stream()
@@ -176,7 +172,9 @@ public abstract class BaseWebhookService extends Service {
   }
 
   protected void updateFactory(final FactoryDto factory) throws ServerException {
-    final FactoryDto persistedFactory = factoryConnection.updateFactory(factory);
+    final FactoryDto persistedFactory =
+        withTokenRenewal(() -> factoryConnection.updateFactory(factory));
+    factoryCache.invalidate(factory.getId());
 
     if (persistedFactory == null) {
       throw new ServerException(
@@ -211,22 +209,8 @@ public abstract class BaseWebhookService extends Service {
    * @return the list of all configured ci connectors
    */
   private Set<JenkinsConnector> getConnectors(String factoryId) throws ServerException {
-
-    Map<String, String> properties =
-        configurationProperties.getProperties(JENKINS_CONNECTOR_PREFIX_PATTERN);
-
-    Set<String> connectorProperties =
-        properties
-            .entrySet()
-            .stream()
-            .filter(entry -> entry.getValue().equals(factoryId))
-            .map(
-                entry ->
-                    entry
-                        .getKey()
-                        .substring(
-                            0, entry.getKey().lastIndexOf(JENKINS_CONNECTOR_FACTORY_ID_SUFFIX)))
-            .collect(Collectors.toSet());
+    Map<String, String> properties = webhookRegistry.getJenkinsConnectorsProperties();
+    Set<String> connectorProperties = webhookRegistry.getJenkinsConnectors(factoryId);
 
     if (connectorProperties.isEmpty()) {
       LOG.error("No connectors were registered for factory {}", factoryId);
@@ -255,6 +239,34 @@ public abstract class BaseWebhookService extends Service {
         properties.get(connector + JENKINS_CONNECTOR_JOB_NAME_SUFFIX));
   }
 
+  /**
+   * Performs given call to Codenvy API, if the call is rejected because token of current {@link
+   * TokenSubject} is not valid anymore the token is renewed and the call is repeated once.
+   *
+   * @param call the call to perform
+   * @return the result of the call
+   * @throws ServerException if the call failed
+   */
+  protected <T> T withTokenRenewal(ApiCall<T> call) throws ServerException {
+    try {
+      return call.call();
+    } catch (ServerException e) {
+      final Subject subject = EnvironmentContext.getCurrent().getSubject();
+      if (!(e.getCause() instanceof UnauthorizedException) || !(subject instanceof TokenSubject)) {
+        throw e;
+      }
+      LOG.debug("Token of integration user was rejected, renewing it");
+      ((TokenSubject) subject).renewToken();
+      return call.call();
+    }
+  }
+
+  /** Call to Codenvy API made on behalf of integration user */
+  @FunctionalInterface
+  protected interface ApiCall<T> {
+    T call() throws ServerException;
+  }
+
   /**
    * Get all properties contained in a given file
    *
@@ -306,10 +318,16 @@ public abstract class BaseWebhookService extends Service {
   /** A user that only provides a token based on configured credentials */
   protected class TokenSubject implements Subject {
 
-    private final Token token;
+    private volatile String token;
 
     public TokenSubject() throws ServerException {
-      token = authConnection.authenticateUser(username, password);
+      token = tokenProvider.getToken();
+    }
+
+    /** Replaces token rejected by Codenvy API with a new one */
+    public void renewToken() throws ServerException {
+      tokenProvider.invalidate(token);
+      token = tokenProvider.getToken();
     }
 
     @Override
@@ -330,7 +348,7 @@ public abstract class BaseWebhookService extends Service {
 
     @Override
     public String getToken() {
-      return token.getValue();
+      return token;
     }
 
     @Override
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.plugin.webhooks;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.api.factory.shared.dto.FactoryDto;
+import org.eclipse.che.commons.lang.concurrent.LoggingUncaughtExceptionHandler;
+import org.eclipse.che.commons.lang.concurrent.ThreadLocalPropagateContext;
+import org.eclipse.che.dto.server.DtoFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches factories configured for webhooks.
+ *
+ * <p>Factories which are not cached yet are fetched concurrently by a bounded pool of threads on
+ * behalf of the current subject. Fetched factories are kept for a short time, so a burst of events
+ * for the same repository costs a single round trip per factory. Callers get copies of cached
+ * factories and may modify them freely, updated factories must be {@link #invalidate(String)
+ * invalidated}.
+ */
+@Singleton
+public class FactoryCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FactoryCache.class);
+
+  private static final long MAX_SIZE = 1000;
+
+  private final FactoryConnection factoryConnection;
+  private final boolean cacheEnabled;
+  private final Cache<String, FactoryDto> cache;
+  private final ExecutorService executor;
+
+  @Inject
+  public FactoryCache(
+      FactoryConnection factoryConnection,
+      @Named("integration.factory.cache_ttl_seconds") long ttlSeconds,
+      @Named("integration.factory.fetch_threads") int threads) {
+    this(factoryConnection, ttlSeconds, threads, Ticker.systemTicker());
+  }
+
+  FactoryCache(FactoryConnection factoryConnection, long ttlSeconds, int threads, Ticker ticker) {
+    this.factoryConnection = factoryConnection;
+    this.cacheEnabled = ttlSeconds > 0;
+    this.cache =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(Math.max(ttlSeconds, 0), TimeUnit.SECONDS)
+            .maximumSize(MAX_SIZE)
+            .ticker(ticker)
+            .build();
+    this.executor =
+        threads > 1
+            ? Executors.newFixedThreadPool(
+                threads,
+                new ThreadFactoryBuilder()
+                    .setNameFormat("WebhookFactoryFetcher-%d")
+                    .setUncaughtExceptionHandler(LoggingUncaughtExceptionHandler.getInstance())
+                    .setDaemon(true)
+                    .build())
+            : null;
+  }
+
+  /**
+   * Get factories with given ids
+   *
+   * @param factoryIds the ids of factories to get
+   * @return copies of the factories in order of given ids, null for factories which were not
+   *     returned by the API
+   * @throws ServerException if any of the factories can't be fetched
+   */
+  public List<FactoryDto> getFactories(Set<String> factoryIds) throws ServerException {
+    final Map<String, FactoryDto> factories = new LinkedHashMap<>();
+    final Map<String, Future<FactoryDto>> pending = new LinkedHashMap<>();
+    for (String factoryId : factoryIds) {
+      final FactoryDto cached = cache.getIfPresent(factoryId);
+      factories.put(factoryId, cached != null ? DtoFactory.cloneDto(cached) : null);
+      if (cached == null && executor != null) {
+        pending.put(
+            factoryId,
+            executor.submit(
+                ThreadLocalPropagateContext.wrap(() -> factoryConnection.getFactory(factoryId))));
+      }
+    }
+
+    try {
+      for (Map.Entry<String, FactoryDto> entry : factories.entrySet()) {
+        if (entry.getValue() == null) {
+          final Future<FactoryDto> future = pending.get(entry.getKey());
+          final FactoryDto fetched =
+              future != null ? await(future) : factoryConnection.getFactory(entry.getKey());
+          if (fetched != null && cacheEnabled) {
+            cache.put(entry.getKey(), DtoFactory.cloneDto(fetched));
+          }
+          entry.setValue(fetched);
+        }
+      }
+    } finally {
+      // don't leave requests running if one of them failed
+      pending.values().forEach(future -> future.cancel(true));
+    }
+
+    return new ArrayList<>(factories.values());
+  }
+
+  /** Removes factory with given id from the cache */
+  public void invalidate(String factoryId) {
+    cache.invalidate(factoryId);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (executor == null) {
+      return;
+    }
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+          LOG.warn("Unable terminate webhook factory fetcher pool");
+        }
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static FactoryDto await(Future<FactoryDto> future) throws ServerException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServerException("Interrupted while fetching factories", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof ServerException) {
+        throw (ServerException) cause;
+      }
+      throw new ServerException(cause.getLocalizedMessage(), cause);
+    }
+  }
+}
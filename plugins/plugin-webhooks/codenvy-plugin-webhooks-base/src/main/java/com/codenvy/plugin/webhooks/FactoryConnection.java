@@ -67,7 +67,7 @@ public class FactoryConnection {
 
     } catch (IOException | ApiException e) {
       LOG.error(e.getLocalizedMessage(), e);
-      throw new ServerException(e.getLocalizedMessage());
+      throw new ServerException(e.getLocalizedMessage(), e);
     }
     return factory;
   }
@@ -101,7 +101,7 @@ public class FactoryConnection {
 
     } catch (IOException | ApiException e) {
       LOG.error(e.getLocalizedMessage(), e);
-      throw new ServerException(e.getLocalizedMessage());
+      throw new ServerException(e.getLocalizedMessage(), e);
     }
     return factories;
   }
@@ -131,7 +131,7 @@ public class FactoryConnection {
 
     } catch (IOException | ApiException e) {
       LOG.error(e.getLocalizedMessage(), e);
-      throw new ServerException(e.getLocalizedMessage());
+      throw new ServerException(e.getLocalizedMessage(), e);
     }
     return newFactory;
   }
@@ -154,7 +154,7 @@ public class FactoryConnection {
 
     } catch (IOException | ApiException e) {
       LOG.error(e.getLocalizedMessage(), e);
-      throw new ServerException(e.getLocalizedMessage());
+      throw new ServerException(e.getLocalizedMessage(), e);
     }
     return newFactory;
   }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.plugin.webhooks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.che.api.auth.shared.dto.Token;
+import org.eclipse.che.api.core.ServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides auth token of the integration user configured with {@code
+ * integration.factory.owner.username} and {@code integration.factory.owner.password}.
+ *
+ * <p>Token is shared by all webhook events and is renewed only when it becomes old. Once the token
+ * reached {@link #REFRESH_AHEAD_RATIO} of its lifetime a single caller renews it while others keep
+ * using the current one, so events are not delayed by the authentication. Concurrent renewals of
+ * expired or invalidated token are coalesced into a single authentication request.
+ */
+@Singleton
+public class IntegrationTokenProvider {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IntegrationTokenProvider.class);
+
+  static final double REFRESH_AHEAD_RATIO = 0.8;
+
+  private final AuthConnection authConnection;
+  private final String username;
+  private final String password;
+  private final long ttlMs;
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+
+  private volatile CachedToken cached;
+
+  @Inject
+  public IntegrationTokenProvider(
+      AuthConnection authConnection,
+      @Named("integration.factory.owner.username") String username,
+      @Named("integration.factory.owner.password") String password,
+      @Named("integration.factory.owner.token_ttl_seconds") long ttlSeconds) {
+    this.authConnection = authConnection;
+    this.username = username;
+    this.password = password;
+    this.ttlMs = TimeUnit.SECONDS.toMillis(ttlSeconds);
+  }
+
+  /**
+   * Returns token of the integration user, authenticates the user if there is no valid token yet.
+   *
+   * @return token or null if the integration user was not authenticated
+   * @throws ServerException when authentication request failed
+   */
+  public String getToken() throws ServerException {
+    final CachedToken current = cached;
+    final long now = currentTimeMillis();
+    if (current == null || now >= current.expiresAt) {
+      return valueOf(refresh(current));
+    }
+    if (now >= current.refreshAt && refreshing.compareAndSet(false, true)) {
+      try {
+        final CachedToken renewed = refresh(current);
+        if (renewed != null) {
+          return renewed.value;
+        }
+      } catch (ServerException e) {
+        LOG.warn("Not able to renew token of integration user {}. {}", username, e.getMessage());
+      } finally {
+        refreshing.set(false);
+      }
+    }
+    return current.value;
+  }
+
+  /**
+   * Forgets given token, e.g. when it was rejected by the API, so the next {@link #getToken()}
+   * authenticates the integration user again. Does nothing if given token is already replaced.
+   */
+  public synchronized void invalidate(String token) {
+    if (cached != null && cached.value.equals(token)) {
+      cached = null;
+    }
+  }
+
+  /** Authenticates integration user unless given token has been replaced by concurrent caller. */
+  private synchronized CachedToken refresh(CachedToken outdated) throws ServerException {
+    if (cached != null && cached != outdated) {
+      return cached;
+    }
+    final Token token = authConnection.authenticateUser(username, password);
+    if (token == null || token.getValue() == null) {
+      LOG.warn("Integration user {} was not authenticated", username);
+      return null;
+    }
+    final CachedToken fresh = new CachedToken(token.getValue(), currentTimeMillis(), ttlMs);
+    if (ttlMs > 0) {
+      cached = fresh;
+    }
+    return fresh;
+  }
+
+  /** Time source of token lifetime, overridden by tests. */
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private static String valueOf(CachedToken token) {
+    return token == null ? null : token.value;
+  }
+
+  private static class CachedToken {
+    final String value;
+    final long refreshAt;
+    final long expiresAt;
+
+    CachedToken(String value, long createdAt, long ttlMs) {
+      this.value = value;
+      this.refreshAt = createdAt + (long) (ttlMs * REFRESH_AHEAD_RATIO);
+      this.expiresAt = createdAt + ttlMs;
+    }
+  }
+}
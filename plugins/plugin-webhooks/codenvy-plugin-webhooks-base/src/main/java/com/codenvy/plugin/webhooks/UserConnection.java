@@ -65,7 +65,7 @@ public class UserConnection {
 
     } catch (IOException | ApiException e) {
       LOG.error(e.getLocalizedMessage(), e);
-      throw new ServerException(e.getLocalizedMessage());
+      throw new ServerException(e.getLocalizedMessage(), e);
     }
     return user;
   }
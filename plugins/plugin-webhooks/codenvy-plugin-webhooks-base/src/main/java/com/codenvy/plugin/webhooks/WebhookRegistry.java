@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.plugin.webhooks;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.inject.ConfigurationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of webhooks and CI connectors configuration.
+ *
+ * <p>Webhooks configured with properties like {@code <prefix>_<name>_REPOSITORY_URL} and {@code
+ * <prefix>_<name>_FACTORY<n>_ID} are indexed by repository url, Jenkins connectors configured with
+ * {@code env.CODENVY_JENKINS_CONNECTOR_<name>_FACTORY_ID} are indexed by factory id. Configuration
+ * properties don't change at runtime, so each index is built once on the first lookup.
+ *
+ * <p>Properties files written by webhooks are cached once {@link #start() started} and reloaded
+ * when they are changed on the file system.
+ */
+@Singleton
+public class WebhookRegistry {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WebhookRegistry.class);
+
+  private static final String WEBHOOK_REPOSITORY_URL_SUFFIX = "_REPOSITORY_URL";
+  private static final String WEBHOOK_FACTORY_ID_SUFFIX_PATTERN = "_FACTORY.+_ID";
+
+  private static final String JENKINS_CONNECTOR_PREFIX_PATTERN = "env.CODENVY_JENKINS_CONNECTOR_.+";
+  private static final String JENKINS_CONNECTOR_FACTORY_ID_SUFFIX = "_FACTORY_ID";
+
+  private final ConfigurationProperties configurationProperties;
+  private final ConcurrentMap<String, ImmutableSetMultimap<String, String>> webhooks =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Path, Properties> files = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+  private final AtomicLong filesVersion = new AtomicLong();
+
+  private volatile Map<String, String> jenkinsConnectorsProperties;
+  private volatile ImmutableSetMultimap<String, String> jenkinsConnectors;
+  private volatile WatchService watcher;
+
+  @Inject
+  public WebhookRegistry(ConfigurationProperties configurationProperties) {
+    this.configurationProperties = configurationProperties;
+  }
+
+  /** Starts watching of properties files, until then files are read on every request. */
+  @PostConstruct
+  public void start() throws IOException {
+    watcher = FileSystems.getDefault().newWatchService();
+    final Thread thread = new Thread(this::watch, "WebhookRegistryWatcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @PreDestroy
+  public void stop() throws IOException {
+    if (watcher != null) {
+      watcher.close();
+    }
+  }
+
+  /**
+   * Get ids of factories configured in webhooks for given repository
+   *
+   * @param webhookPropertyPattern pattern of the webhooks properties names
+   * @param repositoryUrl the URL of the repository
+   * @param urlNormalizer function applied to configured repositories URLs before indexing, must be
+   *     the same for all calls with the same pattern
+   * @return ids of the configured factories, empty set if there is no webhook for the repository
+   */
+  public Set<String> getFactoriesIds(
+      String webhookPropertyPattern, String repositoryUrl, UnaryOperator<String> urlNormalizer) {
+    return webhooks
+        .computeIfAbsent(webhookPropertyPattern, pattern -> indexWebhooks(pattern, urlNormalizer))
+        .get(repositoryUrl);
+  }
+
+  /**
+   * Get ids of factories configured in webhooks for given repository
+   *
+   * @see #getFactoriesIds(String, String, UnaryOperator)
+   */
+  public Set<String> getFactoriesIds(String webhookPropertyPattern, String repositoryUrl) {
+    return getFactoriesIds(webhookPropertyPattern, repositoryUrl, UnaryOperator.identity());
+  }
+
+  /**
+   * Get Jenkins connectors configured for given factory
+   *
+   * @param factoryId the id of the factory
+   * @return the names of connectors properties, i.e. properties prefix shared by the url, the job
+   *     name and the factory id of the connector
+   */
+  public Set<String> getJenkinsConnectors(String factoryId) {
+    if (jenkinsConnectors == null) {
+      indexJenkinsConnectors();
+    }
+    return jenkinsConnectors.get(factoryId);
+  }
+
+  /** Get all properties of Jenkins connectors */
+  public Map<String, String> getJenkinsConnectorsProperties() {
+    if (jenkinsConnectorsProperties == null) {
+      indexJenkinsConnectors();
+    }
+    return jenkinsConnectorsProperties;
+  }
+
+  /**
+   * Get all properties contained in a given file, returned properties must not be modified
+   *
+   * @param fileName the name of the properties file
+   * @throws ServerException if the file can't be read
+   */
+  public Properties getFileProperties(String fileName) throws ServerException {
+    final Path file = Paths.get(fileName).toAbsolutePath();
+    if (watcher == null) {
+      return load(file);
+    }
+    final Properties cached = files.get(file);
+    if (cached != null) {
+      return cached;
+    }
+    watch(file.getParent());
+    final long version = filesVersion.get();
+    final Properties properties = load(file);
+    // don't cache the file if it was changed while loading
+    if (filesVersion.get() == version) {
+      files.put(file, properties);
+    }
+    return properties;
+  }
+
+  /** Forgets cached content of given file, must be called after the file is modified */
+  public void invalidateFile(String fileName) {
+    filesVersion.incrementAndGet();
+    files.remove(Paths.get(fileName).toAbsolutePath());
+  }
+
+  private ImmutableSetMultimap<String, String> indexWebhooks(
+      String webhookPropertyPattern, UnaryOperator<String> urlNormalizer) {
+    final Map<String, String> properties =
+        configurationProperties.getProperties(webhookPropertyPattern);
+    final ImmutableSetMultimap.Builder<String, String> index = ImmutableSetMultimap.builder();
+    for (Map.Entry<String, String> entry : properties.entrySet()) {
+      final String key = entry.getKey();
+      if (!key.endsWith(WEBHOOK_REPOSITORY_URL_SUFFIX)) {
+        continue;
+      }
+      final String webhook = key.substring(0, key.lastIndexOf(WEBHOOK_REPOSITORY_URL_SUFFIX));
+      final String repositoryUrl = urlNormalizer.apply(entry.getValue());
+      properties
+          .entrySet()
+          .stream()
+          .filter(e -> e.getKey().matches(webhook + WEBHOOK_FACTORY_ID_SUFFIX_PATTERN))
+          .forEach(e -> index.put(repositoryUrl, e.getValue()));
+    }
+    return index.build();
+  }
+
+  private synchronized void indexJenkinsConnectors() {
+    if (jenkinsConnectors != null) {
+      return;
+    }
+    final Map<String, String> properties =
+        configurationProperties.getProperties(JENKINS_CONNECTOR_PREFIX_PATTERN);
+    final ImmutableSetMultimap.Builder<String, String> index = ImmutableSetMultimap.builder();
+    for (Map.Entry<String, String> entry : properties.entrySet()) {
+      final String key = entry.getKey();
+      if (key.endsWith(JENKINS_CONNECTOR_FACTORY_ID_SUFFIX)) {
+        index.put(
+            entry.getValue(),
+            key.substring(0, key.lastIndexOf(JENKINS_CONNECTOR_FACTORY_ID_SUFFIX)));
+      }
+    }
+    jenkinsConnectorsProperties = ImmutableMap.copyOf(properties);
+    jenkinsConnectors = index.build();
+  }
+
+  private void watch(Path directory) throws ServerException {
+    try {
+      watchedDirectories.computeIfAbsent(
+          directory,
+          dir -> {
+            try {
+              return dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            } catch (IOException e) {
+              throw new IllegalStateException(e.getLocalizedMessage(), e);
+            }
+          });
+    } catch (IllegalStateException e) {
+      throw new ServerException(e.getLocalizedMessage(), e);
+    }
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        final WatchKey key = watcher.take();
+        final Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          filesVersion.incrementAndGet();
+          if (event.kind() == OVERFLOW) {
+            files.clear();
+          } else {
+            final Path file = directory.resolve((Path) event.context());
+            if (files.remove(file) != null) {
+              LOG.debug("Webhooks properties file {} changed", file);
+            }
+          }
+        }
+        key.reset();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException ignored) {
+      // registry is stopped
+    }
+  }
+
+  private static Properties load(Path file) throws ServerException {
+    final Properties properties = new Properties();
+    try (FileInputStream in = new FileInputStream(file.toFile())) {
+      properties.load(in);
+    } catch (IOException e) {
+      LOG.error(e.getLocalizedMessage());
+      throw new ServerException(e.getLocalizedMessage());
+    }
+    return properties;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.plugin.webhooks;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import com.google.common.base.Ticker;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.api.factory.shared.dto.FactoryDto;
+import org.eclipse.che.dto.server.DtoFactory;
+import org.mockito.Mock;
+import org.mockito.testng.MockitoTestNGListener;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+/** Tests for {@link FactoryCache}. */
+@Listeners(MockitoTestNGListener.class)
+public class FactoryCacheTest {
+
+  private static final long TTL_SECONDS = 30;
+
+  @Mock private FactoryConnection factoryConnection;
+
+  private FactoryCache cache;
+  private long nanos;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    nanos = 0;
+    cache = createCache(TTL_SECONDS, 2);
+    when(factoryConnection.getFactory("factory1")).thenReturn(factory("factory1"));
+    when(factoryConnection.getFactory("factory2")).thenReturn(factory("factory2"));
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    cache.shutdown();
+  }
+
+  @Test
+  public void shouldFetchFactoriesInOrderOfIds() throws Exception {
+    final List<FactoryDto> factories = cache.getFactories(ids("factory2", "factory1"));
+
+    assertEquals(names(factories), asList("factory2", "factory1"));
+  }
+
+  @Test
+  public void shouldServeCachedFactoriesWithoutFetchingThem() throws Exception {
+    cache.getFactories(ids("factory1"));
+
+    final List<FactoryDto> factories = cache.getFactories(ids("factory1", "factory2"));
+
+    assertEquals(names(factories), asList("factory1", "factory2"));
+    verify(factoryConnection, times(1)).getFactory("factory1");
+    verify(factoryConnection, times(1)).getFactory("factory2");
+  }
+
+  @Test
+  public void shouldReturnCopiesOfCachedFactories() throws Exception {
+    cache.getFactories(ids("factory1")).get(0).setName("modified");
+
+    assertEquals(names(cache.getFactories(ids("factory1"))), asList("factory1"));
+  }
+
+  @Test
+  public void shouldFetchFactoryAgainAfterInvalidation() throws Exception {
+    cache.getFactories(ids("factory1"));
+
+    cache.invalidate("factory1");
+    cache.getFactories(ids("factory1"));
+
+    verify(factoryConnection, times(2)).getFactory("factory1");
+  }
+
+  @Test
+  public void shouldFetchFactoryAgainWhenTtlExpired() throws Exception {
+    cache.getFactories(ids("factory1"));
+
+    nanos = TimeUnit.SECONDS.toNanos(TTL_SECONDS - 1);
+    cache.getFactories(ids("factory1"));
+    verify(factoryConnection, times(1)).getFactory("factory1");
+
+    nanos = TimeUnit.SECONDS.toNanos(TTL_SECONDS);
+    cache.getFactories(ids("factory1"));
+    verify(factoryConnection, times(2)).getFactory("factory1");
+  }
+
+  @Test
+  public void shouldNotCacheFactoriesWhenTtlIsZero() throws Exception {
+    cache.shutdown();
+    cache = createCache(0, 1);
+
+    cache.getFactories(ids("factory1"));
+    cache.getFactories(ids("factory1"));
+
+    verify(factoryConnection, times(2)).getFactory("factory1");
+  }
+
+  @Test
+  public void shouldNotCacheMissingFactories() throws Exception {
+    assertNull(cache.getFactories(ids("missing")).get(0));
+    assertNull(cache.getFactories(ids("missing")).get(0));
+
+    verify(factoryConnection, times(2)).getFactory("missing");
+  }
+
+  @Test(expectedExceptions = ServerException.class, expectedExceptionsMessageRegExp = "failed")
+  public void shouldRethrowFailureOfConcurrentFetch() throws Exception {
+    when(factoryConnection.getFactory("factory2")).thenThrow(new ServerException("failed"));
+
+    cache.getFactories(ids("factory1", "factory2"));
+  }
+
+  private FactoryCache createCache(long ttlSeconds, int threads) {
+    return new FactoryCache(
+        factoryConnection,
+        ttlSeconds,
+        threads,
+        new Ticker() {
+          @Override
+          public long read() {
+            return nanos;
+          }
+        });
+  }
+
+  private static Set<String> ids(String... ids) {
+    return new LinkedHashSet<>(asList(ids));
+  }
+
+  private static List<String> names(List<FactoryDto> factories) {
+    return factories.stream().map(FactoryDto::getName).collect(toList());
+  }
+
+  private static FactoryDto factory(String id) {
+    return DtoFactory.newDto(FactoryDto.class).withId(id).withName(id);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.plugin.webhooks;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import org.eclipse.che.api.auth.shared.dto.Token;
+import org.eclipse.che.api.core.ServerException;
+import org.mockito.Mock;
+import org.mockito.testng.MockitoTestNGListener;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+/** Tests for {@link IntegrationTokenProvider}. */
+@Listeners(MockitoTestNGListener.class)
+public class IntegrationTokenProviderTest {
+
+  private static final long TTL_SECONDS = 100;
+
+  @Mock private AuthConnection authConnection;
+
+  private IntegrationTokenProvider provider;
+  private long now;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    now = 0;
+    provider = createProvider(TTL_SECONDS);
+    final Token token1 = token("token1");
+    final Token token2 = token("token2");
+    final Token token3 = token("token3");
+    when(authConnection.authenticateUser("user", "password")).thenReturn(token1, token2, token3);
+  }
+
+  @Test
+  public void shouldAuthenticateOnceWhileTokenIsFresh() throws Exception {
+    assertEquals(provider.getToken(), "token1");
+    now = 10_000;
+    assertEquals(provider.getToken(), "token1");
+
+    verify(authConnection, times(1)).authenticateUser("user", "password");
+  }
+
+  @Test
+  public void shouldRenewTokenAheadOfExpiry() throws Exception {
+    provider.getToken();
+    now = 81_000;
+
+    assertEquals(provider.getToken(), "token2");
+    assertEquals(provider.getToken(), "token2");
+    verify(authConnection, times(2)).authenticateUser("user", "password");
+  }
+
+  @Test
+  public void shouldKeepCurrentTokenWhenRenewalAheadOfExpiryFails() throws Exception {
+    provider.getToken();
+    when(authConnection.authenticateUser("user", "password"))
+        .thenThrow(new ServerException("unavailable"));
+    now = 81_000;
+
+    assertEquals(provider.getToken(), "token1");
+  }
+
+  @Test
+  public void shouldAuthenticateAgainWhenTokenExpired() throws Exception {
+    provider.getToken();
+    now = 100_000;
+
+    assertEquals(provider.getToken(), "token2");
+    verify(authConnection, times(2)).authenticateUser("user", "password");
+  }
+
+  @Test(expectedExceptions = ServerException.class)
+  public void shouldFailWhenExpiredTokenCannotBeRenewed() throws Exception {
+    provider.getToken();
+    when(authConnection.authenticateUser("user", "password"))
+        .thenThrow(new ServerException("unavailable"));
+    now = 100_000;
+
+    provider.getToken();
+  }
+
+  @Test
+  public void shouldAuthenticateAgainWhenTokenInvalidated() throws Exception {
+    provider.invalidate(provider.getToken());
+
+    assertEquals(provider.getToken(), "token2");
+  }
+
+  @Test
+  public void shouldIgnoreInvalidationOfReplacedToken() throws Exception {
+    final String rejected = provider.getToken();
+    provider.invalidate(rejected);
+    provider.getToken();
+
+    provider.invalidate(rejected);
+
+    assertEquals(provider.getToken(), "token2");
+    verify(authConnection, times(2)).authenticateUser("user", "password");
+  }
+
+  @Test
+  public void shouldNotCacheTokenWhenTtlIsZero() throws Exception {
+    provider = createProvider(0);
+
+    assertEquals(provider.getToken(), "token1");
+    assertEquals(provider.getToken(), "token2");
+  }
+
+  private IntegrationTokenProvider createProvider(long ttlSeconds) {
+    final IntegrationTokenProvider provider =
+        spy(new IntegrationTokenProvider(authConnection, "user", "password", ttlSeconds));
+    doAnswer(invocation -> now).when(provider).currentTimeMillis();
+    return provider;
+  }
+
+  private static Token token(String value) {
+    final Token token = mock(Token.class);
+    when(token.getValue()).thenReturn(value);
+    return token;
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.plugin.webhooks;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.che.commons.lang.IoUtil;
+import org.eclipse.che.inject.ConfigurationProperties;
+import org.mockito.Mock;
+import org.mockito.testng.MockitoTestNGListener;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+/** Tests for {@link WebhookRegistry}. */
+@Listeners(MockitoTestNGListener.class)
+public class WebhookRegistryTest {
+
+  private static final String WEBHOOK_PATTERN = "env.CODENVY_TEST_WEBHOOK_.+";
+  private static final String JENKINS_PATTERN = "env.CODENVY_JENKINS_CONNECTOR_.+";
+
+  @Mock private ConfigurationProperties configurationProperties;
+
+  private WebhookRegistry registry;
+  private Path directory;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    final Map<String, String> webhooks = new HashMap<>();
+    webhooks.put("env.CODENVY_TEST_WEBHOOK_W1_REPOSITORY_URL", "https://host/owner/repo1");
+    webhooks.put("env.CODENVY_TEST_WEBHOOK_W1_FACTORY1_ID", "factory1");
+    webhooks.put("env.CODENVY_TEST_WEBHOOK_W1_FACTORY2_ID", "factory2");
+    webhooks.put("env.CODENVY_TEST_WEBHOOK_W2_REPOSITORY_URL", "https://host/owner/repo2");
+    webhooks.put("env.CODENVY_TEST_WEBHOOK_W2_FACTORY1_ID", "factory3");
+    when(configurationProperties.getProperties(WEBHOOK_PATTERN)).thenReturn(webhooks);
+    when(configurationProperties.getProperties(JENKINS_PATTERN))
+        .thenReturn(
+            ImmutableMap.of(
+                "env.CODENVY_JENKINS_CONNECTOR_C1_URL", "http://jenkins1",
+                "env.CODENVY_JENKINS_CONNECTOR_C1_JOB_NAME", "job1",
+                "env.CODENVY_JENKINS_CONNECTOR_C1_FACTORY_ID", "factory1",
+                "env.CODENVY_JENKINS_CONNECTOR_C2_FACTORY_ID", "factory1",
+                "env.CODENVY_JENKINS_CONNECTOR_C3_FACTORY_ID", "factory2"));
+
+    registry = new WebhookRegistry(configurationProperties);
+    directory = Files.createTempDirectory("webhooks");
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    registry.stop();
+    IoUtil.deleteRecursive(directory.toFile());
+  }
+
+  @Test
+  public void shouldIndexFactoriesByRepositoryUrl() {
+    assertEquals(
+        registry.getFactoriesIds(WEBHOOK_PATTERN, "https://host/owner/repo1"),
+        ImmutableSet.of("factory1", "factory2"));
+    assertEquals(
+        registry.getFactoriesIds(WEBHOOK_PATTERN, "https://host/owner/repo2"),
+        ImmutableSet.of("factory3"));
+    assertTrue(registry.getFactoriesIds(WEBHOOK_PATTERN, "https://host/owner/repo3").isEmpty());
+
+    verify(configurationProperties, times(1)).getProperties(WEBHOOK_PATTERN);
+  }
+
+  @Test
+  public void shouldNormalizeConfiguredRepositoryUrls() {
+    assertEquals(
+        registry.getFactoriesIds(WEBHOOK_PATTERN, "HTTPS://HOST/OWNER/REPO2", String::toUpperCase),
+        ImmutableSet.of("factory3"));
+  }
+
+  @Test
+  public void shouldIndexJenkinsConnectorsByFactoryId() {
+    assertEquals(
+        registry.getJenkinsConnectors("factory1"),
+        ImmutableSet.of("env.CODENVY_JENKINS_CONNECTOR_C1", "env.CODENVY_JENKINS_CONNECTOR_C2"));
+    assertEquals(
+        registry.getJenkinsConnectors("factory2"),
+        ImmutableSet.of("env.CODENVY_JENKINS_CONNECTOR_C3"));
+    assertTrue(registry.getJenkinsConnectors("factory3").isEmpty());
+    assertEquals(
+        registry.getJenkinsConnectorsProperties().get("env.CODENVY_JENKINS_CONNECTOR_C1_URL"),
+        "http://jenkins1");
+
+    verify(configurationProperties, times(1)).getProperties(JENKINS_PATTERN);
+  }
+
+  @Test
+  public void shouldReadFileOnEveryRequestUntilStarted() throws Exception {
+    final Path file = write("key=value1");
+    assertEquals(registry.getFileProperties(file.toString()).getProperty("key"), "value1");
+
+    write("key=value2");
+
+    assertEquals(registry.getFileProperties(file.toString()).getProperty("key"), "value2");
+  }
+
+  @Test
+  public void shouldReadFileAgainWhenItIsInvalidated() throws Exception {
+    registry.start();
+    final Path file = write("key=value1");
+    assertEquals(registry.getFileProperties(file.toString()).getProperty("key"), "value1");
+
+    write("key=value2");
+    registry.invalidateFile(file.toString());
+
+    assertEquals(registry.getFileProperties(file.toString()).getProperty("key"), "value2");
+  }
+
+  private Path write(String content) throws Exception {
+    return Files.write(directory.resolve("webhooks.properties"), content.getBytes(ISO_8859_1));
+  }
+}
@@ -46,6 +46,8 @@ public class WsAgentModule extends AbstractModule {
         .annotatedWith(Names.named("auth.sso.cookies_disabled_error_page_url"))
         .to("/site/error/error-cookies-disabled");
     bindConstant().annotatedWith(Names.named("auth.sso.login_page_url")).to("/site/login");
+    bindConstant().annotatedWith(Names.named("auth.sso.client_subject_cache_ttl_seconds")).to(60L);
+    bindConstant().annotatedWith(Names.named("auth.sso.client_subject_cache_size")).to(10_000L);
     bind(ProjectServiceLinksInjector.class).to(CodenvyProjectServiceLinksInjector.class);
     bind(HttpJsonRequestFactory.class).to(AuthorizeTokenHttpJsonRequestFactory.class);
     bind(RequestTokenExtractor.class)
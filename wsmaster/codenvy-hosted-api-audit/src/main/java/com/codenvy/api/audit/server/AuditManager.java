@@ -10,148 +10,401 @@
  */
 package com.codenvy.api.audit.server;
 
-import static java.nio.file.Files.createTempDirectory;
 import static org.eclipse.che.multiuser.permission.workspace.server.WorkspaceDomain.DOMAIN_ID;
 
+import com.codenvy.api.audit.server.AuditReportSnapshot.UserSection;
 import com.codenvy.api.audit.server.printer.Printer;
-import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
-import org.apache.commons.io.FileUtils;
 import org.eclipse.che.api.core.ConflictException;
 import org.eclipse.che.api.core.NotFoundException;
 import org.eclipse.che.api.core.Page;
 import org.eclipse.che.api.core.Page.PageRef;
 import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.api.core.notification.EventService;
 import org.eclipse.che.api.user.server.UserManager;
+import org.eclipse.che.api.user.server.event.UserCreatedEvent;
+import org.eclipse.che.api.user.server.event.UserRemovedEvent;
 import org.eclipse.che.api.user.server.model.impl.UserImpl;
 import org.eclipse.che.api.workspace.server.WorkspaceManager;
+import org.eclipse.che.api.workspace.server.event.BeforeWorkspaceRemovedEvent;
+import org.eclipse.che.api.workspace.server.event.WorkspaceCreatedEvent;
 import org.eclipse.che.api.workspace.server.model.impl.WorkspaceImpl;
 import org.eclipse.che.multiuser.api.permission.server.PermissionsManager;
 import org.eclipse.che.multiuser.api.permission.server.model.impl.AbstractPermissions;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * Facade for audit report related operations.
  *
+ * <p>The last generated report is kept as {@link AuditReportSnapshot}. Users which are created or
+ * removed and owners and members of created or removed workspaces are marked as changed, so the
+ * next report reads again only their info. Changes of permissions, updates of users and renames of
+ * workspaces are not published as events, that's why all users are read again once the snapshot
+ * becomes older than configured age, which should be short.
+ *
+ * <p>Users are read page by page, while information about users of the current page is collected
+ * concurrently by a bounded pool of threads the next page is read. The pool is created once and
+ * shared by all the builds. Only a single snapshot is built at a time, concurrent requests wait for
+ * it and get the same report.
+ *
  * @author Igor Vinokur
  */
 @Singleton
 public class AuditManager {
 
-  private static final Logger LOG = LoggerFactory.getLogger(AuditManager.class);
-
   private final WorkspaceManager workspaceManager;
   private final PermissionsManager permissionsManager;
   private final UserManager userManager;
+  private final ExecutorService executor;
+  private final int usersPageSize;
+  private final long snapshotMaxAgeMs;
 
-  private AtomicBoolean inProgress = new AtomicBoolean(false);
+  private final Set<String> changedUsers = ConcurrentHashMap.newKeySet();
+  private final Set<String> changedNamespaces = ConcurrentHashMap.newKeySet();
+
+  private final Object buildLock = new Object();
+  private CompletableFuture<AuditReportSnapshot> build;
+  private volatile AuditReportSnapshot snapshot;
 
   @Inject
   public AuditManager(
       UserManager userManager,
       WorkspaceManager workspaceManager,
-      PermissionsManager permissionsManager) {
+      PermissionsManager permissionsManager,
+      @Named("audit.report.threads") int threads,
+      @Named("audit.report.users_page_size") int usersPageSize,
+      @Named("audit.report.snapshot_max_age_seconds") long snapshotMaxAgeSeconds) {
     this.userManager = userManager;
     this.workspaceManager = workspaceManager;
     this.permissionsManager = permissionsManager;
+    this.usersPageSize = usersPageSize;
+    this.snapshotMaxAgeMs = TimeUnit.SECONDS.toMillis(snapshotMaxAgeSeconds);
+    this.executor =
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("AuditReport-%d").setDaemon(true).build());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Inject
+  public void subscribe(EventService eventService) {
+    eventService.subscribe(event -> onUserChanged(event.getUser().getId()), UserCreatedEvent.class);
+    eventService.subscribe(event -> onUserChanged(event.getUserId()), UserRemovedEvent.class);
+    eventService.subscribe(
+        event ->
+            onWorkspaceChanged(event.getWorkspace().getId(), event.getWorkspace().getNamespace()),
+        WorkspaceCreatedEvent.class);
+    eventService.subscribe(
+        event ->
+            onWorkspaceChanged(event.getWorkspace().getId(), event.getWorkspace().getNamespace()),
+        BeforeWorkspaceRemovedEvent.class);
   }
 
   /**
-   * Generates file with audit report in plain/text format. The audit report contains information
-   * about license, users and their workspaces.
+   * Writes audit report in plain/text format into given writer. The audit report contains
+   * information about license, users and their workspaces.
    *
-   * @return path of the audit report file
-   * @throws ServerException if an error occurs
-   * @throws ConflictException if generating report is already in progress
+   * @param snapshot snapshot of the audit report, see {@link #getSnapshot()}
+   * @param writer writer of the audit report, it is not flushed nor closed
+   * @throws ServerException if the report can't be written
    */
-  public Path generateAuditReport() throws ServerException, ConflictException {
-    if (!inProgress.compareAndSet(false, true)) {
-      throw new ConflictException("Generating report is already in progress");
+  void writeAuditReport(AuditReportSnapshot snapshot, Writer writer) throws ServerException {
+    printSystemInfo(writer, snapshot.getTotalUsers());
+    for (UserSection section : snapshot.getSections()) {
+      printRow(writer, section.info);
     }
+  }
 
-    Path auditReport = null;
-    try {
-      auditReport = createEmptyAuditReportFile();
-      printSystemInfo(auditReport);
-      printAllUsersInfo(auditReport);
-    } catch (Exception exception) {
-      if (auditReport != null) {
-        deleteReportDirectory(auditReport);
+  /**
+   * Writes into given writer audit report in plain/text format which contains only users whose info
+   * was changed since given time and ids of users which were removed since given time.
+   *
+   * @param snapshot snapshot of the audit report, see {@link #getSnapshot()}
+   * @param writer writer of the audit report, it is not flushed nor closed
+   * @param since time in milliseconds, usually the time of the previous request of the report
+   * @throws ServerException if the report can't be written
+   */
+  void writeAuditReport(AuditReportSnapshot snapshot, Writer writer, long since)
+      throws ServerException {
+    printSystemInfo(writer, snapshot.getTotalUsers());
+    printDelimiter(writer, "Users changed since " + formatDate(since));
+    for (UserSection section : snapshot.getSections()) {
+      if (section.modified >= since) {
+        printRow(writer, section.info);
+      }
+    }
+    printDelimiter(writer, "Users removed since " + formatDate(since));
+    for (Map.Entry<String, Long> removed : snapshot.getRemovedUsers().entrySet()) {
+      if (removed.getValue() >= since) {
+        printRow(writer, removed.getKey() + "\n");
       }
-      LOG.error(exception.getMessage(), exception);
-      throw new ServerException(exception.getMessage(), exception);
-    } finally {
-      inProgress.set(false);
     }
+  }
 
-    return auditReport;
+  /** Returns name of the audit report generated at the current moment. */
+  static String getReportFileName() {
+    return "report_" + formatDate(System.currentTimeMillis()) + ".txt";
   }
 
-  private Path createEmptyAuditReportFile() throws IOException {
-    String dateTime = new SimpleDateFormat("dd-MM-yyyy_hh:mm:ss").format(new Date());
-    Path auditReport = createTempDirectory(null).resolve("report_" + dateTime + ".txt");
-    Files.createFile(auditReport);
-    return auditReport;
+  /** Marks info of the user with given id as changed. */
+  void onUserChanged(String userId) {
+    changedUsers.add(userId);
   }
 
-  void printSystemInfo(Path auditReport) throws ServerException {
-    Printer.createSystemInfoPrinter(auditReport, userManager.getTotalCount()).print();
+  /** Marks info of the owner and members of the workspace with given id as changed. */
+  void onWorkspaceChanged(String workspaceId, String namespace) {
+    AuditReportSnapshot current = snapshot;
+    if (current != null) {
+      changedUsers.addAll(current.getUserIds(workspaceId));
+    }
+    changedNamespaces.add(namespace);
   }
 
-  private void printDelimiter(Path auditReport, String title) throws ServerException {
-    Printer.createDelimiterPrinter(auditReport, title).print();
+  /**
+   * Returns actual snapshot of the audit report. Builds it if there are changes since the last one,
+   * or waits for the snapshot which is being built by concurrent request.
+   *
+   * @throws ServerException if the snapshot can't be built
+   */
+  AuditReportSnapshot getSnapshot() throws ServerException {
+    CompletableFuture<AuditReportSnapshot> current;
+    boolean builder = false;
+    synchronized (buildLock) {
+      if (build == null) {
+        build = new CompletableFuture<>();
+        builder = true;
+      }
+      current = build;
+    }
+    if (builder) {
+      try {
+        snapshot = buildSnapshot(snapshot);
+        current.complete(snapshot);
+      } catch (ServerException | RuntimeException exception) {
+        current.completeExceptionally(exception);
+      } finally {
+        synchronized (buildLock) {
+          build = null;
+        }
+      }
+    }
+    return await(current);
+  }
+
+  private AuditReportSnapshot buildSnapshot(AuditReportSnapshot previous) throws ServerException {
+    long now = currentTimeMillis();
+    Set<String> userIds = drain(changedUsers);
+    Set<String> namespaces = drain(changedNamespaces);
+    try {
+      if (previous == null || now - previous.getCreated() >= snapshotMaxAgeMs) {
+        return rebuildSnapshot(previous, now);
+      }
+      return updateSnapshot(previous, userIds, namespaces, now);
+    } catch (ServerException | RuntimeException exception) {
+      // changes will be applied by the next build
+      changedUsers.addAll(userIds);
+      changedNamespaces.addAll(namespaces);
+      throw exception;
+    }
   }
 
-  private void printAllUsersInfo(Path auditReport) throws ServerException {
-    Page<UserImpl> currentPage = userManager.getAll(30, 0);
+  private AuditReportSnapshot rebuildSnapshot(AuditReportSnapshot previous, long now)
+      throws ServerException {
+    long totalUsers = userManager.getTotalCount();
+    List<UserSection> sections = new ArrayList<>();
+    Page<UserImpl> currentPage = userManager.getAll(usersPageSize, 0);
     do {
-      // Print users with their workspaces from current page
-      for (UserImpl user : currentPage.getItems()) {
-        List<WorkspaceImpl> workspaces;
+      List<Future<UserSection>> usersInfo = new ArrayList<>(currentPage.getItems().size());
+      try {
+        for (UserImpl user : currentPage.getItems()) {
+          usersInfo.add(executor.submit(() -> getUserSection(user, now)));
+        }
+        Page<UserImpl> nextPage = getNextPage(currentPage);
+        for (Future<UserSection> userInfo : usersInfo) {
+          sections.add(await(userInfo));
+        }
+        currentPage = nextPage;
+      } finally {
+        cancel(usersInfo);
+      }
+    } while (currentPage != null);
+    return AuditReportSnapshot.rebuild(previous, totalUsers, sections, now);
+  }
+
+  private AuditReportSnapshot updateSnapshot(
+      AuditReportSnapshot previous, Set<String> userIds, Set<String> namespaces, long now)
+      throws ServerException {
+    Set<String> changed = new HashSet<>(userIds);
+    for (String namespace : namespaces) {
+      String userId = previous.getUserId(namespace);
+      if (userId == null) {
         try {
-          workspaces = workspaceManager.getWorkspaces(user.getId(), false);
-          Set<String> workspaceIds =
-              workspaces.stream().map(WorkspaceImpl::getId).collect(Collectors.toSet());
-          // add workspaces witch are belong to user, but user doesn't have permissions for them.
-          workspaceManager
-              .getByNamespace(user.getName(), false)
-              .stream()
-              .filter(workspace -> !workspaceIds.contains(workspace.getId()))
-              .forEach(workspaces::add);
-        } catch (ServerException exception) {
-          Printer.createErrorPrinter(
-                  auditReport,
-                  "Failed to retrieve the list of related workspaces for user " + user.getId())
-              .print();
+          userId = userManager.getByName(namespace).getId();
+        } catch (NotFoundException ignored) {
+          // workspace doesn't belong to a user
           continue;
         }
-        Map<String, AbstractPermissions> wsPermissions = new HashMap<>();
-        for (WorkspaceImpl workspace : workspaces) {
-          try {
-            wsPermissions.put(
-                workspace.getId(),
-                permissionsManager.get(user.getId(), DOMAIN_ID, workspace.getId()));
-          } catch (NotFoundException | ConflictException ignored) {
-            // User doesn't have permissions for workspace
-          }
+      }
+      changed.add(userId);
+    }
+    if (changed.isEmpty()) {
+      return previous;
+    }
+
+    long totalUsers = userManager.getTotalCount();
+    List<UserSection> sections = new ArrayList<>();
+    Set<String> removed = new HashSet<>();
+    Map<String, Future<UserSection>> usersInfo = new LinkedHashMap<>();
+    try {
+      for (String userId : changed) {
+        usersInfo.put(userId, executor.submit(() -> getUserSection(userId, now)));
+      }
+      for (Map.Entry<String, Future<UserSection>> userInfo : usersInfo.entrySet()) {
+        UserSection section = await(userInfo.getValue());
+        if (section == null) {
+          removed.add(userInfo.getKey());
+        } else {
+          sections.add(section);
         }
-        Printer.createUserPrinter(auditReport, user, workspaces, wsPermissions).print();
       }
+    } finally {
+      cancel(usersInfo.values());
+    }
+    return previous.update(totalUsers, sections, removed, now);
+  }
+
+  /** Time source of the snapshots, overridden by tests. */
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  void printSystemInfo(Writer auditReport, long totalUsers) throws ServerException {
+    Printer.createSystemInfoPrinter(auditReport, totalUsers).print();
+  }
+
+  private void printDelimiter(Writer auditReport, String title) throws ServerException {
+    Printer.createDelimiterPrinter(auditReport, title).print();
+  }
 
-    } while ((currentPage = getNextPage(currentPage)) != null);
+  private void printRow(Writer auditReport, String row) throws ServerException {
+    try {
+      auditReport.write(row);
+    } catch (IOException exception) {
+      throw new ServerException("Failed to generate audit report. " + exception.getMessage());
+    }
+  }
+
+  /** Returns info of the user with given id or null if the user doesn't exist. */
+  private UserSection getUserSection(String userId, long now) throws ServerException {
+    try {
+      return getUserSection(userManager.getById(userId), now);
+    } catch (NotFoundException exception) {
+      return null;
+    }
+  }
+
+  /** Returns users info with their workspaces as it is printed into audit report. */
+  private UserSection getUserSection(UserImpl user, long now) throws ServerException {
+    StringWriter userInfo = new StringWriter();
+    List<WorkspaceImpl> workspaces;
+    try {
+      workspaces = workspaceManager.getWorkspaces(user.getId(), false);
+      Set<String> workspaceIds =
+          workspaces.stream().map(WorkspaceImpl::getId).collect(Collectors.toSet());
+      // add workspaces witch are belong to user, but user doesn't have permissions for them.
+      workspaceManager
+          .getByNamespace(user.getName(), false)
+          .stream()
+          .filter(workspace -> !workspaceIds.contains(workspace.getId()))
+          .forEach(workspaces::add);
+    } catch (ServerException exception) {
+      Printer.createErrorPrinter(
+              userInfo,
+              "Failed to retrieve the list of related workspaces for user " + user.getId())
+          .print();
+      return new UserSection(
+          user.getId(), user.getName(), userInfo.toString(), new HashSet<>(), now);
+    }
+    Map<String, AbstractPermissions> wsPermissions = new HashMap<>();
+    for (WorkspaceImpl workspace : workspaces) {
+      try {
+        wsPermissions.put(
+            workspace.getId(), permissionsManager.get(user.getId(), DOMAIN_ID, workspace.getId()));
+      } catch (NotFoundException | ConflictException ignored) {
+        // User doesn't have permissions for workspace
+      }
+    }
+    Printer.createUserPrinter(userInfo, user, workspaces, wsPermissions).print();
+    return new UserSection(
+        user.getId(),
+        user.getName(),
+        userInfo.toString(),
+        workspaces.stream().map(WorkspaceImpl::getId).collect(Collectors.toSet()),
+        now);
+  }
+
+  private static <T> T await(Future<T> future) throws ServerException {
+    try {
+      return future.get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new ServerException("Generating of audit report was interrupted");
+    } catch (ExecutionException exception) {
+      Throwable cause = exception.getCause();
+      if (cause instanceof ServerException) {
+        throw (ServerException) cause;
+      }
+      throw new ServerException(cause.getMessage(), cause);
+    }
+  }
+
+  /** Cancels collecting of info which is not needed anymore e.g. when the build failed. */
+  private static void cancel(Collection<Future<UserSection>> usersInfo) {
+    for (Future<UserSection> userInfo : usersInfo) {
+      userInfo.cancel(true);
+    }
+  }
+
+  private static Set<String> drain(Set<String> changes) {
+    Set<String> drained = new HashSet<>();
+    for (Iterator<String> it = changes.iterator(); it.hasNext(); ) {
+      drained.add(it.next());
+      it.remove();
+    }
+    return drained;
+  }
+
+  private static String formatDate(long time) {
+    return new SimpleDateFormat("dd-MM-yyyy_hh:mm:ss").format(new Date(time));
   }
 
   private Page<UserImpl> getNextPage(Page<UserImpl> currentPage) throws ServerException {
@@ -162,13 +415,4 @@ public class AuditManager {
       return null;
     }
   }
-
-  @VisibleForTesting
-  void deleteReportDirectory(Path auditReport) {
-    try {
-      FileUtils.deleteDirectory(auditReport.getParent().toFile());
-    } catch (IOException exception) {
-      LOG.error(exception.getMessage(), exception);
-    }
-  }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.api.audit.server;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableCollection;
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable state of the audit report: info of each user in order of the report together with the
+ * time when it was changed last time.
+ *
+ * <p>Snapshot is never modified, the next snapshot is created with {@link #update} when some users
+ * are changed or with {@link #rebuild} when all users are read again. So the report can be written
+ * from the snapshot while the next one is being built.
+ */
+final class AuditReportSnapshot {
+
+  /** Removed users are reported by delta reports during this time. */
+  private static final long REMOVED_USERS_TTL_MS = TimeUnit.DAYS.toMillis(1);
+
+  private final long totalUsers;
+  private final long created;
+  private final Map<String, UserSection> sections;
+  private final Map<String, Long> removedUsers;
+  private final Map<String, String> userIdsByName;
+  private final Map<String, Set<String>> userIdsByWorkspace;
+
+  private AuditReportSnapshot(
+      long totalUsers,
+      long created,
+      LinkedHashMap<String, UserSection> sections,
+      Map<String, Long> removedUsers) {
+    this.totalUsers = totalUsers;
+    this.created = created;
+    this.sections = unmodifiableMap(sections);
+    this.removedUsers = unmodifiableMap(removedUsers);
+    this.userIdsByName = new HashMap<>();
+    this.userIdsByWorkspace = new HashMap<>();
+    for (UserSection section : sections.values()) {
+      userIdsByName.put(section.userName, section.userId);
+      for (String workspaceId : section.workspaceIds) {
+        userIdsByWorkspace.computeIfAbsent(workspaceId, id -> new HashSet<>()).add(section.userId);
+      }
+    }
+  }
+
+  /**
+   * Creates snapshot with all users of the system.
+   *
+   * @param previous previous snapshot or null, it is used to keep modification time of users info
+   *     which was not changed and to remember users which were removed
+   * @param totalUsers total number of users
+   * @param sections info of all users in order of the report
+   * @param now time of the rebuild
+   */
+  static AuditReportSnapshot rebuild(
+      AuditReportSnapshot previous, long totalUsers, List<UserSection> sections, long now) {
+    final LinkedHashMap<String, UserSection> newSections = new LinkedHashMap<>();
+    for (UserSection section : sections) {
+      newSections.put(section.userId, keepModified(previous, section));
+    }
+    final Map<String, Long> removedUsers = new HashMap<>();
+    if (previous != null) {
+      putAliveRemovedUsers(previous, removedUsers, now);
+      removedUsers.keySet().removeAll(newSections.keySet());
+      for (String userId : previous.sections.keySet()) {
+        if (!newSections.containsKey(userId)) {
+          removedUsers.put(userId, now);
+        }
+      }
+    }
+    return new AuditReportSnapshot(totalUsers, now, newSections, removedUsers);
+  }
+
+  /**
+   * Creates snapshot which differs from this one by info of given users.
+   *
+   * @param totalUsers total number of users
+   * @param changed new info of changed users, new users are added to the end of the report
+   * @param removed ids of removed users
+   * @param now time of the update
+   */
+  AuditReportSnapshot update(
+      long totalUsers, List<UserSection> changed, Set<String> removed, long now) {
+    final LinkedHashMap<String, UserSection> newSections = new LinkedHashMap<>(sections);
+    final Map<String, Long> newRemovedUsers = new HashMap<>();
+    putAliveRemovedUsers(this, newRemovedUsers, now);
+    for (UserSection section : changed) {
+      newSections.put(section.userId, keepModified(this, section));
+      newRemovedUsers.remove(section.userId);
+    }
+    for (String userId : removed) {
+      if (newSections.remove(userId) != null) {
+        newRemovedUsers.put(userId, now);
+      }
+    }
+    return new AuditReportSnapshot(totalUsers, created, newSections, newRemovedUsers);
+  }
+
+  /** Returns total number of users. */
+  long getTotalUsers() {
+    return totalUsers;
+  }
+
+  /** Returns time when all users were read to create this snapshot or its ancestors. */
+  long getCreated() {
+    return created;
+  }
+
+  /** Returns info of all users in order of the report. */
+  Collection<UserSection> getSections() {
+    return unmodifiableCollection(sections.values());
+  }
+
+  /** Returns ids of users removed from the report mapped to the time of removal. */
+  Map<String, Long> getRemovedUsers() {
+    return removedUsers;
+  }
+
+  /** Returns id of the user with given name or null if there is no such user in the report. */
+  String getUserId(String userName) {
+    return userIdsByName.get(userName);
+  }
+
+  /** Returns ids of users whose info contains workspace with given id. */
+  Set<String> getUserIds(String workspaceId) {
+    return userIdsByWorkspace.getOrDefault(workspaceId, emptySet());
+  }
+
+  private static UserSection keepModified(AuditReportSnapshot previous, UserSection section) {
+    if (previous != null) {
+      final UserSection old = previous.sections.get(section.userId);
+      if (old != null && old.info.equals(section.info)) {
+        return new UserSection(
+            section.userId, section.userName, section.info, section.workspaceIds, old.modified);
+      }
+    }
+    return section;
+  }
+
+  private static void putAliveRemovedUsers(
+      AuditReportSnapshot previous, Map<String, Long> removedUsers, long now) {
+    for (Map.Entry<String, Long> entry : previous.removedUsers.entrySet()) {
+      if (now - entry.getValue() < REMOVED_USERS_TTL_MS) {
+        removedUsers.put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /** Info of the user as it is printed into the audit report. */
+  static final class UserSection {
+    final String userId;
+    final String userName;
+    final String info;
+    final Set<String> workspaceIds;
+    final long modified;
+
+    UserSection(
+        String userId, String userName, String info, Set<String> workspaceIds, long modified) {
+      this.userId = userId;
+      this.userName = userName;
+      this.info = info;
+      this.workspaceIds = workspaceIds;
+      this.modified = modified;
+    }
+  }
+}
@@ -10,23 +10,26 @@
  */
 package com.codenvy.api.audit.server;
 
-import static java.nio.file.Files.copy;
-
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
-import org.eclipse.che.api.core.ConflictException;
-import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.api.core.ApiException;
+import org.eclipse.che.api.core.BadRequestException;
 import org.eclipse.che.api.core.rest.Service;
 
 /**
@@ -51,24 +54,38 @@ public class AuditService extends Service {
   @ApiResponses(
     value = {
       @ApiResponse(code = 200, message = "OK"),
+      @ApiResponse(code = 400, message = "Negative time is given"),
       @ApiResponse(code = 500, message = "Server error")
     }
   )
-  public Response downloadReport() throws ServerException, ConflictException, IOException {
-    java.nio.file.Path report = auditManager.generateAuditReport();
-
+  public Response downloadReport(
+      @ApiParam("Time in milliseconds, when set only users changed since this time are reported")
+          @QueryParam("since")
+          Long since)
+      throws ApiException {
+    if (since != null && since < 0) {
+      throw new BadRequestException("Time must not be negative");
+    }
+    // report is built before the response is committed, so its failure is reported as an error
+    AuditReportSnapshot snapshot = auditManager.getSnapshot();
     StreamingOutput stream =
         outputStream -> {
+          Writer writer =
+              new BufferedWriter(new OutputStreamWriter(outputStream, Charset.defaultCharset()));
           try {
-            copy(report, outputStream);
-          } finally {
-            auditManager.deleteReportDirectory(report);
+            if (since == null) {
+              auditManager.writeAuditReport(snapshot, writer);
+            } else {
+              auditManager.writeAuditReport(snapshot, writer, since);
+            }
+          } catch (ApiException exception) {
+            throw new IOException(exception.getLocalizedMessage(), exception);
           }
+          writer.flush();
         };
 
     return Response.ok(stream, MediaType.TEXT_PLAIN)
-        .header("Content-Length", String.valueOf(Files.size(report)))
-        .header("Content-Disposition", "attachment; filename=" + report.getFileName().toString())
+        .header("Content-Disposition", "attachment; filename=" + AuditManager.getReportFileName())
         .build();
   }
 }
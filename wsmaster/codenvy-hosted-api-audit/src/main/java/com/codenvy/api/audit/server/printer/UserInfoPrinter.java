@@ -13,7 +13,7 @@ package com.codenvy.api.audit.server.printer;
 import static com.google.common.collect.ComparisonChain.start;
 import static java.util.Collections.sort;
 
-import java.nio.file.Path;
+import java.io.Writer;
 import java.util.List;
 import java.util.Map;
 import org.eclipse.che.api.core.ServerException;
@@ -41,13 +41,13 @@ public class UserInfoPrinter extends Printer {
   private Map<String, AbstractPermissions> wsPermissions;
 
   /**
-   * @param auditReport file of audit report
+   * @param auditReport writer of the audit report
    * @param user information about user collected in {@link UserImpl} object
    * @param workspaces list of workspaces that are related to given user
    * @param wsPermissions map of permissions to workspaces
    */
   public UserInfoPrinter(
-      Path auditReport,
+      Writer auditReport,
       UserImpl user,
       List<WorkspaceImpl> workspaces,
       Map<String, AbstractPermissions> wsPermissions) {
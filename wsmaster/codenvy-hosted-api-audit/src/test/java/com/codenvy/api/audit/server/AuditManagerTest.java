@@ -10,19 +10,29 @@
  */
 package com.codenvy.api.audit.server;
 
-import static java.nio.file.Files.createTempFile;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
-import static org.apache.commons.io.FileUtils.readFileToString;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 
-import java.nio.file.Path;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.che.api.core.NotFoundException;
 import org.eclipse.che.api.core.Page;
 import org.eclipse.che.api.core.ServerException;
 import org.eclipse.che.api.user.server.UserManager;
@@ -47,8 +57,6 @@ import org.testng.annotations.Test;
 @Listeners(value = MockitoTestNGListener.class)
 public class AuditManagerTest {
 
-  private Path auditReport;
-
   @Mock private UserManager userManager;
   @Mock private WorkspaceManager workspaceManager;
   @Mock private PermissionsManager permissionsManager;
@@ -56,12 +64,14 @@ public class AuditManagerTest {
   @Mock private WorkspaceImpl workspace2;
 
   private AuditManager auditManager;
+  private long now;
 
   @BeforeMethod
   public void setUp() throws Exception {
-    auditReport = createTempFile("report", ".txt");
-
-    auditManager = new AuditManager(userManager, workspaceManager, permissionsManager);
+    now = 1000;
+    auditManager =
+        spy(new AuditManager(userManager, workspaceManager, permissionsManager, 4, 30, 3600));
+    doAnswer(invocation -> now).when(auditManager).currentTimeMillis();
 
     // User
     UserImpl user1 = mock(UserImpl.class);
@@ -72,6 +82,8 @@ public class AuditManagerTest {
     when(user2.getId()).thenReturn("User2Id");
     when(user1.getName()).thenReturn("User1");
     when(user2.getName()).thenReturn("User2");
+    when(userManager.getById("User1Id")).thenReturn(user1);
+    when(userManager.getById("User2Id")).thenReturn(user2);
     // Workspace config
     WorkspaceConfigImpl ws1config = mock(WorkspaceConfigImpl.class);
     WorkspaceConfigImpl ws2config = mock(WorkspaceConfigImpl.class);
@@ -114,25 +126,24 @@ public class AuditManagerTest {
     Page page = mock(Page.class);
     when(page.getItems()).thenReturn(asList(user1, user2));
     when(page.hasNextPage()).thenReturn(false);
-    when(userManager.getAll(1, 0)).thenReturn(page);
-    when(userManager.getAll(30, 0)).thenReturn(page);
+    when(userManager.getAll(anyInt(), eq(0L))).thenReturn(page);
 
     when(userManager.getTotalCount()).thenReturn(2L);
   }
 
   @AfterMethod
-  public void tearDown() throws Exception {
-    auditManager.deleteReportDirectory(auditReport);
+  public void tearDown() {
+    auditManager.shutdown();
   }
 
   @Test
   public void shouldReturnFullAuditReport() throws Exception {
     // when
-    auditReport = auditManager.generateAuditReport();
+    String report = generateReport();
 
     // then
     assertEquals(
-        readFileToString(auditReport.toFile()),
+        report,
         "Number of users: 2\n"
             + "user@email.com is owner of 1 workspace and has permissions in 2 workspaces\n"
             + "   └ Workspace1Name, is owner: true, permissions: [read, use, run, configure, setPermissions, delete]\n"
@@ -154,11 +165,11 @@ public class AuditManagerTest {
         .thenReturn(asList(workspace1, workspace2));
 
     // when
-    auditReport = auditManager.generateAuditReport();
+    String report = generateReport();
 
     // then
     assertEquals(
-        readFileToString(auditReport.toFile()),
+        report,
         "Number of users: 2\n"
             + "user@email.com is owner of 0 workspaces and has permissions in 2 workspaces\n"
             + "   └ Workspace1Name, is owner: false, permissions: [read, use, run, configure, setPermissions, delete]\n"
@@ -176,14 +187,195 @@ public class AuditManagerTest {
         .thenThrow(new ServerException("Failed to retrieve workspaces"));
 
     // when
-    auditReport = auditManager.generateAuditReport();
+    String report = generateReport();
 
     // then
     assertEquals(
-        readFileToString(auditReport.toFile()),
+        report,
         "Number of users: 2\n"
             + "[ERROR] Failed to retrieve the list of related workspaces for user User1Id!\n"
             + "user2@email.com is owner of 1 workspace and has permissions in 1 workspace\n"
             + "   └ Workspace2Name, is owner: true, permissions: [read, use, run, configure, setPermissions, delete]\n");
   }
+
+  @Test
+  public void shouldWriteUsersOfAllPagesInOrder() throws Exception {
+    // given
+    auditManager =
+        new AuditManager(userManager, workspaceManager, permissionsManager, 4, 1, 3600);
+    UserImpl user1 = mock(UserImpl.class);
+    UserImpl user2 = mock(UserImpl.class);
+    when(user1.getEmail()).thenReturn("user@email.com");
+    when(user2.getEmail()).thenReturn("user2@email.com");
+    when(user1.getId()).thenReturn("User1Id");
+    when(user2.getId()).thenReturn("User2Id");
+    when(user1.getName()).thenReturn("User1");
+    when(user2.getName()).thenReturn("User2");
+    Page firstPage = mock(Page.class);
+    Page secondPage = mock(Page.class);
+    when(firstPage.getItems()).thenReturn(singletonList(user1));
+    when(firstPage.hasNextPage()).thenReturn(true);
+    Page.PageRef nextPageRef = mock(Page.PageRef.class);
+    when(nextPageRef.getPageSize()).thenReturn(1);
+    when(nextPageRef.getItemsBefore()).thenReturn(1L);
+    when(firstPage.getNextPageRef()).thenReturn(nextPageRef);
+    when(secondPage.getItems()).thenReturn(singletonList(user2));
+    when(secondPage.hasNextPage()).thenReturn(false);
+    when(userManager.getAll(1, 0)).thenReturn(firstPage);
+    when(userManager.getAll(1, 1)).thenReturn(secondPage);
+    StringWriter report = new StringWriter();
+
+    // when
+    auditManager.writeAuditReport(auditManager.getSnapshot(), report);
+
+    // then
+    assertEquals(
+        report.toString(),
+        "Number of users: 2\n"
+            + "user@email.com is owner of 1 workspace and has permissions in 2 workspaces\n"
+            + "   └ Workspace1Name, is owner: true, permissions: [read, use, run, configure, setPermissions, delete]\n"
+            + "   └ Workspace2Name, is owner: false, permissions: [read, use, run, configure, setPermissions]\n"
+            + "user2@email.com is owner of 1 workspace and has permissions in 1 workspace\n"
+            + "   └ Workspace2Name, is owner: true, permissions: [read, use, run, configure, setPermissions, delete]\n");
+  }
+
+  @Test
+  public void shouldReadAgainOnlyChangedUsers() throws Exception {
+    // given
+    auditManager.getSnapshot();
+    when(workspaceManager.getWorkspaces(eq("User2Id"), eq(false))).thenReturn(new ArrayList<>());
+    auditManager.onUserChanged("User2Id");
+
+    // when
+    String report = generateReport();
+
+    // then
+    assertEquals(
+        report,
+        "Number of users: 2\n"
+            + "user@email.com is owner of 1 workspace and has permissions in 2 workspaces\n"
+            + "   └ Workspace1Name, is owner: true, permissions: [read, use, run, configure, setPermissions, delete]\n"
+            + "   └ Workspace2Name, is owner: false, permissions: [read, use, run, configure, setPermissions]\n"
+            + "user2@email.com is owner of 0 workspaces and has permissions in 0 workspaces\n");
+    verify(workspaceManager).getWorkspaces("User1Id", false);
+    verify(workspaceManager, times(2)).getWorkspaces("User2Id", false);
+  }
+
+  @Test
+  public void shouldReadAgainOwnerAndMembersOfChangedWorkspace() throws Exception {
+    // given
+    auditManager.getSnapshot();
+    auditManager.onWorkspaceChanged("Workspace2Id", "User2");
+
+    // when
+    generateReport();
+
+    // then
+    verify(workspaceManager, times(2)).getWorkspaces("User1Id", false);
+    verify(workspaceManager, times(2)).getWorkspaces("User2Id", false);
+    verify(userManager, never()).getByName(anyString());
+  }
+
+  @Test
+  public void shouldNotReadUsersAgainIfNothingChanged() throws Exception {
+    // given
+    String expected = generateReport();
+
+    // when
+    String report = generateReport();
+
+    // then
+    assertEquals(report, expected);
+    verify(userManager).getTotalCount();
+    verify(workspaceManager).getWorkspaces("User1Id", false);
+    verify(workspaceManager).getWorkspaces("User2Id", false);
+  }
+
+  @Test
+  public void shouldReadAllUsersAgainWhenSnapshotBecomesOlderThanMaxAge() throws Exception {
+    // given
+    auditManager.getSnapshot();
+    now += TimeUnit.SECONDS.toMillis(3600) - 1;
+    auditManager.getSnapshot();
+    verify(workspaceManager).getWorkspaces("User1Id", false);
+
+    // when
+    now += 1;
+    auditManager.getSnapshot();
+
+    // then
+    verify(userManager, times(2)).getAll(anyInt(), eq(0L));
+    verify(workspaceManager, times(2)).getWorkspaces("User1Id", false);
+    verify(workspaceManager, times(2)).getWorkspaces("User2Id", false);
+  }
+
+  @Test
+  public void shouldWriteOnlyUsersChangedAndRemovedSinceGivenTime() throws Exception {
+    // given
+    auditManager.getSnapshot();
+    now = 2000;
+    long since = now;
+    when(userManager.getById("User1Id")).thenThrow(new NotFoundException("User not found"));
+    when(userManager.getTotalCount()).thenReturn(1L);
+    when(workspaceManager.getWorkspaces(eq("User2Id"), eq(false))).thenReturn(new ArrayList<>());
+    auditManager.onUserChanged("User1Id");
+    auditManager.onUserChanged("User2Id");
+    StringWriter report = new StringWriter();
+
+    // when
+    auditManager.writeAuditReport(auditManager.getSnapshot(), report, since);
+
+    // then
+    String date = new SimpleDateFormat("dd-MM-yyyy_hh:mm:ss").format(new Date(since));
+    assertEquals(
+        report.toString(),
+        "Number of users: 1\n"
+            + "\n"
+            + "--- Users changed since "
+            + date
+            + " ---\n"
+            + "user2@email.com is owner of 0 workspaces and has permissions in 0 workspaces\n"
+            + "\n"
+            + "--- Users removed since "
+            + date
+            + " ---\n"
+            + "User1Id\n");
+  }
+
+  @Test
+  public void shouldWaitForReportWhichIsBeingGeneratedByConcurrentRequest() throws Exception {
+    // given
+    auditManager = new AuditManager(userManager, workspaceManager, permissionsManager, 4, 30, 0);
+    CountDownLatch generationStarted = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(userManager.getTotalCount())
+        .thenAnswer(
+            invocation -> {
+              generationStarted.countDown();
+              release.await();
+              return 2L;
+            });
+    FutureTask<String> firstRequest = new FutureTask<>(this::generateReport);
+    FutureTask<String> secondRequest = new FutureTask<>(this::generateReport);
+    new Thread(firstRequest).start();
+    generationStarted.await();
+    Thread secondRequestThread = new Thread(secondRequest);
+    secondRequestThread.start();
+    while (secondRequestThread.getState() != Thread.State.WAITING) {
+      Thread.yield();
+    }
+
+    // when
+    release.countDown();
+
+    // then
+    assertEquals(secondRequest.get(), firstRequest.get());
+    verify(userManager).getTotalCount();
+  }
+
+  private String generateReport() throws Exception {
+    StringWriter report = new StringWriter();
+    auditManager.writeAuditReport(auditManager.getSnapshot(), report);
+    return report.toString();
+  }
 }
@@ -68,7 +68,7 @@ public class AuditServicePermissionsFilterTest {
             .get(SECURE_PATH + "/audit");
 
     assertEquals(response.getStatusCode(), 204);
-    verify(service).downloadReport();
+    verify(service).downloadReport(null);
     verify(subject).checkPermission(SystemDomain.DOMAIN_ID, null, MANAGE_SYSTEM_ACTION);
   }
 
@@ -51,4 +51,13 @@ public interface TicketManager {
    * @return set of access tickets
    */
   Set<AccessTicket> getAccessTickets();
+
+  /**
+   * Get access tickets which were created before given time. Implementations are expected to answer
+   * this without scanning all stored tickets.
+   *
+   * @param time time in milliseconds
+   * @return set of access tickets with creation time less than given one
+   */
+  Set<AccessTicket> getAccessTicketsCreatedBefore(long time);
 }
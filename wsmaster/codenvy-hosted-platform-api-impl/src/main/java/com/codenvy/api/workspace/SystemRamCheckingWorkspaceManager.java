@@ -10,11 +10,13 @@
  */
 package com.codenvy.api.workspace;
 
-import static java.lang.Thread.currentThread;
-
 import com.codenvy.service.system.SystemRamInfoProvider;
+import com.codenvy.service.system.SystemRamReservation;
 import com.google.common.annotations.VisibleForTesting;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -22,14 +24,17 @@ import org.eclipse.che.account.api.AccountManager;
 import org.eclipse.che.api.core.ConflictException;
 import org.eclipse.che.api.core.NotFoundException;
 import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.api.core.model.workspace.Environment;
 import org.eclipse.che.api.core.model.workspace.WorkspaceConfig;
 import org.eclipse.che.api.core.notification.EventService;
+import org.eclipse.che.api.core.notification.EventSubscriber;
 import org.eclipse.che.api.machine.server.spi.SnapshotDao;
 import org.eclipse.che.api.workspace.server.WorkspaceManager;
 import org.eclipse.che.api.workspace.server.WorkspaceRuntimes;
 import org.eclipse.che.api.workspace.server.WorkspaceSharedPool;
 import org.eclipse.che.api.workspace.server.model.impl.WorkspaceImpl;
 import org.eclipse.che.api.workspace.server.spi.WorkspaceDao;
+import org.eclipse.che.api.workspace.shared.dto.event.WorkspaceStatusEvent;
 import org.eclipse.che.commons.annotation.Nullable;
 import org.eclipse.che.multiuser.resource.api.usage.ResourceUsageManager;
 import org.eclipse.che.multiuser.resource.api.usage.ResourcesLocks;
@@ -49,9 +54,11 @@ import org.eclipse.che.multiuser.resource.api.workspace.LimitsCheckingWorkspaceM
 @Singleton
 public class SystemRamCheckingWorkspaceManager extends LimitsCheckingWorkspaceManager {
 
+  private final EventService eventService;
   private final SystemRamInfoProvider systemRamInfoProvider;
-
-  @VisibleForTesting Semaphore startSemaphore;
+  private final EnvironmentRamCalculator environmentRamCalculator;
+  private final ConcurrentMap<String, SystemRamReservation> reservations =
+      new ConcurrentHashMap<>();
 
   @Inject
   public SystemRamCheckingWorkspaceManager(
@@ -65,7 +72,6 @@ public class SystemRamCheckingWorkspaceManager extends LimitsCheckingWorkspaceMa
       WorkspaceSharedPool sharedPool,
       // own injects
       @Named("che.limits.workspace.env.ram") String maxRamPerEnv,
-      @Named("limits.workspace.start.throughput") int maxSameTimeStartWSRequests,
       SystemRamInfoProvider systemRamInfoProvider,
       EnvironmentRamCalculator environmentRamCalculator,
       ResourceUsageManager resourceUsageManager,
@@ -83,10 +89,38 @@ public class SystemRamCheckingWorkspaceManager extends LimitsCheckingWorkspaceMa
         environmentRamCalculator,
         resourceUsageManager,
         resourcesLocks);
+    this.eventService = eventService;
     this.systemRamInfoProvider = systemRamInfoProvider;
+    this.environmentRamCalculator = environmentRamCalculator;
+  }
 
-    if (maxSameTimeStartWSRequests > 0) {
-      this.startSemaphore = new Semaphore(maxSameTimeStartWSRequests);
+  @PostConstruct
+  void subscribe() {
+    eventService.subscribe(
+        new EventSubscriber<WorkspaceStatusEvent>() {
+          @Override
+          public void onEvent(WorkspaceStatusEvent event) {
+            onWorkspaceStatusChanged(event.getWorkspaceId(), event.getEventType());
+          }
+        });
+  }
+
+  /**
+   * Completes RAM reservation of the workspace which has started, so it is removed once system RAM
+   * info reflects the workspace containers, or releases the reservation if the start failed.
+   */
+  @VisibleForTesting
+  void onWorkspaceStatusChanged(String workspaceId, WorkspaceStatusEvent.EventType eventType) {
+    switch (eventType) {
+      case RUNNING:
+        completeReservation(workspaceId, SystemRamReservation::complete);
+        break;
+      case ERROR:
+      case STOPPED:
+        completeReservation(workspaceId, SystemRamReservation::release);
+        break;
+      default:
+        // workspace is still starting or stopping
     }
   }
 
@@ -94,14 +128,19 @@ public class SystemRamCheckingWorkspaceManager extends LimitsCheckingWorkspaceMa
   public WorkspaceImpl startWorkspace(
       String workspaceId, @Nullable String envName, @Nullable Boolean restore)
       throws NotFoundException, ServerException, ConflictException {
-    return checkSystemRamLimitAndPropagateLimitedThroughputStart(
+    final WorkspaceConfig config = getWorkspace(workspaceId).getConfig();
+    return checkSystemRamLimitAndPropagateStart(
+        workspaceId,
+        getEnvironmentRam(config, envName),
         () -> super.startWorkspace(workspaceId, envName, restore));
   }
 
   @Override
   public WorkspaceImpl startWorkspace(WorkspaceConfig config, String namespace, boolean isTemporary)
       throws ServerException, NotFoundException, ConflictException {
-    return checkSystemRamLimitAndPropagateLimitedThroughputStart(
+    return checkSystemRamLimitAndPropagateStart(
+        null,
+        getEnvironmentRam(config, null),
         () -> super.startWorkspace(config, namespace, isTemporary));
   }
 
@@ -117,49 +156,65 @@ public class SystemRamCheckingWorkspaceManager extends LimitsCheckingWorkspaceMa
   }
 
   /**
-   * One of the checks in {@link #checkSystemRamLimitAndPropagateStart(WorkspaceCallback)} is needed
-   * to deny starting workspace, if system RAM limit exceeded. This check may be slow because it is
-   * based on request to swarm for memory amount allocated on all nodes, but it can't be performed
-   * more than specified times at the same time, and the semaphore is used to control that. The
-   * semaphore is a trade off between speed and risk to exceed system RAM limit. In the worst case
-   * specified number of permits to start workspace can happen at the same time after the actually
-   * system limit allows to start only one workspace, all permits will be allowed to start
-   * workspace. If more than specified number of permits to start workspace happens, they will wait
-   * in a queue. limits.workspace.start.throughput property configures how many permits can be
-   * handled at the same time.
+   * Checks that starting workspace won't exceed system RAM limit and reserves RAM of the starting
+   * environment, so concurrently starting workspaces are checked against RAM which is not yet
+   * reflected in system RAM info. Then, if previous check is passed, checks that starting workspace
+   * won't exceed user's started workspaces number limit. Throws {@link LimitExceededException} in
+   * the case of constraints violation, otherwise performs {@code callback.call()} and returns its
+   * result. Reserved RAM is released if the callback fails, otherwise it is kept until the
+   * workspace is started or fails to start.
+   *
+   * <p>When id of the starting workspace is known in advance the reservation is registered before
+   * the callback is called, so status events published while the callback is still running find it.
+   * Otherwise it is registered once the callback returns and reservations of workspaces which
+   * finished starting before that expire after configured time.
+   *
+   * <p>System RAM info is cached and refreshed in background, so the check is cheap and doesn't
+   * need to be throttled.
    */
   @VisibleForTesting
-  <T extends WorkspaceImpl> T checkSystemRamLimitAndPropagateLimitedThroughputStart(
-      WorkspaceCallback<T> callback) throws ServerException, NotFoundException, ConflictException {
-    if (startSemaphore == null) {
-      return checkSystemRamLimitAndPropagateStart(callback);
-    } else {
-      try {
-        startSemaphore.acquire();
-        return checkSystemRamLimitAndPropagateStart(callback);
-      } catch (InterruptedException e) {
-        currentThread().interrupt();
-        throw new ServerException(e.getMessage(), e);
-      } finally {
-        startSemaphore.release();
+  <T extends WorkspaceImpl> T checkSystemRamLimitAndPropagateStart(
+      @Nullable String workspaceId, long environmentRam, WorkspaceCallback<T> callback)
+      throws ServerException, NotFoundException, ConflictException {
+    final SystemRamReservation reservation = systemRamInfoProvider.tryReserve(environmentRam);
+    if (reservation == null) {
+      throw new LimitExceededException(
+          "Low RAM. Your workspace cannot be started until the system has more RAM available.");
+    }
+
+    if (workspaceId != null) {
+      reservations.put(workspaceId, reservation);
+    }
+    final T workspace;
+    try {
+      workspace = callback.call();
+    } catch (ServerException | NotFoundException | ConflictException | RuntimeException e) {
+      if (workspaceId == null || reservations.remove(workspaceId, reservation)) {
+        reservation.release();
       }
+      throw e;
+    }
+    if (workspaceId == null) {
+      reservations.put(workspace.getId(), reservation);
     }
+    return workspace;
   }
 
-  /**
-   * Checks that starting workspace won't exceed system RAM limit. Then, if previous check is
-   * passed, checks that starting workspace won't exceed user's started workspaces number limit.
-   * Throws {@link LimitExceededException} in the case of constraints violation, otherwise performs
-   * {@code callback.call()} and returns its result.
-   */
-  @VisibleForTesting
-  <T extends WorkspaceImpl> T checkSystemRamLimitAndPropagateStart(WorkspaceCallback<T> callback)
-      throws ServerException, NotFoundException, ConflictException {
-    if (systemRamInfoProvider.getSystemRamInfo().isSystemRamLimitExceeded()) {
-      throw new LimitExceededException(
-          "Low RAM. Your workspace cannot be started until the system has more RAM available.");
+  private void completeReservation(String workspaceId, Consumer<SystemRamReservation> action) {
+    final SystemRamReservation reservation = reservations.remove(workspaceId);
+    if (reservation != null) {
+      action.accept(reservation);
     }
+  }
 
-    return callback.call();
+  /** Returns RAM of the environment which is going to be started in Bytes. */
+  private long getEnvironmentRam(WorkspaceConfig config, @Nullable String envName)
+      throws ServerException {
+    final Environment environment =
+        config.getEnvironments().get(envName == null ? config.getDefaultEnv() : envName);
+    if (environment == null) {
+      return 0;
+    }
+    return environmentRamCalculator.calculate(environment) * 1024 * 1024;
   }
 }
@@ -10,26 +10,25 @@
  */
 package com.codenvy.api.workspace;
 
+import static org.eclipse.che.api.workspace.shared.dto.event.WorkspaceStatusEvent.EventType.ERROR;
+import static org.eclipse.che.api.workspace.shared.dto.event.WorkspaceStatusEvent.EventType.RUNNING;
+import static org.eclipse.che.api.workspace.shared.dto.event.WorkspaceStatusEvent.EventType.STARTING;
+import static org.eclipse.che.api.workspace.shared.dto.event.WorkspaceStatusEvent.EventType.STOPPED;
 import static org.eclipse.che.commons.lang.Size.parseSize;
-import static org.mockito.Matchers.anyObject;
-import static org.mockito.Mockito.doAnswer;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
-import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
 
 import com.codenvy.api.workspace.SystemRamCheckingWorkspaceManager.WorkspaceCallback;
-import com.codenvy.service.system.SystemRamInfo;
 import com.codenvy.service.system.SystemRamInfoProvider;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
+import com.codenvy.service.system.SystemRamReservation;
 import org.eclipse.che.account.shared.model.Account;
 import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.api.workspace.server.model.impl.WorkspaceImpl;
 import org.eclipse.che.api.workspace.server.spi.WorkspaceDao;
 import org.eclipse.che.multiuser.resource.api.usage.ResourceUsageManager;
 import org.eclipse.che.multiuser.resource.api.usage.tracker.EnvironmentRamCalculator;
@@ -52,11 +51,15 @@ public class SystemRamCheckingWorkspaceManagerTest {
 
   public static final String NAMESPACE = "namespace";
   public static final String ACCOUNT_ID = "accountId";
+  private static final String WORKSPACE_ID = "workspace123";
+  private static final long RAM = parseSize("2 GiB");
   @Mock private WorkspaceDao workspaceDao;
   @Mock private SystemRamInfoProvider systemRamInfoProvider;
   @Mock private EnvironmentRamCalculator environmentRamCalculator;
   @Mock private Account account;
   @Mock private ResourceUsageManager resourceUsageManager;
+  @Mock private SystemRamReservation reservation;
+  @Mock private WorkspaceImpl workspace;
 
   @Test(
     expectedExceptions = LimitExceededException.class,
@@ -64,123 +67,151 @@ public class SystemRamCheckingWorkspaceManagerTest {
         "Low RAM. Your workspace cannot be started until the system has more RAM available."
   )
   public void shouldNotBeAbleToStartNewWorkspaceIfSystemRamLimitIsExceeded() throws Exception {
-    when(systemRamInfoProvider.getSystemRamInfo())
-        .thenReturn(new SystemRamInfo(parseSize("2.95 GiB"), parseSize("3 GiB")));
+    when(systemRamInfoProvider.tryReserve(anyLong())).thenReturn(null);
     final SystemRamCheckingWorkspaceManager manager =
         managerBuilder().setSystemRamInfoProvider(systemRamInfoProvider).build();
 
-    manager.checkSystemRamLimitAndPropagateStart(null);
+    manager.checkSystemRamLimitAndPropagateStart(null, RAM, null);
   }
 
   @Test
   public void shouldCallStartCallbackIfEverythingIsOkayWithSystemRamLimits() throws Exception {
-    final WorkspaceCallback callback = mock(WorkspaceCallback.class);
+    final WorkspaceCallback callback = mockCallback();
     final SystemRamCheckingWorkspaceManager manager = managerBuilder().build();
 
-    manager.checkSystemRamLimitAndPropagateStart(callback);
+    manager.checkSystemRamLimitAndPropagateStart(null, RAM, callback);
 
     verify(callback).call();
   }
 
   @Test
-  public void shouldAcquireAndReleaseSemaphoreIfThroughputPropertyIsMoreThanZero()
-      throws Exception {
-    final SystemRamCheckingWorkspaceManager manager = managerBuilder().build();
-    Semaphore semaphore = mock(Semaphore.class);
-    WorkspaceCallback callback = mock(WorkspaceCallback.class);
-    manager.startSemaphore = semaphore;
+  public void shouldReserveRamOfStartingEnvironment() throws Exception {
+    when(systemRamInfoProvider.tryReserve(anyLong())).thenReturn(reservation);
+    final WorkspaceCallback callback = mockCallback();
+    final SystemRamCheckingWorkspaceManager manager =
+        managerBuilder().setSystemRamInfoProvider(systemRamInfoProvider).build();
 
-    manager.checkSystemRamLimitAndPropagateLimitedThroughputStart(callback);
+    manager.checkSystemRamLimitAndPropagateStart(null, RAM, callback);
 
-    verify(semaphore).acquire();
-    verify(semaphore).release();
+    verify(systemRamInfoProvider).tryReserve(RAM);
+    verify(reservation, never()).release();
+    verify(reservation, never()).complete();
   }
 
-  @Test(expectedExceptions = Exception.class)
-  public void
-      shouldAcquireAndReleaseSemaphoreIfThroughputPropertyIsMoreThanZeroAndExceptionHappened()
-          throws Exception {
-    final SystemRamCheckingWorkspaceManager manager = managerBuilder().build();
-    Semaphore semaphore = mock(Semaphore.class);
-    WorkspaceCallback callback = mock(WorkspaceCallback.class);
-    manager.startSemaphore = semaphore;
-    doThrow(new Exception()).when(manager).checkSystemRamLimitAndPropagateStart(anyObject());
+  @Test
+  public void shouldCompleteReservationWhenWorkspaceIsStarted() throws Exception {
+    when(systemRamInfoProvider.tryReserve(anyLong())).thenReturn(reservation);
+    final SystemRamCheckingWorkspaceManager manager =
+        managerBuilder().setSystemRamInfoProvider(systemRamInfoProvider).build();
+    manager.checkSystemRamLimitAndPropagateStart(null, RAM, mockCallback());
 
-    manager.checkSystemRamLimitAndPropagateLimitedThroughputStart(callback);
+    manager.onWorkspaceStatusChanged(WORKSPACE_ID, STARTING);
+    verify(reservation, never()).complete();
+    manager.onWorkspaceStatusChanged(WORKSPACE_ID, RUNNING);
+    manager.onWorkspaceStatusChanged(WORKSPACE_ID, STOPPED);
 
-    verify(semaphore).acquire();
-    verify(semaphore).release();
+    verify(reservation).complete();
+    verify(reservation, never()).release();
   }
 
   @Test
-  public void shouldSetSemaphoreToNullIfThroughputPropertyIsZero() throws Exception {
+  public void shouldReleaseReservationWhenWorkspaceStartFailedAsynchronously() throws Exception {
+    when(systemRamInfoProvider.tryReserve(anyLong())).thenReturn(reservation);
     final SystemRamCheckingWorkspaceManager manager =
-        managerBuilder().setMaxSameTimeStartWSRequests(0).build();
-    WorkspaceCallback callback = mock(WorkspaceCallback.class);
+        managerBuilder().setSystemRamInfoProvider(systemRamInfoProvider).build();
+    manager.checkSystemRamLimitAndPropagateStart(null, RAM, mockCallback());
 
-    manager.checkSystemRamLimitAndPropagateLimitedThroughputStart(callback);
+    manager.onWorkspaceStatusChanged(WORKSPACE_ID, ERROR);
+    manager.onWorkspaceStatusChanged(WORKSPACE_ID, STOPPED);
 
-    assertNull(manager.startSemaphore);
+    verify(reservation).release();
+    verify(reservation, never()).complete();
   }
 
   @Test
-  public void shouldSetSemaphoreToNullIfThroughputPropertyIsLessThenZero() throws Exception {
+  public void shouldReleaseReservedRamIfWorkspaceFailedToStart() throws Exception {
+    when(systemRamInfoProvider.tryReserve(anyLong())).thenReturn(reservation);
+    final WorkspaceCallback callback = mock(WorkspaceCallback.class);
+    when(callback.call()).thenThrow(new ServerException("Start failed"));
+    final SystemRamCheckingWorkspaceManager manager =
+        managerBuilder().setSystemRamInfoProvider(systemRamInfoProvider).build();
+
+    try {
+      manager.checkSystemRamLimitAndPropagateStart(null, RAM, callback);
+      fail("Exception is expected");
+    } catch (ServerException expected) {
+      verify(reservation).release();
+    }
+  }
+
+  @Test
+  public void shouldReleaseReservationWhenWorkspaceStartFailsBeforeStartCallbackReturns()
+      throws Exception {
+    when(systemRamInfoProvider.tryReserve(anyLong())).thenReturn(reservation);
     final SystemRamCheckingWorkspaceManager manager =
-        managerBuilder().setMaxSameTimeStartWSRequests(-1).build();
-    WorkspaceCallback callback = mock(WorkspaceCallback.class);
+        managerBuilder().setSystemRamInfoProvider(systemRamInfoProvider).build();
+    final WorkspaceCallback callback = mock(WorkspaceCallback.class);
+    when(callback.call())
+        .thenAnswer(
+            invocation -> {
+              manager.onWorkspaceStatusChanged(WORKSPACE_ID, ERROR);
+              return workspace;
+            });
+
+    manager.checkSystemRamLimitAndPropagateStart(WORKSPACE_ID, RAM, callback);
 
-    manager.checkSystemRamLimitAndPropagateLimitedThroughputStart(callback);
+    verify(reservation).release();
+    verify(reservation, never()).complete();
+  }
 
-    assertNull(manager.startSemaphore);
+  @Test
+  public void shouldCompleteReservationWhenWorkspaceIsStartedBeforeStartCallbackReturns()
+      throws Exception {
+    when(systemRamInfoProvider.tryReserve(anyLong())).thenReturn(reservation);
+    final SystemRamCheckingWorkspaceManager manager =
+        managerBuilder().setSystemRamInfoProvider(systemRamInfoProvider).build();
+    final WorkspaceCallback callback = mock(WorkspaceCallback.class);
+    when(callback.call())
+        .thenAnswer(
+            invocation -> {
+              manager.onWorkspaceStatusChanged(WORKSPACE_ID, RUNNING);
+              return workspace;
+            });
+
+    manager.checkSystemRamLimitAndPropagateStart(WORKSPACE_ID, RAM, callback);
+    manager.onWorkspaceStatusChanged(WORKSPACE_ID, STOPPED);
+
+    verify(reservation).complete();
+    verify(reservation, never()).release();
   }
 
-  @Test(timeOut = 3000)
-  public void shouldPermitToCheckRamOnlyForFiveThreadsAtTheSameTime() throws Exception {
+  @Test
+  public void shouldReleaseReservationOnceIfWorkspaceFailedToStartAfterErrorEvent()
+      throws Exception {
+    when(systemRamInfoProvider.tryReserve(anyLong())).thenReturn(reservation);
     final SystemRamCheckingWorkspaceManager manager =
-        managerBuilder().setMaxSameTimeStartWSRequests(5).build();
-    /*
-     The count-down latch is needed to reach the throughput limit by acquiring RAM check permits.
-     The lath is configured to 6 invocations: 5 (number of allowed same time requests) + 1 for main thread
-     to be able to release the throughput limit.
-    */
-    final CountDownLatch invokeProcessLatch = new CountDownLatch(6);
-    // Pause 5 threads after they will acquire all permits to check RAM.
-    doAnswer(
-            invocationOnMock -> {
-              invokeProcessLatch.countDown();
-              invokeProcessLatch.await();
-              return null;
-            })
-        .when(manager)
-        .checkSystemRamLimitAndPropagateStart(anyObject());
-    Runnable runnable =
-        () -> {
-          try {
-            final WorkspaceCallback callback = mock(WorkspaceCallback.class);
-            manager.checkSystemRamLimitAndPropagateLimitedThroughputStart(callback);
-          } catch (Exception ignored) {
-          }
-        };
-    // Run 7 threads (more than number of allowed same time requests) that want to request RAM check
-    // at the same time.
-    ExecutorService executor = Executors.newFixedThreadPool(7);
-    executor.submit(runnable);
-    executor.submit(runnable);
-    executor.submit(runnable);
-    executor.submit(runnable);
-    executor.submit(runnable);
-    executor.submit(runnable);
-    executor.submit(runnable);
-
-    // Wait for throughput limit will be reached and check that RAM check was performed only in
-    // allowed number of threads.
-    verify(manager, timeout(300).times(5)).checkSystemRamLimitAndPropagateStart(anyObject());
-
-    // Execute paused threads to release the throughput limit for other threads.
-    invokeProcessLatch.countDown();
-    // Wait for throughput limit will be released and check that RAM check was performed in other
-    // threads.
-    verify(manager, timeout(300).times(7)).checkSystemRamLimitAndPropagateStart(anyObject());
+        managerBuilder().setSystemRamInfoProvider(systemRamInfoProvider).build();
+    final WorkspaceCallback callback = mock(WorkspaceCallback.class);
+    when(callback.call())
+        .thenAnswer(
+            invocation -> {
+              manager.onWorkspaceStatusChanged(WORKSPACE_ID, ERROR);
+              throw new ServerException("Start failed");
+            });
+
+    try {
+      manager.checkSystemRamLimitAndPropagateStart(WORKSPACE_ID, RAM, callback);
+      fail("Exception is expected");
+    } catch (ServerException expected) {
+      verify(reservation).release();
+    }
+  }
+
+  private WorkspaceCallback mockCallback() throws Exception {
+    final WorkspaceCallback callback = mock(WorkspaceCallback.class);
+    when(workspace.getId()).thenReturn(WORKSPACE_ID);
+    when(callback.call()).thenReturn(workspace);
+    return callback;
   }
 
   private static ManagerBuilder managerBuilder() throws ServerException {
@@ -189,15 +220,11 @@ public class SystemRamCheckingWorkspaceManagerTest {
 
   private static class ManagerBuilder {
 
-    private int maxSameTimeStartWSRequests;
     private SystemRamInfoProvider systemRamInfoProvider;
 
     ManagerBuilder() throws ServerException {
-      maxSameTimeStartWSRequests = 0;
-
       systemRamInfoProvider = mock(SystemRamInfoProvider.class);
-      when(systemRamInfoProvider.getSystemRamInfo())
-          .thenReturn(new SystemRamInfo(0, parseSize("3 GiB")));
+      when(systemRamInfoProvider.tryReserve(anyLong())).thenReturn(SystemRamReservation.NONE);
     }
 
     public SystemRamCheckingWorkspaceManager build() {
@@ -212,18 +239,12 @@ public class SystemRamCheckingWorkspaceManagerTest {
               null,
               null,
               "10gb",
-              maxSameTimeStartWSRequests,
               systemRamInfoProvider,
               null,
               null,
               null));
     }
 
-    ManagerBuilder setMaxSameTimeStartWSRequests(int maxSameTimeStartWSRequests) {
-      this.maxSameTimeStartWSRequests = maxSameTimeStartWSRequests;
-      return this;
-    }
-
     ManagerBuilder setSystemRamInfoProvider(SystemRamInfoProvider systemRamInfoProvider) {
       this.systemRamInfoProvider = systemRamInfoProvider;
       return this;
@@ -54,6 +54,11 @@ public class DestroySessionListener implements HttpSessionListener {
           // notify sso server to unregistered current client
           client.unregisterClient(principal.getToken(), principal.getClientUrl());
         }
+        // client is not registered anymore, so it won't be notified about logout of this token
+        SubjectCache subjectCache = getInstance(SubjectCache.class, servletContext);
+        if (subjectCache != null) {
+          subjectCache.invalidate(principal.getToken());
+        }
       }
 
       sessionStore.removeSessionById(se.getSession().getId());
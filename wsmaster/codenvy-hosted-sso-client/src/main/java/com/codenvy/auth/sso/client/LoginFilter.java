@@ -47,6 +47,7 @@ public class LoginFilter implements Filter {
   @Inject protected RequestTokenExtractor tokenExtractor;
   @Inject protected ClientUrlExtractor clientUrlExtractor;
   @Inject protected ServerClient ssoServerClient;
+  @Inject protected SubjectCache subjectCache;
 
   @Inject
   @Named("auth.sso.login_page_url")
@@ -97,11 +98,14 @@ public class LoginFilter implements Filter {
 
       HttpSession session;
       if (token != null) {
-        // TODO thread safety
         session = sessionStore.getSession(token);
         if (session == null) {
           session = httpReq.getSession();
-          sessionStore.saveSession(token, session);
+          HttpSession existing = sessionStore.saveSessionIfAbsent(token, session);
+          if (existing != null) {
+            // concurrent request with the same token has already associated its session
+            session = existing;
+          }
         }
 
         final SsoClientPrincipal principal = getPrincipal(session, token, clientUrl);
@@ -130,7 +134,13 @@ public class LoginFilter implements Filter {
         sessionStore.removeSessionByToken(principal.getToken());
         sessionStore.saveSession(token, session);
       }
-      Subject subject = ssoServerClient.getSubject(token, clientUrl);
+      Subject subject = subjectCache.get(token, clientUrl);
+      if (subject == null) {
+        subject = ssoServerClient.getSubject(token, clientUrl);
+        if (subject != null) {
+          subjectCache.put(token, clientUrl, subject);
+        }
+      }
       if (subject != null) {
         principal = new SsoClientPrincipal(token, clientUrl, subject);
         session.setAttribute("principal", principal);
@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 public class SSOLogoutServlet extends HttpServlet {
   private static final Logger LOG = LoggerFactory.getLogger(SSOLogoutServlet.class);
   @Inject protected SessionStore sessionStore;
+  @Inject protected SubjectCache subjectCache;
 
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp)
@@ -40,6 +41,7 @@ public class SSOLogoutServlet extends HttpServlet {
       resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Token is not set");
       return;
     }
+    subjectCache.invalidate(token);
     HttpSession session = sessionStore.removeSessionByToken(token);
     if (session != null) {
       session.removeAttribute("principal");
@@ -10,9 +10,10 @@
  */
 package com.codenvy.auth.sso.client;
 
-import java.util.HashSet;
+import com.google.common.util.concurrent.Striped;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 import javax.inject.Singleton;
 import javax.servlet.http.HttpSession;
 
@@ -20,44 +21,88 @@ import javax.servlet.http.HttpSession;
  * Storage HttpSession's. Used to transfer relation's between session and token inside of SSO
  * client.
  *
+ * <p>Lookups by token are lock free. Modifications of the token and session indexes are guarded by
+ * a lock striped by session id, so only operations on the same session are serialized.
+ *
  * @author Sergii Kabashniuk
  */
 @Singleton
 public class SessionStore {
+  private static final int LOCK_STRIPES = 64;
+
   private final ConcurrentHashMap<String, HttpSession> sessionsByToken;
   private final ConcurrentHashMap<String, HttpSession> sessionsById;
   private final ConcurrentHashMap<String, Set<String>> tokensBySessionId;
+  private final Striped<Lock> sessionLocks;
 
   public SessionStore() {
     this.sessionsByToken = new ConcurrentHashMap<>();
     this.sessionsById = new ConcurrentHashMap<>();
     this.tokensBySessionId = new ConcurrentHashMap<>();
+    this.sessionLocks = Striped.lock(LOCK_STRIPES);
   }
 
-  public synchronized void saveSession(String token, HttpSession session) {
+  public void saveSession(String token, HttpSession session) {
     String sessionId = session.getId();
-    sessionsByToken.put(token, session);
-    sessionsById.putIfAbsent(sessionId, session);
-    Set<String> tokens = tokensBySessionId.get(sessionId);
-    if (tokens == null) {
-      tokens = new HashSet<>();
-      tokensBySessionId.put(sessionId, tokens);
+    Lock lock = sessionLocks.get(sessionId);
+    lock.lock();
+    try {
+      sessionsByToken.put(token, session);
+      index(token, session);
+    } finally {
+      lock.unlock();
     }
-    tokens.add(token);
   }
 
-  public synchronized HttpSession removeSessionByToken(String token) {
+  /**
+   * Associates given session with the token if there is no session associated with it yet.
+   *
+   * @param token authentication token
+   * @param session session to associate with the token
+   * @return session which was already associated with the token or null if given session was saved
+   */
+  public HttpSession saveSessionIfAbsent(String token, HttpSession session) {
+    HttpSession existing = sessionsByToken.get(token);
+    if (existing != null) {
+      return existing;
+    }
+    Lock lock = sessionLocks.get(session.getId());
+    lock.lock();
+    try {
+      existing = sessionsByToken.putIfAbsent(token, session);
+      if (existing == null) {
+        index(token, session);
+      }
+      return existing;
+    } finally {
+      lock.unlock();
+    }
+  }
 
-    HttpSession session = sessionsByToken.remove(token);
-    if (session != null) {
-      String sessionId = session.getId();
+  public HttpSession removeSessionByToken(String token) {
+    HttpSession session = sessionsByToken.get(token);
+    if (session == null) {
+      return null;
+    }
+    String sessionId = session.getId();
+    Lock lock = sessionLocks.get(sessionId);
+    lock.lock();
+    try {
+      if (!sessionsByToken.remove(token, session)) {
+        // token was removed or re-associated concurrently
+        return null;
+      }
       sessionsById.remove(sessionId);
       Set<String> tokens = tokensBySessionId.remove(sessionId);
-      for (String otherToken : tokens) {
-        if (!token.equals(otherToken)) {
-          sessionsByToken.remove(otherToken);
+      if (tokens != null) {
+        for (String otherToken : tokens) {
+          if (!token.equals(otherToken)) {
+            sessionsByToken.remove(otherToken, session);
+          }
         }
       }
+    } finally {
+      lock.unlock();
     }
     return session;
   }
@@ -67,15 +112,28 @@ public class SessionStore {
     return sessionsByToken.get(token);
   }
 
-  public synchronized void removeSessionById(String sessionId) {
-
-    HttpSession session = sessionsById.remove(sessionId);
-    if (session != null) {
-
-      Set<String> tokens = tokensBySessionId.remove(sessionId);
-      for (String token : tokens) {
-        sessionsByToken.remove(token);
+  public void removeSessionById(String sessionId) {
+    Lock lock = sessionLocks.get(sessionId);
+    lock.lock();
+    try {
+      HttpSession session = sessionsById.remove(sessionId);
+      if (session != null) {
+        Set<String> tokens = tokensBySessionId.remove(sessionId);
+        if (tokens != null) {
+          for (String token : tokens) {
+            sessionsByToken.remove(token, session);
+          }
+        }
       }
+    } finally {
+      lock.unlock();
     }
   }
+
+  /** Updates session id indexes, must be called under the lock of the session. */
+  private void index(String token, HttpSession session) {
+    String sessionId = session.getId();
+    sessionsById.putIfAbsent(sessionId, session);
+    tokensBySessionId.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).add(token);
+  }
 }
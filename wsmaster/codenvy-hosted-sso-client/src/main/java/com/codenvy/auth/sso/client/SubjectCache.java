@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.auth.sso.client;
+
+import com.codahale.metrics.annotation.Gauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.che.commons.subject.Subject;
+
+/**
+ * Bounded cache of subjects received from sso server, keyed by authentication token.
+ *
+ * <p>Allows to avoid request to sso server when the same token comes without http session, e.g.
+ * from new browser tab or from API client without cookies. Entry remembers client url it was
+ * received for, because sso server registers client url on each subject request and logout
+ * notification is sent only to registered clients. Entries are invalidated on sso logout and
+ * expire after configured time anyway.
+ */
+@Singleton
+public class SubjectCache {
+  private final long ttlSeconds;
+  private final Cache<String, CachedSubject> cache;
+
+  @Inject
+  public SubjectCache(
+      @Named("auth.sso.client_subject_cache_ttl_seconds") long ttlSeconds,
+      @Named("auth.sso.client_subject_cache_size") long maxSize) {
+    this.ttlSeconds = ttlSeconds;
+    this.cache =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(Math.max(ttlSeconds, 0), TimeUnit.SECONDS)
+            .maximumSize(maxSize)
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Returns cached subject for given token.
+   *
+   * @param token authentication token
+   * @param clientUrl url of client asking the subject
+   * @return cached subject or null if there is no subject for given token and client url
+   */
+  public Subject get(String token, String clientUrl) {
+    CachedSubject cached = cache.getIfPresent(token);
+    if (cached == null || !Objects.equals(cached.clientUrl, clientUrl)) {
+      return null;
+    }
+    return cached.subject;
+  }
+
+  /** Caches subject received from sso server for given token and client url. */
+  public void put(String token, String clientUrl, Subject subject) {
+    if (ttlSeconds > 0) {
+      cache.put(token, new CachedSubject(clientUrl, subject));
+    }
+  }
+
+  /** Removes subject associated with given token. */
+  public void invalidate(String token) {
+    cache.invalidate(token);
+  }
+
+  /** @return number of requests served from the cache */
+  @Gauge(name = "auth.sso.client_subject_cache_hits")
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  /** @return number of requests which were not found in the cache */
+  @Gauge(name = "auth.sso.client_subject_cache_misses")
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  /** @return approximate number of cached subjects */
+  @Gauge(name = "auth.sso.client_subject_cache_size")
+  public long size() {
+    return cache.size();
+  }
+
+  private static class CachedSubject {
+    final String clientUrl;
+    final Subject subject;
+
+    CachedSubject(String clientUrl, Subject subject) {
+      this.clientUrl = clientUrl;
+      this.subject = subject;
+    }
+  }
+}
@@ -67,6 +67,7 @@ public class LoginFilterTest {
   @Mock ClientUrlExtractor clientUrlExtractor;
   @Spy RequestWrapper requestWrapper = new RequestWrapper();
   @Mock ServerClient ssoServerClient;
+  @Mock SubjectCache subjectCache;
   @Mock HttpServletResponse response;
   @Mock HttpSession session;
   @Mock FilterChain chain;
@@ -311,6 +312,43 @@ public class LoginFilterTest {
     verify(chain).doFilter(any(ServletRequest.class), eq(response));
   }
 
+  @Test
+  public void shouldCacheSubjectReceivedFromSsoServer() throws IOException, ServletException {
+    // given
+    HttpServletRequest request =
+        new MockHttpServletRequest("http://localhost:8080/ws/ws?token=t13f", null, 0, "GET", null);
+    SubjectImpl subject = createSubject("user@domain");
+
+    when(tokenExtractor.getToken(eq(request))).thenReturn("t13f");
+    when(clientUrlExtractor.getClientUrl(eq(request))).thenReturn("http://localhost:8080/ws");
+    when(ssoServerClient.getSubject(eq("t13f"), eq("http://localhost:8080/ws")))
+        .thenReturn(subject);
+    // when
+    filter.doFilter(request, response, chain);
+
+    // then
+    verify(subjectCache).put(eq("t13f"), eq("http://localhost:8080/ws"), eq(subject));
+  }
+
+  @Test
+  public void shouldNotRequestSsoServerIfSubjectIsCached() throws IOException, ServletException {
+    // given
+    HttpServletRequest request =
+        new MockHttpServletRequest("http://localhost:8080/ws/ws?token=t13f", null, 0, "GET", null);
+
+    when(tokenExtractor.getToken(eq(request))).thenReturn("t13f");
+    when(clientUrlExtractor.getClientUrl(eq(request))).thenReturn("http://localhost:8080/ws");
+    when(subjectCache.get(eq("t13f"), eq("http://localhost:8080/ws")))
+        .thenReturn(createSubject("user@domain"));
+    // when
+    filter.doFilter(request, response, chain);
+
+    // then
+    SsoClientPrincipal actual = (SsoClientPrincipal) request.getSession().getAttribute("principal");
+    assertEquals(actual.getName(), "user@domain");
+    verifyNoMoreInteractions(ssoServerClient);
+  }
+
   @Test
   public void shouldBeAbleToReplaceAnonymousWithCorrectUserPrincipal()
       throws IOException, ServletException {
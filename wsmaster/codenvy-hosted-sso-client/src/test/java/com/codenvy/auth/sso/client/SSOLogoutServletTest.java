@@ -33,6 +33,7 @@ public class SSOLogoutServletTest {
 
   @Mock HttpServletResponse response;
   @Mock SessionStore sessionStore;
+  @Mock SubjectCache subjectCache;
 
   @Mock(answer = Answers.RETURNS_DEEP_STUBS)
   HttpSession session;
@@ -60,6 +61,7 @@ public class SSOLogoutServletTest {
     servlet.doPost(request, response);
     // when
     verify(sessionStore).removeSessionByToken("t-12312344");
+    verify(subjectCache).invalidate("t-12312344");
     verifyZeroInteractions(response);
   }
 
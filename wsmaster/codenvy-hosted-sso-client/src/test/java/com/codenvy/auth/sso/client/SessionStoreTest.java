@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.auth.sso.client;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpSession;
+import org.testng.annotations.Test;
+
+public class SessionStoreTest {
+  private static final int ITERATIONS = 200;
+
+  @Test
+  public void shouldRemoveAllTokensOfSessionByToken() {
+    SessionStore store = new SessionStore();
+    HttpSession session = session("s1");
+    store.saveSession("t1", session);
+    store.saveSession("t2", session);
+
+    assertSame(store.removeSessionByToken("t1"), session);
+
+    assertNull(store.getSession("t1"));
+    assertNull(store.getSession("t2"));
+  }
+
+  @Test
+  public void shouldRemoveAllTokensOfSessionById() {
+    SessionStore store = new SessionStore();
+    HttpSession session = session("s1");
+    store.saveSession("t1", session);
+    store.saveSession("t2", session);
+
+    store.removeSessionById("s1");
+
+    assertNull(store.getSession("t1"));
+    assertNull(store.getSession("t2"));
+  }
+
+  @Test
+  public void shouldNotReplaceSessionWhichIsAlreadyAssociatedWithToken() {
+    SessionStore store = new SessionStore();
+    HttpSession first = session("s1");
+    HttpSession second = session("s2");
+
+    assertNull(store.saveSessionIfAbsent("t1", first));
+    assertSame(store.saveSessionIfAbsent("t1", second), first);
+
+    assertSame(store.getSession("t1"), first);
+  }
+
+  @Test
+  public void shouldAssociateSingleSessionWithTokenWhenSavedConcurrently() throws Exception {
+    SessionStore store = new SessionStore();
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (int i = 0; i < ITERATIONS; i++) {
+        String token = "t" + i;
+        List<Callable<HttpSession>> tasks = new ArrayList<>();
+        for (int j = 0; j < threads; j++) {
+          HttpSession candidate = session(token + "-s" + j);
+          tasks.add(
+              () -> {
+                HttpSession existing = store.saveSessionIfAbsent(token, candidate);
+                return existing != null ? existing : candidate;
+              });
+        }
+        HttpSession winner = null;
+        for (Future<HttpSession> future : executor.invokeAll(tasks)) {
+          if (winner == null) {
+            winner = future.get();
+          }
+          assertSame(future.get(), winner);
+        }
+        assertSame(store.getSession(token), winner);
+        store.removeSessionById(winner.getId());
+        assertNull(store.getSession(token));
+      }
+    } finally {
+      executor.shutdownNow();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void shouldKeepIndexesConsistentUnderConcurrentModifications() throws Exception {
+    SessionStore store = new SessionStore();
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (int j = 0; j < threads; j++) {
+        int thread = j;
+        HttpSession[] sessions = new HttpSession[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+          sessions[i] = session("s" + thread + "-" + i);
+        }
+        tasks.add(
+            () -> {
+              for (int i = 0; i < ITERATIONS; i++) {
+                HttpSession session = sessions[i];
+                store.saveSession("t" + thread + "-" + i, session);
+                store.saveSession("t" + thread + "-" + i + "-second", session);
+                if (i % 2 == 0) {
+                  store.removeSessionByToken("t" + thread + "-" + i);
+                } else {
+                  store.removeSessionById(session.getId());
+                }
+              }
+              return null;
+            });
+      }
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    for (int thread = 0; thread < threads; thread++) {
+      assertNull(store.getSession("t" + thread + "-0"));
+      assertNull(store.getSession("t" + thread + "-0-second"));
+      assertNull(store.getSession("t" + thread + "-" + (ITERATIONS - 1) + "-second"));
+    }
+  }
+
+  private static HttpSession session(String id) {
+    HttpSession session = mock(HttpSession.class);
+    when(session.getId()).thenReturn(id);
+    return session;
+  }
+}
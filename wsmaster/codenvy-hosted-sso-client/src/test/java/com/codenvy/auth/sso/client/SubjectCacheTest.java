@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.auth.sso.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.eclipse.che.commons.subject.Subject;
+import org.eclipse.che.commons.subject.SubjectImpl;
+import org.testng.annotations.Test;
+
+public class SubjectCacheTest {
+  private static final String TOKEN = "t13f";
+  private static final String CLIENT_URL = "http://localhost:8080/api";
+
+  private final Subject subject = new SubjectImpl("user", "user123", TOKEN, false);
+
+  @Test
+  public void shouldReturnCachedSubject() {
+    SubjectCache cache = new SubjectCache(60, 10);
+
+    cache.put(TOKEN, CLIENT_URL, subject);
+
+    assertEquals(cache.get(TOKEN, CLIENT_URL), subject);
+    assertEquals(cache.getHitCount(), 1);
+  }
+
+  @Test
+  public void shouldNotReturnSubjectCachedForAnotherClient() {
+    SubjectCache cache = new SubjectCache(60, 10);
+
+    cache.put(TOKEN, CLIENT_URL, subject);
+
+    assertNull(cache.get(TOKEN, "http://localhost:8080/wsagent"));
+  }
+
+  @Test
+  public void shouldNotReturnInvalidatedSubject() {
+    SubjectCache cache = new SubjectCache(60, 10);
+    cache.put(TOKEN, CLIENT_URL, subject);
+
+    cache.invalidate(TOKEN);
+
+    assertNull(cache.get(TOKEN, CLIENT_URL));
+    assertEquals(cache.getMissCount(), 1);
+  }
+
+  @Test
+  public void shouldNotCacheSubjectsIfTtlIsNotPositive() {
+    SubjectCache cache = new SubjectCache(0, 10);
+
+    cache.put(TOKEN, CLIENT_URL, subject);
+
+    assertNull(cache.get(TOKEN, CLIENT_URL));
+  }
+}
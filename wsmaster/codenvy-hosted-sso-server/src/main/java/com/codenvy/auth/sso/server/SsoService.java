@@ -97,7 +97,11 @@ public class SsoService {
     if (accessTicket == null) {
       throw new AuthenticationException("Access token not found or expired.");
     } else {
-      accessTicket.registerClientUrl(clientUrl);
+      if (!accessTicket.getRegisteredClients().contains(clientUrl)) {
+        accessTicket.registerClientUrl(clientUrl);
+        // let ticket manager persist the registration
+        ticketManager.putAccessTicket(accessTicket);
+      }
       User user = userManager.getById(accessTicket.getUserId());
       return DtoFactory.newDto(SubjectDto.class)
           .withName(user.getName())
@@ -117,8 +121,9 @@ public class SsoService {
       ticketManager.removeTicket(token);
     } else {
       AccessTicket accessTicket = ticketManager.getAccessTicket(token);
-      if (accessTicket != null) {
+      if (accessTicket != null && accessTicket.getRegisteredClients().contains(clientUrl)) {
         accessTicket.unRegisterClientUrl(clientUrl);
+        ticketManager.putAccessTicket(accessTicket);
       }
     }
   }
@@ -11,6 +11,7 @@
 package com.codenvy.auth.sso.server.deploy;
 
 import com.codenvy.auth.sso.server.ticket.InMemoryTicketManager;
+import com.codenvy.auth.sso.server.ticket.JournalTicketManager;
 import com.google.inject.AbstractModule;
 
 /**
@@ -19,16 +20,23 @@ import com.google.inject.AbstractModule;
  * @author Sergii Kabashniuk
  */
 public class SsoServerModule extends AbstractModule {
+  /** Value of 'auth.sso.ticket.manager' property which enables journal based ticket manager. */
+  public static final String JOURNAL_TICKET_MANAGER = "journal";
 
   @Override
   protected void configure() {
-    bind(com.codenvy.api.dao.authentication.TicketManager.class).to(InMemoryTicketManager.class);
+    if (JOURNAL_TICKET_MANAGER.equals(System.getProperty("auth.sso.ticket.manager"))) {
+      bind(com.codenvy.api.dao.authentication.TicketManager.class).to(JournalTicketManager.class);
+    } else {
+      bind(com.codenvy.api.dao.authentication.TicketManager.class).to(InMemoryTicketManager.class);
+    }
     bind(com.codenvy.api.dao.authentication.TokenGenerator.class)
         .to(com.codenvy.auth.sso.server.SecureRandomTokenGenerator.class);
     bind(com.codenvy.api.dao.authentication.CookieBuilder.class)
         .to(com.codenvy.auth.sso.server.SsoCookieBuilder.class);
     bind(com.codenvy.auth.sso.server.SsoService.class);
 
+    bind(com.codenvy.auth.sso.server.ticket.SsoLogoutDispatcher.class);
     bind(com.codenvy.auth.sso.server.ticket.AccessTicketInvalidator.class);
     bind(com.codenvy.auth.sso.server.ticket.LogoutOnUserRemoveSubscriber.class).asEagerSingleton();
     bind(org.eclipse.che.commons.auth.AuthenticationExceptionMapper.class);
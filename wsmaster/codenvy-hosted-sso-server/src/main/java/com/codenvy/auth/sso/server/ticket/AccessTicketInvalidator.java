@@ -45,12 +45,10 @@ public class AccessTicketInvalidator extends TimerTask {
   @Override
   public void run() {
 
-    for (AccessTicket accessTicket : ticketManager.getAccessTickets()) {
-      if (System.currentTimeMillis()
-          > accessTicket.getCreationTime() + ticketLifeTimeSeconds * 1000) {
-        LOG.info("Initiate user {} sso logout by timeout", accessTicket.getUserId());
-        ticketManager.removeTicket(accessTicket.getAccessToken());
-      }
+    long expirationBound = System.currentTimeMillis() - ticketLifeTimeSeconds * 1000L;
+    for (AccessTicket accessTicket : ticketManager.getAccessTicketsCreatedBefore(expirationBound)) {
+      LOG.info("Initiate user {} sso logout by timeout", accessTicket.getUserId());
+      ticketManager.removeTicket(accessTicket.getAccessToken());
     }
   }
 
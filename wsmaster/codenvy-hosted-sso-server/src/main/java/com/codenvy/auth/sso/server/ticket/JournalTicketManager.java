@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.auth.sso.server.ticket;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.codahale.metrics.annotation.Gauge;
+import com.codenvy.api.dao.authentication.AccessTicket;
+import com.codenvy.api.dao.authentication.TicketManager;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.che.commons.lang.concurrent.LoggingUncaughtExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of <code>TicketManager</code> which survives restarts of the server.
+ *
+ * <p>All lookups are served by the in-memory structures of {@link InMemoryTicketManager}, while
+ * every modification is queued for the journal file. The journal is appended by a single writer
+ * thread, so logins and logouts never wait for the disk and never contend for a global lock. The
+ * writer drains queued records in batches and forces the journal to the storage device after each
+ * batch, which is the durability point: a crash loses only the records which were queued but not
+ * forced yet. The journal is replayed on start. When the number of records in the journal becomes
+ * much bigger than the number of live tickets, the writer compacts the journal: live tickets are
+ * written to a new file which atomically replaces the old one.
+ *
+ * <p>Journal consists of records of the following format:
+ *
+ * <pre>
+ * PUT:    byte 1, utf token, utf userId, utf authHandlerType, long creationTime,
+ *         int clientsNumber, utf client...
+ * REMOVE: byte 2, utf token
+ * </pre>
+ *
+ * Incomplete or corrupted trailing records, e.g. written during a crash, are discarded on replay.
+ */
+@Singleton
+public class JournalTicketManager extends InMemoryTicketManager {
+  private static final Logger LOG = LoggerFactory.getLogger(JournalTicketManager.class);
+
+  static final String JOURNAL_FILE_NAME = "tickets.journal";
+
+  private static final byte PUT = 1;
+  private static final byte REMOVE = 2;
+
+  private static final int LOCK_STRIPES = 64;
+  private static final int MAX_BATCH_SIZE = 1024;
+  private static final Record STOP = new Record(null);
+
+  private final Path journalFile;
+  private final int compactionThreshold;
+  private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+  private final Object[] locks = new Object[LOCK_STRIPES];
+
+  private FileChannel journal;
+  private Thread writer;
+  private volatile long journalRecords;
+
+  @Inject
+  public JournalTicketManager(
+      SsoLogoutDispatcher logoutDispatcher,
+      @Named("auth.sso.ticket.journal_dir") String journalDir,
+      @Named("auth.sso.ticket.journal_compaction_threshold") int compactionThreshold) {
+    super(logoutDispatcher);
+    this.journalFile = Paths.get(journalDir).resolve(JOURNAL_FILE_NAME);
+    this.compactionThreshold = compactionThreshold;
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  /** Replays journal, opens it for appending and starts the writer. */
+  @PostConstruct
+  public synchronized void start() throws IOException {
+    Files.createDirectories(journalFile.getParent());
+    long start = System.currentTimeMillis();
+    Map<String, AccessTicket> tickets = new LinkedHashMap<>();
+    long validLength = 0;
+    long records = 0;
+    if (Files.exists(journalFile)) {
+      try (CountingInputStream counting =
+              new CountingInputStream(
+                  new BufferedInputStream(Files.newInputStream(journalFile), 64 * 1024));
+          DataInputStream in = new DataInputStream(counting)) {
+        while (true) {
+          try {
+            if (!applyRecord(in, tickets)) {
+              break;
+            }
+          } catch (EOFException e) {
+            break;
+          }
+          records++;
+          validLength = counting.count;
+        }
+      }
+    }
+    for (AccessTicket ticket : tickets.values()) {
+      super.putAccessTicket(ticket);
+    }
+    journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    if (journal.size() > validLength) {
+      LOG.warn(
+          "Journal {} has incomplete trailing records, {} bytes discarded",
+          journalFile,
+          journal.size() - validLength);
+      journal.truncate(validLength);
+      journal.force(true);
+    }
+    journal.position(validLength);
+    journalRecords = records;
+    LOG.info(
+        "Restored {} access tickets from {} journal records in {} ms",
+        tickets.size(),
+        records,
+        System.currentTimeMillis() - start);
+    compactIfNeeded();
+
+    writer =
+        new ThreadFactoryBuilder()
+            .setNameFormat("JournalTicketManager-writer")
+            .setUncaughtExceptionHandler(LoggingUncaughtExceptionHandler.getInstance())
+            .setDaemon(true)
+            .build()
+            .newThread(this::writeRecords);
+    writer.start();
+  }
+
+  /** Writes all the queued records, stops the writer and closes the journal. */
+  @PreDestroy
+  public synchronized void stop() throws IOException {
+    if (writer != null) {
+      queue.add(STOP);
+      try {
+        writer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      writer = null;
+    }
+    if (journal != null) {
+      journal.close();
+      journal = null;
+    }
+  }
+
+  @Override
+  public void putAccessTicket(AccessTicket accessTicket) {
+    if (accessTicket.getUserId() == null) {
+      throw new IllegalArgumentException("Access ticket has no principal or username in principal");
+    }
+    byte[] record = encodePut(accessTicket);
+    // the same token is modified and queued atomically, so the journal keeps the order of changes
+    synchronized (lockFor(accessTicket.getAccessToken())) {
+      super.putAccessTicket(accessTicket);
+      queue.add(new Record(record));
+    }
+  }
+
+  @Override
+  public AccessTicket removeTicket(String accessToken) {
+    if (accessToken == null || getAccessTicket(accessToken) == null) {
+      return null;
+    }
+    byte[] record = encodeRemove(accessToken);
+    synchronized (lockFor(accessToken)) {
+      AccessTicket removed = super.removeTicket(accessToken);
+      if (removed != null) {
+        queue.add(new Record(record));
+      }
+      return removed;
+    }
+  }
+
+  /**
+   * Waits until all the records queued before this call are written and forced to the storage
+   * device.
+   */
+  public void flush() throws InterruptedException {
+    Record marker = new Record(null);
+    queue.add(marker);
+    marker.forced.await();
+  }
+
+  /** @return number of records in the journal. */
+  @Gauge(name = "auth.sso.access_ticket_journal_records")
+  public long getJournalRecords() {
+    return journalRecords;
+  }
+
+  /** @return number of records waiting to be written to the journal. */
+  @Gauge(name = "auth.sso.access_ticket_journal_pending")
+  public int getPendingRecords() {
+    return queue.size();
+  }
+
+  private Object lockFor(String accessToken) {
+    return locks[(accessToken.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+  }
+
+  /** Loop of the writer thread, which is the only one accessing the journal after the start. */
+  private void writeRecords() {
+    List<Record> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    boolean stopped = false;
+    while (!stopped) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        LOG.warn("Writer of access ticket journal {} was interrupted", journalFile);
+        return;
+      }
+      queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+      for (Record record : batch) {
+        if (record == STOP) {
+          stopped = true;
+        } else if (record.data != null) {
+          append(record.data);
+        }
+      }
+      try {
+        journal.force(false);
+      } catch (IOException e) {
+        LOG.error("Not able to force access ticket journal " + journalFile, e);
+      }
+      for (Record record : batch) {
+        record.forced.countDown();
+      }
+      batch.clear();
+      compactIfNeeded();
+    }
+    // records which are queued after the stop are written as well
+    queue.drainTo(batch);
+    for (Record record : batch) {
+      if (record.data != null) {
+        append(record.data);
+      }
+      record.forced.countDown();
+    }
+    try {
+      journal.force(false);
+    } catch (IOException e) {
+      LOG.error("Not able to force access ticket journal " + journalFile, e);
+    }
+  }
+
+  /** Appends record to the journal, must be called by the writer. */
+  private void append(byte[] record) {
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(record);
+      while (buffer.hasRemaining()) {
+        journal.write(buffer);
+      }
+      journalRecords++;
+    } catch (IOException e) {
+      LOG.error("Not able to write access ticket journal " + journalFile, e);
+    }
+  }
+
+  /**
+   * Rewrites journal with live tickets only if it is big enough and mostly consists of outdated
+   * records, must be called by the writer or before it is started.
+   *
+   * <p>Records which are still queued are applied to the memory before they are queued, so the
+   * live tickets already include them and writing them after compaction doesn't change the state.
+   */
+  private void compactIfNeeded() {
+    if (journalRecords < compactionThreshold || journalRecords < 2L * size()) {
+      return;
+    }
+    Path tmp = journalFile.resolveSibling(JOURNAL_FILE_NAME + ".tmp");
+    Set<AccessTicket> tickets = getAccessTickets();
+    try {
+      try (FileChannel channel =
+              FileChannel.open(
+                  tmp,
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.WRITE,
+                  StandardOpenOption.TRUNCATE_EXISTING);
+          DataOutputStream out =
+              new DataOutputStream(
+                  new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024))) {
+        for (AccessTicket ticket : tickets) {
+          writePut(out, ticket);
+        }
+        out.flush();
+        channel.force(true);
+      }
+      Files.move(tmp, journalFile, REPLACE_EXISTING, ATOMIC_MOVE);
+      FileChannel outdated = journal;
+      journal = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      outdated.close();
+      LOG.debug(
+          "Compacted journal {}: {} records -> {}", journalFile, journalRecords, tickets.size());
+      journalRecords = tickets.size();
+    } catch (IOException e) {
+      LOG.error("Not able to compact access ticket journal " + journalFile, e);
+    }
+  }
+
+  /** Applies next journal record, returns false if the record is corrupted. */
+  private static boolean applyRecord(DataInputStream in, Map<String, AccessTicket> tickets)
+      throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case PUT:
+        String token = in.readUTF();
+        AccessTicket ticket = new AccessTicket(token, in.readUTF(), in.readUTF(), in.readLong());
+        int clients = in.readInt();
+        for (int i = 0; i < clients; i++) {
+          ticket.registerClientUrl(in.readUTF());
+        }
+        tickets.put(token, ticket);
+        return true;
+      case REMOVE:
+        tickets.remove(in.readUTF());
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static byte[] encodePut(AccessTicket ticket) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      writePut(out, ticket);
+    } catch (IOException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static byte[] encodeRemove(String accessToken) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(REMOVE);
+      out.writeUTF(accessToken);
+    } catch (IOException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writePut(DataOutputStream out, AccessTicket ticket) throws IOException {
+    Set<String> clients = ticket.getRegisteredClients();
+    out.writeByte(PUT);
+    out.writeUTF(ticket.getAccessToken());
+    out.writeUTF(ticket.getUserId());
+    out.writeUTF(ticket.getAuthHandlerType());
+    out.writeLong(ticket.getCreationTime());
+    out.writeInt(clients.size());
+    for (String client : clients) {
+      out.writeUTF(client);
+    }
+  }
+
+  /** Journal record or a marker if the data is null. */
+  private static class Record {
+    final byte[] data;
+    final CountDownLatch forced = new CountDownLatch(1);
+
+    Record(byte[] data) {
+      this.data = data;
+    }
+  }
+
+  /** Counts consumed bytes to find the end of the last complete record. */
+  private static class CountingInputStream extends InputStream {
+    private final InputStream delegate;
+    private long count;
+
+    CountingInputStream(InputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = delegate.read();
+      if (b != -1) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = delegate.read(b, off, len);
+      if (read > 0) {
+        count += read;
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+}
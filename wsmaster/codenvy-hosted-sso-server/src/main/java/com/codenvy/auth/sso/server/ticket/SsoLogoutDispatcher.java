@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.auth.sso.server.ticket;
+
+import com.codahale.metrics.annotation.Gauge;
+import com.codenvy.api.dao.authentication.AccessTicket;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.che.commons.lang.IoUtil;
+import org.eclipse.che.commons.lang.concurrent.LoggingUncaughtExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends logout notifications to the SSO clients registered in removed access tickets.
+ *
+ * <p>Notifications are sent asynchronously by a bounded pool of threads, so the ticket removal
+ * never waits for slow or unavailable clients. Each client is notified independently and failed
+ * notifications are retried with exponential backoff. When the number of pending notifications
+ * exceeds the configured limit new notifications are dropped and counted.
+ *
+ * <p>Connections are not disconnected explicitly and response bodies are always consumed, so the
+ * JDK keep-alive cache reuses connections to the same client.
+ */
+@Singleton
+public class SsoLogoutDispatcher {
+  private static final Logger LOG = LoggerFactory.getLogger(SsoLogoutDispatcher.class);
+
+  private static final int CONNECTION_TIMEOUT_MS = 5 * 1000;
+
+  private final ScheduledExecutorService executor;
+  private final int maxPending;
+  private final int maxAttempts;
+  private final long retryDelayMs;
+
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicLong succeeded = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong retried = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  @Inject
+  public SsoLogoutDispatcher(
+      @Named("auth.sso.logout.threads") int threads,
+      @Named("auth.sso.logout.max_pending") int maxPending,
+      @Named("auth.sso.logout.max_attempts") int maxAttempts,
+      @Named("auth.sso.logout.retry_delay_ms") long retryDelayMs) {
+    this.maxPending = maxPending;
+    this.maxAttempts = maxAttempts;
+    this.retryDelayMs = retryDelayMs;
+    ScheduledThreadPoolExecutor pool =
+        new ScheduledThreadPoolExecutor(
+            threads,
+            new ThreadFactoryBuilder()
+                .setNameFormat("SsoLogoutDispatcher-%d")
+                .setUncaughtExceptionHandler(LoggingUncaughtExceptionHandler.getInstance())
+                .setDaemon(true)
+                .build());
+    pool.setRemoveOnCancelPolicy(true);
+    this.executor = pool;
+  }
+
+  /**
+   * Schedules logout notifications for every client registered in the given ticket. Returns
+   * immediately.
+   *
+   * @param ticket removed access ticket
+   */
+  public void dispatch(AccessTicket ticket) {
+    for (String ssoClient : ticket.getRegisteredClients()) {
+      // NOTE : must send as many logout request as possible.
+      if (pending.incrementAndGet() > maxPending) {
+        pending.decrementAndGet();
+        dropped.incrementAndGet();
+        LOG.warn(
+            "Logout queue is full. Logout request for user {} to {} was dropped",
+            ticket.getUserId(),
+            ssoClient);
+        continue;
+      }
+      schedule(new LogoutTask(ssoClient, ticket.getAccessToken()), 0);
+    }
+  }
+
+  /** @return number of logout notifications waiting to be sent or retried. */
+  @Gauge(name = "auth.sso.logout.pending")
+  public int getPending() {
+    return pending.get();
+  }
+
+  /** @return number of successfully delivered logout notifications. */
+  @Gauge(name = "auth.sso.logout.succeeded")
+  public long getSucceeded() {
+    return succeeded.get();
+  }
+
+  /** @return number of logout notifications which were not delivered after all attempts. */
+  @Gauge(name = "auth.sso.logout.failed")
+  public long getFailed() {
+    return failed.get();
+  }
+
+  /** @return number of retried logout notification attempts. */
+  @Gauge(name = "auth.sso.logout.retried")
+  public long getRetried() {
+    return retried.get();
+  }
+
+  /** @return number of logout notifications dropped because of the full queue. */
+  @Gauge(name = "auth.sso.logout.dropped")
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+          LOG.warn("Unable terminate logout dispatcher pool");
+        }
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void schedule(LogoutTask task, long delayMs) {
+    try {
+      executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      pending.decrementAndGet();
+      dropped.incrementAndGet();
+      LOG.warn("Not able to schedule logout request to {}. {}", task.ssoClient, e.getMessage());
+    }
+  }
+
+  /**
+   * Sends single logout request to the given client.
+   *
+   * @return true if request was handled by the client or must not be repeated, false if it is
+   *     worth to retry it
+   */
+  boolean sendLogoutRequest(String ssoClient, String accessToken) {
+    HttpURLConnection conn = null;
+    try {
+      conn = (HttpURLConnection) new URL(ssoClient + "/_sso/client/logout").openConnection();
+      conn.setRequestMethod("POST");
+      conn.setDoOutput(true);
+      conn.setInstanceFollowRedirects(false);
+      conn.setConnectTimeout(CONNECTION_TIMEOUT_MS);
+      conn.setReadTimeout(CONNECTION_TIMEOUT_MS);
+      conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+      try (OutputStream out = conn.getOutputStream()) {
+        out.write(("authToken=" + URLEncoder.encode(accessToken, "UTF-8")).getBytes());
+      }
+
+      int responseCode = conn.getResponseCode();
+      LOG.debug("Sent logout request to {} response {}", conn.getURL(), responseCode);
+      if (responseCode / 100 == 2) {
+        IoUtil.readAndCloseQuietly(conn.getInputStream());
+        return true;
+      }
+      InputStream errorStream = conn.getErrorStream();
+      String message = errorStream != null ? IoUtil.readAndCloseQuietly(errorStream) : "";
+      if (responseCode == HttpServletResponse.SC_MOVED_TEMPORARILY) {
+        LOG.warn(
+            "Logout request for tenant {} was redirected to {}. Logout was omitted",
+            ssoClient,
+            conn.getHeaderField("Location"));
+        return true;
+      }
+      if (responseCode == HttpServletResponse.SC_BAD_GATEWAY) {
+        LOG.warn("Tenant {} is unavailable. Logout request not executed", ssoClient);
+      } else {
+        LOG.warn(
+            "Unexpected response code '{}' for SSO logout request to '{}'. {}",
+            responseCode,
+            conn.getURL(),
+            message);
+      }
+      return false;
+    } catch (IOException e) {
+      LOG.warn("{}. Not able to send logout request to {}", e.getLocalizedMessage(), ssoClient);
+      if (conn != null) {
+        // connection is in unknown state, it must not get back to the keep-alive cache
+        conn.disconnect();
+      }
+      return false;
+    }
+  }
+
+  private class LogoutTask implements Runnable {
+    private final String ssoClient;
+    private final String accessToken;
+    private int attempt;
+
+    LogoutTask(String ssoClient, String accessToken) {
+      this.ssoClient = ssoClient;
+      this.accessToken = accessToken;
+    }
+
+    @Override
+    public void run() {
+      attempt++;
+      boolean done;
+      try {
+        done = sendLogoutRequest(ssoClient, accessToken);
+      } catch (RuntimeException e) {
+        LOG.error(e.getLocalizedMessage(), e);
+        done = false;
+      }
+      if (done) {
+        pending.decrementAndGet();
+        succeeded.incrementAndGet();
+      } else if (attempt < maxAttempts) {
+        retried.incrementAndGet();
+        schedule(this, retryDelayMs << (attempt - 1));
+      } else {
+        pending.decrementAndGet();
+        failed.incrementAndGet();
+        LOG.warn("Logout request to {} was not delivered after {} attempts", ssoClient, attempt);
+      }
+    }
+  }
+}
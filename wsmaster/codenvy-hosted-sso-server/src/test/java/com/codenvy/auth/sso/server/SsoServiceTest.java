@@ -132,6 +132,7 @@ public class SsoServiceTest {
         .delete("internal/sso/server/{token}");
     // then
     verify(ticketManager).getAccessTicket(eq("t1"));
+    verify(ticketManager).putAccessTicket(eq(ticket));
     verifyNoMoreInteractions(ticketManager);
     assertEquals(ticket.getRegisteredClients().size(), 0);
   }
@@ -10,21 +10,29 @@
  */
 package com.codenvy.auth.sso.server.ticket;
 
+import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 import com.codenvy.api.dao.authentication.AccessTicket;
 import com.codenvy.api.dao.authentication.TicketManager;
 import java.util.Collections;
+import org.mockito.Mock;
+import org.mockito.testng.MockitoTestNGListener;
+import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
 
+@Listeners(MockitoTestNGListener.class)
 public class InMemoryTicketManagerTest {
   private static final String TOKEN = "123456789";
   String userId = "sdfsd345345";
 
+  @Mock SsoLogoutDispatcher logoutDispatcher;
+
   @Test
   public void shouldBeAbleToPutAndGetTicket() {
-    TicketManager ticketManager = new InMemoryTicketManager();
+    TicketManager ticketManager = new InMemoryTicketManager(logoutDispatcher);
 
     assertNull(ticketManager.getAccessTicket(TOKEN));
 
@@ -39,7 +47,7 @@ public class InMemoryTicketManagerTest {
 
   @Test
   public void shouldBeAbleToGetTickets() {
-    TicketManager ticketManager = new InMemoryTicketManager();
+    TicketManager ticketManager = new InMemoryTicketManager(logoutDispatcher);
 
     assertEquals(ticketManager.getAccessTickets().size(), 0);
 
@@ -53,7 +61,7 @@ public class InMemoryTicketManagerTest {
   @Test
   public void shouldBeAbleToRemoveTickets() {
 
-    TicketManager ticketManager = new InMemoryTicketManager();
+    TicketManager ticketManager = new InMemoryTicketManager(logoutDispatcher);
 
     ticketManager.putAccessTicket(new AccessTicket(TOKEN, userId, "default"));
 
@@ -63,4 +71,51 @@ public class InMemoryTicketManagerTest {
 
     assertEquals(ticketManager.getAccessTickets().size(), 0);
   }
+
+  @Test
+  public void shouldDispatchLogoutOfRemovedTicket() {
+    TicketManager ticketManager = new InMemoryTicketManager(logoutDispatcher);
+    AccessTicket ticket = new AccessTicket(TOKEN, userId, "default");
+    ticketManager.putAccessTicket(ticket);
+
+    ticketManager.removeTicket(TOKEN);
+
+    verify(logoutDispatcher).dispatch(ticket);
+  }
+
+  @Test
+  public void shouldReturnOnlyTicketsCreatedBeforeGivenTime() {
+    TicketManager ticketManager = new InMemoryTicketManager(logoutDispatcher);
+    AccessTicket old = new AccessTicket("old", userId, "default", 1000);
+    AccessTicket bound = new AccessTicket("bound", userId, "default", 2000);
+    AccessTicket fresh = new AccessTicket("fresh", userId, "default", 3000);
+    ticketManager.putAccessTicket(fresh);
+    ticketManager.putAccessTicket(old);
+    ticketManager.putAccessTicket(bound);
+
+    assertEquals(ticketManager.getAccessTicketsCreatedBefore(2000), Collections.singleton(old));
+  }
+
+  @Test
+  public void shouldNotReturnRemovedTicketsAsCreatedBeforeGivenTime() {
+    TicketManager ticketManager = new InMemoryTicketManager(logoutDispatcher);
+    ticketManager.putAccessTicket(new AccessTicket(TOKEN, userId, "default", 1000));
+
+    ticketManager.removeTicket(TOKEN);
+
+    assertTrue(ticketManager.getAccessTicketsCreatedBefore(2000).isEmpty());
+  }
+
+  @Test
+  public void shouldReindexReplacedTicket() {
+    TicketManager ticketManager = new InMemoryTicketManager(logoutDispatcher);
+    ticketManager.putAccessTicket(new AccessTicket(TOKEN, userId, "default", 1000));
+    AccessTicket replacement = new AccessTicket(TOKEN, userId, "default", 3000);
+
+    ticketManager.putAccessTicket(replacement);
+
+    assertTrue(ticketManager.getAccessTicketsCreatedBefore(2000).isEmpty());
+    assertEquals(
+        ticketManager.getAccessTicketsCreatedBefore(4000), Collections.singleton(replacement));
+  }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.auth.sso.server.ticket;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.codenvy.api.dao.authentication.AccessTicket;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.eclipse.che.commons.lang.IoUtil;
+import org.mockito.Mock;
+import org.mockito.testng.MockitoTestNGListener;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+@Listeners(MockitoTestNGListener.class)
+public class JournalTicketManagerTest {
+  private static final String USER_ID = "user123";
+
+  @Mock SsoLogoutDispatcher logoutDispatcher;
+
+  private Path journalDir;
+  private JournalTicketManager ticketManager;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    journalDir = Files.createTempDirectory("tickets");
+    ticketManager = start(1000);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    ticketManager.stop();
+    IoUtil.deleteRecursive(journalDir.toFile());
+  }
+
+  @Test
+  public void shouldRestoreTicketsAfterRestart() throws Exception {
+    AccessTicket ticket = new AccessTicket("t1", USER_ID, "default", 1000);
+    ticket.registerClientUrl("http://dev.box.com/api");
+    ticketManager.putAccessTicket(ticket);
+    ticketManager.putAccessTicket(new AccessTicket("t2", USER_ID, "default", 2000));
+    ticketManager.removeTicket("t2");
+
+    restart(1000);
+
+    assertEquals(ticketManager.getAccessTicket("t1"), ticket);
+    assertNull(ticketManager.getAccessTicket("t2"));
+    assertEquals(ticketManager.getAccessTicketsCreatedBefore(1500).size(), 1);
+  }
+
+  @Test
+  public void shouldCompactJournal() throws Exception {
+    restart(10);
+    for (int i = 0; i < 10; i++) {
+      ticketManager.putAccessTicket(new AccessTicket("t" + i, USER_ID, "default"));
+      ticketManager.removeTicket("t" + i);
+    }
+    ticketManager.putAccessTicket(new AccessTicket("live", USER_ID, "default"));
+    ticketManager.flush();
+
+    assertTrue(ticketManager.getJournalRecords() < 10);
+    restart(10);
+    assertEquals(ticketManager.getAccessTickets().size(), 1);
+    assertEquals(ticketManager.getAccessTicket("live").getUserId(), USER_ID);
+  }
+
+  @Test
+  public void shouldDiscardIncompleteTrailingRecord() throws Exception {
+    ticketManager.putAccessTicket(new AccessTicket("t1", USER_ID, "default"));
+    ticketManager.stop();
+    Files.write(
+        journalDir.resolve(JournalTicketManager.JOURNAL_FILE_NAME),
+        new byte[] {1, 0, 10, 't'},
+        StandardOpenOption.APPEND);
+
+    ticketManager = start(1000);
+    ticketManager.putAccessTicket(new AccessTicket("t2", USER_ID, "default"));
+    restart(1000);
+
+    assertEquals(ticketManager.getAccessTickets().size(), 2);
+  }
+
+  @Test
+  public void shouldJournalConcurrentModificationsInOrder() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int j = 0; j < 500; j++) {
+                    String token = "t" + (j % 50);
+                    if (j % 3 == 0) {
+                      ticketManager.removeTicket(token);
+                    } else {
+                      ticketManager.putAccessTicket(new AccessTicket(token, USER_ID, "default"));
+                    }
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    Set<String> expected = tokens(ticketManager.getAccessTickets());
+
+    restart(1000);
+
+    assertEquals(tokens(ticketManager.getAccessTickets()), expected);
+  }
+
+  private static Set<String> tokens(Set<AccessTicket> tickets) {
+    return tickets.stream().map(AccessTicket::getAccessToken).collect(Collectors.toSet());
+  }
+
+  private void restart(int compactionThreshold) throws IOException {
+    ticketManager.stop();
+    ticketManager = start(compactionThreshold);
+  }
+
+  private JournalTicketManager start(int compactionThreshold) throws IOException {
+    JournalTicketManager manager =
+        new JournalTicketManager(logoutDispatcher, journalDir.toString(), compactionThreshold);
+    manager.start();
+    return manager;
+  }
+}
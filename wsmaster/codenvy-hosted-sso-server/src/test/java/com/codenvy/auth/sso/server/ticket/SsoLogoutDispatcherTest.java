@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.auth.sso.server.ticket;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.codenvy.api.dao.authentication.AccessTicket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class SsoLogoutDispatcherTest {
+  private static final String TOKEN = "123456789";
+
+  private TestDispatcher dispatcher;
+
+  @AfterMethod
+  public void tearDown() {
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldNotifyEachRegisteredClient() throws Exception {
+    dispatcher = new TestDispatcher(10, 3, 0);
+    dispatcher.expect(2);
+
+    dispatcher.dispatch(ticket("http://client1", "http://client2"));
+
+    dispatcher.await();
+    assertEquals(dispatcher.calls.get("http://client1").get(), 1);
+    assertEquals(dispatcher.calls.get("http://client2").get(), 1);
+    assertEquals(dispatcher.getSucceeded(), 2);
+  }
+
+  @Test
+  public void shouldRetryFailedNotification() throws Exception {
+    dispatcher = new TestDispatcher(10, 3, 1);
+    dispatcher.failuresBeforeSuccess = 2;
+    dispatcher.expect(3);
+
+    dispatcher.dispatch(ticket("http://client1"));
+
+    dispatcher.await();
+    assertEquals(dispatcher.calls.get("http://client1").get(), 3);
+    assertEquals(dispatcher.getRetried(), 2);
+    assertEquals(dispatcher.getSucceeded(), 1);
+    assertEquals(dispatcher.getPending(), 0);
+  }
+
+  @Test
+  public void shouldGiveUpAfterMaxAttempts() throws Exception {
+    dispatcher = new TestDispatcher(10, 2, 1);
+    dispatcher.failuresBeforeSuccess = Integer.MAX_VALUE;
+    dispatcher.expect(2);
+
+    dispatcher.dispatch(ticket("http://client1"));
+
+    dispatcher.await();
+    assertEquals(dispatcher.getFailed(), 1);
+    assertEquals(dispatcher.getPending(), 0);
+  }
+
+  @Test
+  public void shouldDropNotificationsWhenQueueIsFull() throws Exception {
+    dispatcher = new TestDispatcher(1, 1, 0);
+    dispatcher.expect(1);
+
+    dispatcher.dispatch(ticket("http://client1", "http://client2", "http://client3"));
+
+    dispatcher.await();
+    assertEquals(dispatcher.getDropped(), 2);
+  }
+
+  private static AccessTicket ticket(String... clients) {
+    AccessTicket ticket = new AccessTicket(TOKEN, "user123", "default");
+    for (String client : clients) {
+      ticket.registerClientUrl(client);
+    }
+    return ticket;
+  }
+
+  private static class TestDispatcher extends SsoLogoutDispatcher {
+    final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    volatile int failuresBeforeSuccess;
+    volatile CountDownLatch latch;
+
+    TestDispatcher(int maxPending, int maxAttempts, long retryDelayMs) {
+      super(1, maxPending, maxAttempts, retryDelayMs);
+    }
+
+    void expect(int calls) {
+      latch = new CountDownLatch(calls);
+    }
+
+    /** Waits for expected calls and for completion of the tasks which made them. */
+    void await() throws InterruptedException {
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      shutdown();
+    }
+
+    @Override
+    boolean sendLogoutRequest(String ssoClient, String accessToken) {
+      int attempt = calls.computeIfAbsent(ssoClient, c -> new AtomicInteger()).incrementAndGet();
+      try {
+        return attempt > failuresBeforeSuccess;
+      } finally {
+        latch.countDown();
+      }
+    }
+  }
+}
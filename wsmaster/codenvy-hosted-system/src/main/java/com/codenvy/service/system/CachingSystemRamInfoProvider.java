@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.service.system;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.che.api.core.ServerException;
+import org.eclipse.che.commons.schedule.ScheduleDelay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link SystemRamInfoProvider} which keeps system RAM info of the {@link
+ * DockerBasedSystemRamInfoProvider} and refreshes it in background, so workspace starts don't wait
+ * for the request to swarm.
+ *
+ * <p>RAM reserved by starting workspaces is added to the used RAM until workspace start completes
+ * and info is refreshed after that, so workspace containers are reflected in it. Reservations of
+ * workspaces which neither started nor failed expire after configured time. Reservations are
+ * reconciled on each refresh. If info can't be refreshed in background for longer than configured
+ * age, it is requested synchronously.
+ */
+@Singleton
+public class CachingSystemRamInfoProvider implements SystemRamInfoProvider {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CachingSystemRamInfoProvider.class);
+
+  private final DockerBasedSystemRamInfoProvider delegate;
+  private final long maxAgeMs;
+  private final long reservationTtlMs;
+  private final List<Reservation> reservations = new ArrayList<>();
+  private final Object refreshLock = new Object();
+
+  private volatile FetchedInfo fetched;
+
+  @Inject
+  public CachingSystemRamInfoProvider(
+      DockerBasedSystemRamInfoProvider delegate,
+      @Named("system.ram.info_max_age_sec") long maxAgeSeconds,
+      @Named("system.ram.reservation_ttl_sec") long reservationTtlSeconds) {
+    this.delegate = delegate;
+    this.maxAgeMs = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+    this.reservationTtlMs = TimeUnit.SECONDS.toMillis(reservationTtlSeconds);
+  }
+
+  @Override
+  public SystemRamInfo getSystemRamInfo() throws ServerException {
+    final SystemRamInfo info = getFetchedInfo();
+    synchronized (reservations) {
+      return new SystemRamInfo(
+          info.getSystemRamUsed() + getReservedRam(currentTime()), info.getSystemRamTotal());
+    }
+  }
+
+  @Override
+  public SystemRamReservation tryReserve(long ram) throws ServerException {
+    final SystemRamInfo info = getFetchedInfo();
+    final long now = currentTime();
+    synchronized (reservations) {
+      final long used = info.getSystemRamUsed() + getReservedRam(now) + ram;
+      if (new SystemRamInfo(used, info.getSystemRamTotal()).isSystemRamLimitExceeded()) {
+        return null;
+      }
+      final Reservation reservation = new Reservation(ram, now);
+      reservations.add(reservation);
+      return reservation;
+    }
+  }
+
+  /** Refreshes system RAM info and removes expired reservations. */
+  @ScheduleDelay(initialDelay = 0, delayParameterName = "system.ram.info_refresh_period_sec")
+  void refreshInBackground() {
+    try {
+      refresh(fetched);
+    } catch (Exception exception) {
+      LOG.warn("Failed to refresh system RAM info. {}", exception.getMessage());
+    }
+  }
+
+  @VisibleForTesting
+  long currentTime() {
+    return System.currentTimeMillis();
+  }
+
+  private SystemRamInfo getFetchedInfo() throws ServerException {
+    final FetchedInfo current = fetched;
+    if (current == null || currentTime() - current.fetchedAt > maxAgeMs) {
+      return refresh(current).info;
+    }
+    return current.info;
+  }
+
+  /** Fetches system RAM info unless given info has been refreshed by concurrent caller. */
+  private FetchedInfo refresh(FetchedInfo outdated) throws ServerException {
+    synchronized (refreshLock) {
+      final FetchedInfo current = fetched;
+      if (current != null && current != outdated) {
+        return current;
+      }
+      final long fetchedAt = currentTime();
+      final FetchedInfo refreshed = new FetchedInfo(delegate.getSystemRamInfo(), fetchedAt);
+      fetched = refreshed;
+      synchronized (reservations) {
+        // containers of workspaces started before the request are reflected in refreshed info
+        reservations.removeIf(r -> r.completed >= 0 && r.completed < fetchedAt);
+        getReservedRam(fetchedAt);
+      }
+      return refreshed;
+    }
+  }
+
+  /** Returns RAM of not expired reservations, expired ones are removed. */
+  private long getReservedRam(long now) {
+    long reserved = 0;
+    for (Iterator<Reservation> it = reservations.iterator(); it.hasNext(); ) {
+      final Reservation reservation = it.next();
+      if (now - reservation.created >= reservationTtlMs) {
+        it.remove();
+      } else {
+        reserved += reservation.ram;
+      }
+    }
+    return reserved;
+  }
+
+  private class Reservation implements SystemRamReservation {
+    final long ram;
+    final long created;
+    long completed = -1;
+
+    Reservation(long ram, long created) {
+      this.ram = ram;
+      this.created = created;
+    }
+
+    @Override
+    public void release() {
+      synchronized (reservations) {
+        reservations.remove(this);
+      }
+    }
+
+    @Override
+    public void complete() {
+      final long now = currentTime();
+      synchronized (reservations) {
+        completed = now;
+      }
+    }
+  }
+
+  private static class FetchedInfo {
+    final SystemRamInfo info;
+    final long fetchedAt;
+
+    FetchedInfo(SystemRamInfo info, long fetchedAt) {
+      this.info = info;
+      this.fetchedAt = fetchedAt;
+    }
+  }
+}
@@ -25,4 +25,18 @@ public interface SystemRamInfoProvider {
    * @throws ServerException if failed to retrieve system RAM values
    */
   SystemRamInfo getSystemRamInfo() throws ServerException;
+
+  /**
+   * Checks that system RAM limit is not exceeded and reserves given amount of RAM for starting
+   * workspace. Check and reservation are performed atomically, so concurrently starting workspaces
+   * can't exceed the limit all together. Default implementation only checks the limit.
+   *
+   * @param ram amount of RAM to reserve in Bytes
+   * @return reservation which should be released if workspace is not started, or null if system
+   *     RAM limit is exceeded
+   * @throws ServerException if failed to retrieve system RAM values
+   */
+  default SystemRamReservation tryReserve(long ram) throws ServerException {
+    return getSystemRamInfo().isSystemRamLimitExceeded() ? null : SystemRamReservation.NONE;
+  }
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.service.system;
+
+/**
+ * RAM reserved for starting workspace until it is reflected in system RAM info.
+ *
+ * @see SystemRamInfoProvider#tryReserve(long)
+ */
+@FunctionalInterface
+public interface SystemRamReservation {
+
+  /** Reservation which doesn't reserve anything. */
+  SystemRamReservation NONE = () -> {};
+
+  /** Releases the reserved RAM, e.g. when workspace failed to start. */
+  void release();
+
+  /**
+   * Tells that workspace has started, so its containers are reflected in system RAM info requested
+   * after this moment and the reservation is no longer needed then. Releases the reservation by
+   * default.
+   */
+  default void complete() {
+    release();
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.service.system;
+
+import static org.eclipse.che.commons.lang.Size.parseSize;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.mockito.Mock;
+import org.mockito.testng.MockitoTestNGListener;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+/** Tests for {@link CachingSystemRamInfoProvider} */
+@Listeners(MockitoTestNGListener.class)
+public class CachingSystemRamInfoProviderTest {
+
+  private static final long MAX_AGE_SECONDS = 30;
+  private static final long RESERVATION_TTL_SECONDS = 60;
+
+  @Mock private DockerBasedSystemRamInfoProvider dockerBasedSystemRamInfoProvider;
+
+  private AtomicLong now;
+  private CachingSystemRamInfoProvider systemRamInfoProvider;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    now = new AtomicLong(System.currentTimeMillis());
+    systemRamInfoProvider =
+        spy(
+            new CachingSystemRamInfoProvider(
+                dockerBasedSystemRamInfoProvider, MAX_AGE_SECONDS, RESERVATION_TTL_SECONDS));
+    doAnswer(invocation -> now.get()).when(systemRamInfoProvider).currentTime();
+    when(dockerBasedSystemRamInfoProvider.getSystemRamInfo())
+        .thenReturn(new SystemRamInfo(parseSize("1 GiB"), parseSize("10 GiB")));
+  }
+
+  @Test
+  public void shouldNotRequestSystemRamInfoAgainUntilItBecomesOld() throws Exception {
+    // when
+    systemRamInfoProvider.getSystemRamInfo();
+    systemRamInfoProvider.getSystemRamInfo();
+
+    // then
+    verify(dockerBasedSystemRamInfoProvider).getSystemRamInfo();
+  }
+
+  @Test
+  public void shouldRequestSystemRamInfoWhenItBecomesOld() throws Exception {
+    // given
+    systemRamInfoProvider.getSystemRamInfo();
+    now.addAndGet(TimeUnit.SECONDS.toMillis(MAX_AGE_SECONDS + 1));
+
+    // when
+    systemRamInfoProvider.getSystemRamInfo();
+
+    // then
+    verify(dockerBasedSystemRamInfoProvider, times(2)).getSystemRamInfo();
+  }
+
+  @Test
+  public void shouldCountReservedRamAsUsed() throws Exception {
+    // when
+    assertNotNull(systemRamInfoProvider.tryReserve(parseSize("2 GiB")));
+
+    // then
+    assertEquals(
+        systemRamInfoProvider.getSystemRamInfo(),
+        new SystemRamInfo(parseSize("3 GiB"), parseSize("10 GiB")));
+  }
+
+  @Test
+  public void shouldNotReserveRamIfSystemRamLimitIsExceededWithRequestedRam() throws Exception {
+    // when
+    SystemRamReservation reservation = systemRamInfoProvider.tryReserve(parseSize("8.5 GiB"));
+
+    // then
+    assertNull(reservation);
+  }
+
+  @Test
+  public void shouldNotReserveRamIfSystemRamLimitIsExceededWithReservedRam() throws Exception {
+    // given
+    assertNotNull(systemRamInfoProvider.tryReserve(parseSize("7.5 GiB")));
+
+    // when
+    SystemRamReservation reservation = systemRamInfoProvider.tryReserve(parseSize("1 GiB"));
+
+    // then
+    assertNull(reservation);
+  }
+
+  @Test
+  public void shouldNotCountReleasedReservation() throws Exception {
+    // given
+    systemRamInfoProvider.tryReserve(parseSize("2 GiB")).release();
+
+    // when
+    SystemRamInfo systemRamInfo = systemRamInfoProvider.getSystemRamInfo();
+
+    // then
+    assertEquals(systemRamInfo, new SystemRamInfo(parseSize("1 GiB"), parseSize("10 GiB")));
+  }
+
+  @Test
+  public void shouldKeepCompletedReservationUntilInfoIsRefreshedAfterCompletion()
+      throws Exception {
+    // given
+    systemRamInfoProvider.getSystemRamInfo();
+    SystemRamReservation reservation = systemRamInfoProvider.tryReserve(parseSize("2 GiB"));
+    now.addAndGet(1000);
+    reservation.complete();
+    when(dockerBasedSystemRamInfoProvider.getSystemRamInfo())
+        .thenReturn(new SystemRamInfo(parseSize("3 GiB"), parseSize("10 GiB")));
+    assertEquals(
+        systemRamInfoProvider.getSystemRamInfo(),
+        new SystemRamInfo(parseSize("3 GiB"), parseSize("10 GiB")));
+    now.addAndGet(1000);
+
+    // when
+    systemRamInfoProvider.refreshInBackground();
+
+    // then
+    assertEquals(
+        systemRamInfoProvider.getSystemRamInfo(),
+        new SystemRamInfo(parseSize("3 GiB"), parseSize("10 GiB")));
+  }
+
+  @Test
+  public void shouldRemoveExpiredReservationsOnRefresh() throws Exception {
+    // given
+    systemRamInfoProvider.tryReserve(parseSize("2 GiB"));
+    now.addAndGet(TimeUnit.SECONDS.toMillis(RESERVATION_TTL_SECONDS));
+    when(dockerBasedSystemRamInfoProvider.getSystemRamInfo())
+        .thenReturn(new SystemRamInfo(parseSize("3 GiB"), parseSize("10 GiB")));
+
+    // when
+    systemRamInfoProvider.refreshInBackground();
+
+    // then
+    assertEquals(
+        systemRamInfoProvider.getSystemRamInfo(),
+        new SystemRamInfo(parseSize("3 GiB"), parseSize("10 GiB")));
+    verify(dockerBasedSystemRamInfoProvider, times(2)).getSystemRamInfo();
+  }
+}
@@ -15,7 +15,10 @@ import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.parseInt;
 import static java.lang.Long.parseLong;
 
+import com.codahale.metrics.annotation.Gauge;
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
@@ -31,9 +34,11 @@ import org.ldaptive.DefaultConnectionFactory;
 import org.ldaptive.ad.extended.FastBindOperation;
 import org.ldaptive.pool.BindPassivator;
 import org.ldaptive.pool.BlockingConnectionPool;
+import org.ldaptive.pool.ConnectionPool;
 import org.ldaptive.pool.IdlePruneStrategy;
 import org.ldaptive.pool.Passivator;
 import org.ldaptive.pool.PoolConfig;
+import org.ldaptive.pool.PoolException;
 import org.ldaptive.pool.PooledConnectionFactory;
 import org.ldaptive.pool.SearchValidator;
 import org.ldaptive.sasl.CramMd5Config;
@@ -50,11 +55,22 @@ import org.ldaptive.ssl.X509CredentialConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Provides pooled connection factory based on configuration properties.
+ *
+ * <p>Besides the factory it publishes metrics of the time spent waiting for pooled connections.
+ */
 @Singleton
 public class LdapConnectionFactoryProvider implements Provider<PooledConnectionFactory> {
   private static final Logger LOG = LoggerFactory.getLogger(LdapConnectionFactoryProvider.class);
 
+  /** Waits for pooled connections longer than this are logged as warnings. */
+  private static final long SLOW_CHECKOUT_MS = 1000;
+
   private final PooledConnectionFactory connFactory;
+  private final AtomicLong checkouts = new AtomicLong();
+  private final AtomicLong checkoutNanos = new AtomicLong();
+  private final AtomicLong maxCheckoutNanos = new AtomicLong();
 
   @Inject
   public LdapConnectionFactoryProvider(
@@ -225,11 +241,56 @@ public class LdapConnectionFactoryProvider implements Provider<PooledConnectionF
       cp.setFailFastInitialize(parseBoolean(failFast));
     }
     cp.initialize();
-    connFactory = new PooledConnectionFactory(cp);
+    connFactory = new MeasuredPooledConnectionFactory(cp);
   }
 
   @Override
   public PooledConnectionFactory get() {
     return connFactory;
   }
+
+  /** @return the number of connections checked out from the pool */
+  @Gauge(name = "auth.ldap.pool.checkouts")
+  public long getCheckouts() {
+    return checkouts.get();
+  }
+
+  /** @return the time spent waiting for connections checked out from the pool */
+  @Gauge(name = "auth.ldap.pool.checkout_wait_millis")
+  public long getCheckoutWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(checkoutNanos.get());
+  }
+
+  /** @return the longest wait for a connection checked out from the pool */
+  @Gauge(name = "auth.ldap.pool.checkout_max_wait_millis")
+  public long getMaxCheckoutWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxCheckoutNanos.get());
+  }
+
+  /** Measures how long it takes to check out a connection from the pool. */
+  private class MeasuredPooledConnectionFactory extends PooledConnectionFactory {
+
+    MeasuredPooledConnectionFactory(ConnectionPool cp) {
+      super(cp);
+    }
+
+    @Override
+    public Connection getConnection() throws PoolException {
+      final long start = System.nanoTime();
+      try {
+        return super.getConnection();
+      } finally {
+        final long nanos = System.nanoTime() - start;
+        checkouts.incrementAndGet();
+        checkoutNanos.addAndGet(nanos);
+        maxCheckoutNanos.accumulateAndGet(nanos, Math::max);
+        if (TimeUnit.NANOSECONDS.toMillis(nanos) >= SLOW_CHECKOUT_MS) {
+          LOG.warn(
+              "Waited {}ms for LDAP connection from the pool, the longest wait is {}ms",
+              TimeUnit.NANOSECONDS.toMillis(nanos),
+              getMaxCheckoutWaitMillis());
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.ldap.auth;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.che.api.core.notification.EventService;
+import org.eclipse.che.api.core.notification.EventSubscriber;
+import org.eclipse.che.api.user.server.event.UserRemovedEvent;
+import org.eclipse.che.commons.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Short living cache of successful ldap authentications, which allows to skip ldap requests when
+ * the same user logs in again with the same credentials.
+ *
+ * <p>The cache is disabled unless {@code ldap.auth.cache.ttl_ms} is set to a positive value. Only
+ * a salted hash of the credentials is kept, the salt is generated once per server start. An entry
+ * is dropped when the same login is successfully authenticated with other credentials, when the
+ * user is removed and when synchronization finds the user's ldap entry modified e.g. after password
+ * change or account lock.
+ */
+@Singleton
+public class LdapAuthenticationCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LdapAuthenticationCache.class);
+
+  private static final long DEFAULT_MAX_SIZE = 10_000;
+
+  private final EventService eventService;
+  private final Cache<String, CachedAuthentication> cache;
+  private final byte[] salt;
+
+  @Inject
+  public LdapAuthenticationCache(
+      EventService eventService,
+      @Nullable @Named("ldap.auth.cache.ttl_ms") String ttl,
+      @Nullable @Named("ldap.auth.cache.max_size") String size) {
+    this.eventService = eventService;
+    final long ttlMs = ttl == null ? 0 : Long.parseLong(ttl);
+    final long maxSize = size == null ? DEFAULT_MAX_SIZE : Long.parseLong(size);
+    if (ttlMs > 0 && maxSize > 0) {
+      cache =
+          CacheBuilder.newBuilder()
+              .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+              .maximumSize(maxSize)
+              .build();
+      salt = new byte[32];
+      new SecureRandom().nextBytes(salt);
+    } else {
+      cache = null;
+      salt = null;
+    }
+  }
+
+  @PostConstruct
+  public void subscribe() {
+    if (cache != null) {
+      eventService.subscribe(
+          new EventSubscriber<UserRemovedEvent>() {
+            @Override
+            public void onEvent(UserRemovedEvent event) {
+              if (event != null && event.getUserId() != null) {
+                invalidateUser(event.getUserId());
+              }
+            }
+          });
+    }
+  }
+
+  /** Returns true if the cache is enabled. */
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  /**
+   * Returns identifier of the user who was successfully authenticated with given credentials, or
+   * null if there is no such authentication in the cache.
+   */
+  @Nullable
+  public String get(String login, String password) {
+    if (cache == null) {
+      return null;
+    }
+    final CachedAuthentication cached = cache.getIfPresent(login);
+    if (cached == null || !MessageDigest.isEqual(cached.hash, hash(login, password))) {
+      return null;
+    }
+    return cached.userId;
+  }
+
+  /** Caches successful authentication of the user with given identifier. */
+  public void put(String login, String password, String userId) {
+    if (cache != null) {
+      cache.put(login, new CachedAuthentication(hash(login, password), userId));
+    }
+  }
+
+  /** Drops cached authentication of given login. */
+  public void invalidate(String login) {
+    if (cache != null) {
+      cache.invalidate(login);
+    }
+  }
+
+  /** Drops cached authentications of the user with given identifier. */
+  public void invalidateUser(String userId) {
+    invalidateUsers(Collections.singleton(userId));
+  }
+
+  /** Drops cached authentications of the users with given identifiers. */
+  public void invalidateUsers(Set<String> userIds) {
+    if (cache != null) {
+      LOG.debug("Invalidating cached ldap authentications of '{}' users", userIds.size());
+      cache.asMap().values().removeIf(cached -> userIds.contains(cached.userId));
+    }
+  }
+
+  private byte[] hash(String login, String password) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(salt);
+      digest.update(login.getBytes(UTF_8));
+      digest.update((byte) 0);
+      digest.update(password.getBytes(UTF_8));
+      return digest.digest();
+    } catch (NoSuchAlgorithmException x) {
+      throw new IllegalStateException(x.getMessage(), x);
+    }
+  }
+
+  private static class CachedAuthentication {
+    final byte[] hash;
+    final String userId;
+
+    CachedAuthentication(byte[] hash, String userId) {
+      this.hash = hash;
+      this.userId = userId;
+    }
+  }
+}
@@ -10,9 +10,11 @@
  */
 package com.codenvy.ldap.auth;
 
+import com.codahale.metrics.annotation.Timed;
 import com.codenvy.api.dao.authentication.AuthenticationHandler;
 import com.codenvy.ldap.LdapUserIdNormalizer;
 import javax.inject.Inject;
+import org.eclipse.che.commons.annotation.Nullable;
 import org.eclipse.che.commons.auth.AuthenticationException;
 import org.ldaptive.Credential;
 import org.ldaptive.LdapException;
@@ -29,6 +31,10 @@ import org.slf4j.LoggerFactory;
  * corresponding to the DN of the bound user (in the bound security context) upon successful
  * authentication.
  *
+ * <p>Successful authentications may be cached for a short time by {@link LdapAuthenticationCache},
+ * so repeated logins of the same user don't result in ldap requests. Authentications of accounts
+ * with any state reported by ldap e.g. expiring password are not cached.
+ *
  * @author Sergii Kabashniuk
  */
 public class LdapAuthenticationHandler implements AuthenticationHandler {
@@ -40,25 +46,33 @@ public class LdapAuthenticationHandler implements AuthenticationHandler {
   private final Authenticator ldapAuthenticator;
   private final LdapUserIdNormalizer idNormalizer;
   private final String[] returnAttributes;
+  private final LdapAuthenticationCache cache;
 
   @Inject
   public LdapAuthenticationHandler(
-      Authenticator ldapAuthenticator, LdapUserIdNormalizer idNormalizer) {
+      Authenticator ldapAuthenticator,
+      LdapUserIdNormalizer idNormalizer,
+      @Nullable LdapAuthenticationCache cache) {
     this.ldapAuthenticator = ldapAuthenticator;
     this.idNormalizer = idNormalizer;
     this.returnAttributes = new String[] {idNormalizer.getIdAttributeName()};
+    this.cache = cache;
   }
 
   @Override
   public String authenticate(String login, String password) throws AuthenticationException {
+    if (cache != null) {
+      final String userId = cache.get(login, password);
+      if (userId != null) {
+        LOG.debug("Using cached LDAP authentication for: {}", login);
+        return userId;
+      }
+    }
 
     final AuthenticationResponse response;
     try {
       LOG.debug("Attempting LDAP authentication for: {}", login);
-      final AuthenticationRequest request =
-          new AuthenticationRequest(login, new Credential(password));
-      request.setReturnAttributes(returnAttributes);
-      response = this.ldapAuthenticator.authenticate(request);
+      response = bind(login, password);
     } catch (final LdapException e) {
       throw new AuthenticationException(401, "Unexpected LDAP error");
     }
@@ -73,7 +87,20 @@ public class LdapAuthenticationHandler implements AuthenticationHandler {
       throw new AuthenticationException(login + "  is not found");
     }
     LOG.debug("Account state {}", response.getAccountState());
-    return idNormalizer.retrieveAndNormalize(response.getLdapEntry());
+    final String userId = idNormalizer.retrieveAndNormalize(response.getLdapEntry());
+    if (cache != null && response.getAccountState() == null) {
+      cache.put(login, password, userId);
+    }
+    return userId;
+  }
+
+  /** Resolves the user's DN and binds with given credentials. */
+  @Timed(name = "auth.ldap.bind")
+  protected AuthenticationResponse bind(String login, String password) throws LdapException {
+    final AuthenticationRequest request =
+        new AuthenticationRequest(login, new Credential(password));
+    request.setReturnAttributes(returnAttributes);
+    return ldapAuthenticator.authenticate(request);
   }
 
   @Override
@@ -12,10 +12,14 @@ package com.codenvy.ldap.sync;
 
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 
 /**
  * Helps to make db requests.
@@ -37,4 +41,78 @@ public class DBHelper {
   public List executeNativeQuery(String nativeQuery) {
     return emProvider.get().createNativeQuery(nativeQuery).getResultList();
   }
+
+  /**
+   * Executes native query with positional parameters e.g. {@code ?1} and returns execution result.
+   *
+   * @param nativeQuery query to execute
+   * @param params values of query parameters
+   * @return execution result
+   */
+  @Transactional
+  public List executeNativeQuery(String nativeQuery, Object... params) {
+    return createNativeQuery(nativeQuery, params).getResultList();
+  }
+
+  /**
+   * Executes native query with positional parameters e.g. {@code ?1} and returns at most {@code
+   * maxResults} rows of execution result.
+   *
+   * @param nativeQuery query to execute
+   * @param maxResults the maximum number of rows to return
+   * @param params values of query parameters
+   * @return execution result
+   */
+  @Transactional
+  public List executeNativeQueryPage(String nativeQuery, int maxResults, Object... params) {
+    return createNativeQuery(nativeQuery, params).setMaxResults(maxResults).getResultList();
+  }
+
+  /**
+   * Executes native update or delete statement with positional parameters e.g. {@code ?1}.
+   *
+   * @param nativeQuery statement to execute
+   * @param params values of statement parameters
+   * @return the number of updated or deleted rows
+   */
+  @Transactional
+  public int executeNativeUpdate(String nativeQuery, Object... params) {
+    return createNativeQuery(nativeQuery, params).executeUpdate();
+  }
+
+  /**
+   * Executes query with a single collection parameter and maps the result entities within the
+   * same transaction, so lazy attributes of entities may be accessed by the mapper.
+   *
+   * @param query JPQL query to execute
+   * @param entityClass the class of result entities
+   * @param paramName the name of the query parameter
+   * @param paramValues values of the query parameter
+   * @param mapper maps result entities e.g. copies them
+   * @return mapped execution result
+   */
+  @Transactional
+  public <T, R> List<R> executeQuery(
+      String query,
+      Class<T> entityClass,
+      String paramName,
+      Collection<?> paramValues,
+      Function<T, R> mapper) {
+    return emProvider
+        .get()
+        .createQuery(query, entityClass)
+        .setParameter(paramName, paramValues)
+        .getResultList()
+        .stream()
+        .map(mapper)
+        .collect(Collectors.toList());
+  }
+
+  private Query createNativeQuery(String nativeQuery, Object[] params) {
+    final Query query = emProvider.get().createNativeQuery(nativeQuery);
+    for (int i = 0; i < params.length; i++) {
+      query.setParameter(i + 1, params[i]);
+    }
+    return query;
+  }
 }
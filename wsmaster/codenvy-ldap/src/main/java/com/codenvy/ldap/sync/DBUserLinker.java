@@ -10,11 +10,17 @@
  */
 package com.codenvy.ldap.sync;
 
-import java.util.HashSet;
+import static java.lang.String.format;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.eclipse.che.api.core.NotFoundException;
 import org.eclipse.che.api.core.ServerException;
 import org.eclipse.che.api.core.model.user.User;
+import org.eclipse.che.api.user.server.model.impl.UserImpl;
 import org.eclipse.che.api.user.server.spi.UserDao;
 
 /**
@@ -24,6 +30,9 @@ import org.eclipse.che.api.user.server.spi.UserDao;
  */
 public abstract class DBUserLinker {
 
+  /** How many linking identifiers to fetch by a single request. */
+  private static final int IDS_PAGE_SIZE = 10_000;
+
   /** Creates a new user finder based on his identifier. */
   public static DBUserLinker newIdLinker(UserDao userDao, DBHelper dbHelper) {
     return new IdLinker(userDao, dbHelper);
@@ -65,9 +74,80 @@ public abstract class DBUserLinker {
    */
   public abstract User findUser(String linkingAttribute) throws NotFoundException, ServerException;
 
-  /** Returns linking attribute values for those users who exist in persistence layer. */
+  /**
+   * Returns linking attribute values for those users who exist in persistence layer. The result is
+   * a compact index which supports removal of the values but not addition.
+   */
   public abstract Set<String> findIds();
 
+  /**
+   * Finds users in persistence layer by specified identifiers.
+   *
+   * <p>The default implementation calls {@link #findUser(String)} for each identifier, subclasses
+   * should override it with a single request to persistence layer.
+   *
+   * @param linkingAttributes the values returned from {@link #extractId(User)}
+   * @return found users mapped by their linking attribute values, users which don't exist are
+   *     missing from the result
+   * @throws ServerException when any error occurs
+   */
+  public Map<String, User> findUsers(Collection<String> linkingAttributes)
+      throws ServerException {
+    final Map<String, User> users = new HashMap<>();
+    for (String linkingAttribute : linkingAttributes) {
+      try {
+        users.put(linkingAttribute, findUser(linkingAttribute));
+      } catch (NotFoundException ignored) {
+        // the user is missing from the result
+      }
+    }
+    return users;
+  }
+
+  /**
+   * Fetches values of given column of all the users by pages ordered by the column, each next page
+   * is requested starting after the last value of the previous one, so the values are streamed
+   * into the compact index without loading the whole table at once.
+   */
+  @SuppressWarnings("unchecked") // linking attributes are always strings
+  protected Set<String> findIdsBy(String column) {
+    final LinkingIndex.Builder builder = new LinkingIndex.Builder();
+    List<String> page =
+        dbHelper.executeNativeQueryPage(
+            format("SELECT %1$s FROM Usr ORDER BY %1$s", column), IDS_PAGE_SIZE);
+    while (!page.isEmpty()) {
+      page.forEach(builder::add);
+      if (page.size() < IDS_PAGE_SIZE) {
+        break;
+      }
+      page =
+          dbHelper.executeNativeQueryPage(
+              format("SELECT %1$s FROM Usr WHERE %1$s > ?1 ORDER BY %1$s", column),
+              IDS_PAGE_SIZE,
+              page.get(page.size() - 1));
+    }
+    return builder.build();
+  }
+
+  /** Finds users whose attribute with given name is one of given values. */
+  protected Map<String, User> findUsersBy(String attribute, Collection<String> values) {
+    final Map<String, User> users = new HashMap<>();
+    if (values.isEmpty()) {
+      return users;
+    }
+    // the same as user dao does, password is never returned
+    for (UserImpl user :
+        dbHelper.executeQuery(
+            format("SELECT u FROM Usr u WHERE u.%s IN :values", attribute),
+            UserImpl.class,
+            "values",
+            values,
+            u -> new UserImpl(u.getId(), u.getEmail(), u.getName(), null, u.getAliases()))) {
+      users.put(extractId(user), user);
+    }
+    return users;
+  }
+
   /** Retrieves user by his id. */
   private static class IdLinker extends DBUserLinker {
 
@@ -86,9 +166,13 @@ public abstract class DBUserLinker {
     }
 
     @Override
-    @SuppressWarnings("unchecked") // user id is always string
     public Set<String> findIds() {
-      return new HashSet<>(dbHelper.executeNativeQuery("SELECT id FROM Usr"));
+      return findIdsBy("id");
+    }
+
+    @Override
+    public Map<String, User> findUsers(Collection<String> ids) {
+      return findUsersBy("id", ids);
     }
   }
 
@@ -110,9 +194,13 @@ public abstract class DBUserLinker {
     }
 
     @Override
-    @SuppressWarnings("unchecked") // user email is always string
     public Set<String> findIds() {
-      return new HashSet<>(dbHelper.executeNativeQuery("SELECT email FROM Usr"));
+      return findIdsBy("email");
+    }
+
+    @Override
+    public Map<String, User> findUsers(Collection<String> emails) {
+      return findUsersBy("email", emails);
     }
   }
 
@@ -134,9 +222,13 @@ public abstract class DBUserLinker {
     }
 
     @Override
-    @SuppressWarnings("unchecked") // user name is always string
     public Set<String> findIds() {
-      return new HashSet<>(dbHelper.executeNativeQuery("SELECT name FROM Usr"));
+      return findIdsBy("name");
+    }
+
+    @Override
+    public Map<String, User> findUsers(Collection<String> names) {
+      return findUsersBy("name", names);
     }
   }
 }
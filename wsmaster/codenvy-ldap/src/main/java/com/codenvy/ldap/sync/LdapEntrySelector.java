@@ -10,6 +10,7 @@
  */
 package com.codenvy.ldap.sync;
 
+import org.eclipse.che.commons.annotation.Nullable;
 import org.ldaptive.Connection;
 import org.ldaptive.LdapEntry;
 
@@ -32,4 +33,26 @@ public interface LdapEntrySelector {
    * @throws SyncException when any error occurs during selection, or during iteration
    */
   Iterable<LdapEntry> select(Connection connection) throws SyncException;
+
+  /**
+   * Selects ldap entries in the same way as {@link #select(Connection)} does, but only those of
+   * them which also match given filter and only with given attributes. It allows to select only
+   * modified entries or only identifiers of entries.
+   *
+   * <p>The default implementation doesn't support such selection and returns null.
+   *
+   * @param connection the connection which should be used for selection, it is already opened and
+   *     shouldn't be closed
+   * @param filter filter which is applied in addition to the selector filters, if it is null then
+   *     only attributes are changed
+   * @param attributes attributes of the selected entries
+   * @return an iterable describing the result iterator or null if the selector doesn't support such
+   *     selection
+   * @throws SyncException when any error occurs during selection, or during iteration
+   */
+  @Nullable
+  default Iterable<LdapEntry> select(
+      Connection connection, @Nullable String filter, String[] attributes) throws SyncException {
+    return null;
+  }
 }
@@ -12,17 +12,27 @@ package com.codenvy.ldap.sync;
 
 import static java.lang.String.format;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import org.eclipse.che.commons.annotation.Nullable;
 import org.eclipse.che.commons.lang.Pair;
+import org.eclipse.che.commons.lang.concurrent.LoggingUncaughtExceptionHandler;
+import org.ldaptive.ConnectionFactory;
+import org.ldaptive.pool.PooledConnectionFactory;
 
 /**
  * Chooses a strategy of ldap entries selection based on configuration properties.
  *
+ * <p>Group members are requested by {@code ldap.sync.threads} threads, but not by more than the
+ * connection pool can serve besides the connection of the selection itself.
+ *
  * @author Yevhenii Voevodin
  */
 @Singleton
@@ -32,6 +42,7 @@ public class LdapEntrySelectorProvider implements Provider<LdapEntrySelector> {
   private static final long DEFAULT_PAGE_READ_TIMEOUT = 30_000L;
 
   private final LdapEntrySelector selector;
+  private final ExecutorService membersExecutor;
 
   @Inject
   public LdapEntrySelectorProvider(
@@ -46,7 +57,9 @@ public class LdapEntrySelectorProvider implements Provider<LdapEntrySelector> {
       @Named("ldap.sync.profile.attrs") @Nullable Pair<String, String>[] profileAttributes,
       @Named("ldap.sync.user.attr.id") String userIdAttr,
       @Named("ldap.sync.user.attr.name") String userNameAttr,
-      @Named("ldap.sync.user.attr.email") String userEmailAttr) {
+      @Named("ldap.sync.user.attr.email") String userEmailAttr,
+      ConnectionFactory connFactory,
+      @Named("ldap.sync.threads") int threads) {
     if (groupFilter != null && membersAttrName == null) {
       throw new NullPointerException(
           format(
@@ -68,6 +81,7 @@ public class LdapEntrySelectorProvider implements Provider<LdapEntrySelector> {
     final String[] syncAttributes = attrsList.toArray(new String[attrsList.size()]);
 
     if (groupFilter == null) {
+      membersExecutor = null;
       selector =
           new LookupSelector(
               pageSize <= 0 ? DEFAULT_PAGE_SIZE : pageSize,
@@ -76,8 +90,32 @@ public class LdapEntrySelectorProvider implements Provider<LdapEntrySelector> {
               usersFilter,
               syncAttributes);
     } else {
+      int parallelism = threads;
+      if (connFactory instanceof PooledConnectionFactory) {
+        // one connection of the pool is used by the selection itself
+        final PooledConnectionFactory pooledFactory = (PooledConnectionFactory) connFactory;
+        parallelism =
+            Math.min(
+                parallelism,
+                pooledFactory.getConnectionPool().getPoolConfig().getMaxPoolSize() - 1);
+      }
+      if (parallelism > 1) {
+        membersExecutor =
+            Executors.newFixedThreadPool(
+                parallelism,
+                new ThreadFactoryBuilder()
+                    .setNameFormat("MembershipSelector-%d")
+                    .setUncaughtExceptionHandler(LoggingUncaughtExceptionHandler.getInstance())
+                    .setDaemon(true)
+                    .build());
+      } else {
+        membersExecutor = null;
+      }
       selector =
           new MembershipSelector(
+              connFactory,
+              membersExecutor,
+              parallelism,
               normalizeDn(additionalGroupDn, baseDn),
               groupFilter,
               usersFilter,
@@ -91,6 +129,13 @@ public class LdapEntrySelectorProvider implements Provider<LdapEntrySelector> {
     return selector;
   }
 
+  @PreDestroy
+  public void shutdown() {
+    if (membersExecutor != null) {
+      membersExecutor.shutdownNow();
+    }
+  }
+
   private static String normalizeDn(String additionalDn, String baseDn) {
     if (additionalDn == null) {
       return baseDn;
@@ -13,14 +13,32 @@ package com.codenvy.ldap.sync;
 import static java.lang.String.format;
 
 import com.codenvy.ldap.LdapUserIdNormalizer;
+import com.codenvy.ldap.auth.LdapAuthenticationCache;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ObjectArrays;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.persist.Transactional;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.regex.Pattern;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
@@ -41,8 +59,10 @@ import org.eclipse.che.commons.lang.concurrent.LoggingUncaughtExceptionHandler;
 import org.eclipse.che.core.db.DBInitializer;
 import org.ldaptive.Connection;
 import org.ldaptive.ConnectionFactory;
+import org.ldaptive.LdapAttribute;
 import org.ldaptive.LdapEntry;
 import org.ldaptive.LdapException;
+import org.ldaptive.io.GeneralizedTimeValueTranscoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +79,23 @@ import org.slf4j.LoggerFactory;
  *
  * <p>Ldap entries selection strategy is picked by {@link LdapEntrySelectorProvider}.
  *
+ * <p>Synchronization is performed by stages: ldap entries are read and mapped to users by pages of
+ * the configured size, then existing database users and profiles of each page are fetched by bulk
+ * requests, compared with the ldap ones in memory and all the updates of the page are written
+ * within a single transaction. If the transaction fails, the updates of the page are written one
+ * by one, so a single failed user doesn't affect the others. Users are created and removed one by
+ * one, each within its own transaction, as these operations publish events to the subscribers
+ * which can't be rolled back together with a page. Pages are synchronized by the pool of workers
+ * while the next pages are read from ldap storage.
+ *
+ * <p>If the modification attribute e.g. {@code modifyTimestamp} or {@code uSNChanged} is
+ * configured, then the greatest value of this attribute among synchronized users is stored in the
+ * database and {@link #syncModified()} synchronizes only those users who have greater or equal
+ * value, the synchronization of modified users is scheduled with its own period. Users missing
+ * from ldap storage are detected by such synchronization once per reconciliation period by
+ * selection of identifiers of all the users. The synchronization of all the users is still
+ * performed with its configured period to fix any inconsistencies.
+ *
  * <p>It is thread-safe.
  *
  * @author Yevhenii Voevodin
@@ -69,6 +106,10 @@ public class LdapSynchronizer {
 
   private static final Logger LOG = LoggerFactory.getLogger(LdapSynchronizer.class);
   private static final int EACH_ENTRIES_COUNT_CHECK_INTERRUPTION = 200;
+  private static final Pattern NUMBER = Pattern.compile("\\d+");
+  private static final GeneralizedTimeValueTranscoder GENERALIZED_TIME =
+      new GeneralizedTimeValueTranscoder();
+  private static final String DELTA_MARK_STATE_PREFIX = "delta_mark.";
 
   private static final String USER_ID_ATTRIBUTE_NAME = "ldap.sync.user.attr.id";
   private static final String USER_NAME_ATTRIBUTE_NAME = "ldap.sync.user.attr.name";
@@ -88,6 +129,19 @@ public class LdapSynchronizer {
   private final AtomicBoolean isSyncing;
   private final LdapUserIdNormalizer idNormalizer;
   private final DBUserLinker linker;
+  private final DBHelper dbHelper;
+  private final int threads;
+  private final int batchSize;
+  private final ExecutorService workers;
+  private final String[] syncAttributes;
+  private final String[] idAttributes;
+  private final String deltaAttr;
+  private final long deltaPeriodMs;
+  private final long reconcilePeriodMs;
+  private final LdapAuthenticationCache authCache;
+
+  private volatile String deltaMark;
+  private volatile long lastReconciliationTime;
 
   /**
    * Creates an instance of synchronizer.
@@ -113,6 +167,20 @@ public class LdapSynchronizer {
    * @param removeIfMissing whether remove those users who are present in persistence layer while
    *     missing from ldap storage
    * @param userLinker gets database users and their attributes
+   * @param dbHelper used for fetching profiles of database users by bulk requests, if it is null
+   *     then profiles are fetched one by one
+   * @param threads how many pages of users may be synchronized in parallel, if it is <= 1 then
+   *     pages are synchronized by the thread which reads them from ldap storage
+   * @param batchSize how many users are fetched from database and written by a single request
+   * @param deltaAttr ldap attribute which is changed each time the entry is modified e.g. {@code
+   *     modifyTimestamp}, if it is null then modified users can't be selected and all the users are
+   *     always synchronized
+   * @param deltaPeriodMs period of synchronization of modified users in milliseconds, if it is <= 0
+   *     then such synchronization won't be periodical
+   * @param reconcilePeriodMs how often synchronization of modified users removes users missing from
+   *     ldap storage, in milliseconds
+   * @param authCache cache of ldap authentications, authentications of the users whose ldap entries
+   *     were modified are dropped from it after synchronization
    */
   @Inject
   public LdapSynchronizer(
@@ -130,11 +198,22 @@ public class LdapSynchronizer {
       @Named("ldap.sync.profile.attrs") @Nullable Pair<String, String>[] profileAttributes,
       @Named("ldap.sync.update_if_exists") boolean updateIfExists,
       @Named("ldap.sync.remove_if_missing") boolean removeIfMissing,
-      DBUserLinker userLinker) {
+      DBUserLinker userLinker,
+      DBHelper dbHelper,
+      @Named("ldap.sync.threads") int threads,
+      @Named("ldap.sync.batch_size") int batchSize,
+      @Named("ldap.sync.delta.attr") @Nullable String deltaAttr,
+      @Named("ldap.sync.delta.period_ms") long deltaPeriodMs,
+      @Named("ldap.sync.delta.reconcile_period_ms") long reconcilePeriodMs,
+      @Nullable LdapAuthenticationCache authCache) {
     if (initDelayMs < 0) {
       throw new IllegalArgumentException(
           "'ldap.sync.initial_delay_ms' must be >= 0, the actual value is " + initDelayMs);
     }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException(
+          "'ldap.sync.batch_size' must be > 0, the actual value is " + batchSize);
+    }
     this.connFactory = connFactory;
     this.userManager = userManager;
     this.profileManager = profileManager;
@@ -144,10 +223,37 @@ public class LdapSynchronizer {
     this.idNormalizer = idNormalizer;
     this.userMapper = new UserMapper(userIdAttr, userNameAttr, userEmailAttr);
     this.profileMapper = new ProfileMapper(userIdAttr, profileAttributes);
+    this.idAttributes = new String[] {userIdAttr, userNameAttr, userEmailAttr};
+    final List<String> syncAttributes = new ArrayList<>(Arrays.asList(idAttributes));
+    if (profileAttributes != null) {
+      for (Pair<String, String> profileAttribute : profileAttributes) {
+        syncAttributes.add(profileAttribute.second);
+      }
+    }
+    this.syncAttributes = syncAttributes.toArray(new String[syncAttributes.size()]);
     this.isSyncing = new AtomicBoolean(false);
     this.updateIfExists = updateIfExists;
     this.removeIfMissing = removeIfMissing;
     this.linker = userLinker;
+    this.dbHelper = dbHelper;
+    this.threads = threads;
+    this.batchSize = batchSize;
+    this.deltaAttr = deltaAttr;
+    this.deltaPeriodMs = deltaPeriodMs;
+    this.reconcilePeriodMs = reconcilePeriodMs;
+    this.authCache = authCache;
+    if (threads > 1) {
+      this.workers =
+          Executors.newFixedThreadPool(
+              threads,
+              new ThreadFactoryBuilder()
+                  .setNameFormat("LdapSynchronizerWorker-%d")
+                  .setUncaughtExceptionHandler(LoggingUncaughtExceptionHandler.getInstance())
+                  .setDaemon(true)
+                  .build());
+    } else {
+      this.workers = null;
+    }
     this.scheduler =
         Executors.newScheduledThreadPool(
             1,
@@ -167,7 +273,7 @@ public class LdapSynchronizer {
     if (!isSyncing.compareAndSet(false, true)) {
       throw new SyncException("Couldn't start synchronization as it is executing right now");
     }
-    scheduler.execute(this::syncSilentlyAndUnsetFlag);
+    scheduler.execute(() -> syncSilentlyAndUnsetFlag(false));
   }
 
   /**
@@ -178,83 +284,284 @@ public class LdapSynchronizer {
    * @throws SyncException when any error occurs during synchronization
    */
   public SyncResult syncAll() throws LdapException, SyncException {
+    return sync(null);
+  }
+
+  /**
+   * Synchronizes only those users who were modified in ldap storage since the previous
+   * synchronization. Users missing from ldap storage are removed once per reconciliation period
+   * using selection of their identifiers only.
+   *
+   * <p>If the modification attribute is not configured, there is no mark of the previous
+   * synchronization yet or the selector doesn't support selection of modified entries, then all
+   * the users are synchronized as by {@link #syncAll()}.
+   *
+   * @return the result of synchronization
+   * @throws LdapException when any error occurs during connection opening or closing
+   * @throws SyncException when any error occurs during synchronization
+   */
+  public SyncResult syncModified() throws LdapException, SyncException {
+    final String mark = deltaAttr == null ? null : getDeltaMark();
+    if (mark == null) {
+      LOG.info("There is no mark of the previous synchronization, synchronizing all the users");
+    }
+    return sync(mark);
+  }
+
+  /** Synchronizes all the users or only those modified since given mark if it is not null. */
+  private SyncResult sync(@Nullable String modifiedSince) throws LdapException, SyncException {
     LOG.info("Preparing synchronization environment");
     final SyncResult syncResult = new SyncResult();
-    final Set<String> linkingIds = linker.findIds();
+    final PageQueue pages = new PageQueue();
+    final DeltaMarkTracker markTracker = new DeltaMarkTracker(modifiedSince);
     LOG.debug("Using selector {} for synchronization", selector);
-    LOG.info("Starting synchronization of users/profiles");
     try (Connection connection = connFactory.getConnection()) {
       connection.open();
-      for (LdapEntry entry : selector.select(connection)) {
-        syncResult.fetched++;
+      Iterable<LdapEntry> entries = null;
+      if (deltaAttr != null) {
+        entries =
+            selector.select(
+                connection,
+                modifiedSince == null ? null : format("(%s>=%s)", deltaAttr, modifiedSince),
+                ObjectArrays.concat(syncAttributes, deltaAttr));
+        if (entries == null) {
+          LOG.warn("Selector {} doesn't support selection of modified users", selector);
+        }
+      }
+      if (entries == null) {
+        modifiedSince = null;
+        entries = selector.select(connection);
+      }
+      final boolean full = modifiedSince == null;
+      final Set<String> linkingIds = full ? linker.findIds() : null;
+
+      LOG.info("Starting synchronization of {} users/profiles", full ? "all" : "modified");
+      List<SyncEntry> page = new ArrayList<>(batchSize);
+      long fetchStart = System.nanoTime();
+      for (LdapEntry entry : entries) {
+        syncResult.fetchNanos.addAndGet(System.nanoTime() - fetchStart);
+        syncResult.fetched.incrementAndGet();
 
         if (LOG.isDebugEnabled()) {
           LOG.debug("Synchronizing entry: {}", entry);
         }
 
-        syncFetched(entry, linkingIds, syncResult);
+        markTracker.track(entry);
+        final SyncEntry syncEntry = prepare(entry, linkingIds, markTracker, syncResult);
+        if (syncEntry != null) {
+          page.add(syncEntry);
+        }
+        if (page.size() == batchSize) {
+          final List<SyncEntry> fullPage = page;
+          page = new ArrayList<>(batchSize);
+          if (!pages.submit(() -> syncPage(fullPage, syncResult))) {
+            return interrupted(pages, markTracker, syncResult);
+          }
+        }
 
         // Each EACH_ENTRIES_COUNT_CHECK_INTERRUPTION synchronized entries check whether thread
         // wasn't interrupted
         // if it was - stop the synchronization, all the users who were not synchronized
         // will be synchronized with the next synchronization
-        if (syncResult.fetched % EACH_ENTRIES_COUNT_CHECK_INTERRUPTION == 0) {
+        if (syncResult.fetched.get() % EACH_ENTRIES_COUNT_CHECK_INTERRUPTION == 0) {
           if (Thread.currentThread().isInterrupted()) {
-            LOG.warn("User/Profile synchronization was interrupted");
-            LOG.info("Synchronization result: {}", syncResult);
-            return syncResult;
+            return interrupted(pages, markTracker, syncResult);
           }
         }
+        fetchStart = System.nanoTime();
+      }
+      syncResult.fetchNanos.addAndGet(System.nanoTime() - fetchStart);
+      if (!page.isEmpty()) {
+        final List<SyncEntry> lastPage = page;
+        if (!pages.submit(() -> syncPage(lastPage, syncResult))) {
+          return interrupted(pages, markTracker, syncResult);
+        }
+      }
+      if (!pages.await()) {
+        return interrupted(pages, markTracker, syncResult);
       }
-    }
 
-    if (removeIfMissing && !linkingIds.isEmpty()) {
-      LOG.info("Removing users missing from ldap storage, users to remove '{}'", linkingIds.size());
-      for (String linkingId : linkingIds) {
-        try {
-          final User user = linker.findUser(linkingId);
-          userManager.remove(user.getId());
-          syncResult.removed++;
-          LOG.debug("Removed user '{}'", user.getId());
-        } catch (NotFoundException | ConflictException | ServerException x) {
-          LOG.info(format("Couldn't remove user '%s' due to occurred error", linkingId), x);
-          syncResult.failed++;
+      if (removeIfMissing) {
+        final long reconciliationStart = System.currentTimeMillis();
+        if (full) {
+          if (!removeMissing(linkingIds, pages, syncResult)) {
+            return interrupted(pages, markTracker, syncResult);
+          }
+          lastReconciliationTime = reconciliationStart;
+        } else if (reconciliationStart - lastReconciliationTime >= reconcilePeriodMs) {
+          if (!reconcile(connection, pages, syncResult)) {
+            return interrupted(pages, markTracker, syncResult);
+          }
+          lastReconciliationTime = reconciliationStart;
         }
       }
     }
 
+    // users who failed to be synchronized must be selected by the next synchronization again,
+    // while invalid entries will be selected again only when they are modified
+    if (markTracker.isChanged() && syncResult.getFailed() == syncResult.invalid.get()) {
+      deltaMark = markTracker.getMark();
+      try {
+        storeDeltaMark(deltaMark);
+      } catch (RuntimeException x) {
+        LOG.warn(
+            "Couldn't store mark of synchronization '{}'. Error: {}", deltaMark, x.getMessage());
+      }
+    }
+    invalidateAuthentications(markTracker);
+    LOG.info("Synchronization result: {}", syncResult);
+    return syncResult;
+  }
+
+  /**
+   * Selects identifiers of all the ldap users and removes database users missing from them.
+   * Returns false if the thread was interrupted.
+   */
+  private boolean reconcile(Connection connection, PageQueue pages, SyncResult syncResult) {
+    LOG.info("Reconciling identifiers of users");
+    final Set<String> linkingIds = linker.findIds();
+    Iterable<LdapEntry> entries = selector.select(connection, null, idAttributes);
+    if (entries == null) {
+      entries = selector.select(connection);
+    }
+    long count = 0;
+    for (LdapEntry entry : entries) {
+      idNormalizer.normalize(entry);
+      final UserImpl ldapUser = userMapper.apply(entry);
+      if (ldapUser.getId() != null && ldapUser.getName() != null && ldapUser.getEmail() != null) {
+        linkingIds.remove(linker.extractId(ldapUser));
+      }
+      if (++count % EACH_ENTRIES_COUNT_CHECK_INTERRUPTION == 0
+          && Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+    }
+    return removeMissing(linkingIds, pages, syncResult);
+  }
+
+  /** Removes users with given linking ids, returns false if the thread was interrupted. */
+  private boolean removeMissing(Set<String> linkingIds, PageQueue pages, SyncResult syncResult) {
+    if (linkingIds.isEmpty()) {
+      return true;
+    }
+    LOG.info("Removing users missing from ldap storage, users to remove '{}'", linkingIds.size());
+    for (List<String> page : Iterables.partition(linkingIds, batchSize)) {
+      if (!pages.submit(() -> removePage(page, syncResult))) {
+        return false;
+      }
+    }
+    return pages.await();
+  }
+
+  private SyncResult interrupted(
+      PageQueue pages, DeltaMarkTracker markTracker, SyncResult syncResult) {
+    pages.cancel();
+    Thread.currentThread().interrupt();
+    LOG.warn("User/Profile synchronization was interrupted");
+    invalidateAuthentications(markTracker);
     LOG.info("Synchronization result: {}", syncResult);
     return syncResult;
   }
 
-  /** Validates and tries to persist fetched ldap entry. */
-  private void syncFetched(LdapEntry entry, Set<String> linkingIds, SyncResult syncResult) {
+  /** Drops cached authentications of the users whose ldap entries were modified. */
+  private void invalidateAuthentications(DeltaMarkTracker markTracker) {
+    if (authCache != null && !markTracker.getModifiedUsers().isEmpty()) {
+      authCache.invalidateUsers(markTracker.getModifiedUsers());
+    }
+  }
+
+  /**
+   * Validates and maps fetched ldap entry, returns null if the entry shouldn't be synchronized.
+   *
+   * @param linkingIds linking ids of all the database users or null if existence of users should
+   *     be checked by database lookup
+   * @param markTracker tracker which collects users whose ldap entries were modified
+   */
+  private SyncEntry prepare(
+      LdapEntry entry,
+      @Nullable Set<String> linkingIds,
+      DeltaMarkTracker markTracker,
+      SyncResult syncResult) {
     idNormalizer.normalize(entry);
 
     final UserImpl ldapUser = userMapper.apply(entry);
     if (!isValid(ldapUser)) {
-      syncResult.failed++;
-      return;
+      syncResult.failed.incrementAndGet();
+      syncResult.invalid.incrementAndGet();
+      return null;
     }
+    markTracker.trackModified(entry, ldapUser.getId());
 
     final ProfileImpl ldapProfile = profileMapper.apply(entry);
     try {
       final String linkingId = linker.extractId(ldapUser);
-      if (!linkingIds.remove(linkingId)) {
-        createUserAndProfile(ldapUser, ldapProfile);
-        syncResult.created++;
-        LOG.debug("Created user & profile '{}'", ldapUser.getId());
-        return;
+      if (linkingIds == null) {
+        return new SyncEntry(entry, ldapUser, ldapProfile, linkingId, null);
       }
-
-      if (!updateIfExists) {
-        syncResult.skipped++;
+      final boolean exists = linkingIds.remove(linkingId);
+      if (exists && !updateIfExists) {
+        syncResult.skipped.incrementAndGet();
         LOG.debug("User & profile '{}' are skipped", ldapUser.getId());
-        return;
+        return null;
+      }
+      return new SyncEntry(entry, ldapUser, ldapProfile, linkingId, exists);
+    } catch (RuntimeException x) {
+      logSyncFailure(new SyncEntry(entry, ldapUser, ldapProfile, null, false), x);
+      syncResult.failed.incrementAndGet();
+      return null;
+    }
+  }
+
+  /** Compares page of ldap users with database ones and persists the changes. */
+  private void syncPage(List<SyncEntry> page, SyncResult syncResult) {
+    final long lookupStart = System.nanoTime();
+    final Map<String, User> dbUsers;
+    final Map<String, Profile> dbProfiles;
+    try {
+      final List<String> existingIds = new ArrayList<>();
+      for (SyncEntry syncEntry : page) {
+        if (syncEntry.exists != Boolean.FALSE) {
+          existingIds.add(syncEntry.linkingId);
+        }
       }
+      dbUsers = existingIds.isEmpty() ? new HashMap<>() : linker.findUsers(existingIds);
+      dbProfiles = findProfiles(dbUsers.values());
+    } catch (RuntimeException | ServerException x) {
+      LOG.warn(
+          "Couldn't fetch database users & profiles of '{}' ldap users. Error: {}",
+          page.size(),
+          x.getMessage());
+      syncResult.failed.addAndGet(page.size());
+      return;
+    } finally {
+      syncResult.lookupNanos.addAndGet(System.nanoTime() - lookupStart);
+    }
 
-      final User dbUser = linker.findUser(linkingId);
-      final Profile dbProfile = profileManager.getById(dbUser.getId());
+    final List<SyncEntry> created = new ArrayList<>();
+    final List<SyncEntry> updated = new ArrayList<>(page.size());
+    for (SyncEntry syncEntry : page) {
+      if (syncEntry.exists == null) {
+        syncEntry.exists = dbUsers.containsKey(syncEntry.linkingId);
+        if (syncEntry.exists && !updateIfExists) {
+          syncResult.skipped.incrementAndGet();
+          LOG.debug("User & profile '{}' are skipped", syncEntry.ldapUser.getId());
+          continue;
+        }
+      }
+      if (!syncEntry.exists) {
+        created.add(syncEntry);
+        continue;
+      }
+      final User dbUser = dbUsers.get(syncEntry.linkingId);
+      final Profile dbProfile = dbUser == null ? null : dbProfiles.get(dbUser.getId());
+      if (dbUser == null || dbProfile == null) {
+        logSyncFailure(
+            syncEntry,
+            new NotFoundException(
+                format("Database user or profile '%s' doesn't exist", syncEntry.linkingId)));
+        syncResult.failed.incrementAndGet();
+        continue;
+      }
       // user identifier in database is always 'id', which means
       // that if linking attribute is different from 'id' then
       // update may update the different user entity or fail.
@@ -264,22 +571,187 @@ public class LdapSynchronizer {
       // linking_attribute = 'email' update will fail with not found exception
       //
       // always use db id for user
-      ldapUser.setId(dbUser.getId());
-      if (updateUserAndProfile(dbUser, dbProfile, ldapUser, ldapProfile)) {
-        syncResult.updated++;
-        LOG.debug("Updated user & profile '{}'", ldapUser.getId());
+      syncEntry.ldapUser.setId(dbUser.getId());
+      if (dbUser.equals(syncEntry.ldapUser) && dbProfile.equals(syncEntry.ldapProfile)) {
+        syncResult.upToDate.incrementAndGet();
+        LOG.debug("User & profile '{}' are up-to-date", syncEntry.ldapUser.getId());
       } else {
-        syncResult.upToDate++;
-        LOG.debug("User & profile '{}' are up-to-date", ldapUser.getId());
+        syncEntry.dbUser = dbUser;
+        syncEntry.dbProfile = dbProfile;
+        updated.add(syncEntry);
       }
-    } catch (RuntimeException | ConflictException | NotFoundException | ServerException x) {
-      LOG.info(
-          "Couldn't synchronize(update/create) user or his profile '{}' "
-              + "due to occurred error, original ldap entry '{}'. Error: {}",
-          ldapUser.getId(),
-          entry,
-          x.getMessage());
-      syncResult.failed++;
+    }
+
+    final long writeStart = System.nanoTime();
+    try {
+      if (!updated.isEmpty()) {
+        try {
+          updatePage(updated);
+          for (SyncEntry syncEntry : updated) {
+            countWritten(syncEntry, syncResult);
+          }
+        } catch (RuntimeException | ConflictException | NotFoundException | ServerException x) {
+          LOG.debug("Couldn't update page of users at once, updating them one by one", x);
+          writeOneByOne(updated, syncResult);
+        }
+      }
+      writeOneByOne(created, syncResult);
+    } finally {
+      syncResult.writeNanos.addAndGet(System.nanoTime() - writeStart);
+    }
+  }
+
+  private void writeOneByOne(List<SyncEntry> entries, SyncResult syncResult) {
+    for (SyncEntry syncEntry : entries) {
+      try {
+        write(syncEntry);
+        countWritten(syncEntry, syncResult);
+      } catch (RuntimeException | ConflictException | NotFoundException | ServerException x) {
+        logSyncFailure(syncEntry, x);
+        syncResult.failed.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Removes page of database users which are missing from ldap storage. Users of the page are
+   * looked up by a single request, but removed one by one, each within its own transaction, as
+   * removal publishes events to the subscribers which can't be rolled back together with a page.
+   */
+  private void removePage(List<String> linkingIds, SyncResult syncResult) {
+    final long removeStart = System.nanoTime();
+    try {
+      final Map<String, User> users;
+      try {
+        users = linker.findUsers(linkingIds);
+      } catch (RuntimeException | ServerException x) {
+        LOG.info(
+            format("Couldn't find '%d' users to remove due to occurred error", linkingIds.size()),
+            x);
+        syncResult.failed.addAndGet(linkingIds.size());
+        return;
+      }
+      for (String linkingId : linkingIds) {
+        if (!users.containsKey(linkingId)) {
+          LOG.info("Couldn't remove user '{}' as it doesn't exist", linkingId);
+          syncResult.failed.incrementAndGet();
+        }
+      }
+      for (User user : users.values()) {
+        try {
+          userManager.remove(user.getId());
+          syncResult.removed.incrementAndGet();
+          LOG.debug("Removed user '{}'", user.getId());
+        } catch (RuntimeException | ConflictException | ServerException x) {
+          LOG.info(format("Couldn't remove user '%s' due to occurred error", user.getId()), x);
+          syncResult.failed.incrementAndGet();
+        }
+      }
+    } finally {
+      syncResult.removeNanos.addAndGet(System.nanoTime() - removeStart);
+    }
+  }
+
+  /** Fetches profiles of given users mapped by users identifiers. */
+  private Map<String, Profile> findProfiles(Iterable<User> users) {
+    final List<String> ids = new ArrayList<>();
+    for (User user : users) {
+      ids.add(user.getId());
+    }
+    final Map<String, Profile> profiles = new HashMap<>();
+    if (ids.isEmpty()) {
+      return profiles;
+    }
+    if (dbHelper == null) {
+      for (String id : ids) {
+        try {
+          profiles.put(id, profileManager.getById(id));
+        } catch (NotFoundException | ServerException x) {
+          LOG.debug("Couldn't fetch profile '{}'. Error: {}", id, x.getMessage());
+        }
+      }
+    } else {
+      for (ProfileImpl profile :
+          dbHelper.executeQuery(
+              "SELECT p FROM Profile p WHERE p.userId IN :ids",
+              ProfileImpl.class,
+              "ids",
+              ids,
+              p -> new ProfileImpl(p.getUserId(), p.getAttributes()))) {
+        profiles.put(profile.getUserId(), profile);
+      }
+    }
+    return profiles;
+  }
+
+  private void countWritten(SyncEntry syncEntry, SyncResult syncResult) {
+    if (!syncEntry.exists) {
+      syncResult.created.incrementAndGet();
+      LOG.debug("Created user & profile '{}'", syncEntry.ldapUser.getId());
+    } else {
+      syncResult.updated.incrementAndGet();
+      LOG.debug("Updated user & profile '{}'", syncEntry.ldapUser.getId());
+    }
+  }
+
+  private void logSyncFailure(SyncEntry syncEntry, Exception x) {
+    LOG.info(
+        "Couldn't synchronize(update/create) user or his profile '{}' "
+            + "due to occurred error, original ldap entry '{}'. Error: {}",
+        syncEntry.ldapUser.getId(),
+        syncEntry.entry,
+        x.getMessage());
+  }
+
+  private void write(SyncEntry syncEntry)
+      throws ConflictException, NotFoundException, ServerException {
+    if (!syncEntry.exists) {
+      createUserAndProfile(syncEntry.ldapUser, syncEntry.ldapProfile);
+    } else {
+      updateUserAndProfile(
+          syncEntry.dbUser, syncEntry.dbProfile, syncEntry.ldapUser, syncEntry.ldapProfile);
+    }
+  }
+
+  /**
+   * Updates existing users and profiles of the page at once, creation and removal of users are
+   * not written this way, as they publish events which can't be rolled back with the transaction.
+   */
+  @Transactional
+  protected void updatePage(List<SyncEntry> page)
+      throws ConflictException, NotFoundException, ServerException {
+    for (SyncEntry syncEntry : page) {
+      updateUserAndProfile(
+          syncEntry.dbUser, syncEntry.dbProfile, syncEntry.ldapUser, syncEntry.ldapProfile);
+    }
+  }
+
+  /** Returns the mark of the previous synchronization or null if there is no such mark. */
+  private String getDeltaMark() {
+    if (deltaMark == null && dbHelper != null) {
+      final List result =
+          dbHelper.executeNativeQuery(
+              "SELECT value FROM codenvy_ldap_sync_state WHERE name = ?1",
+              DELTA_MARK_STATE_PREFIX + deltaAttr);
+      if (!result.isEmpty()) {
+        deltaMark = (String) result.get(0);
+      }
+    }
+    return deltaMark;
+  }
+
+  /**
+   * Stores the mark of the synchronization by a single upsert statement, so the mark is never
+   * missing and concurrent synchronizations of the different nodes don't fail on the primary key.
+   */
+  @Transactional
+  protected void storeDeltaMark(String mark) {
+    if (dbHelper != null) {
+      dbHelper.executeNativeUpdate(
+          "INSERT INTO codenvy_ldap_sync_state (name, value) VALUES (?1, ?2) "
+              + "ON CONFLICT (name) DO UPDATE SET value = EXCLUDED.value",
+          DELTA_MARK_STATE_PREFIX + deltaAttr,
+          mark);
     }
   }
 
@@ -306,9 +778,13 @@ public class LdapSynchronizer {
     return updated;
   }
 
-  private void syncSilentlyAndUnsetFlag() {
+  private void syncSilentlyAndUnsetFlag(boolean modifiedOnly) {
     try {
-      syncAll();
+      if (modifiedOnly) {
+        syncModified();
+      } else {
+        syncAll();
+      }
     } catch (Exception x) {
       LOG.error(
           "Couldn't finish users synchronization due to occurred error, "
@@ -321,7 +797,7 @@ public class LdapSynchronizer {
 
   @PostConstruct
   public void startScheduler() {
-    final SchedulerSyncRunnable task = new SchedulerSyncRunnable();
+    final SchedulerSyncRunnable task = new SchedulerSyncRunnable(false);
     if (syncPeriodMs > 0) {
       scheduler.scheduleAtFixedRate(task, initDelayMs, syncPeriodMs, TimeUnit.MILLISECONDS);
       LOG.info(
@@ -332,10 +808,25 @@ public class LdapSynchronizer {
       scheduler.schedule(task, initDelayMs, TimeUnit.MILLISECONDS);
       LOG.info("Synchronizing Users/Profiles in {}ms", initDelayMs);
     }
+    if (deltaAttr != null && deltaPeriodMs > 0) {
+      scheduler.scheduleWithFixedDelay(
+          new SchedulerSyncRunnable(true),
+          initDelayMs + deltaPeriodMs,
+          deltaPeriodMs,
+          TimeUnit.MILLISECONDS);
+      LOG.info(
+          "Modified Users/Profiles synchronizer registered, synchronization period {}ms, "
+              + "modification attribute '{}'",
+          deltaPeriodMs,
+          deltaAttr);
+    }
   }
 
   @PreDestroy
   public void shutdownScheduler() {
+    if (workers != null) {
+      workers.shutdownNow();
+    }
     scheduler.shutdown();
     try {
       if (!scheduler.awaitTermination(1, TimeUnit.MINUTES)) {
@@ -375,40 +866,51 @@ public class LdapSynchronizer {
     return true;
   }
 
-  /** Describes synchronization result. */
+  /**
+   * Describes synchronization result.
+   *
+   * <p>Besides the counters it contains time spent by each synchronization stage, the time of the
+   * stages performed by workers is summed up for all the workers.
+   */
   public static class SyncResult {
 
-    private long created;
-    private long updated;
-    private long removed;
-    private long failed;
-    private long upToDate;
-    private long skipped;
-    private long fetched;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong upToDate = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong fetched = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicLong removeNanos = new AtomicLong();
 
     /** How many users where removed. */
     public long getRemoved() {
-      return removed;
+      return removed.get();
     }
 
     /** How many users where updated. */
     public long getUpdated() {
-      return updated;
+      return updated.get();
     }
 
     /** How many users where created. */
     public long getCreated() {
-      return created;
+      return created.get();
     }
 
     /** How many users couldn't be created or updated. */
     public long getFailed() {
-      return failed;
+      return failed.get();
     }
 
     /** How many users were not updated because the database version of them is the same. */
     public long getUpToDate() {
-      return upToDate;
+      return upToDate.get();
     }
 
     /**
@@ -416,17 +918,61 @@ public class LdapSynchronizer {
      * configuration options.
      */
     public long getSkipped() {
-      return skipped;
+      return skipped.get();
     }
 
     /** How many users were fetched from ldap storage. */
     public long getFetched() {
-      return fetched;
+      return fetched.get();
     }
 
     /** How many synchronization attempts were performed or how many ldap users were processed. */
     public long getProcessed() {
-      return created + updated + upToDate + failed + skipped;
+      return getCreated() + getUpdated() + getUpToDate() + getFailed() + getSkipped();
+    }
+
+    /** How many milliseconds were spent reading users from ldap storage. */
+    public long getFetchTimeMs() {
+      return TimeUnit.NANOSECONDS.toMillis(fetchNanos.get());
+    }
+
+    /** How many milliseconds were spent fetching existing users and profiles from database. */
+    public long getLookupTimeMs() {
+      return TimeUnit.NANOSECONDS.toMillis(lookupNanos.get());
+    }
+
+    /** How many milliseconds were spent creating and updating users and profiles. */
+    public long getWriteTimeMs() {
+      return TimeUnit.NANOSECONDS.toMillis(writeNanos.get());
+    }
+
+    /** How many milliseconds were spent removing users missing from ldap storage. */
+    public long getRemoveTimeMs() {
+      return TimeUnit.NANOSECONDS.toMillis(removeNanos.get());
+    }
+
+    /** How many users per second were read from ldap storage. */
+    public long getFetchThroughput() {
+      return throughput(getFetched(), fetchNanos.get());
+    }
+
+    /** How many users per second were compared with database ones. */
+    public long getLookupThroughput() {
+      return throughput(getProcessed() - getSkipped(), lookupNanos.get());
+    }
+
+    /** How many users per second were created or updated. */
+    public long getWriteThroughput() {
+      return throughput(getCreated() + getUpdated(), writeNanos.get());
+    }
+
+    /** How many users per second were removed. */
+    public long getRemoveThroughput() {
+      return throughput(getRemoved(), removeNanos.get());
+    }
+
+    private static long throughput(long count, long nanos) {
+      return nanos == 0 ? 0 : count * TimeUnit.SECONDS.toNanos(1) / nanos;
     }
 
     @Override
@@ -439,16 +985,250 @@ public class LdapSynchronizer {
               + "failed = '%d', "
               + "up-to-date = '%d', "
               + "skipped = '%d', "
-              + "fetched = '%d'",
-          getProcessed(), created, updated, removed, failed, upToDate, skipped, fetched);
+              + "fetched = '%d', "
+              + "fetch = '%dms, %d/s', "
+              + "lookup = '%dms, %d/s', "
+              + "write = '%dms, %d/s', "
+              + "remove = '%dms, %d/s'",
+          getProcessed(),
+          getCreated(),
+          getUpdated(),
+          getRemoved(),
+          getFailed(),
+          getUpToDate(),
+          getSkipped(),
+          getFetched(),
+          getFetchTimeMs(),
+          getFetchThroughput(),
+          getLookupTimeMs(),
+          getLookupThroughput(),
+          getWriteTimeMs(),
+          getWriteThroughput(),
+          getRemoveTimeMs(),
+          getRemoveThroughput());
+    }
+  }
+
+  /** Ldap user and profile together with their database versions. */
+  static class SyncEntry {
+    final LdapEntry entry;
+    final UserImpl ldapUser;
+    final ProfileImpl ldapProfile;
+    final String linkingId;
+
+    /** Whether the user exists in database, null until it is checked by database lookup. */
+    Boolean exists;
+
+    User dbUser;
+    Profile dbProfile;
+
+    SyncEntry(
+        LdapEntry entry,
+        UserImpl ldapUser,
+        ProfileImpl ldapProfile,
+        String linkingId,
+        Boolean exists) {
+      this.entry = entry;
+      this.ldapUser = ldapUser;
+      this.ldapProfile = ldapProfile;
+      this.linkingId = linkingId;
+      this.exists = exists;
+    }
+  }
+
+  /**
+   * Tracks the greatest value of the modification attribute among synchronized entries and
+   * collects identifiers of the users whose entries were modified since the previous
+   * synchronization, e.g. the password was changed or the account was locked, so their cached
+   * authentications are dropped. If the modification attribute is not configured or there is no
+   * mark of the previous synchronization, then each synchronized entry is considered modified.
+   */
+  private class DeltaMarkTracker {
+    final String previousMark;
+    final Set<String> modifiedUsers = new HashSet<>();
+    String mark;
+    boolean changed;
+
+    DeltaMarkTracker(@Nullable String mark) {
+      this.mark = mark;
+      this.previousMark = deltaAttr == null ? null : getDeltaMark();
+    }
+
+    void track(LdapEntry entry) {
+      if (deltaAttr == null) {
+        return;
+      }
+      final LdapAttribute attribute = entry.getAttribute(deltaAttr);
+      if (attribute != null && attribute.getStringValue() != null) {
+        final String value = attribute.getStringValue();
+        if (mark == null || compareMarks(value, mark) > 0) {
+          mark = value;
+          changed = true;
+        }
+      }
+    }
+
+    void trackModified(LdapEntry entry, String userId) {
+      if (authCache == null || !authCache.isEnabled()) {
+        return;
+      }
+      final LdapAttribute attribute = deltaAttr == null ? null : entry.getAttribute(deltaAttr);
+      if (previousMark == null
+          || attribute == null
+          || attribute.getStringValue() == null
+          || compareMarks(attribute.getStringValue(), previousMark) >= 0) {
+        modifiedUsers.add(userId);
+      }
+    }
+
+    boolean isChanged() {
+      return changed;
+    }
+
+    Set<String> getModifiedUsers() {
+      return modifiedUsers;
+    }
+
+    String getMark() {
+      return mark;
+    }
+  }
+
+  /**
+   * Compares values of the modification attribute, numbers e.g. {@code uSNChanged} are compared
+   * as numbers, values in generalized time format e.g. {@code modifyTimestamp} are compared as
+   * points in time, so fractions of seconds and time zone offsets are taken into account. Values
+   * of other formats are compared as strings.
+   */
+  @VisibleForTesting
+  static int compareMarks(String mark1, String mark2) {
+    if (NUMBER.matcher(mark1).matches() && NUMBER.matcher(mark2).matches()) {
+      return new BigInteger(mark1).compareTo(new BigInteger(mark2));
+    }
+    try {
+      return Long.compare(
+          GENERALIZED_TIME.decodeStringValue(mark1).getTimeInMillis(),
+          GENERALIZED_TIME.decodeStringValue(mark2).getTimeInMillis());
+    } catch (IllegalArgumentException x) {
+      return mark1.compareTo(mark2);
+    }
+  }
+
+  /**
+   * Runs pages synchronization tasks by the workers or by the caller thread if there are no
+   * workers. The number of submitted and not finished tasks is limited, so the pages are not read
+   * from ldap storage faster than they are synchronized.
+   */
+  private class PageQueue {
+    final int maxTasks = threads * 2;
+    final Semaphore permits = new Semaphore(maxTasks);
+    final List<PageTask> tasks = new ArrayList<>();
+
+    /** Returns false if the thread was interrupted while waiting for the free worker. */
+    boolean submit(Runnable task) {
+      if (workers == null) {
+        task.run();
+        return true;
+      }
+      try {
+        permits.acquire();
+      } catch (InterruptedException x) {
+        return false;
+      }
+      final PageTask pageTask = new PageTask(task);
+      try {
+        pageTask.future = workers.submit(pageTask);
+      } catch (RejectedExecutionException x) {
+        permits.release();
+        throw new SyncException("Couldn't synchronize users as synchronizer is stopped");
+      }
+      tasks.add(pageTask);
+      return true;
+    }
+
+    /** Returns false if the thread was interrupted while waiting for the submitted tasks. */
+    boolean await() {
+      try {
+        for (PageTask task : tasks) {
+          try {
+            task.future.get();
+          } catch (ExecutionException x) {
+            LOG.error("Couldn't synchronize page of users", x.getCause());
+          }
+        }
+      } catch (InterruptedException x) {
+        return false;
+      }
+      tasks.clear();
+      return true;
+    }
+
+    /**
+     * Cancels the tasks which are not started yet, interrupts the running ones and waits until
+     * they are finished, so no page is written after the synchronization is interrupted.
+     */
+    void cancel() {
+      if (workers == null) {
+        return;
+      }
+      tasks.forEach(PageTask::cancel);
+      tasks.clear();
+      // the caller thread may be interrupted, while it must wait for the workers
+      final boolean interrupted = Thread.interrupted();
+      try {
+        if (!permits.tryAcquire(maxTasks, 1, TimeUnit.MINUTES)) {
+          LOG.warn("Couldn't wait for the synchronization workers to finish pages");
+        }
+      } catch (InterruptedException x) {
+        LOG.warn("Interrupted while waiting for the synchronization workers to finish pages");
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /** Releases its permit either when finished or when cancelled before it is started. */
+    private class PageTask implements Runnable {
+      final Runnable task;
+      final AtomicBoolean started = new AtomicBoolean();
+      Future<?> future;
+
+      PageTask(Runnable task) {
+        this.task = task;
+      }
+
+      @Override
+      public void run() {
+        if (started.compareAndSet(false, true)) {
+          try {
+            task.run();
+          } finally {
+            permits.release();
+          }
+        }
+      }
+
+      void cancel() {
+        if (started.compareAndSet(false, true)) {
+          permits.release();
+        }
+        future.cancel(true);
+      }
     }
   }
 
   private class SchedulerSyncRunnable implements Runnable {
+    private final boolean modifiedOnly;
+
+    private SchedulerSyncRunnable(boolean modifiedOnly) {
+      this.modifiedOnly = modifiedOnly;
+    }
+
     @Override
     public void run() {
       if (isSyncing.compareAndSet(false, true)) {
-        syncSilentlyAndUnsetFlag();
+        syncSilentlyAndUnsetFlag(modifiedOnly);
       }
     }
   }
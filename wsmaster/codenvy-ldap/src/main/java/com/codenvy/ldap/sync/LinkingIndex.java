@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.ldap.sync;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+/**
+ * Compact set of linking identifiers of database users.
+ *
+ * <p>Identifiers are stored as UTF-8 bytes packed into a single sorted array, so the index takes
+ * a few times less memory than a hash set of strings and lookups are performed by binary search.
+ * Identifiers can't be added to the built index, but they can be removed, removed identifiers are
+ * only marked so and the memory is not released.
+ */
+final class LinkingIndex extends AbstractSet<String> {
+
+  private final byte[] data;
+  private final int[] offsets;
+  private final BitSet removed;
+
+  private LinkingIndex(byte[] data, int[] offsets) {
+    this.data = data;
+    this.offsets = offsets;
+    this.removed = new BitSet(offsets.length - 1);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (!(o instanceof String)) {
+      return false;
+    }
+    final int idx = indexOf(((String) o).getBytes(UTF_8));
+    return idx >= 0 && !removed.get(idx);
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (!(o instanceof String)) {
+      return false;
+    }
+    final int idx = indexOf(((String) o).getBytes(UTF_8));
+    if (idx < 0 || removed.get(idx)) {
+      return false;
+    }
+    removed.set(idx);
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return offsets.length - 1 - removed.cardinality();
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<String>() {
+      int next = removed.nextClearBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return next < offsets.length - 1;
+      }
+
+      @Override
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final String value = get(next);
+        next = removed.nextClearBit(next + 1);
+        return value;
+      }
+    };
+  }
+
+  private String get(int idx) {
+    return new String(data, offsets[idx], offsets[idx + 1] - offsets[idx], UTF_8);
+  }
+
+  private int indexOf(byte[] value) {
+    int low = 0;
+    int high = offsets.length - 2;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int cmp = compare(data, offsets[mid], offsets[mid + 1], value, 0, value.length);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /** Compares byte ranges as unsigned bytes, which is the same as comparing code points. */
+  private static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+    final int len = Math.min(aTo - aFrom, bTo - bFrom);
+    for (int i = 0; i < len; i++) {
+      final int cmp = (a[aFrom + i] & 0xff) - (b[bFrom + i] & 0xff);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return (aTo - aFrom) - (bTo - bFrom);
+  }
+
+  /**
+   * Builds the index of identifiers, identifiers are expected to be added in order, so the index
+   * doesn't need to be sorted, otherwise it is sorted once it is built.
+   */
+  static class Builder {
+
+    private byte[] data = new byte[1024];
+    private int[] offsets = new int[64];
+    private int size;
+    private boolean sorted = true;
+
+    /** Adds given identifier to the index, the same identifier must not be added twice. */
+    Builder add(String id) {
+      final byte[] bytes = id.getBytes(UTF_8);
+      final int from = offsets[size];
+      if (sorted && size > 0) {
+        sorted = compare(data, offsets[size - 1], from, bytes, 0, bytes.length) < 0;
+      }
+      if (from + bytes.length > data.length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, from + bytes.length));
+      }
+      if (size + 2 > offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      System.arraycopy(bytes, 0, data, from, bytes.length);
+      offsets[++size] = from + bytes.length;
+      return this;
+    }
+
+    LinkingIndex build() {
+      if (!sorted) {
+        sort();
+      }
+      return new LinkingIndex(
+          Arrays.copyOf(data, offsets[size]), Arrays.copyOf(offsets, size + 1));
+    }
+
+    /** Reorders added identifiers, happens only if the order of identifiers was different. */
+    private void sort() {
+      final int[] order =
+          IntStream.range(0, size)
+              .boxed()
+              .sorted(this::compareAt)
+              .mapToInt(Integer::intValue)
+              .toArray();
+      final byte[] sortedData = new byte[offsets[size]];
+      final int[] sortedOffsets = new int[size + 1];
+      for (int i = 0; i < size; i++) {
+        final int len = offsets[order[i] + 1] - offsets[order[i]];
+        System.arraycopy(data, offsets[order[i]], sortedData, sortedOffsets[i], len);
+        sortedOffsets[i + 1] = sortedOffsets[i] + len;
+      }
+      data = sortedData;
+      offsets = sortedOffsets;
+    }
+
+    private int compareAt(int idx1, int idx2) {
+      return LinkingIndex.compare(
+          data, offsets[idx1], offsets[idx1 + 1], data, offsets[idx2], offsets[idx2 + 1]);
+    }
+  }
+}
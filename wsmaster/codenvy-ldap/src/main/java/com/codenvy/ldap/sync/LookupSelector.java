@@ -15,6 +15,7 @@ import static org.ldaptive.ResultCode.SUCCESS;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Iterator;
+import org.eclipse.che.commons.annotation.Nullable;
 import org.ldaptive.Connection;
 import org.ldaptive.LdapEntry;
 import org.ldaptive.LdapException;
@@ -53,9 +54,15 @@ public class LookupSelector implements LdapEntrySelector {
 
   @Override
   public Iterable<LdapEntry> select(Connection connection) {
+    return select(connection, null, attributes);
+  }
+
+  @Override
+  public Iterable<LdapEntry> select(
+      Connection connection, @Nullable String filter, String[] attributes) {
     final SearchRequest req = new SearchRequest();
     req.setBaseDn(baseDn);
-    req.setSearchFilter(new SearchFilter(filter));
+    req.setSearchFilter(new SearchFilter(and(this.filter, filter)));
     req.setReturnAttributes(attributes);
     req.setSearchScope(SearchScope.SUBTREE);
     req.setTimeLimit(Duration.ofMillis(readPageTimeoutMs));
@@ -63,6 +70,21 @@ public class LookupSelector implements LdapEntrySelector {
     return new PagedIterable(new PagedResultsClient(connection, pageSize), req);
   }
 
+  /** Combines given filters, the second filter may be null. */
+  static String and(String filter, @Nullable String additionalFilter) {
+    if (additionalFilter == null) {
+      return filter;
+    }
+    if (filter == null || filter.isEmpty()) {
+      return additionalFilter;
+    }
+    return "(&" + parenthesize(filter) + parenthesize(additionalFilter) + ')';
+  }
+
+  private static String parenthesize(String filter) {
+    return filter.startsWith("(") ? filter : '(' + filter + ')';
+  }
+
   @Override
   public String toString() {
     return "LookupSelector{"
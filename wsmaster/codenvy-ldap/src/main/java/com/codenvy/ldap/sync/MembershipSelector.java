@@ -11,15 +11,36 @@
 package com.codenvy.ldap.sync;
 
 import static java.lang.String.format;
-import static java.util.stream.Collectors.toSet;
+import static org.ldaptive.ResultCode.NO_SUCH_OBJECT;
 import static org.ldaptive.ResultCode.SUCCESS;
-import static org.ldaptive.SearchScope.OBJECT;
+import static org.ldaptive.SearchScope.ONELEVEL;
 import static org.ldaptive.SearchScope.SUBTREE;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.naming.InvalidNameException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import org.eclipse.che.commons.annotation.Nullable;
 import org.ldaptive.Connection;
+import org.ldaptive.ConnectionFactory;
+import org.ldaptive.LdapAttribute;
 import org.ldaptive.LdapEntry;
 import org.ldaptive.LdapException;
 import org.ldaptive.Response;
@@ -29,15 +50,39 @@ import org.ldaptive.SearchRequest;
 import org.ldaptive.SearchResult;
 import org.ldaptive.ad.handler.ObjectGuidHandler;
 import org.ldaptive.ad.handler.RangeEntryHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Queries all the group members and returns and iterable requesting each of them when {@link
- * Iterator#next()} is called.
+ * Queries all the group members and returns an iterable which requests them by batches while
+ * iterating.
+ *
+ * <p>Members of each batch are grouped by their parent entries and requested by one level searches
+ * in the parent entries with filters matching relative distinguished names of the members, so the
+ * number of requests is much less than the number of members. Members of all the groups are sorted
+ * and deduplicated once, when the groups are selected, so members of the same parent entry get
+ * into the same batches and there is no need to remember which members were already requested.
+ *
+ * <p>Note that the selection of members is not streamed: names of all the members are parsed,
+ * sorted and kept in memory until the iteration is over. The groups search returns all the members
+ * at once anyway, and members must be deduplicated exactly, as a member of several groups returned
+ * twice would be created twice by the synchronization.
+ *
+ * <p>If the connection factory and the executor are provided, then batches are requested in
+ * parallel by the executor using connections of this factory, otherwise all the batches are
+ * requested one by one using the connection of selection. The executor is owned by the caller,
+ * which must bound it so the parallel requests don't exhaust connections of the factory.
  *
  * @author Yevhenii Voevodin
  */
 public class MembershipSelector implements LdapEntrySelector {
 
+  private static final Logger LOG = LoggerFactory.getLogger(MembershipSelector.class);
+  private static final int MEMBERS_BATCH_SIZE = 100;
+
+  private final ConnectionFactory connFactory;
+  private final ExecutorService executor;
+  private final int parallelism;
   private final String baseDn;
   private final String groupsFilter;
   private final String usersFilter;
@@ -50,6 +95,37 @@ public class MembershipSelector implements LdapEntrySelector {
       String usersFilter,
       String membersAttr,
       String... returnAttrs) {
+    this(null, null, 1, baseDn, groupsFilter, usersFilter, membersAttr, returnAttrs);
+  }
+
+  /**
+   * Creates selector which requests members in parallel.
+   *
+   * @param connFactory the factory used for getting connections for requesting members, if it is
+   *     null then members are requested using the connection of selection
+   * @param executor the executor which requests members, if it is null then members are requested
+   *     by the thread iterating over the selection
+   * @param parallelism how many batches of members may be requested at the same time, it must not
+   *     be greater than the number of connections available from the factory
+   */
+  public MembershipSelector(
+      @Nullable ConnectionFactory connFactory,
+      @Nullable ExecutorService executor,
+      int parallelism,
+      String baseDn,
+      String groupsFilter,
+      String usersFilter,
+      String membersAttr,
+      String... returnAttrs) {
+    if (connFactory == null || executor == null || parallelism <= 1) {
+      this.connFactory = null;
+      this.executor = null;
+      this.parallelism = 1;
+    } else {
+      this.connFactory = connFactory;
+      this.executor = executor;
+      this.parallelism = parallelism;
+    }
     this.baseDn = baseDn;
     this.groupsFilter = groupsFilter;
     this.usersFilter = usersFilter;
@@ -59,6 +135,12 @@ public class MembershipSelector implements LdapEntrySelector {
 
   @Override
   public Iterable<LdapEntry> select(Connection connection) {
+    return select(connection, null, returnAttrs);
+  }
+
+  @Override
+  public Iterable<LdapEntry> select(
+      Connection connection, @Nullable String filter, String[] attributes) {
     final SearchRequest groupsSearch = new SearchRequest();
     groupsSearch.setBaseDn(baseDn);
     groupsSearch.setSearchFilter(new SearchFilter(groupsFilter));
@@ -70,16 +152,11 @@ public class MembershipSelector implements LdapEntrySelector {
       if (response.getResultCode() != SUCCESS) {
         throw new SyncException("Couldn't get groups, result code is " + response.getResultCode());
       }
-      return new RequestEachEntryIterable(
-          response
-              .getResult()
-              .getEntries()
-              .stream()
-              .flatMap(entry -> entry.getAttribute(membersAttr).getStringValues().stream())
-              .collect(toSet()),
+      return new MembersIterable(
+          distinctMembers(response.getResult().getEntries()),
           connection,
-          usersFilter,
-          returnAttrs);
+          LookupSelector.and(usersFilter, filter),
+          attributes);
     } catch (LdapException x) {
       throw new SyncException(x.getLocalizedMessage(), x);
     }
@@ -102,72 +179,256 @@ public class MembershipSelector implements LdapEntrySelector {
         + '\''
         + ", returnAttrs="
         + Arrays.toString(returnAttrs)
+        + ", parallelism="
+        + parallelism
         + '}';
   }
 
-  private static class RequestEachEntryIterable implements Iterable<LdapEntry> {
-    private final Set<String> dns;
+  /**
+   * Returns sorted distinct names of the members of given groups. Names are sorted from the root,
+   * so members of the same parent entry are next to each other. It takes O(n log n) time for n
+   * members of all the groups before the first member is requested.
+   */
+  private List<LdapName> distinctMembers(Collection<LdapEntry> groups) {
+    final List<LdapName> names = new ArrayList<>();
+    for (LdapEntry group : groups) {
+      final LdapAttribute attribute = group.getAttribute(membersAttr);
+      if (attribute == null) {
+        continue;
+      }
+      for (String dn : attribute.getStringValues()) {
+        try {
+          final LdapName name = new LdapName(dn);
+          if (name.size() > 0) {
+            names.add(name);
+          }
+        } catch (InvalidNameException x) {
+          LOG.warn("Skipping group member '{}' as it is not a valid distinguished name", dn);
+        }
+      }
+    }
+    Collections.sort(names);
+    final List<LdapName> distinct = new ArrayList<>(names.size());
+    for (LdapName name : names) {
+      if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).equals(name)) {
+        distinct.add(name);
+      }
+    }
+    return distinct;
+  }
+
+  /** Creates filter which matches given relative distinguished name. */
+  static String toFilter(Rdn rdn) throws NamingException {
+    final StringBuilder sb = new StringBuilder();
+    final NamingEnumeration<? extends Attribute> attributes = rdn.toAttributes().getAll();
+    int count = 0;
+    while (attributes.hasMore()) {
+      final Attribute attribute = attributes.next();
+      final NamingEnumeration<?> values = attribute.getAll();
+      while (values.hasMore()) {
+        sb.append('(')
+            .append(attribute.getID())
+            .append('=')
+            .append(encodeValue(values.next()))
+            .append(')');
+        count++;
+      }
+    }
+    return count == 1 ? sb.toString() : "(&" + sb + ')';
+  }
+
+  /** Escapes filter value as described by RFC 4515. */
+  private static String encodeValue(Object value) {
+    if (value instanceof byte[]) {
+      final StringBuilder sb = new StringBuilder();
+      for (byte b : (byte[]) value) {
+        sb.append(format("\\%02x", b & 0xff));
+      }
+      return sb.toString();
+    }
+    final String str = value.toString();
+    final StringBuilder sb = new StringBuilder(str.length());
+    for (char c : str.toCharArray()) {
+      switch (c) {
+        case '\\':
+          sb.append("\\5c");
+          break;
+        case '*':
+          sb.append("\\2a");
+          break;
+        case '(':
+          sb.append("\\28");
+          break;
+        case ')':
+          sb.append("\\29");
+          break;
+        case '\0':
+          sb.append("\\00");
+          break;
+        default:
+          sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private class MembersIterable implements Iterable<LdapEntry> {
+    private final List<LdapName> members;
     private final Connection connection;
-    private final SearchFilter usersFilter;
+    private final String filter;
+    private final String[] attributes;
 
-    private RequestEachEntryIterable(
-        Set<String> dns, Connection connection, String usersFilter, String[] returnAttrs) {
-      this.dns = dns;
+    private MembersIterable(
+        List<LdapName> members, Connection connection, String filter, String[] attributes) {
+      this.members = members;
       this.connection = connection;
-      this.usersFilter = new SearchFilter(usersFilter);
-      this.returnAttrs = returnAttrs;
+      this.filter = filter;
+      this.attributes = attributes;
     }
 
-    private final String[] returnAttrs;
-
     @Override
     public Iterator<LdapEntry> iterator() {
-      return new RequestEachEntryIterator(dns.iterator(), connection, usersFilter, returnAttrs);
+      return new MembersIterator(members.iterator(), connection, filter, attributes);
     }
   }
 
-  private static class RequestEachEntryIterator implements Iterator<LdapEntry> {
+  private class MembersIterator implements Iterator<LdapEntry> {
 
-    private final Iterator<String> dnsIterator;
-    private final SearchFilter usersFilter;
-    private final String[] returnAttrs;
-    private final SearchOperation searchOp;
+    private final Iterator<LdapName> members;
+    private final Connection connection;
+    private final String filter;
+    private final String[] attributes;
+    private final Deque<Future<List<LdapEntry>>> inFlight;
+
+    private Iterator<LdapEntry> delegate;
 
-    private RequestEachEntryIterator(
-        Iterator<String> dns,
-        Connection connection,
-        SearchFilter usersFilter,
-        String[] returnAttrs) {
-      this.dnsIterator = dns;
-      this.usersFilter = usersFilter;
-      this.returnAttrs = returnAttrs;
-      this.searchOp = new SearchOperation(connection);
+    private MembersIterator(
+        Iterator<LdapName> members, Connection connection, String filter, String[] attributes) {
+      this.members = members;
+      this.connection = connection;
+      this.filter = filter;
+      this.attributes = attributes;
+      this.inFlight = new ArrayDeque<>(parallelism);
+      this.delegate = Collections.emptyIterator();
     }
 
     @Override
     public boolean hasNext() {
-      return dnsIterator.hasNext();
+      while (!delegate.hasNext()) {
+        requestBatches();
+        if (inFlight.isEmpty()) {
+          return false;
+        }
+        delegate = await(inFlight.poll()).iterator();
+      }
+      return true;
     }
 
     @Override
     public LdapEntry next() {
-      final String dn = dnsIterator.next();
-      final SearchRequest request = new SearchRequest();
-      request.setBaseDn(dn);
-      request.setSearchFilter(usersFilter);
-      request.setSearchScope(OBJECT);
-      request.setReturnAttributes(returnAttrs);
-      request.setSearchEntryHandlers(new ObjectGuidHandler());
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return delegate.next();
+    }
+
+    /** Requests next batches of members until there are enough requests in flight. */
+    private void requestBatches() {
+      while (inFlight.size() < parallelism) {
+        final List<LdapName> batch = nextBatch();
+        if (batch.isEmpty()) {
+          return;
+        }
+        if (connFactory == null) {
+          inFlight.add(CompletableFuture.completedFuture(search(connection, batch)));
+        } else {
+          inFlight.add(
+              executor.submit(
+                  () -> {
+                    try (Connection conn = connFactory.getConnection()) {
+                      conn.open();
+                      return search(conn, batch);
+                    }
+                  }));
+        }
+      }
+    }
+
+    /** Returns next members which were not requested yet. */
+    private List<LdapName> nextBatch() {
+      final List<LdapName> batch = new ArrayList<>(MEMBERS_BATCH_SIZE);
+      while (batch.size() < MEMBERS_BATCH_SIZE && members.hasNext()) {
+        batch.add(members.next());
+      }
+      return batch;
+    }
+
+    private List<LdapEntry> await(Future<List<LdapEntry>> future) {
       try {
-        final Response<SearchResult> response = searchOp.execute(request);
-        if (response.getResultCode() != SUCCESS) {
-          throw new SyncException(
-              format(
-                  "Couldn't get entry dn '%s', result code is '%s'", dn, response.getResultCode()));
+        return future.get();
+      } catch (InterruptedException x) {
+        Thread.currentThread().interrupt();
+        throw new SyncException("Interrupted while waiting for group members");
+      } catch (ExecutionException x) {
+        if (x.getCause() instanceof SyncException) {
+          throw (SyncException) x.getCause();
         }
-        return response.getResult().getEntry();
-      } catch (LdapException x) {
-        throw new SyncException(x.getLocalizedMessage(), x);
+        throw new SyncException(x.getCause().getLocalizedMessage(), x.getCause());
+      }
+    }
+
+    /** Requests given members with a search per their parent entry. */
+    private List<LdapEntry> search(Connection conn, List<LdapName> batch) throws SyncException {
+      final Map<String, StringBuilder> filtersByParent = new LinkedHashMap<>();
+      for (LdapName name : batch) {
+        try {
+          filtersByParent
+              .computeIfAbsent(name.getPrefix(name.size() - 1).toString(), p -> new StringBuilder())
+              .append(toFilter(name.getRdn(name.size() - 1)));
+        } catch (NamingException x) {
+          LOG.warn("Skipping group member '{}'. Error: {}", name, x.getMessage());
+        }
+      }
+      final List<LdapEntry> entries = new ArrayList<>(batch.size());
+      final SearchOperation searchOp = new SearchOperation(conn);
+      for (Map.Entry<String, StringBuilder> parent : filtersByParent.entrySet()) {
+        final SearchRequest request = new SearchRequest();
+        request.setBaseDn(parent.getKey());
+        request.setSearchFilter(
+            new SearchFilter(LookupSelector.and(filter, "(|" + parent.getValue() + ')')));
+        request.setSearchScope(ONELEVEL);
+        request.setReturnAttributes(attributes);
+        request.setSearchEntryHandlers(new ObjectGuidHandler());
+        try {
+          final Response<SearchResult> response = searchOp.execute(request);
+          if (response.getResultCode() != SUCCESS) {
+            throw new SyncException(
+                format(
+                    "Couldn't get members of '%s', result code is '%s'",
+                    parent.getKey(), response.getResultCode()));
+          }
+          // filters match attribute values, not only the names, so keep the members only
+          for (LdapEntry entry : response.getResult().getEntries()) {
+            if (isMember(entry, batch)) {
+              entries.add(entry);
+            }
+          }
+        } catch (LdapException x) {
+          if (x.getResultCode() == NO_SUCH_OBJECT) {
+            LOG.debug("Skipping members of '{}' as it doesn't exist", parent.getKey());
+          } else {
+            throw new SyncException(x.getLocalizedMessage(), x);
+          }
+        }
+      }
+      return entries;
+    }
+
+    private boolean isMember(LdapEntry entry, List<LdapName> batch) {
+      try {
+        return batch.contains(new LdapName(entry.getDn()));
+      } catch (InvalidNameException x) {
+        return false;
       }
     }
   }
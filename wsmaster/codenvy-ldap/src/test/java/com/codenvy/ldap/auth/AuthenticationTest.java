@@ -12,6 +12,11 @@ package com.codenvy.ldap.auth;
 
 import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.fail;
 
 import com.codenvy.api.dao.authentication.AuthenticationHandler;
@@ -20,7 +25,9 @@ import com.codenvy.api.dao.authentication.SSHAPasswordEncryptor;
 import com.codenvy.ldap.EmbeddedLdapServer;
 import com.codenvy.ldap.LdapUserIdNormalizer;
 import org.apache.directory.shared.ldap.entry.ServerEntry;
+import org.eclipse.che.api.core.notification.EventService;
 import org.eclipse.che.commons.auth.AuthenticationException;
+import org.ldaptive.auth.AuthenticationRequest;
 import org.ldaptive.auth.Authenticator;
 import org.ldaptive.auth.EntryResolver;
 import org.ldaptive.pool.PooledConnectionFactory;
@@ -151,7 +158,8 @@ public class AuthenticationTest {
                 null)
             .get(); // <- subtree search
 
-    LdapAuthenticationHandler handler = new LdapAuthenticationHandler(authenticator, cnNormalizer);
+    LdapAuthenticationHandler handler =
+        new LdapAuthenticationHandler(authenticator, cnNormalizer, null);
 
     mustAuthenticate(handler, "mike", "mike");
     mustAuthenticate(handler, "john", "john");
@@ -182,7 +190,8 @@ public class AuthenticationTest {
                 "true")
             .get(); // <- subtree search
 
-    LdapAuthenticationHandler handler = new LdapAuthenticationHandler(authenticator, cnNormalizer);
+    LdapAuthenticationHandler handler =
+        new LdapAuthenticationHandler(authenticator, cnNormalizer, null);
 
     mustAuthenticate(handler, "mike", "mike");
     mustAuthenticate(handler, "john", "john");
@@ -213,7 +222,8 @@ public class AuthenticationTest {
                 "true")
             .get(); // <- subtree search
 
-    LdapAuthenticationHandler handler = new LdapAuthenticationHandler(authenticator, cnNormalizer);
+    LdapAuthenticationHandler handler =
+        new LdapAuthenticationHandler(authenticator, cnNormalizer, null);
 
     mustAuthenticate(handler, "ivan", "ivan");
     mustAuthenticate(handler, "brad", "brad");
@@ -221,6 +231,37 @@ public class AuthenticationTest {
     mustNotAuthenticate(handler, "john", "john");
   }
 
+  @Test
+  public void cachesSuccessfulAuthentications() throws Exception {
+    PooledConnectionFactory connFactory = server.getConnectionFactory();
+    Authenticator authenticator =
+        spy(
+            new AuthenticatorProvider(
+                    connFactory,
+                    null,
+                    "ou=developers,dc=codenvy,dc=com", // <- base dn
+                    "DIRECT", // <- auth type
+                    "cn=%s,ou=developers,dc=codenvy,dc=com", // <- dn format
+                    null, // <- user password attribute
+                    null, // <- user filter
+                    null, // <- allow multiple dns
+                    null)
+                .get()); // <- subtree search
+    LdapAuthenticationCache cache = new LdapAuthenticationCache(new EventService(), "60000", "100");
+
+    LdapAuthenticationHandler handler =
+        new LdapAuthenticationHandler(authenticator, cnNormalizer, cache);
+
+    assertEquals(handler.authenticate("mike", "mike"), "mike");
+    assertEquals(handler.authenticate("mike", "mike"), "mike");
+    mustNotAuthenticate(handler, "mike", "john");
+    verify(authenticator, times(2)).authenticate(any(AuthenticationRequest.class));
+
+    cache.invalidateUser("mike");
+    mustAuthenticate(handler, "mike", "mike");
+    verify(authenticator, times(3)).authenticate(any(AuthenticationRequest.class));
+  }
+
   private static void mustAuthenticate(
       AuthenticationHandler handler, String name, String password) {
     try {
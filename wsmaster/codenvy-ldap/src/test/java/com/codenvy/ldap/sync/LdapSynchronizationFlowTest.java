@@ -231,10 +231,17 @@ public class LdapSynchronizationFlowTest {
       bindConstant().annotatedWith(Names.named("ldap.sync.page.read_timeout_ms")).to(30_000L);
       bindConstant().annotatedWith(Names.named("ldap.sync.remove_if_missing")).to(true);
       bindConstant().annotatedWith(Names.named("ldap.sync.update_if_exists")).to(true);
+      bindConstant().annotatedWith(Names.named("ldap.sync.threads")).to(2);
+      bindConstant().annotatedWith(Names.named("ldap.sync.batch_size")).to(2);
+      bindConstant().annotatedWith(Names.named("ldap.sync.delta.period_ms")).to(-1L);
+      bindConstant().annotatedWith(Names.named("ldap.sync.delta.reconcile_period_ms")).to(0L);
       bindConstant().annotatedWith(Names.named("ldap.base_dn")).to(server.getBaseDn());
       bindConstant()
           .annotatedWith(Names.named("ldap.sync.user.filter"))
           .to("(objectClass=inetOrgPerson)");
+      bind(String.class)
+          .annotatedWith(Names.named("ldap.sync.delta.attr"))
+          .toProvider(Providers.of(null));
       bind(String.class)
           .annotatedWith(Names.named("ldap.sync.group.additional_dn"))
           .toProvider(Providers.of(null));
@@ -15,14 +15,18 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.aryEq;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import com.codenvy.ldap.LdapUserIdNormalizer;
+import com.codenvy.ldap.auth.LdapAuthenticationCache;
 import com.codenvy.ldap.sync.LdapSynchronizer.SyncResult;
 import com.google.common.collect.ImmutableMap;
 import java.util.ArrayList;
@@ -32,6 +36,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import javax.persistence.EntityManager;
+import org.eclipse.che.api.core.ConflictException;
 import org.eclipse.che.api.core.NotFoundException;
 import org.eclipse.che.api.core.model.user.User;
 import org.eclipse.che.api.user.server.ProfileManager;
@@ -96,12 +101,20 @@ public class LdapSynchronizerTest {
             new Pair[] {Pair.of("firstName", "givenName")},
             true,
             true,
-            userFinder);
+            userFinder,
+            null,
+            1,
+            100,
+            null,
+            0,
+            0,
+            null);
 
     // mocking existing ids
     existingIds = new HashSet<>();
     when(userFinder.findIds()).thenReturn(existingIds);
     when(userFinder.extractId(any())).thenAnswer(inv -> ((User) inv.getArguments()[0]).getId());
+    when(userFinder.findUsers(any())).thenCallRealMethod();
 
     // mocking connection
     when(connFactory.getConnection()).thenReturn(connection);
@@ -253,7 +266,14 @@ public class LdapSynchronizerTest {
             null,
             false, // <- don't update
             true,
-            userFinder);
+            userFinder,
+            null,
+            1,
+            100,
+            null,
+            0,
+            0,
+            null);
     when(entrySelector.select(anyObject()))
         .thenReturn(asList(createUserEntry("user123"), createUserEntry("user234")));
     existingIds.add("user123");
@@ -279,6 +299,7 @@ public class LdapSynchronizerTest {
         .thenAnswer(inv -> ((User) inv.getArguments()[0]).getEmail());
     when(emailFinder.findIds())
         .thenReturn(new HashSet<>(Collections.singleton(existingUser.getEmail())));
+    when(emailFinder.findUsers(any())).thenCallRealMethod();
     when(emailFinder.findUser(anyString()))
         .thenAnswer(
             inv -> {
@@ -305,7 +326,14 @@ public class LdapSynchronizerTest {
             null,
             true,
             true,
-            emailFinder);
+            emailFinder,
+            null,
+            1,
+            100,
+            null,
+            0,
+            0,
+            null);
 
     ArrayList<LdapEntry> entries = new ArrayList<>(2);
     entries.add(
@@ -336,6 +364,253 @@ public class LdapSynchronizerTest {
     assertEquals(user.getEmail(), existingUser.getEmail(), "linking attribute must be the same");
   }
 
+  @Test
+  public void synchronizesUsersByPagesInParallel() throws Exception {
+    synchronizer = newParallelSynchronizer();
+    final Map<String, LdapEntry> users = new HashMap<>();
+    for (int i = 0; i < 7; i++) {
+      users.put("user" + i, createUserEntry("user" + i));
+    }
+    when(entrySelector.select(anyObject())).thenReturn(users.values());
+    when(profileManager.getById(any()))
+        .thenAnswer(
+            inv -> {
+              final String id = inv.getArguments()[0].toString();
+              return new ProfileImpl(id, ImmutableMap.of("firstName", "firstName-" + id));
+            });
+    final UserMapper mapper = new UserMapper("uid", "cn", "mail");
+    when(userFinder.findUser(any()))
+        .thenAnswer(
+            inv -> {
+              final String id = inv.getArguments()[0].toString();
+              if (!users.containsKey(id)) {
+                return new UserImpl(id, "email-" + id, "name-" + id);
+              }
+              return mapper.apply(users.get(id));
+            });
+    existingIds.add("user1");
+    existingIds.add("user2");
+    existingIds.add("missed-in-selection1");
+    existingIds.add("missed-in-selection2");
+    existingIds.add("missed-in-selection3");
+
+    final SyncResult syncResult = synchronizer.syncAll();
+    synchronizer.shutdownScheduler();
+
+    assertEquals(syncResult.getProcessed(), 7);
+    assertEquals(syncResult.getCreated(), 5);
+    assertEquals(syncResult.getUpToDate(), 2);
+    assertEquals(syncResult.getRemoved(), 3);
+    assertEquals(syncResult.getUpdated(), 0);
+    assertEquals(syncResult.getFailed(), 0);
+    assertEquals(syncResult.getFetched(), 7);
+    verify(userManager, times(5)).create(anyObject(), anyBoolean());
+    verify(userManager).remove("missed-in-selection1");
+    verify(userManager).remove("missed-in-selection2");
+    verify(userManager).remove("missed-in-selection3");
+  }
+
+  @Test
+  public void createsUsersOfPageOneByOne() throws Exception {
+    synchronizer = newParallelSynchronizer();
+    when(entrySelector.select(anyObject()))
+        .thenReturn(asList(createUserEntry("user123"), createUserEntry("user234")));
+    when(userManager.create(any(), anyBoolean()))
+        .thenAnswer(
+            inv -> {
+              final UserImpl user = (UserImpl) inv.getArguments()[0];
+              if (user.getId().equals("user123")) {
+                throw new ConflictException("conflict");
+              }
+              return user;
+            });
+
+    final SyncResult syncResult = synchronizer.syncAll();
+    synchronizer.shutdownScheduler();
+
+    assertEquals(syncResult.getProcessed(), 2);
+    assertEquals(syncResult.getCreated(), 1);
+    assertEquals(syncResult.getFailed(), 1);
+    assertEquals(syncResult.getFetched(), 2);
+    // each user is created only once, so the events of user creation are not published twice
+    verify(userManager, times(2)).create(anyObject(), anyBoolean());
+  }
+
+  @Test
+  public void synchronizesOnlyUsersModifiedSinceThePreviousSynchronization() throws Exception {
+    synchronizer = newDeltaSynchronizer("modifyTimestamp", Long.MAX_VALUE, null, null);
+    final LdapEntry user1 = createUserEntry("user1");
+    user1.addAttribute(new LdapAttribute("modifyTimestamp", "20170101000000Z"));
+    final LdapEntry user2 = createUserEntry("user2");
+    user2.addAttribute(new LdapAttribute("modifyTimestamp", "20170102000000Z"));
+    when(entrySelector.select(anyObject(), eq(null), any())).thenReturn(asList(user1, user2));
+
+    // there is no mark yet, so all the users are synchronized
+    SyncResult syncResult = synchronizer.syncModified();
+
+    assertEquals(syncResult.getCreated(), 2);
+    assertEquals(syncResult.getFetched(), 2);
+
+    // user2 is modified
+    final LdapEntry modifiedUser2 =
+        createUserEntry("user2", "new-name-user2", "emailuser2", "firstName-user2");
+    modifiedUser2.addAttribute(new LdapAttribute("modifyTimestamp", "20170103000000Z"));
+    when(entrySelector.select(anyObject(), eq("(modifyTimestamp>=20170102000000Z)"), any()))
+        .thenReturn(asList(modifiedUser2));
+    final UserMapper mapper = new UserMapper("uid", "cn", "mail");
+    when(userFinder.findUser("user2")).thenReturn(mapper.apply(user2));
+    when(profileManager.getById("user2"))
+        .thenReturn(new ProfileImpl("user2", ImmutableMap.of("firstName", "firstName-user2")));
+
+    syncResult = synchronizer.syncModified();
+
+    assertEquals(syncResult.getFetched(), 1);
+    assertEquals(syncResult.getUpdated(), 1);
+    assertEquals(syncResult.getCreated(), 0);
+    assertEquals(syncResult.getRemoved(), 0);
+    verify(userFinder).findIds();
+    verify(userManager).update(anyObject());
+  }
+
+  @Test
+  public void removesUsersMissingFromSelectionOfIdentifiers() throws Exception {
+    synchronizer =
+        newDeltaSynchronizer("uSNChanged", 0, mockDeltaMark("uSNChanged", "100"), null);
+    when(entrySelector.select(anyObject(), eq("(uSNChanged>=100)"), any()))
+        .thenReturn(Collections.emptyList());
+    when(entrySelector.select(anyObject(), eq(null), aryEq(new String[] {"uid", "cn", "mail"})))
+        .thenReturn(asList(createUserEntry("user123")));
+    existingIds.add("user123");
+    existingIds.add("missed-in-selection");
+    when(userFinder.findUser("missed-in-selection"))
+        .thenReturn(new UserImpl("missed-in-selection", "email", "name"));
+
+    final SyncResult syncResult = synchronizer.syncModified();
+
+    assertEquals(syncResult.getFetched(), 0);
+    assertEquals(syncResult.getRemoved(), 1);
+    assertEquals(syncResult.getFailed(), 0);
+    verify(userManager).remove("missed-in-selection");
+    verify(userManager, never()).remove("user123");
+  }
+
+  @Test
+  public void invalidatesCachedAuthenticationsOfUsersModifiedSinceThePreviousSynchronization()
+      throws Exception {
+    final LdapAuthenticationCache authCache = mock(LdapAuthenticationCache.class);
+    when(authCache.isEnabled()).thenReturn(true);
+    synchronizer =
+        newDeltaSynchronizer(
+            "modifyTimestamp", 0, mockDeltaMark("modifyTimestamp", "20170102000000Z"), authCache);
+    final LdapEntry user1 = createUserEntry("user1");
+    user1.addAttribute(new LdapAttribute("modifyTimestamp", "20170101000000Z"));
+    final LdapEntry user2 = createUserEntry("user2");
+    user2.addAttribute(new LdapAttribute("modifyTimestamp", "20170103000000Z"));
+    when(entrySelector.select(anyObject(), eq(null), any())).thenReturn(asList(user1, user2));
+
+    synchronizer.syncAll();
+
+    verify(authCache).invalidateUsers(Collections.singleton("user2"));
+    verify(authCache, never()).invalidateUser(anyString());
+  }
+
+  @Test
+  public void comparesMarks() {
+    assertTrue(LdapSynchronizer.compareMarks("9", "10") < 0);
+    assertTrue(LdapSynchronizer.compareMarks("20170102000000Z", "20170101000000Z") > 0);
+    assertEquals(LdapSynchronizer.compareMarks("20170101000000Z", "20170101000000Z"), 0);
+    assertTrue(LdapSynchronizer.compareMarks("20170101000056.123Z", "20170101000056Z") > 0);
+    assertEquals(LdapSynchronizer.compareMarks("20170101000056.000Z", "20170101000056Z"), 0);
+    assertTrue(LdapSynchronizer.compareMarks("20170101020000+0300", "20170101000000Z") < 0);
+    assertEquals(LdapSynchronizer.compareMarks("20170101030000+0300", "20170101000000Z"), 0);
+  }
+
+  @Test
+  public void storesMarkOfSynchronizationBySingleUpsert() throws Exception {
+    final DBHelper dbHelper = mock(DBHelper.class);
+    synchronizer = newDeltaSynchronizer("modifyTimestamp", 0, dbHelper, null);
+    final LdapEntry user1 = createUserEntry("user1");
+    user1.addAttribute(new LdapAttribute("modifyTimestamp", "20170101000000Z"));
+    final LdapEntry user2 = createUserEntry("user2");
+    user2.addAttribute(new LdapAttribute("modifyTimestamp", "20170102000000.5Z"));
+    when(entrySelector.select(anyObject(), eq(null), any())).thenReturn(asList(user2, user1));
+
+    synchronizer.syncModified();
+
+    verify(dbHelper)
+        .executeNativeUpdate(
+            "INSERT INTO codenvy_ldap_sync_state (name, value) VALUES (?1, ?2) "
+                + "ON CONFLICT (name) DO UPDATE SET value = EXCLUDED.value",
+            "delta_mark.modifyTimestamp",
+            "20170102000000.5Z");
+  }
+
+  /** Returns database helper which contains given mark of the previous synchronization. */
+  private static DBHelper mockDeltaMark(String deltaAttr, String mark) {
+    final DBHelper dbHelper = mock(DBHelper.class);
+    when(dbHelper.executeNativeQuery(anyString(), eq("delta_mark." + deltaAttr)))
+        .thenReturn(Collections.singletonList(mark));
+    return dbHelper;
+  }
+
+  @SuppressWarnings("unchecked") // synchronizer generic array of string pairs
+  private LdapSynchronizer newDeltaSynchronizer(
+      String deltaAttr,
+      long reconcilePeriodMs,
+      DBHelper dbHelper,
+      LdapAuthenticationCache authCache) {
+    return new LdapSynchronizer(
+        connFactory,
+        entrySelector,
+        userManager,
+        profileManager,
+        idNormalizer,
+        null,
+        0,
+        0,
+        "uid",
+        "cn",
+        "mail",
+        new Pair[] {Pair.of("firstName", "givenName")},
+        true,
+        true,
+        userFinder,
+        dbHelper,
+        1,
+        100,
+        deltaAttr,
+        0,
+        reconcilePeriodMs,
+        authCache);
+  }
+
+  @SuppressWarnings("unchecked") // synchronizer generic array of string pairs
+  private LdapSynchronizer newParallelSynchronizer() {
+    return new LdapSynchronizer(
+        connFactory,
+        entrySelector,
+        userManager,
+        profileManager,
+        idNormalizer,
+        null,
+        0,
+        0,
+        "uid",
+        "cn",
+        "mail",
+        new Pair[] {Pair.of("firstName", "givenName")},
+        true,
+        true,
+        userFinder,
+        null,
+        3,
+        2,
+        null,
+        0,
+        0,
+        null);
+  }
+
   private static LdapEntry createUserEntry(String id) {
     return createUserEntry(id, "name-" + id, "email" + id, "firstName-" + id);
   }
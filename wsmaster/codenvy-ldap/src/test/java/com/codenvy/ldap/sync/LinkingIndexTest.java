@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) [2012] - [2017] Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Red Hat, Inc. - initial API and implementation
+ */
+package com.codenvy.ldap.sync;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.testng.annotations.Test;
+
+/** Tests {@link LinkingIndex}. */
+public class LinkingIndexTest {
+
+  @Test
+  public void containsAddedIdentifiers() {
+    final Set<String> index =
+        new LinkingIndex.Builder().add("b").add("a").add("\u0438\u0434").add("c").add("").build();
+
+    assertEquals(index, ImmutableSet.of("", "a", "b", "c", "\u0438\u0434"));
+    assertTrue(index.contains("\u0438\u0434"));
+    assertFalse(index.contains("d"));
+    assertFalse(index.contains(1));
+  }
+
+  @Test
+  public void removesIdentifiers() {
+    final Set<String> index = new LinkingIndex.Builder().add("a").add("b").add("c").build();
+
+    assertTrue(index.remove("b"));
+    assertFalse(index.remove("b"));
+    assertFalse(index.remove("d"));
+
+    assertEquals(index.size(), 2);
+    assertFalse(index.contains("b"));
+    assertEquals(new HashSet<>(index), ImmutableSet.of("a", "c"));
+  }
+
+  @Test
+  public void buildsEmptyIndex() {
+    final Set<String> index = new LinkingIndex.Builder().build();
+
+    assertTrue(index.isEmpty());
+    assertFalse(index.iterator().hasNext());
+    assertFalse(index.contains("a"));
+  }
+}
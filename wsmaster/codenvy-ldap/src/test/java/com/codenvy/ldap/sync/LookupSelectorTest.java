@@ -13,6 +13,7 @@ package com.codenvy.ldap.sync;
 import static java.util.stream.Collectors.toSet;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 
 import com.codenvy.ldap.EmbeddedLdapServer;
 import java.util.Set;
@@ -82,4 +83,38 @@ public class LookupSelectorTest {
       }
     }
   }
+
+  @Test
+  public void testLookupSelectionWithAdditionalFilter() throws Exception {
+    final LookupSelector selector =
+        new LookupSelector(
+            10,
+            30_000L,
+            server.getBaseDn(),
+            "(&(objectClass=inetOrgPerson)(givenName=*))",
+            "uid",
+            "givenName");
+    try (Connection conn = connFactory.getConnection()) {
+      conn.open();
+      final Set<LdapEntry> selection =
+          StreamSupport.stream(
+                  selector.select(conn, "(telephoneNumber=000000001*)", new String[] {"uid"})
+                      .spliterator(),
+                  false)
+              .collect(toSet());
+      // 1 and 10-19
+      assertEquals(selection.size(), 11);
+      for (LdapEntry entry : selection) {
+        assertNotNull(entry.getAttribute("uid"));
+        assertNull(entry.getAttribute("givenName"));
+      }
+    }
+  }
+
+  @Test
+  public void combinesFilters() {
+    assertEquals(LookupSelector.and("(uid=*)", null), "(uid=*)");
+    assertEquals(LookupSelector.and("", "(uid=*)"), "(uid=*)");
+    assertEquals(LookupSelector.and("(cn=*)", "uid=*"), "(&(cn=*)(uid=*))");
+  }
 }
@@ -18,6 +18,9 @@ import com.codenvy.ldap.EmbeddedLdapServer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.apache.directory.shared.ldap.entry.ServerEntry;
 import org.eclipse.che.commons.lang.Pair;
@@ -37,11 +40,13 @@ public class MembershipSelectorTest {
 
   private EmbeddedLdapServer server;
   private ConnectionFactory connFactory;
+  private ExecutorService executor;
 
   @BeforeClass
   public void setUpServer() throws Exception {
     (server = EmbeddedLdapServer.newDefaultServer()).start();
     connFactory = server.getConnectionFactory();
+    executor = Executors.newFixedThreadPool(4);
 
     // first 100 users don't belong to any group
     for (int i = 0; i < 100; i++) {
@@ -66,6 +71,7 @@ public class MembershipSelectorTest {
 
   @AfterClass
   public void shutdownServer() throws Exception {
+    executor.shutdownNow();
     server.shutdown();
   }
 
@@ -90,4 +96,55 @@ public class MembershipSelectorTest {
       }
     }
   }
+
+  @Test
+  public void testParallelMembershipSelection() throws Exception {
+    final MembershipSelector selector =
+        new MembershipSelector(
+            connFactory,
+            executor,
+            4,
+            server.getBaseDn(),
+            "(objectClass=groupOfNames)",
+            "(objectClass=inetOrgPerson)",
+            "member",
+            "uid",
+            "givenName");
+    try (Connection conn = connFactory.getConnection()) {
+      conn.open();
+      final List<LdapEntry> selection =
+          StreamSupport.stream(selector.select(conn).spliterator(), false)
+              .collect(Collectors.toList());
+      assertEquals(selection.size(), 200);
+      assertEquals(selection.stream().map(LdapEntry::getDn).collect(toSet()).size(), 200);
+    }
+  }
+
+  @Test
+  public void testMembershipSelectionWithAdditionalFilter() throws Exception {
+    final MembershipSelector selector =
+        new MembershipSelector(
+            connFactory,
+            executor,
+            2,
+            server.getBaseDn(),
+            "(objectClass=groupOfNames)",
+            "(objectClass=inetOrgPerson)",
+            "member",
+            "uid",
+            "givenName");
+    try (Connection conn = connFactory.getConnection()) {
+      conn.open();
+      final Set<LdapEntry> selection =
+          StreamSupport.stream(
+                  selector.select(conn, "(givenName=gn-1*)", new String[] {"uid"}).spliterator(),
+                  false)
+              .collect(toSet());
+      // gn-100 ... gn-199
+      assertEquals(selection.size(), 100);
+      for (LdapEntry entry : selection) {
+        assertNotNull(entry.getAttribute("uid"));
+      }
+    }
+  }
 }
@@ -10,15 +10,24 @@
  */
 package com.codenvy.ldap.sync;
 
+import static java.lang.String.format;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import org.eclipse.che.api.core.model.user.User;
 import org.eclipse.che.api.user.server.model.impl.UserImpl;
 import org.eclipse.che.api.user.server.spi.UserDao;
 import org.mockito.Mock;
@@ -46,15 +55,39 @@ public class UserFinderTest {
   }
 
   @Test(dataProvider = "findsIdsProvider")
-  public void findsIds(BiFunction<UserDao, DBHelper, DBUserLinker> provider, String query)
+  public void findsIds(BiFunction<UserDao, DBHelper, DBUserLinker> provider, String column)
       throws Exception {
     final DBUserLinker finder = provider.apply(userDao, dbHelper);
     final List<String> ids = Arrays.asList("id1", "id2");
-    when(dbHelper.executeNativeQuery(query)).thenReturn(ids);
+    when(dbHelper.executeNativeQueryPage(
+            format("SELECT %1$s FROM Usr ORDER BY %1$s", column), 10_000))
+        .thenReturn(ids);
 
     assertEquals(finder.findIds(), new HashSet<>(ids));
   }
 
+  @Test
+  public void findsIdsByPages() throws Exception {
+    final DBUserLinker finder = DBUserLinker.newIdLinker(userDao, dbHelper);
+    final List<String> firstPage = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      firstPage.add(format("id%05d", i));
+    }
+    final List<String> secondPage = Arrays.asList("id10000", "id10001");
+    when(dbHelper.executeNativeQueryPage("SELECT id FROM Usr ORDER BY id", 10_000))
+        .thenReturn(firstPage);
+    when(dbHelper.executeNativeQueryPage(
+            "SELECT id FROM Usr WHERE id > ?1 ORDER BY id", 10_000, "id09999"))
+        .thenReturn(secondPage);
+
+    final Set<String> ids = finder.findIds();
+
+    assertEquals(ids.size(), 10_002);
+    assertTrue(ids.contains("id00000"));
+    assertTrue(ids.contains("id10001"));
+    assertFalse(ids.contains("id10002"));
+  }
+
   @Test(dataProvider = "findsUserProvider")
   public void findsUser(
       BiFunction<UserDao, DBHelper, DBUserLinker> provider, BiConsumer<UserDao, UserImpl> mocker)
@@ -66,6 +99,26 @@ public class UserFinderTest {
     assertEquals(finder.findUser("id"), user);
   }
 
+  @Test(dataProvider = "findsUsersProvider")
+  public void findsUsers(
+      BiFunction<UserDao, DBHelper, DBUserLinker> provider,
+      String query,
+      Function<UserImpl, String> idExtractor)
+      throws Exception {
+    final DBUserLinker finder = provider.apply(userDao, dbHelper);
+    final UserImpl user1 = new UserImpl("id1", "email1", "name1");
+    final UserImpl user2 = new UserImpl("id2", "email2", "name2");
+    final List<String> ids = Arrays.asList(idExtractor.apply(user1), idExtractor.apply(user2));
+    when(dbHelper.executeQuery(eq(query), eq(UserImpl.class), eq("values"), eq(ids), any()))
+        .thenReturn(Arrays.asList(user1, user2));
+
+    final Map<String, User> users = finder.findUsers(ids);
+
+    assertEquals(users.size(), 2);
+    assertEquals(users.get(idExtractor.apply(user1)), user1);
+    assertEquals(users.get(idExtractor.apply(user2)), user2);
+  }
+
   @Test(dataProvider = "extractsIdsProvider")
   public void extractsIds(
       BiFunction<UserDao, DBHelper, DBUserLinker> provider,
@@ -81,15 +134,15 @@ public class UserFinderTest {
     return new Object[][] {
       {
         (BiFunction<UserDao, DBHelper, DBUserLinker>) DBUserLinker::newIdLinker,
-        "SELECT id FROM Usr"
+        "id"
       },
       {
         (BiFunction<UserDao, DBHelper, DBUserLinker>) DBUserLinker::newEmailLinker,
-        "SELECT email FROM Usr"
+        "email"
       },
       {
         (BiFunction<UserDao, DBHelper, DBUserLinker>) DBUserLinker::newNameLinker,
-        "SELECT name FROM Usr"
+        "name"
       }
     };
   }
@@ -133,6 +186,27 @@ public class UserFinderTest {
     };
   }
 
+  @DataProvider
+  private Object[][] findsUsersProvider() {
+    return new Object[][] {
+      {
+        (BiFunction<UserDao, DBHelper, DBUserLinker>) DBUserLinker::newIdLinker,
+        "SELECT u FROM Usr u WHERE u.id IN :values",
+        (Function<UserImpl, String>) UserImpl::getId
+      },
+      {
+        (BiFunction<UserDao, DBHelper, DBUserLinker>) DBUserLinker::newEmailLinker,
+        "SELECT u FROM Usr u WHERE u.email IN :values",
+        (Function<UserImpl, String>) UserImpl::getEmail
+      },
+      {
+        (BiFunction<UserDao, DBHelper, DBUserLinker>) DBUserLinker::newNameLinker,
+        "SELECT u FROM Usr u WHERE u.name IN :values",
+        (Function<UserImpl, String>) UserImpl::getName
+      }
+    };
+  }
+
   @DataProvider
   private Object[][] extractsIdsProvider() {
     return new Object[][] {